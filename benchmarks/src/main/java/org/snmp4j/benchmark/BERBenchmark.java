@@ -0,0 +1,81 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BERBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.snmp4j.PDU;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.smi.Integer32;
+
+/**
+ * Measures the BER encoding and decoding of PDUs with different numbers of
+ * variable bindings.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BERBenchmark {
+
+  @Param({ "1", "10", "100" })
+  public int variableBindings;
+
+  private PDU pdu;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws IOException {
+    pdu = new PDU();
+    pdu.setType(PDU.RESPONSE);
+    pdu.setRequestID(new Integer32(123456789));
+    MessageProcessingFixture.fill(pdu, variableBindings);
+    encoded = encode().array();
+  }
+
+  @Benchmark
+  public ByteBuffer encode() throws IOException {
+    BEROutputStream outputStream =
+        new BEROutputStream(ByteBuffer.allocate(pdu.getBERLength()));
+    pdu.encodeBER(outputStream);
+    return outputStream.getBuffer();
+  }
+
+  @Benchmark
+  public PDU decode() throws IOException {
+    PDU decoded = new PDU();
+    decoded.decodeBER(new BERInputStream(ByteBuffer.wrap(encoded)));
+    return decoded;
+  }
+}
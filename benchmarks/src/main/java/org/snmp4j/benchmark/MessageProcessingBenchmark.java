@@ -0,0 +1,84 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - MessageProcessingBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.snmp4j.PDU;
+
+/**
+ * Measures <code>prepareOutgoingMessage</code> and
+ * <code>prepareDataElements</code> of the SNMPv1, SNMPv2c, and SNMPv3
+ * message processing models. SNMPv3 messages are sent with security level
+ * noAuthNoPriv, see {@link UsmBenchmark} for authentication and privacy.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageProcessingBenchmark {
+
+  @Param({ "1", "2c", "3" })
+  public String version;
+
+  @Param({ "1", "10" })
+  public int variableBindings;
+
+  private MessageProcessingFixture fixture;
+  private PDU request;
+  private byte[] message;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    fixture = "3".equals(version) ?
+        MessageProcessingFixture.usm("none", "none") :
+        MessageProcessingFixture.community(version);
+    request = fixture.createRequest(variableBindings);
+  }
+
+  @Setup(Level.Iteration)
+  public void prepareMessage() throws IOException {
+    fixture.synchronizeTime();
+    message = fixture.prepareOutgoingMessage(request);
+  }
+
+  @Benchmark
+  public byte[] prepareOutgoingMessage() throws IOException {
+    return fixture.prepareOutgoingMessage(request);
+  }
+
+  @Benchmark
+  public PDU prepareDataElements() throws IOException {
+    return fixture.prepareDataElements(message);
+  }
+}
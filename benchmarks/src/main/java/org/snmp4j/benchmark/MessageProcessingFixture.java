@@ -0,0 +1,338 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - MessageProcessingFixture.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.MessageException;
+import org.snmp4j.MutablePDU;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.MutableStateReference;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.mp.StateReference;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.security.AuthHMAC128SHA224;
+import org.snmp4j.security.AuthHMAC192SHA256;
+import org.snmp4j.security.AuthMD5;
+import org.snmp4j.security.AuthSHA;
+import org.snmp4j.security.PrivAES128;
+import org.snmp4j.security.PrivDES;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmTimeEntry;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The <code>MessageProcessingFixture</code> connects a sending and a
+ * receiving message processing model of the same SNMP version, so that the
+ * benchmarks can prepare outgoing messages and decode them again without a
+ * transport mapping in between.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class MessageProcessingFixture {
+
+  public static final UdpAddress MANAGER_ADDRESS = new UdpAddress("127.0.0.1/4967");
+  public static final UdpAddress AGENT_ADDRESS = new UdpAddress("127.0.0.1/161");
+  public static final OctetString COMMUNITY = new OctetString("public");
+  public static final OctetString USER = new OctetString("benchmark");
+
+  private static final int[] IF_ENTRY = new OID("1.3.6.1.2.1.2.2.1").getValue();
+
+  private final MessageProcessingModel sender;
+  private final MessageProcessingModel receiver;
+  private final int securityModel;
+  private final int securityLevel;
+  private final byte[] securityName;
+  private final MessageDispatcher dispatcher = new MessageDispatcherImpl();
+  private USM senderUSM;
+  private USM receiverUSM;
+  private int nextHandle = 1;
+
+  private MessageProcessingFixture(MessageProcessingModel sender,
+                                   MessageProcessingModel receiver,
+                                   int securityModel, int securityLevel,
+                                   byte[] securityName) {
+    this.sender = sender;
+    this.receiver = receiver;
+    this.securityModel = securityModel;
+    this.securityLevel = securityLevel;
+    this.securityName = securityName;
+  }
+
+  /**
+   * Creates a community based fixture.
+   * @param version
+   *    "1" for SNMPv1 or "2c" for SNMPv2c.
+   * @return
+   *    a new fixture.
+   */
+  public static MessageProcessingFixture community(String version) {
+    if ("1".equals(version)) {
+      return new MessageProcessingFixture(new MPv1(), new MPv1(),
+                                          SecurityModel.SECURITY_MODEL_SNMPv1,
+                                          SecurityLevel.NOAUTH_NOPRIV,
+                                          COMMUNITY.getValue());
+    }
+    return new MessageProcessingFixture(new MPv2c(), new MPv2c(),
+                                        SecurityModel.SECURITY_MODEL_SNMPv2c,
+                                        SecurityLevel.NOAUTH_NOPRIV,
+                                        COMMUNITY.getValue());
+  }
+
+  /**
+   * Creates a SNMPv3 fixture with a USM user on both sides.
+   * @param authProtocol
+   *    the authentication protocol name (see {@link #authProtocol(String)}).
+   * @param privProtocol
+   *    the privacy protocol name (see {@link #privProtocol(String)}).
+   * @return
+   *    a new fixture.
+   */
+  public static MessageProcessingFixture usm(String authProtocol,
+                                             String privProtocol) {
+    SecurityProtocols.getInstance().addDefaultProtocols();
+    OID auth = authProtocol(authProtocol);
+    OID priv = (auth == null) ? null : privProtocol(privProtocol);
+    USM senderUSM = new USM(SecurityProtocols.getInstance(),
+        new OctetString(MPv3.createLocalEngineID(new OctetString("manager"))), 0);
+    USM receiverUSM = new USM(SecurityProtocols.getInstance(),
+        new OctetString(MPv3.createLocalEngineID(new OctetString("agent"))), 0);
+    UsmUser user = new UsmUser(USER,
+        auth, (auth == null) ? null : new OctetString("authPassphrase"),
+        priv, (priv == null) ? null : new OctetString("privPassphrase"));
+    OctetString agentEngineID = receiverUSM.getLocalEngineID();
+    senderUSM.addUser(USER, agentEngineID, user);
+    receiverUSM.addUser(USER, user);
+    MPv3 sender = new MPv3(senderUSM);
+    MPv3 receiver = new MPv3(receiverUSM);
+    sender.addEngineID(AGENT_ADDRESS, agentEngineID);
+    int securityLevel = (auth == null) ? SecurityLevel.NOAUTH_NOPRIV :
+        ((priv == null) ? SecurityLevel.AUTH_NOPRIV : SecurityLevel.AUTH_PRIV);
+    MessageProcessingFixture fixture =
+        new MessageProcessingFixture(sender, receiver,
+                                     SecurityModel.SECURITY_MODEL_USM,
+                                     securityLevel, USER.getValue());
+    fixture.senderUSM = senderUSM;
+    fixture.receiverUSM = receiverUSM;
+    fixture.synchronizeTime();
+    return fixture;
+  }
+
+  /**
+   * Updates the sender's time table with the current engine time of the
+   * receiver, so that prepared messages are within the receiver's time
+   * window.
+   */
+  public void synchronizeTime() {
+    if (senderUSM != null) {
+      senderUSM.getTimeTable().addEntry(
+          new UsmTimeEntry(receiverUSM.getLocalEngineID(),
+                           receiverUSM.getEngineBoots(),
+                           receiverUSM.getEngineTime()));
+    }
+  }
+
+  /**
+   * Maps an authentication protocol name to its ID.
+   * @param name
+   *    one of <code>none</code>, <code>MD5</code>, <code>SHA</code>,
+   *    <code>SHA224</code>, or <code>SHA256</code>.
+   * @return
+   *    the protocol ID or <code>null</code> for <code>none</code>.
+   */
+  public static OID authProtocol(String name) {
+    if ("MD5".equals(name)) {
+      return AuthMD5.ID;
+    }
+    else if ("SHA".equals(name)) {
+      return AuthSHA.ID;
+    }
+    else if ("SHA224".equals(name)) {
+      return AuthHMAC128SHA224.ID;
+    }
+    else if ("SHA256".equals(name)) {
+      return AuthHMAC192SHA256.ID;
+    }
+    return null;
+  }
+
+  /**
+   * Maps a privacy protocol name to its ID.
+   * @param name
+   *    one of <code>none</code>, <code>DES</code>, or <code>AES128</code>.
+   * @return
+   *    the protocol ID or <code>null</code> for <code>none</code>.
+   */
+  public static OID privProtocol(String name) {
+    if ("DES".equals(name)) {
+      return PrivDES.ID;
+    }
+    else if ("AES128".equals(name)) {
+      return PrivAES128.ID;
+    }
+    return null;
+  }
+
+  /**
+   * Creates a GET request PDU for this fixture's SNMP version.
+   * @param variableBindings
+   *    the number of variable bindings.
+   * @return
+   *    a PDU with <code>variableBindings</code> interface table cells.
+   */
+  public PDU createRequest(int variableBindings) {
+    PDU pdu;
+    switch (securityModel) {
+      case SecurityModel.SECURITY_MODEL_SNMPv1:
+        pdu = new PDUv1();
+        break;
+      case SecurityModel.SECURITY_MODEL_USM:
+        pdu = new ScopedPDU();
+        break;
+      default:
+        pdu = new PDU();
+    }
+    pdu.setType(PDU.GET);
+    pdu.setRequestID(new Integer32(1));
+    return fill(pdu, variableBindings);
+  }
+
+  /**
+   * Adds variable bindings with values of different syntaxes to a PDU.
+   * @param pdu
+   *    the PDU to fill.
+   * @param variableBindings
+   *    the number of variable bindings to add.
+   * @return
+   *    <code>pdu</code>.
+   */
+  public static PDU fill(PDU pdu, int variableBindings) {
+    for (int i=0; i<variableBindings; i++) {
+      int row = 1000 + i / 4;
+      switch (i % 4) {
+        case 0:
+          pdu.add(new VariableBinding(new OID(IF_ENTRY, new int[] { 2, row }),
+                                      new OctetString("GigabitEthernet0/"+row)));
+          break;
+        case 1:
+          pdu.add(new VariableBinding(new OID(IF_ENTRY, new int[] { 10, row }),
+                                      new Counter32(4000000000L - row)));
+          break;
+        case 2:
+          pdu.add(new VariableBinding(new OID(IF_ENTRY, new int[] { 6, row }),
+                                      new OctetString(new byte[] { 0, 0x1b, 0x21, 0x3c, (byte)(row >> 8), (byte)row })));
+          break;
+        default:
+          // SNMPv1 does not support Counter64
+          pdu.add((pdu instanceof PDUv1) ?
+                  new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.16."+row),
+                                      new Counter32(row)) :
+                  new VariableBinding(new OID("1.3.6.1.2.1.31.1.1.1.6."+row),
+                                      new Counter64(0x7fffffffffffL - row)));
+      }
+    }
+    return pdu;
+  }
+
+  /**
+   * Prepares an outgoing request message.
+   * @param pdu
+   *    the request PDU.
+   * @return
+   *    the BER encoded message.
+   * @throws IOException
+   *    if the message cannot be encoded.
+   */
+  public byte[] prepareOutgoingMessage(PDU pdu) throws IOException {
+    PduHandle handle = new PduHandle(nextHandle++);
+    BEROutputStream outgoingMessage = new BEROutputStream();
+    int status = sender.prepareOutgoingMessage(AGENT_ADDRESS, 65535,
+                                               sender.getID(), securityModel,
+                                               securityName, securityLevel,
+                                               pdu, true, handle,
+                                               new GenericAddress(),
+                                               outgoingMessage, null);
+    sender.releaseStateReference(handle);
+    if (status != SnmpConstants.SNMP_MP_OK) {
+      throw new MessageException("prepareOutgoingMessage failed: "+
+                                 SnmpConstants.mpErrorMessage(status), status);
+    }
+    return outgoingMessage.getBuffer().array();
+  }
+
+  /**
+   * Decodes an incoming message with the receiving message processing model.
+   * @param message
+   *    a message created by {@link #prepareOutgoingMessage(PDU)}.
+   * @return
+   *    the decoded PDU.
+   * @throws IOException
+   *    if the message cannot be decoded or the message processing failed.
+   */
+  public PDU prepareDataElements(byte[] message) throws IOException {
+    MutablePDU result = new MutablePDU();
+    PduHandle handle = new PduHandle(nextHandle++);
+    MutableStateReference mutableStateReference = new MutableStateReference();
+    StateReference stateReference = new StateReference();
+    stateReference.setAddress(MANAGER_ADDRESS);
+    mutableStateReference.setStateReference(stateReference);
+    TransportStateReference tmStateReference =
+        new TransportStateReference(null, MANAGER_ADDRESS, null,
+                                    SecurityLevel.undefined,
+                                    SecurityLevel.undefined, false, null);
+    int status = receiver.prepareDataElements(dispatcher, MANAGER_ADDRESS,
+        new BERInputStream(ByteBuffer.wrap(message)), tmStateReference,
+        new Integer32(), new Integer32(), new OctetString(), new Integer32(),
+        result, handle, new Integer32(65535), new StatusInformation(),
+        mutableStateReference);
+    receiver.releaseStateReference(handle);
+    if (status != SnmpConstants.SNMP_MP_OK) {
+      throw new MessageException("prepareDataElements failed: "+
+                                 SnmpConstants.mpErrorMessage(status), status);
+    }
+    return result.getPdu();
+  }
+}
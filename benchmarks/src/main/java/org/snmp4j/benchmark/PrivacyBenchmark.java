@@ -0,0 +1,125 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PrivacyBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.snmp4j.security.DecryptParams;
+import org.snmp4j.security.Priv3DES;
+import org.snmp4j.security.PrivAES128;
+import org.snmp4j.security.PrivAES256;
+import org.snmp4j.security.PrivDES;
+import org.snmp4j.security.PrivacyProtocol;
+
+/**
+ * Measures how the throughput of the USM privacy protocols scales with the
+ * number of encrypting threads. All threads share one privacy protocol
+ * instance, as the threads of a USM share the instances registered with
+ * <code>SecurityProtocols</code>, and each thread uses its own localized key.
+ * Comparing the single thread throughput with the throughput of
+ * <code>encryptAllThreads</code> (one thread per available processor) shows
+ * whether salt generation or cipher handling serialize the threads.
+ * The number of threads of the latter can be changed with the JMH
+ * <code>-t</code> option.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PrivacyBenchmark {
+
+  @Param({ "DES", "3DES", "AES128", "AES256" })
+  public String privProtocol;
+
+  @Param({ "400" })
+  public int scopedPduLength;
+
+  private PrivacyProtocol privacyProtocol;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    if ("DES".equals(privProtocol)) {
+      privacyProtocol = new PrivDES();
+    }
+    else if ("3DES".equals(privProtocol)) {
+      privacyProtocol = new Priv3DES();
+    }
+    else if ("AES128".equals(privProtocol)) {
+      privacyProtocol = new PrivAES128();
+    }
+    else if ("AES256".equals(privProtocol)) {
+      privacyProtocol = new PrivAES256();
+    }
+    else {
+      throw new IllegalArgumentException("Unknown privacy protocol " + privProtocol);
+    }
+  }
+
+  /**
+   * The key, message and decryption parameters of a benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class ThreadData {
+
+    private byte[] key;
+    private byte[] scopedPdu;
+    private final DecryptParams decryptParams = new DecryptParams();
+
+    @Setup(Level.Trial)
+    public void setup(PrivacyBenchmark benchmark) {
+      Random random = new Random(Thread.currentThread().getId());
+      key = new byte[benchmark.privacyProtocol.getMinKeyLength()];
+      random.nextBytes(key);
+      scopedPdu = new byte[benchmark.scopedPduLength];
+      random.nextBytes(scopedPdu);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public byte[] encryptSingleThread(ThreadData data) {
+    return encrypt(data);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public byte[] encryptAllThreads(ThreadData data) {
+    return encrypt(data);
+  }
+
+  private byte[] encrypt(ThreadData data) {
+    return privacyProtocol.encrypt(data.scopedPdu, 0, data.scopedPdu.length, data.key,
+                                   1, 1000, data.decryptParams);
+  }
+}
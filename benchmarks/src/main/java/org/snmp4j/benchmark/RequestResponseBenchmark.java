@@ -0,0 +1,128 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - RequestResponseBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.AbstractTransportMapping;
+import org.snmp4j.transport.DummyTransport;
+
+/**
+ * Measures a complete synchronous SNMPv2c request/response round trip
+ * through two {@link Snmp} sessions connected by a {@link DummyTransport}.
+ * Besides the message processing on both sides, this includes the request
+ * bookkeeping, the timer handling, and the hand-over between the transport
+ * threads and the calling thread. Run it with several threads (JMH option
+ * <code>-t</code>) to measure concurrent requests.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RequestResponseBenchmark {
+
+  @Param({ "1", "10" })
+  public int variableBindings;
+
+  private Snmp manager;
+  private Snmp agent;
+  private CommunityTarget target;
+
+  @Setup
+  public void setup() throws IOException {
+    DummyTransport<UdpAddress> managerTransport =
+        new DummyTransport<UdpAddress>(MessageProcessingFixture.MANAGER_ADDRESS);
+    AbstractTransportMapping<UdpAddress> agentTransport =
+        managerTransport.getResponder(MessageProcessingFixture.AGENT_ADDRESS);
+    manager = new Snmp(managerTransport);
+    agent = new Snmp(agentTransport);
+    agent.addCommandResponder(new EchoResponder());
+    manager.listen();
+    agent.listen();
+    target = new CommunityTarget(MessageProcessingFixture.AGENT_ADDRESS,
+                                 MessageProcessingFixture.COMMUNITY);
+    target.setVersion(SnmpConstants.version2c);
+    target.setTimeout(5000);
+    target.setRetries(0);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    manager.close();
+    agent.close();
+  }
+
+  @Benchmark
+  public PDU syncGet() throws IOException {
+    PDU request = new PDU();
+    request.setType(PDU.GET);
+    MessageProcessingFixture.fill(request, variableBindings);
+    ResponseEvent response = manager.send(request, target);
+    if (response.getResponse() == null) {
+      throw new IOException("Request timed out");
+    }
+    return response.getResponse();
+  }
+
+  /**
+   * Returns each request with its variable bindings as response.
+   */
+  private static class EchoResponder implements CommandResponder {
+
+    public void processPdu(CommandResponderEvent event) {
+      PDU response = (PDU) event.getPDU().clone();
+      response.setType(PDU.RESPONSE);
+      try {
+        event.getMessageDispatcher().returnResponsePdu(
+            event.getMessageProcessingModel(), event.getSecurityModel(),
+            event.getSecurityName(), event.getSecurityLevel(), response,
+            event.getMaxSizeResponsePDU(), event.getStateReference(),
+            new StatusInformation());
+        event.setProcessed(true);
+      }
+      catch (MessageException mex) {
+        throw new RuntimeException(mex);
+      }
+    }
+  }
+}
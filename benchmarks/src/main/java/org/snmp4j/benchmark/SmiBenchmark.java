@@ -0,0 +1,106 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - SmiBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * Measures frequently used operations of the {@link OID} and
+ * {@link OctetString} SMI types.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SmiBenchmark {
+
+  private static final String OID_STRING = "1.3.6.1.2.1.31.1.1.1.6.123456";
+
+  private OID oid;
+  private OID nextOID;
+  private OctetString displayString;
+  private OctetString binary;
+  private String hexString;
+
+  @Setup
+  public void setup() {
+    oid = new OID(OID_STRING);
+    nextOID = new OID("1.3.6.1.2.1.31.1.1.1.6.123457");
+    displayString = new OctetString("GigabitEthernet0/1 uplink to core switch");
+    byte[] bytes = new byte[64];
+    new Random(1).nextBytes(bytes);
+    binary = new OctetString(bytes);
+    hexString = binary.toHexString();
+  }
+
+  @Benchmark
+  public int oidCompareTo() {
+    return oid.compareTo(nextOID);
+  }
+
+  @Benchmark
+  public int oidHashCode() {
+    return oid.hashCode();
+  }
+
+  @Benchmark
+  public String oidToString() {
+    return oid.toString();
+  }
+
+  @Benchmark
+  public OID oidParse() {
+    return new OID(OID_STRING);
+  }
+
+  @Benchmark
+  public String octetStringToString() {
+    return displayString.toString();
+  }
+
+  @Benchmark
+  public OctetString octetStringFromString() {
+    return new OctetString("GigabitEthernet0/1 uplink to core switch");
+  }
+
+  @Benchmark
+  public String octetStringToHexString() {
+    return binary.toHexString();
+  }
+
+  @Benchmark
+  public OctetString octetStringFromHexString() {
+    return OctetString.fromHexString(hexString);
+  }
+}
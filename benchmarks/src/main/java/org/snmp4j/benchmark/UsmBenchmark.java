@@ -0,0 +1,85 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - UsmBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.snmp4j.PDU;
+
+/**
+ * Measures the per message cost of the USM authentication and privacy
+ * protocols when preparing and decoding SNMPv3 messages. The keys are
+ * localized during setup, so only the per message work is measured.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UsmBenchmark {
+
+  @Param({ "MD5", "SHA", "SHA256" })
+  public String authProtocol;
+
+  @Param({ "none", "DES", "AES128" })
+  public String privProtocol;
+
+  @Param({ "10" })
+  public int variableBindings;
+
+  private MessageProcessingFixture fixture;
+  private PDU request;
+  private byte[] message;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    fixture = MessageProcessingFixture.usm(authProtocol, privProtocol);
+    request = fixture.createRequest(variableBindings);
+  }
+
+  @Setup(Level.Iteration)
+  public void prepareMessage() throws IOException {
+    // keep the message within the time window of the receiver
+    fixture.synchronizeTime();
+    message = fixture.prepareOutgoingMessage(request);
+  }
+
+  @Benchmark
+  public byte[] authenticateAndEncrypt() throws IOException {
+    return fixture.prepareOutgoingMessage(request);
+  }
+
+  @Benchmark
+  public PDU verifyAndDecrypt() throws IOException {
+    return fixture.prepareDataElements(message);
+  }
+}
@@ -511,6 +511,9 @@ public class MessageDispatcherImpl implements MessageDispatcher {
                                              tmStateReference);
 
       if (status == SnmpConstants.SNMP_ERROR_SUCCESS) {
+        if (expectResponse && pdu.isConfirmedPdu()) {
+          configureCacheEntryLifetime(target, mp, pduHandle);
+        }
         // inform callback about PDU new handle
         if (pduHandleCallback != null) {
           pduHandleCallback.pduHandleAssigned(pduHandle, pdu);
@@ -552,6 +555,29 @@ public class MessageDispatcherImpl implements MessageDispatcher {
     }
   }
 
+  /**
+   * Extends the lifetime of the message cache entry of a confirmed request
+   * to the total timeout of the request (including retries), if that exceeds
+   * the default lifetime of the message processing model's cache.
+   * @param target
+   *    the target of the request.
+   * @param mp
+   *    the message processing model that prepared the request.
+   * @param pduHandle
+   *    the handle of the request.
+   * @since 2.6.0
+   */
+  protected void configureCacheEntryLifetime(Target target, MessageProcessingModel mp,
+                                             PduHandle pduHandle) {
+    if (mp instanceof MPv3) {
+      MPv3 mpv3 = (MPv3)mp;
+      long totalTimeout = target.getTimeout() * (Math.max(0, target.getRetries()) + 1);
+      if (totalTimeout > mpv3.getCacheEntryLifetime()) {
+        mpv3.setCacheEntryLifetime(pduHandle, totalTimeout);
+      }
+    }
+  }
+
   private static void checkListening4ConfirmedPDU(PDU pdu, Address target,
                                                   TransportMapping transport) {
     if ((transport != null) && (!transport.isListening())) {
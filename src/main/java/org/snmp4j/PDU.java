@@ -23,6 +23,7 @@ package org.snmp4j;
 
 import org.snmp4j.asn1.BER;
 import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
 import org.snmp4j.asn1.BERSerializable;
 import org.snmp4j.log.LogAdapter;
 import org.snmp4j.log.LogFactory;
@@ -629,8 +630,38 @@ public class PDU implements BERSerializable, Serializable {
     return length;
   }
 
+  /**
+   * Computes the BER length of this PDU as if its variable bindings had the
+   * supplied total BER length. This allows to track the size of a PDU while
+   * variable bindings are added without re-measuring all of them.
+   * @param variableBindingsLength
+   *    the sum of the BER lengths of the variable bindings (see
+   *    {@link #getBERLength(java.util.List)}).
+   * @return
+   *    the BER length of this PDU.
+   * @since 2.6.0
+   */
+  public int getBERLength(int variableBindingsLength) {
+    int length = getBERPayloadLengthPDU(variableBindingsLength);
+    length += BER.getBERLengthOfLength(length) + 1;
+    return length;
+  }
+
   protected int getBERPayloadLengthPDU() {
-    int length = getBERLength(variableBindings);
+    return getBERPayloadLengthPDU(getBERLength(variableBindings));
+  }
+
+  /**
+   * Computes the payload length of this PDU for the given total BER length
+   * of the variable bindings.
+   * @param variableBindingsLength
+   *    the sum of the BER lengths of the variable bindings.
+   * @return
+   *    the BER payload length of this PDU.
+   * @since 2.6.0
+   */
+  protected int getBERPayloadLengthPDU(int variableBindingsLength) {
+    int length = variableBindingsLength;
     length += BER.getBERLengthOfLength(length) + 1;
 
     // req id, error status, error index
@@ -661,6 +692,47 @@ public class PDU implements BERSerializable, Serializable {
     }
   }
 
+  /**
+   * Encodes this PDU with the supplied reverse encoder in a single pass over
+   * its variable bindings. The resulting encoding is identical to the
+   * encoding written by {@link #encodeBER(OutputStream)}.
+   * @param encoder
+   *    a <code>BERReverseEncoder</code> to which the encoded PDU is prepended.
+   * @throws IOException
+   *    if the PDU cannot be encoded.
+   * @since 2.6.0
+   */
+  public void encodeBERReverse(BERReverseEncoder encoder) throws IOException {
+    int end = encoder.getLength();
+    encodeBERReverse(encoder, variableBindings);
+    encoder.encode(errorIndex);
+    encoder.encode(errorStatus);
+    encoder.encode(requestID);
+    encoder.encodeHeader(type, encoder.getLength() - end);
+  }
+
+  /**
+   * Encodes a list of variable bindings as BER sequence with the supplied
+   * reverse encoder.
+   * @param encoder
+   *    a <code>BERReverseEncoder</code> to which the encoded list is prepended.
+   * @param variableBindings
+   *    a list of variable bindings.
+   * @throws IOException
+   *    if a variable binding cannot be encoded.
+   * @since 2.6.0
+   */
+  protected static void encodeBERReverse(BERReverseEncoder encoder,
+                                         List<? extends VariableBinding> variableBindings)
+      throws IOException
+  {
+    int end = encoder.getLength();
+    for (int i=variableBindings.size()-1; i>=0; i--) {
+      variableBindings.get(i).encodeBERReverse(encoder);
+    }
+    encoder.encodeHeader(BER.SEQUENCE, encoder.getLength() - end);
+  }
+
   /**
    * Removes all variable bindings from the PDU and sets the request ID to zero.
    * This can be used to reuse a PDU for another request.
@@ -23,6 +23,7 @@ package org.snmp4j;
 import org.snmp4j.asn1.BER;
 import org.snmp4j.asn1.BER.MutableByte;
 import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
 import org.snmp4j.log.LogAdapter;
 import org.snmp4j.log.LogFactory;
 import org.snmp4j.mp.SnmpConstants;
@@ -250,6 +251,30 @@ public class PDUv1 extends PDU {
       }
   }
 
+  @Override
+  public void encodeBERReverse(BERReverseEncoder encoder) throws IOException {
+    for (VariableBinding vb : variableBindings) {
+      if (!isVariableV1(vb.getVariable())) {
+        throw new IOException("Cannot encode Counter64 into a SNMPv1 PDU");
+      }
+    }
+    int end = encoder.getLength();
+    encodeBERReverse(encoder, variableBindings);
+    if (type == PDU.V1TRAP) {
+      encoder.encode(timestamp);
+      encoder.encode(specificTrap);
+      encoder.encode(genericTrap);
+      encoder.encode(agentAddress);
+      encoder.encode(enterprise);
+    }
+    else {
+      encoder.encode(errorIndex);
+      encoder.encode(errorStatus);
+      encoder.encode(requestID);
+    }
+    encoder.encodeHeader(type, encoder.getLength() - end);
+  }
+
   /**
    * Check if the given variable can be encoded into a SNMPv1 PDU.
    * @param v
@@ -265,16 +290,12 @@ public class PDUv1 extends PDU {
     return !(v instanceof Counter64) || SNMP4JSettings.isAllowSNMPv2InV1();
   }
 
-  protected int getBERPayloadLengthPDU() {
+  protected int getBERPayloadLengthPDU(int variableBindingsLength) {
     if (getType() != PDU.V1TRAP) {
-      return super.getBERPayloadLengthPDU();
+      return super.getBERPayloadLengthPDU(variableBindingsLength);
     }
     else {
-      int length = 0;
-      // length for all vbs
-        for (VariableBinding variableBinding : variableBindings) {
-            length += variableBinding.getBERLength();
-        }
+      int length = variableBindingsLength;
       length += BER.getBERLengthOfLength(length) + 1;
       length += agentAddress.getBERLength();
       length += enterprise.getBERLength();
@@ -0,0 +1,626 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - RequestWindow.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Address;
+import org.snmp4j.util.WorkerPool;
+import org.snmp4j.util.WorkerTask;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The <code>RequestWindow</code> limits the number of outstanding confirmed
+ * requests of a {@link Snmp} session, both in total and per target address.
+ * A request occupies a slot of the window from the time it is sent until it
+ * has been answered, timed out, or cancelled (retries do not occupy
+ * additional slots).
+ * <p>
+ * When the window is exhausted, new requests are either queued (the default)
+ * or rejected with a {@link MessageException} with error status
+ * {@link SnmpConstants#SNMP_MD_REQUEST_WINDOW_EXHAUSTED},
+ * depending on the {@link OverflowPolicy}. Queued asynchronous requests are
+ * sent as soon as a slot for their target address becomes available,
+ * whereas synchronous requests wait up to their total timeout for a slot.
+ * <p>
+ * Slots are reserved and released with atomic operations only. Queued
+ * requests that have been admitted by a released slot are not sent by the
+ * releasing thread (which may be a timer, transport, or dispatcher thread),
+ * but by the {@link WorkerPool} set with {@link #setWorkerPool(WorkerPool)}
+ * or, by default, by a daemon thread of this window that terminates when it
+ * has been idle for a second. Synchronous requests wait for a slot on a
+ * {@link Condition}, so a waiting virtual thread does not pin its carrier
+ * thread.
+ * <p>
+ * A <code>RequestWindow</code> must not be shared by several
+ * <code>Snmp</code> instances.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class RequestWindow {
+
+  private static final LogAdapter logger = LogFactory.getLogger(RequestWindow.class);
+
+  private static final long DISPATCHER_IDLE_MILLIS = 1000;
+
+  /**
+   * Defines how requests are handled that do not fit into the window.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Queue the request until a slot becomes available.
+     */
+    queue,
+    /**
+     * Reject the request by throwing a {@link MessageException}.
+     */
+    reject
+  }
+
+  /**
+   * A <code>QueuedRequest</code> is a request that waits for a free slot in
+   * the window. Its {@link #run()} method is called when a slot has been
+   * reserved for it.
+   */
+  public interface QueuedRequest extends Runnable {
+
+    /**
+     * Gets the target address of the request.
+     * @return
+     *    the address the slot has to be reserved for.
+     */
+    Address getAddress();
+
+    /**
+     * Aborts the request because it will never be sent. If a slot had been
+     * reserved for the request before it could be run, the window releases
+     * that slot itself.
+     * @param reason
+     *    the reason why the request is aborted.
+     */
+    void abort(Exception reason);
+  }
+
+  private final int maxRequests;
+  private final int maxRequestsPerAddress;
+  private volatile OverflowPolicy overflowPolicy;
+  private volatile WorkerPool workerPool;
+
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private final ConcurrentMap<Address, AtomicInteger> outstandingPerAddress =
+      new ConcurrentHashMap<Address, AtomicInteger>();
+  private final Queue<QueueEntry> queue = new ConcurrentLinkedQueue<QueueEntry>();
+  private final AtomicInteger queueSize = new AtomicInteger();
+  private final AtomicInteger drainRequests = new AtomicInteger();
+  private final AtomicLong rejectedRequests = new AtomicLong();
+  private final AtomicLong queuedRequests = new AtomicLong();
+
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final Lock waitLock = new ReentrantLock();
+  private final Condition slotReleased = waitLock.newCondition();
+
+  private final BlockingQueue<QueuedRequest> admitted = new LinkedBlockingQueue<QueuedRequest>();
+  private final AtomicBoolean dispatcherRunning = new AtomicBoolean();
+
+  /**
+   * Creates a request window that queues requests when it is exhausted.
+   * @param maxRequests
+   *    the maximum number of outstanding requests in total. A value less or
+   *    equal to zero disables the limit.
+   * @param maxRequestsPerAddress
+   *    the maximum number of outstanding requests per target address. A
+   *    value less or equal to zero disables the limit.
+   */
+  public RequestWindow(int maxRequests, int maxRequestsPerAddress) {
+    this(maxRequests, maxRequestsPerAddress, OverflowPolicy.queue);
+  }
+
+  /**
+   * Creates a request window.
+   * @param maxRequests
+   *    the maximum number of outstanding requests in total. A value less or
+   *    equal to zero disables the limit.
+   * @param maxRequestsPerAddress
+   *    the maximum number of outstanding requests per target address. A
+   *    value less or equal to zero disables the limit.
+   * @param overflowPolicy
+   *    defines whether requests that do not fit into the window are queued or
+   *    rejected.
+   */
+  public RequestWindow(int maxRequests, int maxRequestsPerAddress,
+                       OverflowPolicy overflowPolicy) {
+    if (overflowPolicy == null) {
+      throw new NullPointerException("Overflow policy must not be null");
+    }
+    this.maxRequests = maxRequests;
+    this.maxRequestsPerAddress = maxRequestsPerAddress;
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public int getMaxRequests() {
+    return maxRequests;
+  }
+
+  public int getMaxRequestsPerAddress() {
+    return maxRequestsPerAddress;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    if (overflowPolicy == null) {
+      throw new NullPointerException("Overflow policy must not be null");
+    }
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * Gets the worker pool that sends queued requests once they have been
+   * admitted.
+   * @return
+   *    the worker pool or <code>null</code> if the internal dispatcher
+   *    thread of this window is used.
+   */
+  public WorkerPool getWorkerPool() {
+    return workerPool;
+  }
+
+  /**
+   * Sets the worker pool that sends queued requests once they have been
+   * admitted. If the pool does not run a request (for example, because it
+   * drops it), the request is aborted and its slot released.
+   * @param workerPool
+   *    a worker pool or <code>null</code> to use the internal dispatcher
+   *    thread of this window (default).
+   */
+  public void setWorkerPool(WorkerPool workerPool) {
+    this.workerPool = workerPool;
+  }
+
+  /**
+   * Tries to reserve a slot for a request to the specified address.
+   * @param address
+   *    the target address of the request.
+   * @return
+   *    <code>true</code> if a slot has been reserved, <code>false</code> if
+   *    the window is exhausted for the address.
+   */
+  public boolean tryAcquire(Address address) {
+    return tryReserve(address, true);
+  }
+
+  /**
+   * Reserves a slot for a request to the specified address. If the window
+   * is exhausted and the overflow policy is {@link OverflowPolicy#queue},
+   * this method waits until a slot becomes available or the timeout elapsed.
+   * @param address
+   *    the target address of the request.
+   * @param timeoutMillis
+   *    the maximum time to wait in milliseconds.
+   * @return
+   *    <code>true</code> if a slot has been reserved, <code>false</code>
+   *    otherwise.
+   * @throws InterruptedException
+   *    if the current thread has been interrupted while waiting.
+   */
+  public boolean acquire(Address address, long timeoutMillis)
+      throws InterruptedException
+  {
+    if (tryReserve(address, true)) {
+      return true;
+    }
+    if ((overflowPolicy == OverflowPolicy.queue) && (timeoutMillis > 0)) {
+      long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      waiters.incrementAndGet();
+      waitLock.lock();
+      try {
+        while (true) {
+          if (tryReserve(address, true)) {
+            return true;
+          }
+          if (remaining <= 0) {
+            break;
+          }
+          remaining = slotReleased.awaitNanos(remaining);
+        }
+      }
+      finally {
+        waitLock.unlock();
+        waiters.decrementAndGet();
+      }
+    }
+    rejectedRequests.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Reserves a slot for the request if available or otherwise queues or
+   * rejects it according to the overflow policy.
+   * @param request
+   *    the request to be admitted.
+   * @return
+   *    <code>true</code> if a slot has been reserved and the caller has to
+   *    send the request, <code>false</code> if the request has been queued.
+   *    A queued request is run by the worker pool or the dispatcher thread
+   *    of this window, when a slot becomes available.
+   * @throws MessageException
+   *    if the request has been rejected.
+   */
+  public boolean acquireOrEnqueue(QueuedRequest request)
+      throws MessageException
+  {
+    Address address = request.getAddress();
+    if (tryReserve(address, true)) {
+      return true;
+    }
+    if (overflowPolicy == OverflowPolicy.reject) {
+      rejectedRequests.incrementAndGet();
+      throw new MessageException("Request window exhausted for "+address,
+          SnmpConstants.SNMP_MD_REQUEST_WINDOW_EXHAUSTED);
+    }
+    queuedRequests.incrementAndGet();
+    queueSize.incrementAndGet();
+    queue.add(new QueueEntry(request));
+    // a slot may have been released before the request was queued
+    drainQueue();
+    return false;
+  }
+
+  /**
+   * Reserves a slot regardless of the limits of this window. This is used
+   * for follow-up messages of an already admitted request.
+   * @param address
+   *    the target address of the request.
+   */
+  public void forceAcquire(Address address) {
+    outstanding.incrementAndGet();
+    reserveAddress(address, false);
+  }
+
+  /**
+   * Releases a slot reserved for the specified address. Queued requests that
+   * fit into the window afterwards are handed over to the worker pool or
+   * dispatcher thread, they are never sent by the calling thread.
+   * @param address
+   *    the target address of the finished request.
+   */
+  public void release(Address address) {
+    outstanding.decrementAndGet();
+    AtomicInteger count = outstandingPerAddress.get(address);
+    if ((count != null) && (count.decrementAndGet() == 0) && count.compareAndSet(0, -1)) {
+      // retire the counter, reserveAddress replaces retired counters
+      outstandingPerAddress.remove(address, count);
+    }
+    if (!queue.isEmpty()) {
+      drainQueue();
+    }
+    signalWaiters();
+  }
+
+  private void signalWaiters() {
+    if (waiters.get() > 0) {
+      waitLock.lock();
+      try {
+        slotReleased.signalAll();
+      }
+      finally {
+        waitLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Admits queued requests that fit into the window. Only one thread drains
+   * the queue at a time, calls while it is draining make it drain again.
+   */
+  private void drainQueue() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      for (Iterator<QueueEntry> it = queue.iterator(); it.hasNext(); ) {
+        if ((maxRequests > 0) && (outstanding.get() >= maxRequests)) {
+          break;
+        }
+        QueueEntry entry = it.next();
+        if (entry.isTaken()) {
+          continue;
+        }
+        if (tryReserve(entry.request.getAddress(), false)) {
+          if (entry.take()) {
+            it.remove();
+            queueSize.decrementAndGet();
+            dispatch(entry.request);
+          }
+          else {
+            release(entry.request.getAddress());
+          }
+        }
+      }
+      missed = drainRequests.addAndGet(-missed);
+    }
+    while (missed != 0);
+  }
+
+  private void dispatch(final QueuedRequest request) {
+    WorkerPool pool = workerPool;
+    if (pool != null) {
+      pool.execute(new AdmittedRequestTask(request));
+      return;
+    }
+    admitted.add(request);
+    if (dispatcherRunning.compareAndSet(false, true)) {
+      SNMP4JSettings.getThreadFactory().createWorkerThread("RequestWindow.dispatcher",
+                                                           new Dispatcher(), true).run();
+    }
+  }
+
+  private static void runAdmitted(QueuedRequest request) {
+    try {
+      request.run();
+    }
+    catch (RuntimeException rex) {
+      logger.error("Failed to send queued request to "+request.getAddress()+": "+
+                   rex.getMessage(), rex);
+      request.abort(rex);
+    }
+  }
+
+  /**
+   * Removes all queued requests and aborts them.
+   * @param reason
+   *    the reason for aborting the requests.
+   */
+  public void abortQueuedRequests(Exception reason) {
+    QueueEntry entry;
+    while ((entry = queue.poll()) != null) {
+      if (entry.take()) {
+        queueSize.decrementAndGet();
+        entry.request.abort(reason);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of requests currently occupying a slot of this window.
+   * @return
+   *    the number of outstanding requests.
+   */
+  public int getOutstandingCount() {
+    return outstanding.get();
+  }
+
+  /**
+   * Gets the number of requests to the specified address currently
+   * occupying a slot of this window.
+   * @param address
+   *    a target address.
+   * @return
+   *    the number of outstanding requests to <code>address</code>.
+   */
+  public int getOutstandingCount(Address address) {
+    AtomicInteger count = outstandingPerAddress.get(address);
+    return (count == null) ? 0 : Math.max(0, count.get());
+  }
+
+  /**
+   * Gets the number of requests waiting for a slot.
+   * @return
+   *    the queue size.
+   */
+  public int getQueueSize() {
+    return queueSize.get();
+  }
+
+  /**
+   * Gets the total number of requests that have been rejected by this
+   * window.
+   * @return
+   *    the number of rejected requests.
+   */
+  public long getRejectedRequests() {
+    return rejectedRequests.get();
+  }
+
+  /**
+   * Gets the total number of requests that have been queued by this window.
+   * @return
+   *    the number of queued requests.
+   */
+  public long getQueuedRequests() {
+    return queuedRequests.get();
+  }
+
+  /**
+   * Reserves a slot if available.
+   * @param address
+   *    the target address.
+   * @param drainOnRollback
+   *    if <code>true</code>, the queue is drained when a temporarily
+   *    reserved total slot has to be given back, because a concurrent drain
+   *    may have missed it.
+   * @return
+   *    <code>true</code> if a slot has been reserved.
+   */
+  private boolean tryReserve(Address address, boolean drainOnRollback) {
+    int n;
+    do {
+      n = outstanding.get();
+      if ((maxRequests > 0) && (n >= maxRequests)) {
+        return false;
+      }
+    }
+    while (!outstanding.compareAndSet(n, n + 1));
+    if (!reserveAddress(address, true)) {
+      outstanding.decrementAndGet();
+      if (drainOnRollback && !queue.isEmpty()) {
+        drainQueue();
+      }
+      return false;
+    }
+    return true;
+  }
+
+  private boolean reserveAddress(Address address, boolean limited) {
+    while (true) {
+      AtomicInteger count = outstandingPerAddress.get(address);
+      if (count == null) {
+        if (outstandingPerAddress.putIfAbsent(address, new AtomicInteger(1)) == null) {
+          return true;
+        }
+        continue;
+      }
+      int n = count.get();
+      if (n < 0) {
+        // retired counter
+        outstandingPerAddress.remove(address, count);
+        continue;
+      }
+      if (limited && (maxRequestsPerAddress > 0) && (n >= maxRequestsPerAddress)) {
+        return false;
+      }
+      if (count.compareAndSet(n, n + 1)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RequestWindow[maxRequests="+maxRequests+
+        ",maxRequestsPerAddress="+maxRequestsPerAddress+
+        ",overflowPolicy="+overflowPolicy+
+        ",outstanding="+getOutstandingCount()+
+        ",queueSize="+getQueueSize()+"]";
+  }
+
+  /**
+   * A queued request that is taken from the queue either by admission or by
+   * abortion, but never by both.
+   */
+  private static final class QueueEntry {
+
+    private final QueuedRequest request;
+    private final AtomicBoolean taken = new AtomicBoolean();
+
+    private QueueEntry(QueuedRequest request) {
+      this.request = request;
+    }
+
+    private boolean isTaken() {
+      return taken.get();
+    }
+
+    private boolean take() {
+      return taken.compareAndSet(false, true);
+    }
+  }
+
+  /**
+   * Runs an admitted request on a worker pool thread and aborts it if the
+   * pool terminates the task before running it. The slot reserved for an
+   * aborted request is released then.
+   */
+  private final class AdmittedRequestTask implements WorkerTask {
+
+    private final QueuedRequest request;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private AdmittedRequestTask(QueuedRequest request) {
+      this.request = request;
+    }
+
+    public void run() {
+      if (started.compareAndSet(false, true)) {
+        runAdmitted(request);
+      }
+    }
+
+    public void terminate() {
+      if (started.compareAndSet(false, true)) {
+        release(request.getAddress());
+        request.abort(new MessageException("Request window worker pool did not run request",
+                                           SnmpConstants.SNMP_MD_REQUEST_WINDOW_EXHAUSTED));
+      }
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+
+  /**
+   * Sends admitted requests until no request has been admitted for
+   * {@link #DISPATCHER_IDLE_MILLIS}.
+   */
+  private final class Dispatcher implements WorkerTask {
+
+    public void run() {
+      while (true) {
+        QueuedRequest request;
+        try {
+          request = admitted.poll(DISPATCHER_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException iex) {
+          request = admitted.poll();
+        }
+        if (request != null) {
+          runAdmitted(request);
+        }
+        else {
+          dispatcherRunning.set(false);
+          if (admitted.isEmpty() || !dispatcherRunning.compareAndSet(false, true)) {
+            return;
+          }
+        }
+      }
+    }
+
+    public void terminate() {
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+}
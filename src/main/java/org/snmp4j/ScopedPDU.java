@@ -25,6 +25,7 @@ import org.snmp4j.asn1.BER;
 import java.io.OutputStream;
 import java.io.IOException;
 import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
 import org.snmp4j.asn1.BER.MutableByte;
 
 /**
@@ -108,7 +109,18 @@ public class ScopedPDU extends PDU {
   }
 
   public int getBERPayloadLength() {
-    int length = super.getBERLength();
+    return getBERPayloadLength(super.getBERLength());
+  }
+
+  @Override
+  public int getBERLength(int variableBindingsLength) {
+    int length = getBERPayloadLength(super.getBERLength(variableBindingsLength));
+    length += 1 + BER.getBERLengthOfLength(length);
+    return length;
+  }
+
+  private int getBERPayloadLength(int pduLength) {
+    int length = pduLength;
     int cid = (contextEngineID == null) ? 0 : contextEngineID.length();
     int cn = (contextName == null) ? 0 : contextName.length();
     length += BER.getBERLengthOfLength(cid) + 1
@@ -123,6 +135,15 @@ public class ScopedPDU extends PDU {
     super.encodeBER(outputStream);
   }
 
+  @Override
+  public void encodeBERReverse(BERReverseEncoder encoder) throws IOException {
+    int end = encoder.getLength();
+    super.encodeBERReverse(encoder);
+    encoder.encode(contextName);
+    encoder.encode(contextEngineID);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.getLength() - end);
+  }
+
 
 
   public Object clone() {
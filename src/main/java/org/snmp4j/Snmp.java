@@ -21,6 +21,11 @@ package org.snmp4j;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.snmp4j.event.*;
 import org.snmp4j.log.*;
@@ -145,20 +150,39 @@ public class Snmp implements Session, CommandResponder {
   private static final int DEFAULT_MAX_REQUEST_STATUS = 2;
   private static final int ENGINE_ID_DISCOVERY_MAX_REQUEST_STATUS = 0;
 
+  private static final int CLAIM_UNREGISTERED = 0;
+  private static final int CLAIM_PENDING = 1;
+  private static final int CLAIM_RESPONSE = 2;
+  private static final int CLAIM_TIMEOUT = 3;
+  private static final int CLAIM_CANCELLED = 4;
+
   // Message processing implementation
   private MessageDispatcher messageDispatcher;
 
   /**
    * The {@code pendingRequests} table contains pending requests
-   * accessed trough the key {@code PduHandle}
+   * accessed trough the key {@code PduHandle}. Whether a request is answered
+   * or timed out is decided by its {@link RequestClaim} and not by locking
+   * this table.
    */
-  private final Map<PduHandle, PendingRequest> pendingRequests = new Hashtable<PduHandle, PendingRequest>(50);
+  private final Map<PduHandle, PendingRequest> pendingRequests =
+      new ConcurrentHashMap<PduHandle, PendingRequest>(64);
 
   /**
    * The {@code asyncRequests} table contains pending requests
    * accessed trough the key userObject
    */
-  private final Map<Object, PduHandle> asyncRequests = new Hashtable<Object, PduHandle>(50);
+  private final Map<Object, PduHandle> asyncRequests =
+      new ConcurrentHashMap<Object, PduHandle>(64);
+
+  /**
+   * The number of confirmed requests sent by this session that have been
+   * neither answered, timed out, nor cancelled yet.
+   */
+  private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+  // Optional admission control for outgoing confirmed requests
+  private volatile RequestWindow requestWindow;
 
   // Timer for retrying pending requests
   private CommonTimer timer;
@@ -567,14 +591,15 @@ public class Snmp implements Session, CommandResponder {
     if (t != null) {
       t.cancel();
     }
+    RequestWindow window = requestWindow;
+    if (window != null) {
+      window.abortQueuedRequests(new InterruptedException("Snmp session has been closed"));
+    }
     // close all notification listeners
     if (notificationDispatcher != null) {
       notificationDispatcher.closeAll();
     }
-    List<PendingRequest> pr;
-    synchronized (pendingRequests) {
-      pr = new ArrayList<PendingRequest>(pendingRequests.values());
-    }
+    List<PendingRequest> pr = new ArrayList<PendingRequest>(pendingRequests.values());
     for (PendingRequest pending : pr) {
       pending.cancel();
       ResponseEvent e =
@@ -949,49 +974,52 @@ public class Snmp implements Session, CommandResponder {
     }
     final SyncResponseListener syncResponse = new SyncResponseListener();
     PendingRequest retryRequest = null;
-    synchronized (syncResponse) {
-      PduHandle handle = null;
-      PendingRequest request =
-          new PendingRequest(syncResponse, target, pdu, target, transport);
-      request.maxRequestStatus = maxRequestStatus;
+    PduHandle handle = null;
+    PendingRequest request =
+        new PendingRequest(syncResponse, target, pdu, target, transport);
+    request.maxRequestStatus = maxRequestStatus;
+    long totalTimeout =
+        timeoutModel.getRequestTimeout(target.getRetries(),
+                                       target.getTimeout());
+    acquireRequestWindow(request, totalTimeout);
+    try {
       handle = sendMessage(request.pdu, target, transport, request);
-      long totalTimeout =
-          timeoutModel.getRequestTimeout(target.getRetries(),
-                                         target.getTimeout());
-      long stopTime = System.nanoTime()+totalTimeout*SnmpConstants.MILLISECOND_TO_NANOSECOND;
-      try {
-        while ((syncResponse.getResponse() == null) &&
-               (System.nanoTime() < stopTime)) {
-          syncResponse.wait(totalTimeout);
-        }
-        retryRequest = pendingRequests.remove(handle);
-        if (logger.isDebugEnabled()) {
-          logger.debug("Removed pending request with handle: " + handle);
-        }
-        request.setFinished();
-        request.cancel();
+    }
+    catch (IOException iox) {
+      request.claim.claim(CLAIM_CANCELLED);
+      throw iox;
+    }
+    try {
+      // wait without holding a monitor, so that a virtual thread does not
+      // pin its carrier thread while waiting for the response
+      syncResponse.awaitResponse(totalTimeout);
+      retryRequest = pendingRequests.remove(handle);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Removed pending request with handle: " + handle);
       }
-      catch (InterruptedException iex) {
-        logger.warn(iex);
-        // cleanup request
-        request.setFinished();
-        request.cancel();
+      request.setFinished();
+      request.cancel();
+    }
+    catch (InterruptedException iex) {
+      logger.warn(iex);
+      // cleanup request
+      request.setFinished();
+      request.cancel();
+      retryRequest = pendingRequests.remove(handle);
+      if (retryRequest != null) {
+        retryRequest.setFinished();
+        retryRequest.cancel();
+      }
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      if (!request.finished) {
+        // free resources
         retryRequest = pendingRequests.remove(handle);
         if (retryRequest != null) {
           retryRequest.setFinished();
           retryRequest.cancel();
         }
-        Thread.currentThread().interrupt();
-      }
-      finally {
-        if (!request.finished) {
-          // free resources
-          retryRequest = pendingRequests.remove(handle);
-          if (retryRequest != null) {
-            retryRequest.setFinished();
-            retryRequest.cancel();
-          }
-        }
       }
     }
     if (retryRequest != null) {
@@ -1030,7 +1058,86 @@ public class Snmp implements Session, CommandResponder {
     }
     PendingRequest request =
         new AsyncPendingRequest(listener, userHandle, pdu, target, transport);
-    sendMessage(request.pdu, target, transport, request);
+    RequestWindow window = requestWindow;
+    if (window != null) {
+      if (!window.acquireOrEnqueue(new QueuedAsyncRequest(request, window))) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Queued request to "+target.getAddress()+
+                       " because request window is exhausted: "+window);
+        }
+        return;
+      }
+      request.claim.setRequestWindow(window, request.target.getAddress());
+    }
+    try {
+      sendMessage(request.pdu, target, transport, request);
+    }
+    catch (IOException iox) {
+      request.claim.claim(CLAIM_CANCELLED);
+      throw iox;
+    }
+  }
+
+  /**
+   * Reserves a slot in the request window (if set) for a synchronous request.
+   * @param request
+   *    the request to be sent.
+   * @param timeout
+   *    the maximum time to wait for a slot in milliseconds.
+   * @throws MessageException
+   *    if the request window is exhausted.
+   */
+  private void acquireRequestWindow(PendingRequest request, long timeout)
+      throws MessageException
+  {
+    RequestWindow window = requestWindow;
+    if (window != null) {
+      Address address = request.target.getAddress();
+      boolean acquired;
+      try {
+        acquired = window.acquire(address, timeout);
+      }
+      catch (InterruptedException iex) {
+        Thread.currentThread().interrupt();
+        acquired = false;
+      }
+      if (!acquired) {
+        throw new MessageException("Request window exhausted for "+address,
+                                   SnmpConstants.SNMP_MD_REQUEST_WINDOW_EXHAUSTED);
+      }
+      request.claim.setRequestWindow(window, address);
+    }
+  }
+
+  /**
+   * Gets the request window that limits the number of outstanding requests
+   * of this session.
+   * @return
+   *    the request window or <code>null</code> if the number of outstanding
+   *    requests is not limited (default).
+   * @since 2.6.0
+   */
+  public RequestWindow getRequestWindow() {
+    return requestWindow;
+  }
+
+  /**
+   * Sets the request window that limits the number of outstanding confirmed
+   * requests of this session, in total and per target address. A request
+   * releases its slot when it has been answered, has timed out, or has been
+   * cancelled. Asynchronous requests that are queued by the window cannot be
+   * cancelled by {@link #cancel(PDU, ResponseListener)} before they have
+   * actually been sent.
+   * <p>
+   * The window should be set before any request is sent, because requests
+   * sent before are not accounted by the window.
+   * @param requestWindow
+   *    a <code>RequestWindow</code> instance that is not shared with other
+   *    sessions or <code>null</code> to not limit outstanding requests.
+   * @since 2.6.0
+   */
+  public void setRequestWindow(RequestWindow requestWindow) {
+    this.requestWindow = requestWindow;
   }
 
   /**
@@ -1253,12 +1360,7 @@ public class Snmp implements Session, CommandResponder {
       if (logger.isDebugEnabled()) {
         logger.debug("Looking up pending request with handle " + handle);
       }
-      synchronized (pendingRequests) {
-        request = pendingRequests.get(handle);
-        if (request != null) {
-          request.responseReceived();
-        }
-      }
+      request = pendingRequests.get(handle);
       if (request == null) {
         if (logger.isWarnEnabled()) {
           logger.warn("Received response that cannot be matched to any " +
@@ -1267,6 +1369,14 @@ public class Snmp implements Session, CommandResponder {
               ", requestID=" + pdu.getRequestID());
         }
       }
+      else if (!request.claimResponse()) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Dropping response for request that has already been " +
+              "answered, timed out, or cancelled, address=" +
+              event.getPeerAddress() +
+              ", requestID=" + pdu.getRequestID());
+        }
+      }
       else if (!resendRequest(request, pdu)) {
         ResponseListener l = request.listener;
         if (l != null) {
@@ -1312,24 +1422,25 @@ public class Snmp implements Session, CommandResponder {
   protected boolean resendRequest(PendingRequest request, PDU response) {
     if (request.useNextPDU()) {
       request.responseReceived = false;
-      synchronized (pendingRequests) {
-        pendingRequests.remove(request.key);
-        PduHandle holdKeyUntilResendDone = request.key;
-        request.key = null;
-        handleInternalResponse(response, request.pdu, request.target.getAddress());
-        try {
-          sendMessage(request.pdu, request.target, request.transport, request);
-        }
-        catch (IOException e) {
-          logger.error("IOException while resending request after RFC 5343 context engine ID discovery: " +
-              e.getMessage(), e);
-        }
-        // now the previous retry can be released
-        if (logger.isDebugEnabled()) {
-          logger.debug("Releasing PDU handle "+holdKeyUntilResendDone);
-        }
-        holdKeyUntilResendDone = null;
+      // the response to the discovery PDU has been claimed, thus the next PDU
+      // needs a new claim
+      request.claim = request.claim.renew();
+      pendingRequests.remove(request.key);
+      PduHandle holdKeyUntilResendDone = request.key;
+      request.key = null;
+      handleInternalResponse(response, request.pdu, request.target.getAddress());
+      try {
+        sendMessage(request.pdu, request.target, request.transport, request);
+      }
+      catch (IOException e) {
+        logger.error("IOException while resending request after RFC 5343 context engine ID discovery: " +
+            e.getMessage(), e);
+      }
+      // now the previous retry can be released
+      if (logger.isDebugEnabled()) {
+        logger.debug("Releasing PDU handle "+holdKeyUntilResendDone);
       }
+      holdKeyUntilResendDone = null;
       return true;
     }
     return false;
@@ -1406,7 +1517,10 @@ public class Snmp implements Session, CommandResponder {
         PDU reqPDU = request.pdu;
         Object reqUserObject = request.userObject;
         synchronized (request) {
-          intime = request.cancel();
+          // a concurrently received response or timeout may have claimed
+          // the request already, then the report must not be delivered
+          intime = request.claim.claim(CLAIM_RESPONSE);
+          request.cancel();
         }
         // remove pending request
         // (sync is not needed as request is already canceled)
@@ -1618,6 +1732,20 @@ public class Snmp implements Session, CommandResponder {
     return asyncRequests.size();
   }
 
+  /**
+   * Gets the number of confirmed requests (synchronous and asynchronous)
+   * sent by this session that have not been answered, timed out, or
+   * cancelled yet. Retries of a request are not counted separately.
+   * Applications can use this value for back-pressure, for example by
+   * delaying new requests while the count exceeds a limit.
+   * @return
+   *    the number of in-flight requests.
+   * @since 2.6.0
+   */
+  public int getInFlightRequestCount() {
+    return inFlightRequests.get();
+  }
+
   private boolean isEmptyContextEngineID(PDU pdu) {
     if (pdu instanceof ScopedPDU) {
       ScopedPDU scopedPDU = (ScopedPDU) pdu;
@@ -1648,6 +1776,8 @@ public class Snmp implements Session, CommandResponder {
     private volatile boolean responseReceived = false;
     private volatile boolean pendingRetry = false;
     private volatile boolean cancelled = false;
+    // shared by this request and all its retries
+    private volatile RequestClaim claim;
 
     private CounterEvent waitTime;
     private CounterEvent waitTimeTarget;
@@ -1666,6 +1796,7 @@ public class Snmp implements Session, CommandResponder {
                           TransportMapping transport) {
       this.userObject = userObject;
       this.listener = listener;
+      this.claim = new RequestClaim();
       this.retryCount = target.getRetries();
       this.pdu = pdu;
       this.target = (Target) target.clone();
@@ -1700,6 +1831,7 @@ public class Snmp implements Session, CommandResponder {
       this.transport = other.transport;
       this.nextPDU = other.nextPDU;
       this.waitTime = other.waitTime;
+      this.claim = other.claim;
     }
 
     private void discoverContextEngineID() {
@@ -1739,6 +1871,21 @@ public class Snmp implements Session, CommandResponder {
       this.pdu = firstPDU;
     }
 
+    /**
+     * Claims this request (and all its retries) for a received response.
+     * Only the first response, timeout, or cancellation can claim a request.
+     * @return
+     *    <code>true</code> if the response has to be processed,
+     *    <code>false</code> if the request has already been claimed.
+     */
+    public boolean claimResponse() {
+      if (claim.claim(CLAIM_RESPONSE)) {
+        responseReceived();
+        return true;
+      }
+      return false;
+    }
+
     public void responseReceived() {
       this.responseReceived = true;
       if (waitTime != null) {
@@ -1777,6 +1924,7 @@ public class Snmp implements Session, CommandResponder {
         Target t = target;
         if ((t != null) && (!cancelled)) {
           pendingRequests.put(handle, this);
+          claim.register();
           registerRequest(handle);
           if (logger.isDebugEnabled()) {
             logger.debug("Running pending " +
@@ -1830,10 +1978,9 @@ public class Snmp implements Session, CommandResponder {
       }
 
       try {
-        synchronized (pendingRequests) {
-          this.pendingRetry =
-              (!finished) && (retryCount > 0) && (!responseReceived);
-        }
+        this.pendingRetry =
+            (!finished) && (retryCount > 0) && (!responseReceived) &&
+            claim.isPending();
         if (this.pendingRetry) {
           try {
             PendingRequest nextRetry = new PendingRequest(this);
@@ -1859,7 +2006,7 @@ public class Snmp implements Session, CommandResponder {
                          ex.getMessage());
             messageDispatcher.releaseStateReference(m_target.getVersion(),
                 m_key);
-            if (l != null) {
+            if ((l != null) && claim.claim(CLAIM_TIMEOUT)) {
               listener.onResponse(new ResponseEvent(Snmp.this, null,
                   m_pdu, null, m_userObject, ex));
             }
@@ -1868,7 +2015,7 @@ public class Snmp implements Session, CommandResponder {
         else if (!finished) {
           finished = true;
           pendingRequests.remove(m_key);
-          if (!cancelled) {
+          if ((!cancelled) && claim.claim(CLAIM_TIMEOUT)) {
             // request timed out
             if (logger.isDebugEnabled()) {
               logger.debug("Request timed out: " + m_key.getTransactionID());
@@ -1923,7 +2070,20 @@ public class Snmp implements Session, CommandResponder {
      */
     public boolean cancel(){
       cancelled = true;
+      if (claim.claim(CLAIM_CANCELLED)) {
+        // release the message processing state of an unanswered request
+        PduHandle m_key = key;
+        Target m_target = target;
+        if ((m_key != null) && (m_target != null)) {
+          messageDispatcher.releaseStateReference(m_target.getVersion(), m_key);
+        }
+      }
       boolean result = super.cancel();
+      CommonTimer timerCopy = timer;
+      if (timerCopy instanceof CancellableTimer) {
+        // TimerTask state is not maintained by timers other than java.util.Timer
+        result = ((CancellableTimer) timerCopy).cancel(this);
+      }
       Target m_target = target;
       if (waitTime != null && !isResponseReceived()) {
         CounterSupport counterSupport = getCounterSupport();
@@ -1950,6 +2110,142 @@ public class Snmp implements Session, CommandResponder {
     }
   }
 
+  /**
+   * A <code>RequestClaim</code> decides atomically, whether a request and its
+   * retries are finished by a response, a timeout, or a cancellation.
+   * Exactly one of them can claim the request, without the need to
+   * synchronize on the pending request table.
+   *
+   * @since 2.6.0
+   */
+  class RequestClaim {
+
+    private final AtomicInteger state = new AtomicInteger(CLAIM_UNREGISTERED);
+    private final AtomicBoolean windowReleased = new AtomicBoolean();
+    private volatile RequestWindow window;
+    private Address address;
+
+    /**
+     * Associates this claim with a reserved slot of a request window. The
+     * slot is released when the request is claimed, or immediately if the
+     * request has been claimed already.
+     * @param window
+     *    the request window.
+     * @param address
+     *    the target address the slot has been reserved for.
+     */
+    void setRequestWindow(RequestWindow window, Address address) {
+      this.address = address;
+      this.window = window;
+      if (!isPending()) {
+        releaseRequestWindow();
+      }
+    }
+
+    private void releaseRequestWindow() {
+      RequestWindow w = window;
+      if ((w != null) && windowReleased.compareAndSet(false, true)) {
+        w.release(address);
+      }
+    }
+
+    /**
+     * Creates a new claim for a follow-up request of this (claimed) request.
+     * If this claim occupied a request window slot, the new claim occupies
+     * a slot too, regardless of the window limits.
+     * @return
+     *    a new unregistered claim.
+     */
+    RequestClaim renew() {
+      RequestClaim renewed = new RequestClaim();
+      RequestWindow w = window;
+      if (w != null) {
+        w.forceAcquire(address);
+        renewed.setRequestWindow(w, address);
+      }
+      return renewed;
+    }
+
+    /**
+     * Marks the request as in-flight when it has been registered as pending
+     * request for the first time.
+     */
+    void register() {
+      if (state.compareAndSet(CLAIM_UNREGISTERED, CLAIM_PENDING)) {
+        inFlightRequests.incrementAndGet();
+      }
+    }
+
+    boolean isPending() {
+      return state.get() <= CLAIM_PENDING;
+    }
+
+    /**
+     * Claims the request.
+     * @param newState
+     *    the final state of the request.
+     * @return
+     *    <code>true</code> if the request has been claimed by this call,
+     *    <code>false</code> if it has been claimed already before.
+     */
+    boolean claim(int newState) {
+      int current;
+      while ((current = state.get()) <= CLAIM_PENDING) {
+        if (state.compareAndSet(current, newState)) {
+          if (current == CLAIM_PENDING) {
+            inFlightRequests.decrementAndGet();
+          }
+          releaseRequestWindow();
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * A <code>QueuedAsyncRequest</code> is an asynchronous request waiting for
+   * a free slot in the request window.
+   *
+   * @since 2.6.0
+   */
+  class QueuedAsyncRequest implements RequestWindow.QueuedRequest {
+
+    private final PendingRequest request;
+    private final RequestWindow window;
+
+    QueuedAsyncRequest(PendingRequest request, RequestWindow window) {
+      this.request = request;
+      this.window = window;
+    }
+
+    public Address getAddress() {
+      return request.target.getAddress();
+    }
+
+    public void run() {
+      request.claim.setRequestWindow(window, getAddress());
+      try {
+        sendMessage(request.pdu, request.target, request.transport, request);
+      }
+      catch (IOException iox) {
+        logger.error("Failed to send queued request to "+request.target+": "+
+                     iox.getMessage());
+        abort(iox);
+      }
+    }
+
+    public void abort(Exception reason) {
+      PDU pdu = request.pdu;
+      Object userObject = request.userObject;
+      ResponseListener l = request.listener;
+      if (request.claim.claim(CLAIM_CANCELLED) && (l != null)) {
+        l.onResponse(new ResponseEvent(Snmp.this, null, pdu, null, userObject,
+                                       reason));
+      }
+    }
+  }
+
   class AsyncPendingRequest extends PendingRequest {
     public AsyncPendingRequest(ResponseListener listener,
                                Object userObject,
@@ -1995,19 +2291,39 @@ public class Snmp implements Session, CommandResponder {
     }
   }
 
+  /**
+   * The <code>SyncResponseListener</code> hands the response of a synchronous
+   * request over to the sending thread. It uses a
+   * {@link java.util.concurrent.CountDownLatch} instead of an object monitor,
+   * so that a waiting virtual thread is unmounted from its carrier thread.
+   */
   static class SyncResponseListener implements ResponseListener {
 
-    private ResponseEvent response = null;
+    private volatile ResponseEvent response = null;
+    private final CountDownLatch received = new CountDownLatch(1);
 
-    public synchronized void onResponse(ResponseEvent event) {
+    public void onResponse(ResponseEvent event) {
       this.response = event;
-      this.notify();
+      received.countDown();
     }
 
     public ResponseEvent getResponse() {
       return response;
     }
 
+    /**
+     * Waits until a response has been received or the timeout elapsed.
+     * @param timeoutMillis
+     *    the maximum time to wait in milliseconds.
+     * @return
+     *    <code>true</code> if a response has been received.
+     * @throws InterruptedException
+     *    if the waiting thread has been interrupted.
+     */
+    boolean awaitResponse(long timeoutMillis) throws InterruptedException {
+      return received.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
   }
 
   /**
@@ -23,6 +23,7 @@ package org.snmp4j;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.smi.Address;
 import org.snmp4j.smi.OctetString;
+import org.snmp4j.util.ByteBufferPool;
 
 /**
  * The <code>TransportStateReference</code> class holds information defined by
@@ -43,6 +44,7 @@ public class TransportStateReference {
   private boolean sameSecurity;
   private Object sessionID;
   private CertifiedIdentity certifiedIdentity;
+  private ByteBufferPool.PooledBuffer pooledBuffer;
 
   public TransportStateReference(TransportMapping transport,
                                  Address address,
@@ -121,6 +123,31 @@ public class TransportStateReference {
     return certifiedIdentity;
   }
 
+  /**
+   * Gets the pooled buffer that holds the incoming message this state
+   * reference has been created for. A transport listener that processes
+   * the message after it returned from
+   * {@link org.snmp4j.transport.TransportListener#processMessage} has to
+   * retain the buffer and release it after processing.
+   * @return
+   *    the pooled buffer of the incoming message or <code>null</code> if the
+   *    message buffer is not pooled by the transport mapping.
+   * @since 2.6.0
+   */
+  public ByteBufferPool.PooledBuffer getPooledBuffer() {
+    return pooledBuffer;
+  }
+
+  /**
+   * Sets the pooled buffer that holds the incoming message.
+   * @param pooledBuffer
+   *    the pooled buffer of the incoming message.
+   * @since 2.6.0
+   */
+  public void setPooledBuffer(ByteBufferPool.PooledBuffer pooledBuffer) {
+    this.pooledBuffer = pooledBuffer;
+  }
+
   /**
    * Checks if transport, address, securityName and transportSecurityLevel
    * are valid (not null).
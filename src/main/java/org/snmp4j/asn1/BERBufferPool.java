@@ -0,0 +1,183 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BERBufferPool.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.asn1;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The <code>BERBufferPool</code> provides reusable heap buffers for the
+ * intermediate BER encodings of outgoing messages, for example the scoped
+ * PDU encoded by {@link org.snmp4j.mp.MPv3} before it is handed over to the
+ * security model. Buffers are cached per thread, so that acquiring and
+ * releasing a buffer does not require any synchronization.
+ * <p>
+ * A buffer acquired from the pool must be released by the same thread
+ * after its content is no longer needed. Buffers that are not released are
+ * simply left to the garbage collector.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class BERBufferPool {
+
+  /**
+   * The default maximum number of buffers cached per thread.
+   */
+  public static final int DEFAULT_BUFFERS_PER_THREAD = 4;
+  /**
+   * The default maximum capacity of a cached buffer.
+   */
+  public static final int DEFAULT_MAX_BUFFER_CAPACITY = 65536;
+
+  private static final int MIN_BUFFER_CAPACITY = 256;
+
+  private static BERBufferPool defaultPool = new BERBufferPool();
+
+  private final int buffersPerThread;
+  private final int maxBufferCapacity;
+  private final ThreadLocal<ByteBuffer[]> buffers = new ThreadLocal<ByteBuffer[]>();
+
+  /**
+   * Creates a buffer pool with {@link #DEFAULT_BUFFERS_PER_THREAD} buffers per
+   * thread of up to {@link #DEFAULT_MAX_BUFFER_CAPACITY} bytes each.
+   */
+  public BERBufferPool() {
+    this(DEFAULT_BUFFERS_PER_THREAD, DEFAULT_MAX_BUFFER_CAPACITY);
+  }
+
+  /**
+   * Creates a buffer pool.
+   * @param buffersPerThread
+   *    the maximum number of idle buffers cached per thread.
+   * @param maxBufferCapacity
+   *    the maximum capacity of a cached buffer. Larger buffers are allocated
+   *    on demand but not cached.
+   */
+  public BERBufferPool(int buffersPerThread, int maxBufferCapacity) {
+    this.buffersPerThread = buffersPerThread;
+    this.maxBufferCapacity = maxBufferCapacity;
+  }
+
+  /**
+   * Gets the buffer pool used by the message processing and security models
+   * of SNMP4J.
+   * @return
+   *    the default <code>BERBufferPool</code>.
+   */
+  public static BERBufferPool getDefaultPool() {
+    return defaultPool;
+  }
+
+  /**
+   * Sets the buffer pool used by the message processing and security models
+   * of SNMP4J.
+   * @param pool
+   *    a <code>BERBufferPool</code> instance.
+   */
+  public static void setDefaultPool(BERBufferPool pool) {
+    if (pool == null) {
+      throw new NullPointerException();
+    }
+    defaultPool = pool;
+  }
+
+  /**
+   * Acquires a heap buffer for the current thread.
+   * @param length
+   *    the number of bytes needed.
+   * @return
+   *    a buffer with position zero and its limit set to <code>length</code>.
+   *    The buffer's content is undefined.
+   */
+  public ByteBuffer acquire(int length) {
+    ByteBuffer[] cached = buffers.get();
+    if (cached != null) {
+      for (int i=0; i<cached.length; i++) {
+        ByteBuffer buffer = cached[i];
+        if ((buffer != null) && (buffer.capacity() >= length)) {
+          cached[i] = null;
+          buffer.clear();
+          buffer.limit(length);
+          return buffer;
+        }
+      }
+    }
+    int capacity = length;
+    if (length <= maxBufferCapacity) {
+      capacity = MIN_BUFFER_CAPACITY;
+      while (capacity < length) {
+        capacity <<= 1;
+      }
+      capacity = Math.min(capacity, maxBufferCapacity);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(capacity);
+    buffer.limit(length);
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool of the current thread. If the pool is full
+   * or the buffer is too large, the buffer is discarded.
+   * @param buffer
+   *    a buffer previously acquired from this pool.
+   */
+  public void release(ByteBuffer buffer) {
+    if ((buffer == null) || (buffer.capacity() > maxBufferCapacity) ||
+        (buffersPerThread <= 0)) {
+      return;
+    }
+    ByteBuffer[] cached = buffers.get();
+    if (cached == null) {
+      cached = new ByteBuffer[buffersPerThread];
+      buffers.set(cached);
+    }
+    int free = -1;
+    int smallest = -1;
+    for (int i=0; i<cached.length; i++) {
+      if (cached[i] == buffer) {
+        return;
+      }
+      else if (cached[i] == null) {
+        if (free < 0) {
+          free = i;
+        }
+      }
+      else if ((smallest < 0) ||
+               (cached[i].capacity() < cached[smallest].capacity())) {
+        smallest = i;
+      }
+    }
+    if (free >= 0) {
+      cached[free] = buffer;
+    }
+    else if (cached[smallest].capacity() < buffer.capacity()) {
+      cached[smallest] = buffer;
+    }
+  }
+
+  public int getBuffersPerThread() {
+    return buffersPerThread;
+  }
+
+  public int getMaxBufferCapacity() {
+    return maxBufferCapacity;
+  }
+}
@@ -0,0 +1,327 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BERReverseEncoder.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.asn1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * The <code>BERReverseEncoder</code> encodes BER structures in a single
+ * pass by writing them from the end of a byte array towards its start.
+ * Constructed types are encoded by first encoding their contents in reverse
+ * order and then prepending the header, whose length is given by the number
+ * of bytes written since the contents started. Thus, the lengths of
+ * constructed types, like PDUs and variable binding lists, never have to be
+ * computed in advance.
+ * <p>
+ * Primitive values are written directly for {@link Integer32},
+ * {@link OctetString}, and {@link OID}. Any other {@link BERSerializable} is
+ * encoded with its {@link BERSerializable#encodeBER(OutputStream)} method into
+ * a slot of {@link BERSerializable#getBERLength()} bytes. The resulting
+ * encoding is identical to the encoding produced by the
+ * <code>encodeBER</code> methods.
+ * <p>
+ * A <code>BERReverseEncoder</code> is not thread safe.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class BERReverseEncoder {
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 512;
+
+  private byte[] buffer;
+  private int position;
+  private final SlotOutputStream slot = new SlotOutputStream();
+
+  /**
+   * Creates an encoder with a default initial capacity.
+   */
+  public BERReverseEncoder() {
+    this(new byte[DEFAULT_INITIAL_CAPACITY]);
+  }
+
+  /**
+   * Creates an encoder that uses the supplied array as its initial buffer.
+   * If the encoding does not fit into the array, a larger array is allocated.
+   * @param buffer
+   *    the initial buffer (for example from a {@link BERBufferPool}).
+   */
+  public BERReverseEncoder(byte[] buffer) {
+    this.buffer = buffer;
+    this.position = buffer.length;
+  }
+
+  /**
+   * Discards the encoded content of this encoder.
+   */
+  public void reset() {
+    position = buffer.length;
+  }
+
+  /**
+   * Gets the number of bytes encoded so far.
+   * @return
+   *    the length of the encoding.
+   */
+  public int getLength() {
+    return buffer.length - position;
+  }
+
+  /**
+   * Gets the array backing this encoder. The encoding starts at
+   * {@link #getOffset()} and ends at the end of the array.
+   * @return
+   *    the current buffer.
+   */
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Gets the offset of the first encoded byte in {@link #getBuffer()}.
+   * @return
+   *    the start of the encoding.
+   */
+  public int getOffset() {
+    return position;
+  }
+
+  /**
+   * Returns a copy of the encoding.
+   * @return
+   *    a new array containing the encoded bytes.
+   */
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[getLength()];
+    System.arraycopy(buffer, position, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Wraps the encoding without copying it.
+   * @return
+   *    a buffer whose remaining bytes are the encoding.
+   */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buffer, position, getLength());
+  }
+
+  /**
+   * Writes the encoding to an output stream.
+   * @param os
+   *    an <code>OutputStream</code>.
+   * @throws IOException
+   *    if the output stream fails.
+   */
+  public void writeTo(OutputStream os) throws IOException {
+    os.write(buffer, position, getLength());
+  }
+
+  /**
+   * Prepends an ASN.1 header.
+   * @param type
+   *    the type of the ASN.1 object.
+   * @param length
+   *    the length of the object's contents, which is typically computed as
+   *    the difference of {@link #getLength()} before and after encoding the
+   *    contents.
+   */
+  public void encodeHeader(int type, int length) {
+    encodeLength(length);
+    ensureCapacity(1);
+    buffer[--position] = (byte)type;
+  }
+
+  /**
+   * Prepends a length in its shortest definite form as done by
+   * {@link BER#encodeLength(OutputStream, int)}.
+   * @param length
+   *    the length to encode.
+   */
+  public void encodeLength(int length) {
+    int lengthOfLength = BER.getBERLengthOfLength(length);
+    ensureCapacity(lengthOfLength);
+    if (lengthOfLength == 1) {
+      buffer[--position] = (byte)length;
+    }
+    else {
+      for (int i=1; i<lengthOfLength; i++) {
+        buffer[--position] = (byte)length;
+        length >>>= 8;
+      }
+      buffer[--position] = (byte)((lengthOfLength - 1) | BER.ASN_LONG_LEN);
+    }
+  }
+
+  /**
+   * Prepends a signed integer as done by
+   * {@link BER#encodeInteger(OutputStream, byte, int)}.
+   * @param type
+   *    the tag type of the integer.
+   * @param value
+   *    the integer value.
+   */
+  public void encodeInteger(byte type, int value) {
+    int intsize = 4;
+    int mask = 0x1FF << ((8 * 3) - 1);
+    int integer = value;
+    while ((((integer & mask) == 0) || ((integer & mask) == mask)) &&
+           (intsize > 1)) {
+      intsize--;
+      integer <<= 8;
+    }
+    ensureCapacity(intsize + 2);
+    for (int i=0; i<intsize; i++) {
+      buffer[--position] = (byte)value;
+      value >>= 8;
+    }
+    buffer[--position] = (byte)intsize;
+    buffer[--position] = type;
+  }
+
+  /**
+   * Prepends an octet string as done by
+   * {@link BER#encodeString(OutputStream, byte, byte[])}.
+   * @param type
+   *    the tag type of the string.
+   * @param string
+   *    the string value.
+   */
+  public void encodeString(byte type, byte[] string) {
+    ensureCapacity(string.length);
+    position -= string.length;
+    System.arraycopy(string, 0, buffer, position, string.length);
+    encodeHeader(type, string.length);
+  }
+
+  /**
+   * Prepends an object identifier as done by
+   * {@link BER#encodeOID(OutputStream, byte, int[])}.
+   * @param type
+   *    the tag type of the OID.
+   * @param oid
+   *    the sub-identifiers of the OID.
+   * @throws IOException
+   *    if the first sub-identifier is invalid.
+   */
+  public void encodeOID(byte type, int[] oid) throws IOException {
+    int start = getLength();
+    if (oid.length < 2) {
+      ensureCapacity(1);
+      buffer[--position] = 0;
+    }
+    else {
+      int firstSubID = oid[0];
+      if (firstSubID < 0 || firstSubID > 2) {
+        throw new IOException("Invalid first sub-identifier (must be 0, 1, or 2)");
+      }
+      for (int i=oid.length-1; i>=2; i--) {
+        encodeSubID(oid[i]);
+      }
+      encodeSubID(oid[1] + (firstSubID * 40));
+    }
+    encodeHeader(type, getLength() - start);
+  }
+
+  private void encodeSubID(int subID) {
+    long subid = (subID & 0xFFFFFFFFL);
+    ensureCapacity(5);
+    buffer[--position] = (byte)(subid & 0x7F);
+    subid >>>= 7;
+    while (subid != 0) {
+      buffer[--position] = (byte)((subid & 0x7F) | BER.ASN_BIT8);
+      subid >>>= 7;
+    }
+  }
+
+  /**
+   * Prepends the BER encoding of the supplied object.
+   * @param serializable
+   *    a primitive or constructed BER serializable object.
+   * @throws IOException
+   *    if the object cannot be encoded or if it does not encode to
+   *    {@link BERSerializable#getBERLength()} bytes.
+   */
+  public void encode(BERSerializable serializable) throws IOException {
+    Class<?> c = serializable.getClass();
+    if (c == Integer32.class) {
+      encodeInteger(BER.INTEGER, ((Integer32)serializable).getValue());
+    }
+    else if (c == OctetString.class) {
+      encodeString(BER.OCTETSTRING, ((OctetString)serializable).getValue());
+    }
+    else if (c == OID.class) {
+      encodeOID(BER.OID, ((OID)serializable).getValue());
+    }
+    else {
+      int length = serializable.getBERLength();
+      ensureCapacity(length);
+      position -= length;
+      slot.position = position;
+      serializable.encodeBER(slot);
+      if (slot.position != position + length) {
+        throw new IOException("Encoded length "+(slot.position - position)+
+                              " of "+serializable.getClass().getName()+
+                              " differs from its BER length "+length);
+      }
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (position < length) {
+      int used = getLength();
+      int capacity = Math.max(buffer.length * 2, used + length);
+      byte[] newBuffer = new byte[capacity];
+      System.arraycopy(buffer, position, newBuffer, capacity - used, used);
+      buffer = newBuffer;
+      position = capacity - used;
+    }
+  }
+
+  /**
+   * Writes forward into a slot of the encoder's buffer.
+   */
+  private class SlotOutputStream extends OutputStream {
+
+    private int position;
+
+    public void write(int b) throws IOException {
+      if (position >= buffer.length) {
+        throw new IOException("Encoding exceeds its BER length");
+      }
+      buffer[position++] = (byte)b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (position + len > buffer.length) {
+        throw new IOException("Encoding exceeds its BER length");
+      }
+      System.arraycopy(b, off, buffer, position, len);
+      position += len;
+    }
+  }
+}
@@ -34,6 +34,8 @@ import org.snmp4j.asn1.BER.MutableByte;
 import org.snmp4j.security.SecurityModels;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.asn1.BERBufferPool;
+import org.snmp4j.asn1.BERReverseEncoder;
 import java.nio.ByteBuffer;
 import org.snmp4j.util.PDUFactory;
 
@@ -47,6 +49,8 @@ public class MPv1 implements MessageProcessingModel {
   public static final int ID = MessageProcessingModel.MPv1;
   private static final LogAdapter logger = LogFactory.getLogger(MPv1.class);
 
+  private boolean singlePassEncoding;
+
   protected PDUFactory incomingPDUFactory = new PDUFactory() {
     public PDU createPDU(Target target) {
       return new PDUv1();
@@ -81,6 +85,31 @@ public class MPv1 implements MessageProcessingModel {
     return ID;
   }
 
+  /**
+   * Checks whether outgoing messages are encoded in a single pass with a
+   * {@link BERReverseEncoder}.
+   * @return
+   *    <code>true</code> if single pass encoding is enabled (default is
+   *    <code>false</code>).
+   * @since 2.6.0
+   */
+  public boolean isSinglePassEncoding() {
+    return singlePassEncoding;
+  }
+
+  /**
+   * Enables or disables single pass encoding of outgoing messages. The single
+   * pass encoder writes the message from its end to its start and therefore
+   * does not need to compute the lengths of the PDU and its variable bindings
+   * in advance. The encoded messages are identical for both encoders.
+   * @param singlePassEncoding
+   *    <code>true</code> to encode with a {@link BERReverseEncoder}.
+   * @since 2.6.0
+   */
+  public void setSinglePassEncoding(boolean singlePassEncoding) {
+    this.singlePassEncoding = singlePassEncoding;
+  }
+
   public int prepareOutgoingMessage(Address transportAddress,
                                     int maxMessageSize,
                                     int messageProcessingModel,
@@ -111,6 +140,23 @@ public class MPv1 implements MessageProcessingModel {
     }
 
 
+    if (singlePassEncoding) {
+      BERBufferPool bufferPool = BERBufferPool.getDefaultPool();
+      ByteBuffer buffer = bufferPool.acquire(Math.max(maxMessageSize, 0));
+      try {
+        BERReverseEncoder encoder = new BERReverseEncoder(buffer.array());
+        pdu.encodeBERReverse(encoder);
+        encoder.encodeString(BER.OCTETSTRING, securityName);
+        encoder.encodeInteger(BER.INTEGER, messageProcessingModel);
+        encoder.encodeHeader(BER.SEQUENCE, encoder.getLength());
+        outgoingMessage.setFilledBuffer(ByteBuffer.wrap(encoder.toByteArray()));
+      }
+      finally {
+        bufferPool.release(buffer);
+      }
+      return SnmpConstants.SNMP_MP_OK;
+    }
+
     OctetString community = new OctetString(securityName);
     Integer32 version = new Integer32(messageProcessingModel);
     // compute total length
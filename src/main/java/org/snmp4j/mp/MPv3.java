@@ -21,8 +21,10 @@ package org.snmp4j.mp;
 
 import org.snmp4j.*;
 import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERBufferPool;
 import org.snmp4j.asn1.BERInputStream;
 import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
 import org.snmp4j.asn1.BERSerializable;
 import org.snmp4j.event.CounterEvent;
 import org.snmp4j.event.SnmpEngineEvent;
@@ -39,6 +41,10 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The {@code MPv3} is the message processing model for SNMPv3.
@@ -63,6 +69,11 @@ public class MPv3
       OctetString.fromHexString("80:00:00:00:06");
 
   public static final int MAXLEN_ENGINE_ID = 32;
+  /**
+   * The default lifetime in milliseconds of message cache entries.
+   * @since 2.6.0
+   */
+  public static final long DEFAULT_CACHE_ENTRY_LIFETIME = 60000;
   public static final int MINLEN_ENGINE_ID = 5;
 
   private static final int MAX_HEADER_PAYLOAD_LENGTH =
@@ -83,6 +94,7 @@ public class MPv3
   private Cache cache;
   private Map<Address, OctetString> engineIDs;
   private int maxEngineIdCacheSize = SNMP4JSettings.getMaxEngineIdCacheSize();
+  private boolean singlePassEncoding;
   private byte[] localEngineID;
 
   private int currentMsgID = new Random().nextInt(MAX_MESSAGE_ID);
@@ -247,6 +259,31 @@ public class MPv3
     this.maxEngineIdCacheSize = maxEngineIdCacheSize;
   }
 
+  /**
+   * Checks whether outgoing scoped PDUs are encoded in a single pass with a
+   * {@link BERReverseEncoder}.
+   * @return
+   *    <code>true</code> if single pass encoding is enabled (default is
+   *    <code>false</code>).
+   * @since 2.6.0
+   */
+  public boolean isSinglePassEncoding() {
+    return singlePassEncoding;
+  }
+
+  /**
+   * Enables or disables single pass encoding of outgoing scoped PDUs. The single
+   * pass encoder writes the message from its end to its start and therefore
+   * does not need to compute the lengths of the PDU and its variable bindings
+   * in advance. The encoded messages are identical for both encoders.
+   * @param singlePassEncoding
+   *    <code>true</code> to encode with a {@link BERReverseEncoder}.
+   * @since 2.6.0
+   */
+  public void setSinglePassEncoding(boolean singlePassEncoding) {
+    this.singlePassEncoding = singlePassEncoding;
+  }
+
   /**
    * Creates a local engine ID based on the local IP address and additional four random bytes.
    * WARNING: Do not use this engine ID generator for a command responder (agent) if you DO NOT
@@ -545,63 +582,132 @@ public class MPv3
 
   /**
    * The {@code Cache} stores state reference information for the MPv3.
+   * Entries are indexed by their {@link PduHandle} and by each of their
+   * message IDs, so that a response can be matched to its request in
+   * constant time. Each entry has a lifetime after which it is removed from
+   * the cache, even if it has not been popped or deleted explicitly.
+   * Entries are added and removed without a cache wide lock. The lifetimes
+   * are tracked by a timing wheel of lock-free queues with a resolution of
+   * 100 milliseconds, thus adding an entry or changing its lifetime costs a
+   * constant time queue insertion. Removing an entry or changing its
+   * lifetime only invalidates its node in the wheel. The node, which then
+   * references the removed entry's handle but no longer its state, is
+   * dropped when its time slot is processed, so the wheel holds about one
+   * node per entry added within the last lifetime.
    * @author Frank Fock
-   * @version 1.0
+   * @version 2.6.0
    */
   protected static class Cache {
 
-    private Map<PduHandle, StateReference> entries = new WeakHashMap<PduHandle, StateReference>(25);
+    private static final long EXPIRY_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int EXPIRY_WHEEL_SIZE = 1024;
+
+    private final Map<PduHandle, ExpiringEntry> entries =
+        new ConcurrentHashMap<PduHandle, ExpiringEntry>(25);
+    private final Map<Integer, ExpiringEntry> entriesByMsgID =
+        new ConcurrentHashMap<Integer, ExpiringEntry>(25);
+    private final List<Queue<Expiry>> expiryWheel =
+        new ArrayList<Queue<Expiry>>(EXPIRY_WHEEL_SIZE);
+    private final long expiryOrigin = System.nanoTime();
+    private final AtomicLong nextExpiryTick = new AtomicLong();
+    private volatile long entryLifetime = DEFAULT_CACHE_ENTRY_LIFETIME;
+
+    public Cache() {
+      for (int i=0; i<EXPIRY_WHEEL_SIZE; i++) {
+        expiryWheel.add(new ConcurrentLinkedQueue<Expiry>());
+      }
+    }
+
+    /**
+     * Adds a <code>StateReference</code> to the cache with the cache's
+     * default entry lifetime. If the new entry equals an existing entry
+     * except of the message ID then the message IDs of the existing entry
+     * will be added to the new entry.
+     * @param entry
+     *    the state reference to add.
+     * @return
+     *    {@link SnmpConstants#SNMP_MP_DOUBLED_MESSAGE} if the entry already
+     *    exists and {@link SnmpConstants#SNMP_MP_OK} on success.
+     */
+    public int addEntry(StateReference entry) {
+      return addEntry(entry, entryLifetime);
+    }
 
     /**
-     * Adds a <code>StateReference</code> to the cache.
-     * The <code>PduHandle</code> of the supplied entry will be set to
-     * <code>null</code> when the new entry is already part of the cache, because the
-     * cache uses a <code>WeakHashMap</code> internally which uses the
-     * <code>PduHandle</code> as key. If the new entry equals an existing entry
-     * except of the message ID then the new message ID will be added to the
-     * existing entry.
+     * Adds a <code>StateReference</code> to the cache. An existing entry
+     * with the same {@link PduHandle} is replaced atomically, thus a
+     * response to one of the message IDs of the existing entry is matched
+     * either to the existing or to the new entry.
      * @param entry
      *    the state reference to add.
+     * @param lifetimeMillis
+     *    the number of milliseconds after which the entry is removed from
+     *    the cache if it has not been popped or deleted before.
      * @return
      *    {@link SnmpConstants#SNMP_MP_DOUBLED_MESSAGE} if the entry already
      *    exists and {@link SnmpConstants#SNMP_MP_OK} on success.
+     * @since 2.6.0
      */
-    public synchronized int addEntry(StateReference entry) {
+    public int addEntry(StateReference entry, long lifetimeMillis) {
       if (logger.isDebugEnabled()) {
         logger.debug("Adding cache entry: "+entry);
       }
-      StateReference existing =
-              entries.get(entry.getPduHandle());
-      if (existing != null) {
-        // reassign handle for comparison:
-        existing.setPduHandle(entry.getPduHandle());
-        if (existing.equals(entry)) {
-          if (logger.isDebugEnabled()) {
-            logger.debug("Doubled message: "+entry);
+      removeExpiredEntries();
+      PduHandle key = entry.getPduHandle();
+      if (key == null) {
+        logger.warn("Cache entry without PDU handle cannot be added: "+entry);
+        return SnmpConstants.SNMP_MP_ERROR;
+      }
+      ExpiringEntry expiringEntry = new ExpiringEntry(key, entry);
+      boolean merged = false;
+      while (true) {
+        ExpiringEntry existingEntry = entries.get(key);
+        StateReference existing = (existingEntry == null) ? null : existingEntry.entry;
+        if (existing != null) {
+          if (existing.equals(entry)) {
+            if (logger.isDebugEnabled()) {
+              logger.debug("Doubled message: "+entry);
+            }
+            removeMessageIDs(expiringEntry, entry);
+            return SnmpConstants.SNMP_MP_DOUBLED_MESSAGE;
           }
-          // clear it again to remove strong self-reference
-          existing.setPduHandle(null);
-          return SnmpConstants.SNMP_MP_DOUBLED_MESSAGE;
-        }
-        else if (existing.equalsExceptMsgID(entry)) {
-          if (logger.isDebugEnabled()) {
-            logger.debug("Adding previous message IDs "+existing.getMessageIDs()+" to new entry "+entry);
+          else if (existing.equalsExceptMsgID(entry)) {
+            if (!merged) {
+              if (logger.isDebugEnabled()) {
+                logger.debug("Adding previous message IDs " + existing.getMessageIDs() +
+                             " to new entry " + entry);
+              }
+              entry.addMessageIDs(existing.getMessageIDs());
+              merged = true;
+            }
+          }
+          else if (logger.isDebugEnabled()) {
+            logger.debug("New entry does not match existing, although request ID is the same "+entry+" != "+existing);
           }
-          entry.addMessageIDs(existing.getMessageIDs());
         }
-        else if (logger.isDebugEnabled()) {
-          logger.debug("New entry does not match existing, although request ID is the same "+entry+" != "+existing);
+        // the message IDs are mapped to the new entry before it replaces the
+        // existing one, popEntry falls back to the entry of the PDU handle
+        // until then
+        List<MessageID> msgIDs = entry.getMessageIDs();
+        for (MessageID msgID : msgIDs) {
+          entriesByMsgID.put(msgID.getID(), expiringEntry);
+        }
+        boolean published = (existingEntry == null) ?
+            (entries.putIfAbsent(key, expiringEntry) == null) :
+            entries.replace(key, existingEntry, expiringEntry);
+        if (published) {
+          expiringEntry.setLifetime(this, lifetimeMillis);
+          if (existing != null) {
+            existingEntry.entry = null;
+            for (MessageID msgID : existing.getMessageIDs()) {
+              if (!msgIDs.contains(msgID)) {
+                entriesByMsgID.remove(msgID.getID(), existingEntry);
+              }
+            }
+          }
+          return SnmpConstants.SNMP_MP_OK;
         }
-        // clear it again to remove strong self-reference
-        existing.setPduHandle(null);
       }
-      // add it
-      PduHandle key = entry.getPduHandle();
-      // because we are using a weak hash map for the cache, we need to null out
-      // our key from the entry.
-      entry.setPduHandle(null);
-      entries.put(key, entry);
-      return SnmpConstants.SNMP_MP_OK;
     }
 
     /**
@@ -612,9 +718,9 @@ public class MPv3
      *    {@code true} if an entry has been deleted, {@code false}
      *    otherwise.
      */
-    public synchronized boolean deleteEntry(PduHandle pduHandle) {
-      StateReference e = entries.remove(pduHandle);
-      return (e != null);
+    public boolean deleteEntry(PduHandle pduHandle) {
+      ExpiringEntry e = entries.remove(pduHandle);
+      return (e != null) && (remove(e) != null);
     }
 
     /**
@@ -626,21 +732,216 @@ public class MPv3
      *    {@code null} if such an entry cannot be found. If a cache entry
      *   is returned, the same is removed from the cache.
      */
-    public synchronized StateReference popEntry(int msgID) {
-      for (Iterator<PduHandle> it = entries.keySet().iterator(); it.hasNext(); ) {
-        PduHandle key = it.next();
-        StateReference e = entries.get(key);
-        if ((e != null) && (e.isMatchingMessageID(msgID))) {
-          it.remove();
-          e.setPduHandle(key);
-          if (logger.isDebugEnabled()) {
-            logger.debug("Removed cache entry: "+e);
+    public StateReference popEntry(int msgID) {
+      ExpiringEntry e;
+      while ((e = entriesByMsgID.get(msgID)) != null) {
+        ExpiringEntry current = entries.get(e.pduHandle);
+        if (current != e) {
+          // the entry is not published yet or has been replaced or removed
+          // concurrently, then the current entry of the PDU handle matches
+          // if it has the message ID too
+          StateReference currentRef = (current == null) ? null : current.entry;
+          if ((currentRef != null) && currentRef.isMatchingMessageID(msgID)) {
+            e = current;
+          }
+          else if (e.entry == null) {
+            entriesByMsgID.remove(msgID, e);
+            continue;
+          }
+          else {
+            return null;
+          }
+        }
+        if (entries.remove(e.pduHandle, e)) {
+          StateReference entry = remove(e);
+          if ((entry != null) && (entry.isMatchingMessageID(msgID))) {
+            if (logger.isDebugEnabled()) {
+              logger.debug("Removed cache entry: "+entry);
+            }
+            return entry;
           }
-          return e;
+          return null;
         }
       }
       return null;
     }
+
+    /**
+     * Sets the lifetime of the cache entry with the supplied
+     * {@link PduHandle}.
+     * @param pduHandle
+     *    a pduHandle.
+     * @param lifetimeMillis
+     *    the number of milliseconds from now after which the entry will be
+     *    removed from the cache.
+     * @return
+     *    {@code true} if the entry has been found, {@code false} otherwise.
+     * @since 2.6.0
+     */
+    public boolean setEntryLifetime(PduHandle pduHandle, long lifetimeMillis) {
+      ExpiringEntry e = entries.get(pduHandle);
+      if ((e == null) || (e.entry == null)) {
+        return false;
+      }
+      e.setLifetime(this, lifetimeMillis);
+      return true;
+    }
+
+    /**
+     * Removes all entries whose lifetime has elapsed.
+     * @return
+     *    the number of removed entries.
+     * @since 2.6.0
+     */
+    public int removeExpiredEntries() {
+      long now = System.nanoTime();
+      long currentTick = getExpiryTick(now);
+      long first = nextExpiryTick.get();
+      // the caller advancing the wheel processes the elapsed time slots
+      if ((first >= currentTick) || !nextExpiryTick.compareAndSet(first, currentTick)) {
+        return 0;
+      }
+      int count = 0;
+      for (long tick = Math.max(first, currentTick - EXPIRY_WHEEL_SIZE); tick < currentTick; tick++) {
+        count += removeExpiredEntries(getExpirySlot(tick), now);
+      }
+      return count;
+    }
+
+    private int removeExpiredEntries(Queue<Expiry> slot, long now) {
+      int count = 0;
+      List<Expiry> laterRounds = null;
+      Expiry expiry;
+      while ((expiry = slot.poll()) != null) {
+        ExpiringEntry e = expiry.owner;
+        // nodes of removed entries and of changed lifetimes are stale
+        if ((e.expiry != expiry) || (e.entry == null)) {
+          continue;
+        }
+        if (expiry.deadlineNanos - now > 0) {
+          if (laterRounds == null) {
+            laterRounds = new ArrayList<Expiry>();
+          }
+          laterRounds.add(expiry);
+        }
+        else if (entries.remove(e.pduHandle, e)) {
+          StateReference entry = remove(e);
+          if (entry != null) {
+            count++;
+            if (logger.isDebugEnabled()) {
+              logger.debug("Cache entry expired: "+entry);
+            }
+          }
+        }
+      }
+      if (laterRounds != null) {
+        slot.addAll(laterRounds);
+      }
+      return count;
+    }
+
+    /**
+     * Adds an expiry node to the time slot of its deadline. A node whose
+     * time slot has been processed already is added to the next slot.
+     * @param expiry
+     *    an expiry node.
+     */
+    void schedule(Expiry expiry) {
+      long tick = Math.max(getExpiryTick(expiry.deadlineNanos), nextExpiryTick.get());
+      getExpirySlot(tick).offer(expiry);
+    }
+
+    private long getExpiryTick(long nanos) {
+      return (nanos - expiryOrigin) / EXPIRY_TICK_NANOS;
+    }
+
+    private Queue<Expiry> getExpirySlot(long tick) {
+      return expiryWheel.get((int)(tick % EXPIRY_WHEEL_SIZE));
+    }
+
+    /**
+     * Gets the number of entries in the cache.
+     * @return
+     *    the cache size.
+     * @since 2.6.0
+     */
+    public int size() {
+      return entries.size();
+    }
+
+    /**
+     * Gets the default lifetime of cache entries.
+     * @return
+     *    the lifetime in milliseconds.
+     * @since 2.6.0
+     */
+    public long getEntryLifetime() {
+      return entryLifetime;
+    }
+
+    /**
+     * Sets the default lifetime of cache entries added by
+     * {@link #addEntry(StateReference)}.
+     * @param entryLifetime
+     *    the lifetime in milliseconds.
+     * @since 2.6.0
+     */
+    public void setEntryLifetime(long entryLifetime) {
+      this.entryLifetime = entryLifetime;
+    }
+
+    private StateReference remove(ExpiringEntry e) {
+      StateReference entry = e.entry;
+      e.entry = null;
+      if (entry != null) {
+        removeMessageIDs(e, entry);
+      }
+      return entry;
+    }
+
+    private void removeMessageIDs(ExpiringEntry e, StateReference entry) {
+      for (MessageID msgID : entry.getMessageIDs()) {
+        entriesByMsgID.remove(msgID.getID(), e);
+      }
+    }
+  }
+
+  /**
+   * The {@code ExpiringEntry} associates a cached {@link StateReference}
+   * with its current node in the expiry wheel.
+   */
+  private static class ExpiringEntry {
+
+    private final PduHandle pduHandle;
+    private volatile StateReference entry;
+    private volatile Expiry expiry;
+
+    ExpiringEntry(PduHandle pduHandle, StateReference entry) {
+      this.pduHandle = pduHandle;
+      this.entry = entry;
+    }
+
+    void setLifetime(Cache cache, long lifetimeMillis) {
+      Expiry next = new Expiry(this, lifetimeMillis);
+      expiry = next;
+      cache.schedule(next);
+    }
+  }
+
+  /**
+   * The {@code Expiry} is the immutable expiry wheel node of an
+   * {@link ExpiringEntry}. It is stale if the entry has been removed or
+   * references another node.
+   */
+  private static class Expiry {
+
+    private final ExpiringEntry owner;
+    private final long deadlineNanos;
+
+    Expiry(ExpiringEntry owner, long lifetimeMillis) {
+      this.owner = owner;
+      this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lifetimeMillis);
+    }
   }
 
   /**
@@ -774,6 +1075,48 @@ public class MPv3
     cache.deleteEntry(pduHandle);
   }
 
+  /**
+   * Gets the default lifetime of message cache entries. Cache entries are
+   * normally removed when the response to a request has been processed or
+   * when the request is released by {@link #releaseStateReference(PduHandle)}.
+   * The lifetime ensures that entries of requests that are never answered or
+   * released do not remain in the cache.
+   * @return
+   *    the lifetime in milliseconds (default is
+   *    {@link #DEFAULT_CACHE_ENTRY_LIFETIME}).
+   * @since 2.6.0
+   */
+  public long getCacheEntryLifetime() {
+    return cache.getEntryLifetime();
+  }
+
+  /**
+   * Sets the default lifetime of message cache entries.
+   * @param cacheEntryLifetime
+   *    the lifetime in milliseconds.
+   * @since 2.6.0
+   */
+  public void setCacheEntryLifetime(long cacheEntryLifetime) {
+    cache.setEntryLifetime(cacheEntryLifetime);
+  }
+
+  /**
+   * Sets the lifetime of the message cache entry of an outstanding request,
+   * for example to the total timeout of the request if that exceeds the
+   * default lifetime.
+   * @param pduHandle
+   *    the <code>PduHandle</code> of the request.
+   * @param lifetimeMillis
+   *    the number of milliseconds from now after which the entry is removed.
+   * @return
+   *    {@code true} if a cache entry for the request exists, {@code false}
+   *    otherwise.
+   * @since 2.6.0
+   */
+  public boolean setCacheEntryLifetime(PduHandle pduHandle, long lifetimeMillis) {
+    return cache.setEntryLifetime(pduHandle, lifetimeMillis);
+  }
+
   public int prepareOutgoingMessage(Address transportAddress,
                                     int maxMessageSize,
                                     int messageProcessingModel,
@@ -861,11 +1204,10 @@ public class MPv3
     }
 
     // get length of scoped PDU
-    int scopedPDULength = scopedPDU.getBERLength();
-    BEROutputStream scopedPdu =
-        new BEROutputStream(ByteBuffer.allocate(scopedPDULength));
-
-    scopedPDU.encodeBER(scopedPdu);
+    BERBufferPool bufferPool = BERBufferPool.getDefaultPool();
+    ByteBuffer scopedPduBuffer = bufferPool.acquire(singlePassEncoding ?
+        Math.max(maxMessageSize, 0) : scopedPDU.getBERLength());
+    ByteBuffer scopedPduData = encodeScopedPDU(scopedPDU, scopedPduBuffer);
 
     HeaderData headerData = new HeaderData();
     int flags = 0;
@@ -899,26 +1241,32 @@ public class MPv3
         new BEROutputStream(globalDataBuffer);
     headerData.encodeBER(globalDataOutputStream);
 
-    BERInputStream scopedPDUInput = new BERInputStream(scopedPdu.rewind());
+    BERInputStream scopedPDUInput = new BERInputStream(scopedPduData);
 
     // output data
     SecurityParameters securityParameters =
         secModel.newSecurityParametersInstance();
 
-    int status =
-        secModel.generateRequestMessage(messageProcessingModel,
-                                        globalDataBuffer.array(),
-                                        maxMessageSize,
-                                        securityModel,
-                                        secEngineID,
-                                        securityName,
-                                        securityLevel,
-                                        scopedPDUInput,
-                                        securityParameters,
-                                        outgoingMessage,
-                                        tmStateReference);
+    int status;
+    try {
+      status =
+          secModel.generateRequestMessage(messageProcessingModel,
+                                          globalDataBuffer.array(),
+                                          maxMessageSize,
+                                          securityModel,
+                                          secEngineID,
+                                          securityName,
+                                          securityLevel,
+                                          scopedPDUInput,
+                                          securityParameters,
+                                          outgoingMessage,
+                                          tmStateReference);
+    }
+    finally {
+      bufferPool.release(scopedPduBuffer);
+    }
     if (status == SnmpConstants.SNMPv3_USM_OK) {
-      if (expectResponse) {
+      if (expectResponse && scopedPDU.isConfirmedPdu()) {
         cache.addEntry(new StateReference(msgID,
                                           flags,
                                           maxMessageSize,
@@ -937,6 +1285,33 @@ public class MPv3
     return status;
   }
 
+  /**
+   * Encodes a scoped PDU into the supplied (pooled) buffer.
+   * @param scopedPDU
+   *    the scoped PDU to encode.
+   * @param buffer
+   *    an array backed buffer whose capacity is at least the BER length of
+   *    the scoped PDU if single pass encoding is disabled.
+   * @return
+   *    a buffer whose remaining bytes are the encoded scoped PDU. It may be
+   *    backed by a different array than <code>buffer</code> if the
+   *    single pass encoder needed more space.
+   * @throws IOException
+   *    if the PDU cannot be encoded.
+   */
+  private ByteBuffer encodeScopedPDU(PDU scopedPDU, ByteBuffer buffer)
+      throws IOException
+  {
+    if (singlePassEncoding) {
+      BERReverseEncoder encoder = new BERReverseEncoder(buffer.array());
+      scopedPDU.encodeBERReverse(encoder);
+      return encoder.toByteBuffer();
+    }
+    BEROutputStream os = new BEROutputStream(buffer);
+    scopedPDU.encodeBER(os);
+    return os.rewind();
+  }
+
   public int prepareResponseMessage(int messageProcessingModel,
                                     int maxMessageSize,
                                     int securityModel,
@@ -968,7 +1343,9 @@ public class MPv3
     // get length of scoped PDU
     // get length of scoped PDU
     int scopedPDULength = pdu.getBERLength();
-    BEROutputStream scopedPDU;
+    BERBufferPool bufferPool = BERBufferPool.getDefaultPool();
+    ByteBuffer scopedPduBuffer;
+    ByteBuffer scopedPduData;
     // check length
     if (scopedPDULength > maxSizeResponseScopedPDU) {
       PDU tooBigPDU = new ScopedPDU((ScopedPDU)pdu);
@@ -977,12 +1354,12 @@ public class MPv3
       tooBigPDU.setErrorStatus(SnmpConstants.SNMP_ERROR_TOO_BIG);
       tooBigPDU.setErrorIndex(0);
       scopedPDULength = tooBigPDU.getBERLength();
-      scopedPDU = new BEROutputStream(ByteBuffer.allocate(scopedPDULength));
-      tooBigPDU.encodeBER(scopedPDU);
+      scopedPduBuffer = bufferPool.acquire(scopedPDULength);
+      scopedPduData = encodeScopedPDU(tooBigPDU, scopedPduBuffer);
     }
     else {
-      scopedPDU = new BEROutputStream(ByteBuffer.allocate(scopedPDULength));
-      pdu.encodeBER(scopedPDU);
+      scopedPduBuffer = bufferPool.acquire(scopedPDULength);
+      scopedPduData = encodeScopedPDU(pdu, scopedPduBuffer);
     }
 
     HeaderData headerData = new HeaderData();
@@ -1022,7 +1399,7 @@ public class MPv3
         securityEngineID = new OctetString(cacheEntry.getSecurityEngineID());
     }
 
-    BERInputStream scopedPDUInput = new BERInputStream(scopedPDU.rewind());
+    BERInputStream scopedPDUInput = new BERInputStream(scopedPduData);
 
     SecurityModel secModel =
         securityModels.getSecurityModel(new Integer32(securityModel));
@@ -1030,17 +1407,22 @@ public class MPv3
     SecurityParameters securityParameters =
         secModel.newSecurityParametersInstance();
 
-    return secModel.generateResponseMessage(getID(),
-        globalDataBuffer.array(),
-        maxMessageSize,
-        securityModel,
-        securityEngineID.getValue(),
-        securityName,
-        securityLevel,
-        scopedPDUInput,
-        cacheEntry.getSecurityStateReference(),
-        securityParameters,
-        outgoingMessage);
+    try {
+      return secModel.generateResponseMessage(getID(),
+          globalDataBuffer.array(),
+          maxMessageSize,
+          securityModel,
+          securityEngineID.getValue(),
+          securityName,
+          securityLevel,
+          scopedPDUInput,
+          cacheEntry.getSecurityStateReference(),
+          securityParameters,
+          outgoingMessage);
+    }
+    finally {
+      bufferPool.release(scopedPduBuffer);
+    }
   }
 
   /**
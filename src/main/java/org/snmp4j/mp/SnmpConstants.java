@@ -125,6 +125,7 @@ public final class SnmpConstants {
   public static final int SNMP_MD_UNSUPPORTED_MP_MODEL      = 1702;
   public static final int SNMP_MD_UNSUPPORTED_ADDRESS_CLASS = 1703;
   public static final int SNMP_MD_UNSUPPORTED_SNMP_VERSION  = 1704;
+  public static final int SNMP_MD_REQUEST_WINDOW_EXHAUSTED  = 1705;
 
 
   // USM security protocol OIDs
@@ -414,7 +415,8 @@ public final class SnmpConstants {
       { ""+SNMP_MD_ERROR, "Message Dispatcher error" },
       { ""+SNMP_MD_UNSUPPORTED_MP_MODEL, "Unsupported message processing model" },
       { ""+SNMP_MD_UNSUPPORTED_ADDRESS_CLASS, "Unsupported address class" },
-      { ""+SNMP_MD_UNSUPPORTED_SNMP_VERSION, "Unsupported address class" }
+      { ""+SNMP_MD_UNSUPPORTED_SNMP_VERSION, "Unsupported address class" },
+      { ""+SNMP_MD_REQUEST_WINDOW_EXHAUSTED, "Request window exhausted" }
   };
 
   public static String[][] MP_ERROR_MESSAGES = {
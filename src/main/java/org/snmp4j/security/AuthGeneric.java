@@ -19,13 +19,33 @@
   _##########################################################################*/
 package org.snmp4j.security;
 
+import java.security.DigestException;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.snmp4j.log.*;
 import org.snmp4j.smi.OctetString;
 
 /**
  * The abstract class AuthGeneric implements common operations for
  * SNMP authentication protocols, such as MD5 and SHA.
+ * <p>
+ * The HMAC computation hashes the key XORed with the inner and outer pad
+ * before the message. Since the pads only depend on the localized key, they
+ * are computed once per key and cached together with message digests that
+ * have already hashed them. Each thread reuses its own message digest and
+ * scratch buffers, so that authentication and verification do not allocate
+ * memory per message. With {@link #setCloneHmacDigests(boolean)} the primed
+ * digests are cloned per message instead, which saves hashing the pads at
+ * the cost of allocating the clones.
  *
  * @author Frank Fock
  * @author Jochen Katz
@@ -39,11 +59,33 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
   public static int HMAC_BLOCK_SIZE = 64;
   private static int DEFAULT_AUTHENTICATION_CODE_LENGTH = 12;
 
+  /**
+   * The default maximum number of localized keys for which the primed HMAC
+   * digest state is cached.
+   * @since 2.6.0
+   */
+  public static final int DEFAULT_MAX_HMAC_STATES = 1000;
+
+  private static final Comparator<StateUse> LAST_USE_ORDER = new Comparator<StateUse>() {
+    @Override
+    public int compare(StateUse o1, StateUse o2) {
+      long diff = o1.lastUse - o2.lastUse;
+      return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+    }
+  };
+
   protected int hmacBlockSize;
   private int authenticationCodeLength;
   private final int digestLength;
   private final String protoName;
 
+  private transient ConcurrentMap<HmacKey, HmacState> hmacStates;
+  private transient ThreadLocal<HmacContext> hmacContexts;
+  private transient volatile int hmacGeneration;
+  private int maxHmacStates = DEFAULT_MAX_HMAC_STATES;
+  private final AtomicBoolean evictingHmacStates = new AtomicBoolean();
+  private volatile boolean cloneHmacDigests;
+
   /**
    * Creates an authentication protocol with the specified name (ID) and digest length and using the
    * {@link #DEFAULT_AUTHENTICATION_CODE_LENGTH} default code length.
@@ -150,22 +192,23 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
                               int messageOffset,
                               int messageLength,
                               ByteArrayWindow digest) {
-    MessageDigest md = getDigestObject();
-
-    byte[] authKey = authenticationKey;
-
-    byte[] newDigest;
-    byte[] k_ipad = new byte[hmacBlockSize]; /* inner padding - key XORd with ipad */
-    byte[] k_opad = new byte[hmacBlockSize]; /* outer padding - key XORd with opad */
-
+    HmacContext context = getHmacContext();
     // clear the bytes for the digest
-    for (int i = 0; i < authenticationCodeLength; ++i) {
-      digest.set(i, (byte)0);
-    }
+    fillWindow(digest, (byte)0);
+    computeHmac(context, authenticationKey, message, messageOffset, messageLength);
+    // copy the digest into the message (authenticationCodeLength bytes only!)
+    copyToWindow(context.outerDigest, digest);
+    return true;
+  }
 
-    if (authKey.length > hmacBlockSize) {
-      authKey = md.digest(authenticationKey);
-    }
+  /**
+   * Computes the HMAC of a message into {@link HmacContext#outerDigest}
+   * without allocating memory (unless the key has not been used by the
+   * current thread before or digest cloning is enabled).
+   */
+  private void computeHmac(HmacContext context, byte[] authenticationKey,
+                           byte[] message, int messageOffset, int messageLength) {
+    HmacState hmacState = context.getHmacState(authenticationKey);
     /*
      * the HMAC_MD transform looks like:
      *
@@ -176,52 +219,228 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
      * opad is the byte 0x5c repeated 64 times
      * and text is the data being protected
      */
-    /* start out by storing key, ipad and opad in pads */
-    for (int i = 0; i < authKey.length; ++i) {
-      k_ipad[i] = (byte) (authKey[i] ^ 0x36);
-      k_opad[i] = (byte) (authKey[i] ^ 0x5c);
-    }
-    for (int i = authKey.length; i < hmacBlockSize; ++i) {
-      k_ipad[i] = 0x36;
-      k_opad[i] = 0x5c;
-    }
-
-    /* perform inner MD */
-    md.update(k_ipad); /* start with inner pad      */
-    md.update(message, messageOffset, messageLength); /* then text of msg  */
-    newDigest = md.digest(); /* finish up 1st pass        */
-    /* perform outer MD */
-    md.reset(); /* init hash function for 2nd pass     */
-    md.update(k_opad); /* start with outer pad      */
-    md.update(newDigest); /* then results of 1st hash  */
-    newDigest = md.digest(); /* finish up 2nd pass        */
+    try {
+      MessageDigest md;
+      /* perform inner MD */
+      if (cloneHmacDigests) {
+        md = hmacState.createInnerDigest();
+      }
+      else {
+        md = context.digest;
+        // discard any state left by a computation that failed midway
+        md.reset();
+        md.update(hmacState.innerPad); /* start with inner pad      */
+      }
+      md.update(message, messageOffset, messageLength); /* then text of msg  */
+      md.digest(context.innerDigest, 0, context.innerDigest.length); /* finish up 1st pass */
+      /* perform outer MD */
+      if (cloneHmacDigests) {
+        md = hmacState.createOuterDigest();
+      }
+      else {
+        md.update(hmacState.outerPad); /* start with outer pad      */
+      }
+      md.update(context.innerDigest); /* then results of 1st hash  */
+      md.digest(context.outerDigest, 0, context.outerDigest.length); /* finish up 2nd pass */
+    }
+    catch (DigestException dex) {
+      // cannot happen, because the buffers have the digest length
+      throw new InternalError(protoName + " digest failed: " + dex.getMessage());
+    }
+  }
 
-    // copy the digest into the message (authenticationCodeLength bytes only!)
-    for (int i = 0; i < authenticationCodeLength; ++i) {
-      digest.set(i, newDigest[i]);
+  private void fillWindow(ByteArrayWindow window, byte b) {
+    Arrays.fill(window.getValue(), window.getOffset(),
+                window.getOffset() + authenticationCodeLength, b);
+  }
+
+  private void copyToWindow(byte[] code, ByteArrayWindow window) {
+    if (window.getLength() < authenticationCodeLength) {
+      throw new IndexOutOfBoundsException("" + authenticationCodeLength + " > " +
+                                          window.getLength());
     }
-    return true;
+    System.arraycopy(code, 0, window.getValue(), window.getOffset(),
+                     authenticationCodeLength);
+  }
+
+  private HmacContext getHmacContext() {
+    ThreadLocal<HmacContext> contexts = hmacContexts;
+    if (contexts == null) {
+      contexts = new ThreadLocal<HmacContext>();
+      hmacContexts = contexts;
+    }
+    HmacContext context = contexts.get();
+    if (context == null) {
+      context = new HmacContext();
+      contexts.set(context);
+    }
+    return context;
+  }
+
+  /**
+   * Enables or disables cloning of the HMAC digests. If enabled, each
+   * message is hashed with clones of message digests that have already
+   * hashed the inner and outer pad of the key. This saves two digest
+   * compression function calls per message, but allocates the cloned digests.
+   * If disabled (the default), a message digest of the calling thread is
+   * reused and the cached pads are hashed for each message, so that
+   * authentication and verification do not allocate memory.
+   * @param cloneHmacDigests
+   *    <code>true</code> to trade allocations for less CPU per message.
+   * @since 2.6.0
+   */
+  public void setCloneHmacDigests(boolean cloneHmacDigests) {
+    this.cloneHmacDigests = cloneHmacDigests;
+  }
+
+  /**
+   * Indicates whether pad-primed HMAC digests are cloned per message.
+   * @return
+   *    <code>true</code> if digests are cloned, <code>false</code> if the
+   *    computation is allocation free (the default).
+   * @since 2.6.0
+   */
+  public boolean isCloneHmacDigests() {
+    return cloneHmacDigests;
+  }
+
+  /**
+   * Gets the HMAC digest state primed with the inner and outer pad of the
+   * supplied key from the cache or creates and caches it.
+   * @param authenticationKey
+   *    the localized authentication key.
+   * @return
+   *    the HMAC state for the key.
+   */
+  HmacState getHmacState(byte[] authenticationKey) {
+    ConcurrentMap<HmacKey, HmacState> states = hmacStates;
+    if (states == null) {
+      states = new ConcurrentHashMap<HmacKey, HmacState>();
+      hmacStates = states;
+    }
+    HmacKey key = new HmacKey(authenticationKey);
+    HmacState hmacState = states.get(key);
+    if (hmacState == null) {
+      hmacState = new HmacState(authenticationKey);
+      int max = maxHmacStates;
+      if (max > 0) {
+        if (states.size() >= max) {
+          removeLeastRecentlyUsedStates(states, max);
+        }
+        states.put(new HmacKey(authenticationKey.clone()), hmacState);
+      }
+    }
+    else {
+      hmacState.lastUse = System.nanoTime();
+    }
+    return hmacState;
+  }
+
+  /**
+   * Removes the least recently used HMAC states, so that a tenth of the
+   * maximum number of states is free again. The last use times are copied
+   * before sorting, because concurrent lookups update them.
+   */
+  private void removeLeastRecentlyUsedStates(ConcurrentMap<HmacKey, HmacState> states, int max) {
+    if (!evictingHmacStates.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      List<StateUse> uses = new ArrayList<StateUse>(states.size());
+      for (Map.Entry<HmacKey, HmacState> entry : states.entrySet()) {
+        uses.add(new StateUse(entry.getKey(), entry.getValue()));
+      }
+      int excess = uses.size() - (max - 1 - max / 10);
+      if (excess > 0) {
+        Collections.sort(uses, LAST_USE_ORDER);
+        for (int i=0; (i<excess) && (i<uses.size()); i++) {
+          StateUse use = uses.get(i);
+          states.remove(use.key, use.state);
+        }
+      }
+    }
+    finally {
+      evictingHmacStates.set(false);
+    }
+  }
+
+  /**
+   * Sets the maximum number of localized keys for which the HMAC digest
+   * state primed with the inner and outer pad is cached. When the limit is
+   * reached, the least recently used tenth of the states is removed. A thread
+   * that keeps using the same key does not look up the cache, so a removed
+   * state stays in use by that thread until it changes the key.
+   * @param maxHmacStates
+   *    the maximum number of cached keys. Zero disables the cache.
+   * @since 2.6.0
+   */
+  public void setMaxHmacStates(int maxHmacStates) {
+    this.maxHmacStates = maxHmacStates;
+    clearHmacStates();
+  }
+
+  /**
+   * Gets the maximum number of localized keys for which the HMAC digest
+   * state is cached.
+   * @return
+   *    the maximum number of cached keys (default is
+   *    {@link #DEFAULT_MAX_HMAC_STATES}).
+   * @since 2.6.0
+   */
+  public int getMaxHmacStates() {
+    return maxHmacStates;
   }
 
+  /**
+   * Gets the number of localized keys for which the HMAC digest state is
+   * cached.
+   * @return
+   *    the number of cached keys.
+   * @since 2.6.0
+   */
+  public int getHmacStateCount() {
+    ConcurrentMap<HmacKey, HmacState> states = hmacStates;
+    return (states == null) ? 0 : states.size();
+  }
+
+  /**
+   * Removes the cached HMAC digest states of all keys. This should be called
+   * when localized keys are no longer in use, for example after a key
+   * change, to remove the key material from memory.
+   * @since 2.6.0
+   */
+  public void clearHmacStates() {
+    ConcurrentMap<HmacKey, HmacState> states = hmacStates;
+    if (states != null) {
+      states.clear();
+    }
+    // invalidate the last used states of all threads
+    hmacGeneration++;
+  }
+
+  /**
+   * Verifies the authentication code of a message in place. The received
+   * code is saved into a buffer of the calling thread, the code in the
+   * message is zeroed, and the recomputed code is compared in constant time.
+   * Like for {@link #authenticate}, the recomputed code is left in the
+   * message. No memory is allocated per message.
+   */
   public boolean isAuthentic(byte[] authenticationKey,
                              byte[] message,
                              int messageOffset,
                              int messageLength,
                              ByteArrayWindow digest) {
-    // copy digest from message
-    ByteArrayWindow origDigest =
-        new ByteArrayWindow(new byte[authenticationCodeLength], 0,
-            authenticationCodeLength);
-    System.arraycopy(digest.getValue(), digest.getOffset(),
-                     origDigest.getValue(), 0,
-        authenticationCodeLength);
-
-    // use the authenticate() method to recalculate the digest
-    if (!authenticate(authenticationKey, message, messageOffset,
-                      messageLength, digest)) {
+    if (digest.getLength() < authenticationCodeLength) {
       return false;
     }
-    return digest.equals(origDigest, authenticationCodeLength);
+    HmacContext context = getHmacContext();
+    // save the received digest, then clear it in the message
+    System.arraycopy(digest.getValue(), digest.getOffset(),
+                     context.receivedCode, 0, authenticationCodeLength);
+    fillWindow(digest, (byte)0);
+    computeHmac(context, authenticationKey, message, messageOffset, messageLength);
+    copyToWindow(context.outerDigest, digest);
+    return digest.equalsConstantTime(context.receivedCode, 0, authenticationCodeLength);
   }
 
   public byte[] changeDelta(byte[] oldKey,
@@ -279,6 +498,21 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
   }
 
   public byte[] passwordToKey(OctetString passwordString, byte[] engineID) {
+    return localizeKey(passwordToMasterKey(passwordString), engineID);
+  }
+
+  /**
+   * Computes the master key Ku of the password to key algorithm of RFC 3414
+   * A.2 by digesting one megabyte of the repeated password. The master key
+   * does not depend on the engine ID and can therefore be reused to localize
+   * the key for any number of engines with {@link #localizeKey}.
+   * @param passwordString
+   *    the pass phrase.
+   * @return
+   *    the master key.
+   * @since 2.6.0
+   */
+  public byte[] passwordToMasterKey(OctetString passwordString) {
 
     MessageDigest md = getDigestObject();
 
@@ -303,16 +537,38 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
       logger.debug(protoName + "First digest: " +
                    new OctetString(digest).toHexString());
     }
+    return digest;
+  }
 
+  /**
+   * Localizes a master key with an engine ID as specified by RFC 3414 A.2.
+   * @param masterKey
+   *    the master key as returned by {@link #passwordToMasterKey(OctetString)}.
+   * @param engineID
+   *    the engine ID of the authoritative engine.
+   * @return
+   *    the localized key.
+   * @since 2.6.0
+   */
+  public byte[] localizeKey(byte[] masterKey, byte[] engineID) {
+    return localizeKey(getDigestObject(), masterKey, engineID);
+  }
+
+  /**
+   * Localizes a master key with an engine ID using the supplied message
+   * digest, which must have been created by {@link #getDigestObject()} of
+   * this protocol.
+   */
+  byte[] localizeKey(MessageDigest md, byte[] masterKey, byte[] engineID) {
     /*****************************************************/
     /* Now localize the key with the engine_id and pass  */
     /* through MD to produce final key                   */
     /*****************************************************/
     md.reset();
-    md.update(digest);
+    md.update(masterKey);
     md.update(engineID);
-    md.update(digest);
-    digest = md.digest();
+    md.update(masterKey);
+    byte[] digest = md.digest();
     if (logger.isDebugEnabled()) {
       logger.debug(protoName + "localized key: " +
                    new OctetString(digest).toHexString());
@@ -333,4 +589,151 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
     return md.digest();
   }
 
+  private static final class HmacKey {
+
+    private final byte[] key;
+    private final int hashCode;
+
+    HmacKey(byte[] key) {
+      this.key = key;
+      this.hashCode = Arrays.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof HmacKey) && Arrays.equals(key, ((HmacKey) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * The <code>HmacState</code> holds the message digests of an
+   * authentication key that have already hashed the inner and outer pad.
+   * The primed digests are never updated, they only serve as prototypes for
+   * the digests used for a message.
+   */
+  final class HmacState {
+
+    private final byte[] key;
+    private final byte[] innerPad;
+    private final byte[] outerPad;
+    private final MessageDigest innerDigest;
+    private final MessageDigest outerDigest;
+    private final boolean cloneable;
+    private volatile long lastUse = System.nanoTime();
+
+    HmacState(byte[] authenticationKey) {
+      key = authenticationKey.clone();
+      byte[] authKey = authenticationKey;
+      if (authKey.length > hmacBlockSize) {
+        authKey = getDigestObject().digest(authenticationKey);
+      }
+      /* start out by storing key, ipad and opad in pads */
+      innerPad = new byte[hmacBlockSize];
+      outerPad = new byte[hmacBlockSize];
+      for (int i = 0; i < authKey.length; ++i) {
+        innerPad[i] = (byte) (authKey[i] ^ 0x36);
+        outerPad[i] = (byte) (authKey[i] ^ 0x5c);
+      }
+      for (int i = authKey.length; i < hmacBlockSize; ++i) {
+        innerPad[i] = 0x36;
+        outerPad[i] = 0x5c;
+      }
+      innerDigest = getDigestObject();
+      innerDigest.update(innerPad);
+      outerDigest = getDigestObject();
+      outerDigest.update(outerPad);
+      boolean canClone;
+      try {
+        innerDigest.clone();
+        canClone = true;
+      }
+      catch (CloneNotSupportedException e) {
+        logger.info(protoName+" digest of the security provider cannot be cloned, "+
+                    "HMAC pads are hashed for each message");
+        canClone = false;
+      }
+      cloneable = canClone;
+    }
+
+    /**
+     * Creates a message digest that has already hashed the inner pad.
+     * @return
+     *    a new message digest.
+     */
+    MessageDigest createInnerDigest() {
+      return createDigest(innerDigest, innerPad);
+    }
+
+    /**
+     * Creates a message digest that has already hashed the outer pad.
+     * @return
+     *    a new message digest.
+     */
+    MessageDigest createOuterDigest() {
+      return createDigest(outerDigest, outerPad);
+    }
+
+    private MessageDigest createDigest(MessageDigest primed, byte[] pad) {
+      if (cloneable) {
+        try {
+          return (MessageDigest) primed.clone();
+        }
+        catch (CloneNotSupportedException e) {
+          // checked in constructor
+        }
+      }
+      MessageDigest md = getDigestObject();
+      md.update(pad);
+      return md;
+    }
+  }
+
+  /**
+   * The last use time of a cached HMAC state at the time an eviction started.
+   */
+  private static final class StateUse {
+
+    private final HmacKey key;
+    private final HmacState state;
+    private final long lastUse;
+
+    StateUse(HmacKey key, HmacState state) {
+      this.key = key;
+      this.state = state;
+      this.lastUse = state.lastUse;
+    }
+  }
+
+  /**
+   * The <code>HmacContext</code> holds the message digest and the scratch
+   * buffers of a thread, as well as the HMAC state of the key last used by
+   * that thread, so that the cache does not need to be looked up as long as
+   * the key does not change.
+   */
+  private final class HmacContext {
+
+    private final MessageDigest digest = getDigestObject();
+    private final byte[] innerDigest = new byte[digest.getDigestLength()];
+    private final byte[] outerDigest = new byte[digest.getDigestLength()];
+    private final byte[] receivedCode = new byte[authenticationCodeLength];
+    private HmacState lastState;
+    private int lastGeneration;
+
+    HmacState getHmacState(byte[] authenticationKey) {
+      HmacState state = lastState;
+      if ((state == null) || (lastGeneration != hmacGeneration) ||
+          !Arrays.equals(state.key, authenticationKey)) {
+        lastGeneration = hmacGeneration;
+        state = AuthGeneric.this.getHmacState(authenticationKey);
+        lastState = state;
+      }
+      return state;
+    }
+  }
+
 }
@@ -23,7 +23,7 @@ package org.snmp4j.security;
  * The <code>ByteArrayWindow</code> provides windowed access to a subarray
  * of a byte array.
  * @author Frank Fock
- * @version 1.0
+ * @version 2.6.0
  */
 public class ByteArrayWindow {
 
@@ -118,4 +118,32 @@ public class ByteArrayWindow {
     }
     return true;
   }
+
+  /**
+   * Compares the first bytes of this window with a region of a byte array
+   * in constant time, i.e. the time needed does not depend on the position
+   * of the first differing byte. Use this method to verify authentication
+   * codes.
+   * @param other
+   *    a byte array.
+   * @param otherOffset
+   *    the offset of the region in <code>other</code>.
+   * @param bytesToCompare
+   *    the number of bytes to compare.
+   * @return
+   *    <code>true</code> if this window and the region of <code>other</code>
+   *    both contain at least <code>bytesToCompare</code> bytes and those are
+   *    equal.
+   * @since 2.6.0
+   */
+  public boolean equalsConstantTime(byte[] other, int otherOffset, int bytesToCompare) {
+    if ((length < bytesToCompare) || (other.length - otherOffset < bytesToCompare)) {
+      return false;
+    }
+    int difference = 0;
+    for (int i=0; i<bytesToCompare; i++) {
+      difference |= value[offset+i] ^ other[otherOffset+i];
+    }
+    return difference == 0;
+  }
 }
@@ -21,24 +21,26 @@
 package org.snmp4j.security;
 
 import javax.crypto.Cipher;
-import javax.crypto.NoSuchPaddingException;
-import java.security.NoSuchAlgorithmException;
-import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The CipherPool class provides service to share and reuse Cipher instances, across
- * different threads. The maximum number of Ciphers in the pool might temporarily
- * exceed the {@link #maxPoolSize} to minimize waiting time.
+ * different threads. The pool is lock-free, so concurrent threads never block each
+ * other when taking or returning ciphers. The number of Ciphers in the pool never
+ * exceeds the {@link #maxPoolSize}.
  *
  * @author Frank Fock
+ * @version 2.6.0
  * @since 2.2.2
  */
 public class CipherPool {
 
-  private LinkedList<Cipher> availableCiphers;
+  private final Queue<Cipher> availableCiphers;
 
-  private int maxPoolSize;
-  private int currentPoolSize;
+  private final int maxPoolSize;
+  private final AtomicInteger currentPoolSize;
 
 
   /**
@@ -54,18 +56,28 @@ public class CipherPool {
    *   the maximum number of ciphers in the pool.
    */
   public CipherPool(int maxPoolSize) {
-    this.currentPoolSize = 0;
     if (maxPoolSize < 0) {
       throw new IllegalArgumentException("Pool size must be >= 0");
     }
+    this.currentPoolSize = new AtomicInteger();
     this.maxPoolSize = maxPoolSize;
-    this.availableCiphers = new LinkedList<Cipher>();
+    this.availableCiphers = new ConcurrentLinkedQueue<Cipher>();
   }
 
   public int getMaxPoolSize() {
     return maxPoolSize;
   }
 
+  /**
+   * Gets the number of ciphers currently available in the pool.
+   * @return
+   *    the number of pooled ciphers.
+   * @since 2.6.0
+   */
+  public int getCurrentPoolSize() {
+    return currentPoolSize.get();
+  }
+
   /**
    * Gets a Cipher from the pool. It must be returned to the pool by calling
    * {@link #offerCipher(Cipher)} when one of its {@link javax.crypto.Cipher#doFinal()}
@@ -74,13 +86,10 @@ public class CipherPool {
    *    a Cipher from the pool, or {@code null} if the pool currently does not contain any
    *    cipher.
    */
-  public synchronized Cipher reuseCipher() {
+  public Cipher reuseCipher() {
     Cipher cipher = availableCiphers.poll();
-    if (cipher == null) {
-      currentPoolSize = 0;
-    }
-    else {
-      currentPoolSize--;
+    if (cipher != null) {
+      currentPoolSize.decrementAndGet();
     }
     return cipher;
   }
@@ -90,10 +99,15 @@ public class CipherPool {
    * @param cipher
    *    a Cipher instance previously acquired by {@link #reuseCipher()} or created externally.
    */
-  public synchronized void offerCipher(Cipher cipher) {
-    if (currentPoolSize < maxPoolSize) {
-      currentPoolSize++;
-      availableCiphers.offer(cipher);
+  public void offerCipher(Cipher cipher) {
+    int size;
+    do {
+      size = currentPoolSize.get();
+      if (size >= maxPoolSize) {
+        return;
+      }
     }
+    while (!currentPoolSize.compareAndSet(size, size + 1));
+    availableCiphers.offer(cipher);
   }
 }
@@ -0,0 +1,272 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - LocalizedKeyCache.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.security;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * The <code>LocalizedKeyCache</code> caches the results of the password to
+ * key algorithm of RFC 3414 A.2. The expensive first step of the algorithm,
+ * which digests one megabyte of the repeated password to the master key Ku,
+ * is cached per authentication protocol and password. The localized keys,
+ * derived from the master key and an authoritative engine ID, are cached per
+ * protocol, password, and engine ID. Thus, when a user is localized for many
+ * engine IDs, the master key is computed only once.
+ * <p>
+ * Both caches are bounded and evict their least recently used entries.
+ * Passwords are not stored, only a SHA-256 digest of them is used as key.
+ * Keys returned by this cache are copies and can be modified by the caller.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class LocalizedKeyCache {
+
+  private static final LogAdapter logger = LogFactory.getLogger(LocalizedKeyCache.class);
+
+  /**
+   * The default maximum number of cached localized keys.
+   */
+  public static final int DEFAULT_MAX_LOCALIZED_KEYS = 10000;
+  /**
+   * The default maximum number of cached master keys.
+   */
+  public static final int DEFAULT_MAX_MASTER_KEYS = 1000;
+
+  private static final String PASSWORD_DIGEST_ALGORITHM = "SHA-256";
+
+  private final LRUMap localizedKeys;
+  private final LRUMap masterKeys;
+
+  /**
+   * Creates a cache with {@link #DEFAULT_MAX_LOCALIZED_KEYS} localized keys
+   * and {@link #DEFAULT_MAX_MASTER_KEYS} master keys.
+   */
+  public LocalizedKeyCache() {
+    this(DEFAULT_MAX_LOCALIZED_KEYS, DEFAULT_MAX_MASTER_KEYS);
+  }
+
+  /**
+   * Creates a key cache.
+   * @param maxLocalizedKeys
+   *    the maximum number of localized keys to cache.
+   * @param maxMasterKeys
+   *    the maximum number of master keys (one per protocol and password) to
+   *    cache.
+   */
+  public LocalizedKeyCache(int maxLocalizedKeys, int maxMasterKeys) {
+    this.localizedKeys = new LRUMap(maxLocalizedKeys);
+    this.masterKeys = new LRUMap(maxMasterKeys);
+  }
+
+  /**
+   * Gets a cached localized key.
+   * @param protocolID
+   *    the ID of the protocol the key has been localized for. This is the
+   *    authentication protocol ID for authentication keys and the privacy
+   *    protocol ID for privacy keys.
+   * @param authProtocolID
+   *    the ID of the authentication protocol used for the localization.
+   * @param password
+   *    the pass phrase.
+   * @param engineID
+   *    the authoritative engine ID.
+   * @return
+   *    a copy of the cached key or <code>null</code> if the key is not cached.
+   */
+  public byte[] getLocalizedKey(OID protocolID, OID authProtocolID,
+                                OctetString password, byte[] engineID) {
+    return copy(localizedKeys.getKey(new Key(protocolID, authProtocolID,
+                                             digest(password), engineID)));
+  }
+
+  /**
+   * Caches a localized key.
+   * @param protocolID
+   *    the ID of the protocol the key has been localized for.
+   * @param authProtocolID
+   *    the ID of the authentication protocol used for the localization.
+   * @param password
+   *    the pass phrase.
+   * @param engineID
+   *    the authoritative engine ID.
+   * @param localizedKey
+   *    the localized key.
+   */
+  public void putLocalizedKey(OID protocolID, OID authProtocolID,
+                              OctetString password, byte[] engineID,
+                              byte[] localizedKey) {
+    localizedKeys.putKey(new Key(protocolID, authProtocolID, digest(password),
+                                 copy(engineID)), copy(localizedKey));
+  }
+
+  /**
+   * Gets the master key Ku for the supplied password and authentication
+   * protocol from the cache or computes and caches it, if it is not cached
+   * yet.
+   * @param authProtocolID
+   *    the ID of <code>authProtocol</code>.
+   * @param authProtocol
+   *    the authentication protocol.
+   * @param password
+   *    the pass phrase.
+   * @return
+   *    a copy of the master key.
+   */
+  public byte[] getMasterKey(OID authProtocolID, AuthGeneric authProtocol,
+                             OctetString password) {
+    Key key = new Key(authProtocolID, authProtocolID, digest(password), null);
+    byte[] masterKey = masterKeys.getKey(key);
+    if (masterKey == null) {
+      masterKey = authProtocol.passwordToMasterKey(password);
+      masterKeys.putKey(key, masterKey);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Cached master key for authentication protocol "+authProtocolID);
+      }
+    }
+    return copy(masterKey);
+  }
+
+  /**
+   * Removes all keys from the cache. This should be called when pass phrases
+   * are no longer in use, for example after a credential rotation.
+   */
+  public void clear() {
+    localizedKeys.clearKeys();
+    masterKeys.clearKeys();
+  }
+
+  /**
+   * Gets the number of cached localized keys.
+   * @return
+   *    the number of localized keys.
+   */
+  public int getLocalizedKeyCount() {
+    return localizedKeys.sizeOfKeys();
+  }
+
+  /**
+   * Gets the number of cached master keys.
+   * @return
+   *    the number of master keys.
+   */
+  public int getMasterKeyCount() {
+    return masterKeys.sizeOfKeys();
+  }
+
+  private static byte[] copy(byte[] bytes) {
+    return (bytes == null) ? null : bytes.clone();
+  }
+
+  private static byte[] digest(OctetString password) {
+    try {
+      return MessageDigest.getInstance(PASSWORD_DIGEST_ALGORITHM).digest(password.getValue());
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new InternalError(PASSWORD_DIGEST_ALGORITHM+" not supported");
+    }
+  }
+
+  private static class Key {
+
+    private final OID protocolID;
+    private final OID authProtocolID;
+    private final byte[] passwordDigest;
+    private final byte[] engineID;
+    private final int hashCode;
+
+    Key(OID protocolID, OID authProtocolID, byte[] passwordDigest, byte[] engineID) {
+      this.protocolID = protocolID;
+      this.authProtocolID = authProtocolID;
+      this.passwordDigest = passwordDigest;
+      this.engineID = engineID;
+      int h = protocolID.hashCode();
+      h = 31 * h + authProtocolID.hashCode();
+      h = 31 * h + Arrays.hashCode(passwordDigest);
+      this.hashCode = 31 * h + Arrays.hashCode(engineID);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return (hashCode == other.hashCode) &&
+          protocolID.equals(other.protocolID) &&
+          authProtocolID.equals(other.authProtocolID) &&
+          Arrays.equals(passwordDigest, other.passwordDigest) &&
+          Arrays.equals(engineID, other.engineID);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class LRUMap extends LinkedHashMap<Key, byte[]> {
+
+    private static final long serialVersionUID = 7424531375640234434L;
+
+    private final int maxSize;
+
+    LRUMap(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    synchronized byte[] getKey(Key key) {
+      return get(key);
+    }
+
+    synchronized void putKey(Key key, byte[] value) {
+      if (maxSize > 0) {
+        put(key, value);
+      }
+    }
+
+    synchronized void clearKeys() {
+      clear();
+    }
+
+    synchronized int sizeOfKeys() {
+      return size();
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+      return size() > maxSize;
+    }
+  }
+}
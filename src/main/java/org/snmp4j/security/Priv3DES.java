@@ -39,7 +39,7 @@ import java.security.NoSuchAlgorithmException;
  * Model (USM) to Support Triple-DES EDE in "Outside" CBC Mode'.
  *
  * @author Frank Fock, Jochen Katz
- * @version 2.2.2
+ * @version 2.6.0
  * @since 1.9
  */
 public class Priv3DES extends PrivacyGeneric {
@@ -116,9 +116,9 @@ public class Priv3DES extends PrivacyGeneric {
 
     try {
       // now do CBC encryption of the plaintext
-      Cipher alg = doInit(encryptionKey, iv);
+      Cipher alg = initCipher(Cipher.ENCRYPT_MODE, encryptionKey, iv);
       encryptedData = doFinalWithPadding(unencryptedData, offset, length, alg);
-      cipherPool.offerCipher(alg);
+      releaseCipher(alg);
     }
     catch (Exception e) {
       logger.error(e);
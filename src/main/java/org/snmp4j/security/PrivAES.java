@@ -39,7 +39,7 @@ import java.security.NoSuchAlgorithmException;
  * draft-blumenthal-aes-usm-04.txt (AES192 and AES256).
  *
  * @author Jochen Katz
- * @version 2.5.0
+ * @version 2.6.0
  */
 public abstract class PrivAES extends PrivacyGeneric
     implements PrivacyProtocol {
@@ -115,9 +115,9 @@ public abstract class PrivAES extends PrivacyGeneric
     // allocate space for encrypted text
     byte[] encryptedData = null;
     try {
-      Cipher alg = doInit(encryptionKey, initVect);
+      Cipher alg = initCipher(Cipher.ENCRYPT_MODE, encryptionKey, initVect);
       encryptedData =  alg.doFinal(unencryptedData, offset, length);
-      cipherPool.offerCipher(alg);
+      releaseCipher(alg);
 
       if (logger.isDebugEnabled()) {
         logger.debug("aes encrypt: Data to encrypt " + asHex(unencryptedData));
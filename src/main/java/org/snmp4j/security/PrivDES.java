@@ -38,7 +38,7 @@ import java.security.NoSuchAlgorithmException;
  * for SNMPv3".
  *
  * @author Jochen Katz
- * @version 2.5.0
+ * @version 2.6.0
  */
 public class PrivDES extends PrivacyGeneric {
 
@@ -116,9 +116,9 @@ public class PrivDES extends PrivacyGeneric {
 
     try {
       // now do CBC encryption of the plaintext
-      Cipher alg = doInit(encryptionKey, iv);
+      Cipher alg = initCipher(Cipher.ENCRYPT_MODE, encryptionKey, iv);
       encryptedData = doFinalWithPadding(unencryptedData, offset, length, alg);
-      cipherPool.offerCipher(alg);
+      releaseCipher(alg);
     }
     catch (Exception e) {
       logger.error(e);
@@ -202,8 +202,9 @@ public class PrivDES extends PrivacyGeneric {
     try {
       alg = cipherPool.reuseCipher();
       if (alg == null) {
-        Cipher.getInstance("DESede/CBC/NoPadding");
+        alg = Cipher.getInstance(PROTOCOL_ID);
       }
+      cipherPool.offerCipher(alg);
       return true;
     } catch (NoSuchPaddingException e) {
       return false;
@@ -6,13 +6,23 @@ import org.snmp4j.log.LogFactory;
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * The PrivacyGeneric abstract class implements common functionality of privacy protocols.
+ * <p>
+ * Since v2.6.0, each thread caches the ciphers it used for the most recently
+ * seen localized privacy keys (see {@link #setMaxCachedKeysPerThread(int)}).
+ * For a known key, the cipher is re-initialized with the cached key
+ * specification and only a new initialization vector, so that the key schedule
+ * does not have to be built again for each message by providers that keep it
+ * for an unchanged key.
+ *
  * @author Frank Fock
+ * @version 2.6.0
  * @since 2.5.0
  */
 public abstract class PrivacyGeneric implements PrivacyProtocol {
@@ -26,6 +36,16 @@ public abstract class PrivacyGeneric implements PrivacyProtocol {
   protected CipherPool cipherPool;
   protected int initVectorLength;
 
+  /**
+   * The default maximum number of localized keys per thread for which
+   * initialized ciphers are cached.
+   * @since 2.6.0
+   */
+  public static final int DEFAULT_MAX_CACHED_KEYS_PER_THREAD = 8;
+
+  private final transient ThreadLocal<CipherCache> cipherCaches = new ThreadLocal<CipherCache>();
+  private transient volatile int cipherCacheGeneration;
+  private volatile int maxCachedKeysPerThread = DEFAULT_MAX_CACHED_KEYS_PER_THREAD;
 
   protected Cipher doInit(byte[] encryptionKey, byte[] initVect) throws
       NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, InvalidAlgorithmParameterException {
@@ -70,16 +90,9 @@ public abstract class PrivacyGeneric implements PrivacyProtocol {
   protected byte[] doDecrypt(byte[] cryptedData, int offset, int length, byte[] decryptionKey, byte[] iv) {
     byte[] decryptedData = null;
     try {
-      Cipher alg = cipherPool.reuseCipher();
-      if (alg == null) {
-        alg = Cipher.getInstance(protocolId);
-      }
-      SecretKeySpec key =
-          new SecretKeySpec(decryptionKey, 0, keyBytes, protocolClass);
-      IvParameterSpec ivSpec = new IvParameterSpec(iv);
-      alg.init(Cipher.DECRYPT_MODE, key, ivSpec);
+      Cipher alg = initCipher(Cipher.DECRYPT_MODE, decryptionKey, iv);
       decryptedData = alg.doFinal(cryptedData, offset, length);
-      cipherPool.offerCipher(alg);
+      releaseCipher(alg);
     }
     catch (Exception e) {
       logger.error(e);
@@ -90,6 +103,121 @@ public abstract class PrivacyGeneric implements PrivacyProtocol {
     return decryptedData;
   }
 
+  /**
+   * Gets a cipher initialized with the supplied key and initialization vector.
+   * If the per thread cipher cache is enabled, the cipher of the calling thread
+   * for that key is reused, otherwise a cipher is taken from the
+   * {@link #cipherPool}. The returned cipher must be returned by
+   * {@link #releaseCipher(javax.crypto.Cipher)} after it has been used by the
+   * calling thread.
+   *
+   * @param mode
+   *    {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+   * @param key
+   *    the localized privacy key. Only the first {@link #keyBytes} bytes are used.
+   * @param initVect
+   *    the initialization vector for the message.
+   * @return
+   *    an initialized cipher.
+   * @throws GeneralSecurityException
+   *    if the cipher is not available or cannot be initialized with the key.
+   * @since 2.6.0
+   */
+  protected Cipher initCipher(int mode, byte[] key, byte[] initVect) throws GeneralSecurityException {
+    int maxKeys = maxCachedKeysPerThread;
+    if (maxKeys <= 0) {
+      Cipher alg = newCipher();
+      alg.init(mode, new SecretKeySpec(key, 0, keyBytes, protocolClass), new IvParameterSpec(initVect));
+      return alg;
+    }
+    KeyedCipher keyedCipher = getCipherCache(maxKeys).get(key);
+    Cipher alg = keyedCipher.getCipher(mode);
+    alg.init(mode, keyedCipher.keySpec, new IvParameterSpec(initVect));
+    return alg;
+  }
+
+  /**
+   * Releases a cipher obtained by {@link #initCipher(int, byte[], byte[])}.
+   * Ciphers cached by the calling thread stay in its cache, any other ciphers
+   * are offered to the {@link #cipherPool}.
+   * @param cipher
+   *    a cipher that is no longer used by the calling thread.
+   * @since 2.6.0
+   */
+  protected void releaseCipher(Cipher cipher) {
+    CipherCache cache = cipherCaches.get();
+    if ((cache == null) || !cache.contains(cipher)) {
+      cipherPool.offerCipher(cipher);
+    }
+  }
+
+  private Cipher newCipher() throws GeneralSecurityException {
+    Cipher alg = cipherPool.reuseCipher();
+    if (alg == null) {
+      alg = Cipher.getInstance(protocolId);
+    }
+    return alg;
+  }
+
+  private CipherCache getCipherCache(int maxKeys) {
+    CipherCache cache = cipherCaches.get();
+    int generation = cipherCacheGeneration;
+    if ((cache == null) || (cache.generation != generation) || (cache.entries.length != maxKeys)) {
+      if (cache != null) {
+        cache.releaseCiphers();
+      }
+      cache = new CipherCache(maxKeys, generation);
+      cipherCaches.set(cache);
+    }
+    return cache;
+  }
+
+  /**
+   * Sets the maximum number of localized privacy keys for which each thread
+   * caches initialized ciphers. If a thread uses more keys, the least
+   * recently added key is replaced. A value of zero disables the cache and
+   * ciphers are shared through the {@link #cipherPool} instead.
+   * @param maxCachedKeysPerThread
+   *    the maximum number of keys per thread (default is
+   *    {@link #DEFAULT_MAX_CACHED_KEYS_PER_THREAD}).
+   * @since 2.6.0
+   */
+  public void setMaxCachedKeysPerThread(int maxCachedKeysPerThread) {
+    if (maxCachedKeysPerThread < 0) {
+      throw new IllegalArgumentException("Cache size must be >= 0");
+    }
+    this.maxCachedKeysPerThread = maxCachedKeysPerThread;
+    clearCipherCache();
+  }
+
+  /**
+   * Gets the maximum number of localized privacy keys for which each thread
+   * caches initialized ciphers.
+   * @return
+   *    the maximum number of keys per thread or zero if the cache is disabled.
+   * @since 2.6.0
+   */
+  public int getMaxCachedKeysPerThread() {
+    return maxCachedKeysPerThread;
+  }
+
+  /**
+   * Removes all cached ciphers and key material. The caches of other threads
+   * are discarded when they use this privacy protocol the next time. Call this
+   * method when localized keys have been removed to free the copies of the
+   * keys held by the cache. The ciphers of a discarded cache are offered to
+   * the {@link #cipherPool}.
+   * @since 2.6.0
+   */
+  public void clearCipherCache() {
+    cipherCacheGeneration++;
+    CipherCache cache = cipherCaches.get();
+    if (cache != null) {
+      cipherCaches.remove();
+      cache.releaseCiphers();
+    }
+  }
+
   @Override
   public boolean isSupported() {
     Cipher alg;
@@ -129,4 +257,114 @@ public abstract class PrivacyGeneric implements PrivacyProtocol {
   }
 
 
+
+  /**
+   * The ciphers of a thread for the most recently used keys.
+   */
+  private final class CipherCache {
+
+    private final KeyedCipher[] entries;
+    private final int generation;
+    private int size;
+    private int next;
+    private int last;
+
+    private CipherCache(int maxKeys, int generation) {
+      this.entries = new KeyedCipher[maxKeys];
+      this.generation = generation;
+    }
+
+    private KeyedCipher get(byte[] key) {
+      if ((size > 0) && entries[last].matches(key)) {
+        return entries[last];
+      }
+      for (int i=0; i<size; i++) {
+        if (entries[i].matches(key)) {
+          last = i;
+          return entries[i];
+        }
+      }
+      KeyedCipher keyedCipher = entries[next];
+      if (keyedCipher == null) {
+        keyedCipher = new KeyedCipher(key);
+      }
+      else {
+        // the ciphers of the replaced key are initialized with the new key
+        keyedCipher.setKey(key);
+      }
+      last = next;
+      entries[next] = keyedCipher;
+      next = (next + 1) % entries.length;
+      if (size < entries.length) {
+        size++;
+      }
+      return keyedCipher;
+    }
+
+    private boolean contains(Cipher cipher) {
+      for (int i=0; i<size; i++) {
+        if ((entries[i].encryptCipher == cipher) || (entries[i].decryptCipher == cipher)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void releaseCiphers() {
+      for (int i=0; i<size; i++) {
+        KeyedCipher keyedCipher = entries[i];
+        if (keyedCipher.encryptCipher != null) {
+          cipherPool.offerCipher(keyedCipher.encryptCipher);
+        }
+        if (keyedCipher.decryptCipher != null) {
+          cipherPool.offerCipher(keyedCipher.decryptCipher);
+        }
+        entries[i] = null;
+      }
+      size = 0;
+    }
+  }
+
+  /**
+   * The key specification of a localized key and the ciphers using it.
+   */
+  private final class KeyedCipher {
+
+    private final byte[] key;
+    private SecretKeySpec keySpec;
+    private Cipher encryptCipher;
+    private Cipher decryptCipher;
+
+    private KeyedCipher(byte[] key) {
+      this.key = new byte[keyBytes];
+      setKey(key);
+    }
+
+    private void setKey(byte[] key) {
+      System.arraycopy(key, 0, this.key, 0, keyBytes);
+      this.keySpec = new SecretKeySpec(this.key, protocolClass);
+    }
+
+    private boolean matches(byte[] otherKey) {
+      for (int i=0; i<key.length; i++) {
+        if (key[i] != otherKey[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private Cipher getCipher(int mode) throws GeneralSecurityException {
+      if (mode == Cipher.ENCRYPT_MODE) {
+        if (encryptCipher == null) {
+          encryptCipher = newCipher();
+        }
+        return encryptCipher;
+      }
+      if (decryptCipher == null) {
+        decryptCipher = newCipher();
+      }
+      return decryptCipher;
+    }
+  }
 }
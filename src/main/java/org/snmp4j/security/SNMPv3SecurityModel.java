@@ -22,11 +22,12 @@ package org.snmp4j.security;
 
 import org.snmp4j.asn1.BER;
 import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BEROutputStream;
 import org.snmp4j.smi.Integer32;
 import org.snmp4j.smi.OctetString;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * The abstract class <code>SNMPv3SecurityModel</code> implements
@@ -55,24 +56,88 @@ public abstract class SNMPv3SecurityModel implements SecurityModel {
                                             byte[] globalData,
                                             SecurityParameters securityParameters)
       throws IOException
+  {
+    return buildWholeMessage(snmpVersion, scopedPdu, 0, scopedPdu.length,
+                             globalData, securityParameters);
+  }
+
+  /**
+   * Builds the whole message by encoding its parts directly into a byte array
+   * of the exact message length.
+   * @param snmpVersion
+   *    the SNMP version of the message.
+   * @param scopedPdu
+   *    an array containing the (possibly encrypted) BER encoded scoped PDU.
+   * @param scopedPduOffset
+   *    the offset of the scoped PDU in <code>scopedPdu</code>.
+   * @param scopedPduLength
+   *    the length of the scoped PDU in bytes.
+   * @param globalData
+   *    the BER encoded global data of the message.
+   * @param securityParameters
+   *    the security parameters of the message.
+   * @return
+   *    the encoded message.
+   * @throws IOException
+   *    if the security parameters cannot be encoded.
+   * @since 2.6.0
+   */
+  protected static byte[] buildWholeMessage(Integer32 snmpVersion,
+                                            byte[] scopedPdu,
+                                            int scopedPduOffset,
+                                            int scopedPduLength,
+                                            byte[] globalData,
+                                            SecurityParameters securityParameters)
+      throws IOException
   {
     int length =
         snmpVersion.getBERLength() +
         globalData.length +
         securityParameters.getBERLength() +
-        scopedPdu.length;
+        scopedPduLength;
     int totalLength = BER.getBERLengthOfLength(length) + length + 1;
 
-    ByteArrayOutputStream os = new ByteArrayOutputStream(totalLength);
+    byte[] message = new byte[totalLength];
+    BEROutputStream os = new BEROutputStream(ByteBuffer.wrap(message));
     BER.encodeHeader(os, BER.SEQUENCE, length);
     snmpVersion.encodeBER(os);
     os.write(globalData);
     securityParameters.encodeBER(os);
-    os.write(scopedPdu);
+    os.write(scopedPdu, scopedPduOffset, scopedPduLength);
     int secParamsPos = 1 + snmpVersion.getBERLength() +
         BER.getBERLengthOfLength(length)  + globalData.length;
     securityParameters.setSecurityParametersPosition(secParamsPos);
-    return os.toByteArray();
+    return message;
+  }
+
+  /**
+   * Returns the BER encoded scoped PDU at the current position of the
+   * supplied input stream and advances the stream behind it. If the stream
+   * is backed by an accessible array, the returned buffer shares that array
+   * and thus the scoped PDU is not copied.
+   * @param scopedPDU
+   *    an input stream positioned at the start of a BER encoded scoped PDU.
+   * @return
+   *    an array backed buffer whose remaining bytes are the scoped PDU.
+   * @throws IOException
+   *    if the scoped PDU's header cannot be decoded.
+   * @since 2.6.0
+   */
+  protected static ByteBuffer getMessageBufferView(BERInputStream scopedPDU)
+      throws IOException
+  {
+    ByteBuffer source = scopedPDU.getBuffer();
+    if ((source == null) || (!source.hasArray())) {
+      return ByteBuffer.wrap(buildMessageBuffer(scopedPDU));
+    }
+    int start = source.position();
+    int length = BER.decodeHeader(scopedPDU, new BER.MutableByte());
+    int end = Math.min(source.position() + length, source.limit());
+    ByteBuffer view = source.duplicate();
+    view.position(start);
+    view.limit(end);
+    source.position(end);
+    return view;
   }
 
   protected static byte[] buildMessageBuffer(BERInputStream scopedPDU)
@@ -23,6 +23,7 @@
 package org.snmp4j.security;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 import java.security.SecureRandom;
 import java.security.NoSuchAlgorithmException;
 import org.snmp4j.log.*;
@@ -33,20 +34,41 @@ import org.snmp4j.log.*;
  * This class tries to use the SecureRandom class to initialize
  * the salt value. If SecureRandom is not available the class Random
  * is used.
+ * <p>
+ * Salt values are unique until the 64 bit (or, for the 32 bit salt of DES
+ * and 3DES, the lower 32 bit) value space wraps around. They are taken from
+ * a shared atomic counter, so threads encrypting concurrently do not lock
+ * and do not skip any values of the salt space.
  *
  * @author Jochen Katz
- * @version 1.0
+ * @version 2.6.0
  */
 class Salt {
-  private long salt;
 
-  private static Salt instance = null;
+  private final AtomicLong salt;
+
   private static final LogAdapter logger = LogFactory.getLogger(Salt.class);
 
   /**
    * Default constructor, initializes the salt to a random value.
    */
   protected Salt() {
+    this(randomSalt());
+  }
+
+  /**
+   * Creates a salt source starting at the given value.
+   * @param initialSalt
+   *    the first salt value.
+   */
+  Salt(long initialSalt) {
+    this.salt = new AtomicLong(initialSalt);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Initialized Salt to " + Long.toHexString(initialSalt) + ".");
+    }
+  }
+
+  private static long randomSalt() {
     byte[] rnd = new byte[8];
 
     try {
@@ -59,14 +81,12 @@ class Salt {
       r.nextBytes(rnd);
     }
 
-    salt = rnd[0];
+    long salt = rnd[0];
 
     for (int i = 0; i < 7; i++) {
       salt = (salt * 256) + ((int)rnd[i]) + 128;
     }
-    if (logger.isDebugEnabled()) {
-      logger.debug("Initialized Salt to " + Long.toHexString(salt) + ".");
-    }
+    return salt;
   }
 
   /**
@@ -75,10 +95,7 @@ class Salt {
    * @return the Salt object
    */
   public static Salt getInstance() {
-    if (instance == null) {
-      instance = new Salt();
-    }
-    return instance;
+    return InstanceHolder.INSTANCE;
   }
 
   /**
@@ -89,7 +106,11 @@ class Salt {
    * @return
    *    previous value increased by one.
    */
-  public synchronized long getNext() {
-    return salt++;
+  public long getNext() {
+    return salt.getAndIncrement();
+  }
+
+  private static final class InstanceHolder {
+    private static final Salt INSTANCE = new Salt();
   }
 }
@@ -29,8 +29,21 @@ import java.util.Enumeration;
 import org.snmp4j.log.*;
 import java.io.IOException;
 import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.security.MessageDigest;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.util.ThreadPool;
+import org.snmp4j.util.WorkerPool;
+import org.snmp4j.util.WorkerTask;
 
 /**
  * The <code>SecurityProtocols</code> class holds all authentication and
@@ -61,6 +74,7 @@ public class SecurityProtocols implements Serializable {
   private static SecurityProtocols instance = null;
   private int maxAuthDigestLength = 0;
   private int maxPrivDecryptParamsLength = 0;
+  private transient LocalizedKeyCache localizedKeyCache = new LocalizedKeyCache();
 
   protected SecurityProtocols() {
     authProtocols = new Hashtable<OID, AuthenticationProtocol>(5);
@@ -288,7 +302,16 @@ public class SecurityProtocols implements Serializable {
     if (protocol == null) {
       return null;
     }
-    return protocol.passwordToKey(passwordString, engineID);
+    LocalizedKeyCache cache = localizedKeyCache;
+    if (cache == null) {
+      return protocol.passwordToKey(passwordString, engineID);
+    }
+    byte[] key = cache.getLocalizedKey(authProtocolID, authProtocolID, passwordString, engineID);
+    if (key == null) {
+      key = localizeKey(cache, authProtocolID, protocol, passwordString, engineID);
+      cache.putLocalizedKey(authProtocolID, authProtocolID, passwordString, engineID, key);
+    }
+    return key;
   }
 
   /**
@@ -322,11 +345,34 @@ public class SecurityProtocols implements Serializable {
     if (privProtocol == null) {
       return null;
     }
-    byte[] key = authProtocol.passwordToKey(passwordString, engineID);
+    LocalizedKeyCache cache = localizedKeyCache;
+    if (cache != null) {
+      byte[] key = cache.getLocalizedKey(privProtocolID, authProtocolID, passwordString, engineID);
+      if (key != null) {
+        return key;
+      }
+    }
+    byte[] key = localizeKey(cache, authProtocolID, authProtocol, passwordString, engineID);
 
     if (key == null) {
       return null;
     }
+    key = adjustPrivacyKey(privProtocol, authProtocol, key, passwordString, engineID);
+    if ((cache != null) && (key != null)) {
+      cache.putLocalizedKey(privProtocolID, authProtocolID, passwordString, engineID, key);
+    }
+    return key;
+  }
+
+  /**
+   * Truncates or extends a localized key to the key length of a privacy
+   * protocol.
+   */
+  private static byte[] adjustPrivacyKey(PrivacyProtocol privProtocol,
+                                         AuthenticationProtocol authProtocol,
+                                         byte[] key,
+                                         OctetString passwordString,
+                                         byte[] engineID) {
     if (key.length >= privProtocol.getMinKeyLength()) {
       if (key.length > privProtocol.getMaxKeyLength()) {
         // truncate key
@@ -337,9 +383,141 @@ public class SecurityProtocols implements Serializable {
       return key;
     }
     // extend key if necessary
-    byte[] extKey = privProtocol.extendShortKey(key, passwordString, engineID,
-                                                authProtocol);
-    return extKey;
+    return privProtocol.extendShortKey(key, passwordString, engineID,
+                                       authProtocol);
+  }
+
+  /**
+   * Computes the localized authentication and privacy keys for a batch of
+   * USM user entries in parallel. Each entry specifies the user (with its
+   * protocols and pass phrases) and the authoritative engine ID to localize
+   * the keys for. The computed keys are set on the entries, which can then
+   * be added to an {@link UsmUserTable} with
+   * {@link UsmUserTable#setUsers(java.util.Collection)}.
+   * <p>
+   * The master key of each distinct pass phrase is computed only once
+   * and each worker thread reuses its message digest instances for the
+   * localization. The localized keys are not added to the
+   * {@link #getLocalizedKeyCache()} to not evict frequently used keys.
+   * Entries whose user has no (known) authentication protocol are left
+   * unchanged. Users with already localized pass phrases get their pass
+   * phrases as keys.
+   *
+   * @param entries
+   *    the USM user entries to compute the keys for.
+   * @param parallelism
+   *    the number of threads to use. A thread pool of that size is created
+   *    for this call and stopped before the method returns.
+   * @return
+   *    the supplied entries with their keys set.
+   * @throws InterruptedException
+   *    if the current thread has been interrupted while waiting for the
+   *    computation to complete.
+   * @throws CancellationException
+   *    if the worker pool terminated or dropped the tasks before all entries
+   *    have been localized.
+   * @since 2.6.0
+   */
+  public List<UsmUserEntry> localizeKeys(Collection<UsmUserEntry> entries, int parallelism)
+      throws InterruptedException
+  {
+    int threads = Math.max(1, Math.min(parallelism, entries.size()));
+    ThreadPool threadPool = ThreadPool.create("KeyLocalization", threads);
+    try {
+      return localizeKeys(entries, threadPool, threads);
+    }
+    finally {
+      threadPool.stop();
+    }
+  }
+
+  /**
+   * Computes the localized authentication and privacy keys for a batch of
+   * USM user entries in parallel on the supplied worker pool as described by
+   * {@link #localizeKeys(Collection, int)}.
+   *
+   * @param entries
+   *    the USM user entries to compute the keys for.
+   * @param workerPool
+   *    the worker pool executing the computation.
+   * @param parallelism
+   *    the number of tasks to execute on the worker pool.
+   * @return
+   *    the supplied entries with their keys set.
+   * @throws InterruptedException
+   *    if the current thread has been interrupted while waiting for the
+   *    computation to complete.
+   * @throws CancellationException
+   *    if the worker pool terminated or dropped the tasks before all entries
+   *    have been localized.
+   * @since 2.6.0
+   */
+  public List<UsmUserEntry> localizeKeys(Collection<UsmUserEntry> entries,
+                                         WorkerPool workerPool, int parallelism)
+      throws InterruptedException
+  {
+    List<UsmUserEntry> result = new ArrayList<UsmUserEntry>(entries);
+    if (result.isEmpty()) {
+      return result;
+    }
+    LocalizedKeyCache cache = localizedKeyCache;
+    if (cache == null) {
+      // master keys are still computed only once per batch
+      cache = new LocalizedKeyCache(0, LocalizedKeyCache.DEFAULT_MAX_MASTER_KEYS);
+    }
+    int tasks = Math.max(1, Math.min(parallelism, result.size()));
+    KeyLocalizationBatch batch = new KeyLocalizationBatch(result, cache, tasks);
+    for (int i=0; i<tasks; i++) {
+      workerPool.execute(batch.new KeyLocalizationTask());
+    }
+    try {
+      batch.await();
+    }
+    catch (InterruptedException iex) {
+      batch.cancel();
+      throw iex;
+    }
+    return result;
+  }
+
+  /**
+   * Localizes a password for an engine ID. If the authentication protocol is
+   * an {@link AuthGeneric}, the master key of the password is taken from the
+   * supplied cache, so that only the localization step is computed.
+   */
+  private static byte[] localizeKey(LocalizedKeyCache cache, OID authProtocolID,
+                                    AuthenticationProtocol authProtocol,
+                                    OctetString passwordString, byte[] engineID) {
+    if ((cache != null) && (authProtocol instanceof AuthGeneric)) {
+      AuthGeneric authGeneric = (AuthGeneric) authProtocol;
+      return authGeneric.localizeKey(cache.getMasterKey(authProtocolID, authGeneric, passwordString),
+                                     engineID);
+    }
+    return authProtocol.passwordToKey(passwordString, engineID);
+  }
+
+  /**
+   * Gets the cache of master and localized keys used by the
+   * <code>passwordToKey</code> methods.
+   * @return
+   *    the key cache or <code>null</code> if keys are not cached.
+   * @since 2.6.0
+   */
+  public LocalizedKeyCache getLocalizedKeyCache() {
+    return localizedKeyCache;
+  }
+
+  /**
+   * Sets the cache of master and localized keys used by the
+   * <code>passwordToKey</code> methods. By default, a
+   * {@link LocalizedKeyCache} with default size limits is used.
+   * @param localizedKeyCache
+   *    a key cache or <code>null</code> to compute every key from its
+   *    password.
+   * @since 2.6.0
+   */
+  public void setLocalizedKeyCache(LocalizedKeyCache localizedKeyCache) {
+    this.localizedKeyCache = localizedKeyCache;
   }
 
   /**
@@ -383,5 +561,143 @@ public class SecurityProtocols implements Serializable {
     return truncatedNewKey;
   }
 
+
+  /**
+   * A <code>KeyLocalizationBatch</code> distributes the entries of a
+   * {@link #localizeKeys(Collection, WorkerPool, int)} call dynamically over
+   * its tasks.
+   */
+  private class KeyLocalizationBatch {
+
+    private final List<UsmUserEntry> entries;
+    private final LocalizedKeyCache cache;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final CountDownLatch finished;
+    private volatile boolean cancelled;
+    private volatile RuntimeException failure;
+
+    KeyLocalizationBatch(List<UsmUserEntry> entries, LocalizedKeyCache cache, int tasks) {
+      this.entries = entries;
+      this.cache = cache;
+      this.finished = new CountDownLatch(tasks);
+    }
+
+    void await() throws InterruptedException {
+      finished.await();
+      RuntimeException rex = failure;
+      if (rex != null) {
+        throw rex;
+      }
+      if (nextIndex.get() < entries.size()) {
+        throw new CancellationException("Key localization terminated after "+
+                                        nextIndex.get()+" of "+entries.size()+" entries");
+      }
+    }
+
+    void cancel() {
+      cancelled = true;
+    }
+
+    void localize(UsmUserEntry entry, Map<AuthGeneric, MessageDigest> digests) {
+      UsmUser user = entry.getUsmUser();
+      AuthenticationProtocol authProtocol = (user.getAuthenticationProtocol() == null) ?
+          null : authProtocols.get(user.getAuthenticationProtocol());
+      if (authProtocol == null) {
+        return;
+      }
+      if (user.isLocalized()) {
+        entry.setAuthenticationKey(user.getAuthenticationPassphrase().getValue());
+        if (user.getPrivacyPassphrase() != null) {
+          entry.setPrivacyKey(user.getPrivacyPassphrase().getValue());
+        }
+        return;
+      }
+      byte[] engineID = entry.getEngineID().getValue();
+      entry.setAuthenticationKey(localize(user.getAuthenticationProtocol(), authProtocol,
+                                          user.getAuthenticationPassphrase(),
+                                          engineID, digests));
+      PrivacyProtocol privProtocol = (user.getPrivacyProtocol() == null) ?
+          null : privProtocols.get(user.getPrivacyProtocol());
+      if (privProtocol != null) {
+        byte[] key = localize(user.getAuthenticationProtocol(), authProtocol,
+                              user.getPrivacyPassphrase(), engineID, digests);
+        entry.setPrivacyKey(adjustPrivacyKey(privProtocol, authProtocol, key,
+                                             user.getPrivacyPassphrase(), engineID));
+      }
+    }
+
+    private byte[] localize(OID authProtocolID, AuthenticationProtocol authProtocol,
+                            OctetString passwordString, byte[] engineID,
+                            Map<AuthGeneric, MessageDigest> digests) {
+      if (authProtocol instanceof AuthGeneric) {
+        AuthGeneric authGeneric = (AuthGeneric) authProtocol;
+        MessageDigest md = digests.get(authGeneric);
+        if (md == null) {
+          md = authGeneric.getDigestObject();
+          digests.put(authGeneric, md);
+        }
+        return authGeneric.localizeKey(md, cache.getMasterKey(authProtocolID, authGeneric, passwordString),
+                                       engineID);
+      }
+      return authProtocol.passwordToKey(passwordString, engineID);
+    }
+
+    /**
+     * A task localizing entries of its batch until all entries are done.
+     * A task terminated before it has been run leaves its entries to the
+     * other tasks of the batch, terminating a running task cancels the batch.
+     */
+    class KeyLocalizationTask implements WorkerTask {
+
+      private volatile Thread thread;
+      private final AtomicBoolean started = new AtomicBoolean();
+      private final CountDownLatch done = new CountDownLatch(1);
+
+      public void run() {
+        if (!started.compareAndSet(false, true)) {
+          return;
+        }
+        thread = Thread.currentThread();
+        Map<AuthGeneric, MessageDigest> digests = new HashMap<AuthGeneric, MessageDigest>();
+        try {
+          int i;
+          while (!cancelled && (i = nextIndex.getAndIncrement()) < entries.size()) {
+            localize(entries.get(i), digests);
+          }
+        }
+        catch (RuntimeException rex) {
+          logger.error("Key localization failed: "+rex.getMessage(), rex);
+          failure = rex;
+          cancelled = true;
+        }
+        finally {
+          thread = null;
+          done.countDown();
+          finished.countDown();
+        }
+      }
+
+      public void terminate() {
+        if (started.compareAndSet(false, true)) {
+          done.countDown();
+          finished.countDown();
+        }
+        else {
+          cancelled = true;
+        }
+      }
+
+      public void join() throws InterruptedException {
+        done.await();
+      }
+
+      public void interrupt() {
+        Thread t = thread;
+        if (t != null) {
+          t.interrupt();
+        }
+      }
+    }
+  }
 }
 
@@ -184,10 +184,13 @@ public class TSM extends SNMPv3SecurityModel  {
     }
     // SecurityParameters already set to zero length OctetString by MPv3.
     // Build Message without authentication
-    byte[] scopedPduBytes = buildMessageBuffer(scopedPDU);
+    ByteBuffer scopedPduBuffer = getMessageBufferView(scopedPDU);
     byte[] wholeMessage =
       buildWholeMessage(new Integer32(messageProcessingModel),
-                        scopedPduBytes, globalData, securityParameters);
+                        scopedPduBuffer.array(),
+                        scopedPduBuffer.arrayOffset() + scopedPduBuffer.position(),
+                        scopedPduBuffer.remaining(),
+                        globalData, securityParameters);
     ByteBuffer buf =
         (ByteBuffer)ByteBuffer.wrap(wholeMessage).position(wholeMessage.length);
     wholeMsg.setBuffer(buf);
@@ -23,6 +23,7 @@ import org.snmp4j.SNMP4JSettings;
 import org.snmp4j.TransportStateReference;
 import org.snmp4j.asn1.BER;
 import org.snmp4j.asn1.BER.MutableByte;
+import org.snmp4j.asn1.BERBufferPool;
 import org.snmp4j.asn1.BERInputStream;
 import org.snmp4j.asn1.BEROutputStream;
 import org.snmp4j.event.CounterEvent;
@@ -438,21 +439,14 @@ public class USM extends SNMPv3SecurityModel {
       }
       else {
         // get engineBoots, engineTime
-        OctetString secEngineID = new OctetString(securityEngineID);
-        UsmTimeEntry entry = timeTable.getTime(secEngineID);
-        if (entry == null) {
-          entry =
-              new UsmTimeEntry(secEngineID,
+        if (!timeTable.getEngineBootsAndTime(securityEngineID, usmSecurityParams)) {
+          UsmTimeEntry entry =
+              new UsmTimeEntry(new OctetString(securityEngineID),
                                usmSecurityParams.getAuthoritativeEngineBoots(),
                                usmSecurityParams.getAuthoritativeEngineTime());
 
           timeTable.addEntry(entry);
         }
-        else {
-          usmSecurityParams.setAuthoritativeEngineBoots(entry.getEngineBoots());
-          usmSecurityParams.setAuthoritativeEngineTime(entry.
-              getLatestReceivedTime());
-        }
       }
     }
 
@@ -461,7 +455,11 @@ public class USM extends SNMPv3SecurityModel {
       return SnmpConstants.SNMPv3_USM_UNSUPPORTED_SECURITY_LEVEL;
     }
 
-    byte[] scopedPduBytes = buildMessageBuffer(scopedPDU);
+    ByteBuffer scopedPduBuffer = getMessageBufferView(scopedPDU);
+    byte[] scopedPduBytes = scopedPduBuffer.array();
+    int scopedPduOffset = scopedPduBuffer.arrayOffset() + scopedPduBuffer.position();
+    int scopedPduLength = scopedPduBuffer.remaining();
+    ByteBuffer encryptedBuffer = null;
 
     if (securityLevel == SecurityLevel.AUTH_PRIV) {
       if (usmSecurityParams.getPrivacyProtocol() == null) {
@@ -476,7 +474,7 @@ public class USM extends SNMPv3SecurityModel {
       DecryptParams decryptParams = new DecryptParams();
       byte[] encryptedScopedPdu =
           usmSecurityParams.getPrivacyProtocol().
-          encrypt(scopedPduBytes, 0, scopedPduBytes.length,
+          encrypt(scopedPduBytes, scopedPduOffset, scopedPduLength,
                   usmSecurityParams.getPrivacyKey(),
                   usmSecurityParams.getAuthoritativeEngineBoots(),
                   usmSecurityParams.getAuthoritativeEngineTime(),
@@ -489,11 +487,13 @@ public class USM extends SNMPv3SecurityModel {
       }
       usmSecurityParams.setPrivacyParameters(new OctetString(decryptParams.
           array));
-      OctetString encryptedString = new OctetString(encryptedScopedPdu);
-      BEROutputStream os =
-          new BEROutputStream(ByteBuffer.allocate(encryptedString.getBERLength()));
-      encryptedString.encodeBER(os);
-      scopedPduBytes = os.getBuffer().array();
+      scopedPduLength = encryptedScopedPdu.length +
+          BER.getBERLengthOfLength(encryptedScopedPdu.length) + 1;
+      encryptedBuffer = BERBufferPool.getDefaultPool().acquire(scopedPduLength);
+      BEROutputStream os = new BEROutputStream(encryptedBuffer);
+      BER.encodeString(os, BER.OCTETSTRING, encryptedScopedPdu);
+      scopedPduBytes = encryptedBuffer.array();
+      scopedPduOffset = encryptedBuffer.arrayOffset();
     }
     else {
       logger.debug("RFC3414 §3.1.4.b Outgoing message is not encrypted");
@@ -509,7 +509,9 @@ public class USM extends SNMPv3SecurityModel {
       usmSecurityParams.setAuthenticationParameters(new OctetString(blank));
       wholeMessage =
           buildWholeMessage(new Integer32(snmpVersion),
-                            scopedPduBytes, globalData, usmSecurityParams);
+                            scopedPduBytes, scopedPduOffset, scopedPduLength,
+                            globalData, usmSecurityParams);
+      BERBufferPool.getDefaultPool().release(encryptedBuffer);
 
       int authParamsPos =
           usmSecurityParams.getAuthParametersPosition() +
@@ -540,7 +542,9 @@ public class USM extends SNMPv3SecurityModel {
       //build Message without authentication
       wholeMessage =
           buildWholeMessage(new Integer32(snmpVersion),
-                            scopedPduBytes, globalData, usmSecurityParams);
+                            scopedPduBytes, scopedPduOffset, scopedPduLength,
+                            globalData, usmSecurityParams);
+      BERBufferPool.getDefaultPool().release(encryptedBuffer);
     }
     ByteBuffer buf =
         (ByteBuffer)ByteBuffer.wrap(wholeMessage).position(wholeMessage.length);
@@ -946,6 +950,28 @@ public class USM extends SNMPv3SecurityModel {
     fireUsmUserChange(new UsmUserEvent(this, entry, UsmUserEvent.USER_ADDED));
   }
 
+  /**
+   * Adds an USM user localized for each of the supplied engine IDs. The
+   * master keys of the user's pass phrases are computed only once (see
+   * {@link SecurityProtocols#getLocalizedKeyCache()}), so that each
+   * additional engine ID only requires the localization step.
+   * @param userName
+   *    the user name of the {@code UsmUser} to add.
+   * @param engineIDs
+   *    the authoritative engine IDs to localize the user for.
+   * @param user
+   *    the {@code UsmUser} to add.
+   * @throws
+   *    IllegalArgumentException if an engine ID or the security name of the
+   *    user is invalid (see {@link #addUser(OctetString, OctetString, UsmUser)}).
+   * @since 2.6.0
+   */
+  public void addUser(OctetString userName, Collection<? extends OctetString> engineIDs, UsmUser user) {
+    for (OctetString engineID : engineIDs) {
+      addUser(userName, engineID, user);
+    }
+  }
+
   /**
    * Updates the USM user entry with the same engine ID and user name as the
    * supplied instance and fires an appropriate {@code UsmUserEvent}.
@@ -19,6 +19,8 @@
   _##########################################################################*/
 package org.snmp4j.security;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import org.snmp4j.smi.OctetString;
 
@@ -27,7 +29,7 @@ import org.snmp4j.smi.OctetString;
  * information associated with an engine ID.
  *
  * @author Frank Fock
- * @version 1.0
+ * @version 2.6.0
  */
 public class UsmTimeEntry implements Serializable {
 
@@ -37,6 +39,7 @@ public class UsmTimeEntry implements Serializable {
   private int engineBoots;
   private int timeDiff;
   private int latestReceivedTime;
+  private transient volatile long lastAccess = System.nanoTime();
 
   /**
    * Creates a time entry with engine ID, engine boots and time.
@@ -104,4 +107,30 @@ public class UsmTimeEntry implements Serializable {
     this.latestReceivedTime = engineTime;
     this.timeDiff = engineTime - (int)(System.nanoTime()/UsmTimeTable.TIME_PRECISION);
   }
+
+  /**
+   * Gets the time when the entry has been used last by a {@link UsmTimeTable}.
+   * @return
+   *    the {@link System#nanoTime()} of the last use, with a precision of
+   *    about one second.
+   */
+  long getLastAccess() {
+    return lastAccess;
+  }
+
+  /**
+   * Marks the entry as used.
+   * @param now
+   *    the current {@link System#nanoTime()}.
+   */
+  void touch(long now) {
+    if (now - lastAccess >= UsmTimeTable.TIME_PRECISION) {
+      lastAccess = now;
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    lastAccess = System.nanoTime();
+  }
 }
@@ -21,6 +21,10 @@ package org.snmp4j.security;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.snmp4j.log.*;
 import org.snmp4j.mp.*;
@@ -29,9 +33,18 @@ import org.snmp4j.smi.*;
 /**
  * The <code>UsmTimeTable</code> class is a singleton that stores USM user
  * information as part of the Local Configuration Datastore (LCD).
+ * <p>
+ * The time entries of remote engines are held in a concurrent map and can
+ * be read and updated by any number of threads without a table wide lock.
+ * Since v2.6.0, the number of remote entries is bounded (see
+ * {@link #setMaxEntries(int)}) and entries that have not been used for a
+ * configurable idle time can be expired (see {@link #setIdleTimeout(long)}).
+ * A removed entry is rediscovered with the next message exchanged with its
+ * engine. Use {@link #getEngineBootsAndTime(byte[], UsmSecurityParameters)}
+ * to read the time of an engine without creating objects.
  *
  * @author Frank Fock
- * @version 1.2
+ * @version 2.6.0
  */
 public class UsmTimeTable implements Serializable {
 
@@ -41,20 +54,45 @@ public class UsmTimeTable implements Serializable {
 
   static final long TIME_PRECISION = 1000000000L;
 
-  private Hashtable<Variable, UsmTimeEntry> table = new Hashtable<Variable, UsmTimeEntry>(10);
+  /**
+   * The default maximum number of remote engine time entries.
+   * @since 2.6.0
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+  private static final byte[] NO_ENGINE_ID = new byte[0];
+  private static final Comparator<AccessTime> LAST_ACCESS_ORDER = new Comparator<AccessTime>() {
+    @Override
+    public int compare(AccessTime o1, AccessTime o2) {
+      long diff = o1.lastAccess - o2.lastAccess;
+      return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+    }
+  };
+
+  private ConcurrentMap<Variable, UsmTimeEntry> table = new ConcurrentHashMap<Variable, UsmTimeEntry>(10);
   private long lastLocalTimeChange = System.nanoTime();
-  private UsmTimeEntry localTime;
+  private volatile UsmTimeEntry localTime;
+
+  private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+  private volatile long idleTimeoutNanos;
+  private volatile long lastExpiryCheck = System.nanoTime();
+  private final AtomicBoolean cleaningUp = new AtomicBoolean();
+  private final AtomicLong evictedEntries = new AtomicLong();
+  private final AtomicLong expiredEntries = new AtomicLong();
+  private transient ThreadLocal<OctetString> lookupKeys;
 
   public UsmTimeTable(OctetString localEngineID, int engineBoots) {
     setLocalTime(new UsmTimeEntry(localEngineID, engineBoots, 0));
   }
 
   public void addEntry(final UsmTimeEntry entry) {
+    entry.touch(System.nanoTime());
     table.put(entry.getEngineID(), entry);
+    removeExcessEntries();
   }
 
   public UsmTimeEntry getEntry(final OctetString engineID) {
-    return table.get(engineID);
+    return lookup(engineID, System.nanoTime());
   }
 
   public UsmTimeEntry getLocalTime() {
@@ -108,17 +146,276 @@ public class UsmTimeTable implements Serializable {
     return localTime.getEngineBoots();
   }
 
-  public synchronized UsmTimeEntry getTime(OctetString engineID) {
+  public UsmTimeEntry getTime(OctetString engineID) {
     if (localTime.getEngineID().equals(engineID)) {
       return getLocalTime();
     }
-    UsmTimeEntry found = table.get(engineID);
+    long now = System.nanoTime();
+    UsmTimeEntry found = lookup(engineID, now);
     if (found == null) {
       return null;
     }
-    return new UsmTimeEntry(engineID, found.getEngineBoots(),
-                            found.getTimeDiff() +
-                            (int) (System.nanoTime() / TIME_PRECISION));
+    synchronized (found) {
+      return new UsmTimeEntry(engineID, found.getEngineBoots(),
+                              found.getTimeDiff() + (int) (now / TIME_PRECISION));
+    }
+  }
+
+  /**
+   * Sets the authoritative engine boots and engine time of the supplied
+   * security parameters to the current values of the specified engine
+   * (local or remote) without creating any objects.
+   *
+   * @param engineID
+   *    the engine ID of the SNMP engine. The array must not be modified
+   *    while this method runs.
+   * @param securityParameters
+   *    the security parameters that receive the engine boots and time, if
+   *    the engine is known.
+   * @return
+   *    <code>true</code> if the engine is known and the security parameters
+   *    have been set, <code>false</code> if there is no (unexpired) entry for
+   *    the engine and the security parameters have not been modified.
+   * @since 2.6.0
+   */
+  public boolean getEngineBootsAndTime(byte[] engineID, UsmSecurityParameters securityParameters) {
+    UsmTimeEntry local = localTime;
+    if (local.getEngineID().equalsValue(engineID)) {
+      securityParameters.setAuthoritativeEngineBoots(local.getEngineBoots());
+      securityParameters.setAuthoritativeEngineTime(getEngineTime());
+      return true;
+    }
+    long now = System.nanoTime();
+    OctetString key = getLookupKey();
+    key.setValue(engineID);
+    try {
+      UsmTimeEntry found = lookup(key, now);
+      if (found == null) {
+        return false;
+      }
+      synchronized (found) {
+        securityParameters.setAuthoritativeEngineBoots(found.getEngineBoots());
+        securityParameters.setAuthoritativeEngineTime(found.getTimeDiff() + (int) (now / TIME_PRECISION));
+      }
+      return true;
+    }
+    finally {
+      key.setValue(NO_ENGINE_ID);
+    }
+  }
+
+  private OctetString getLookupKey() {
+    ThreadLocal<OctetString> keys = lookupKeys;
+    if (keys == null) {
+      keys = new ThreadLocal<OctetString>();
+      lookupKeys = keys;
+    }
+    OctetString key = keys.get();
+    if (key == null) {
+      key = new OctetString();
+      keys.set(key);
+    }
+    return key;
+  }
+
+  /**
+   * Gets the entry for an engine ID and marks it as used, unless it has expired.
+   * An expired entry is removed.
+   * @param engineID
+   *    the engine ID.
+   * @param now
+   *    the current {@link System#nanoTime()}.
+   * @return
+   *    the time entry or <code>null</code> if there is no unexpired entry.
+   */
+  private UsmTimeEntry lookup(OctetString engineID, long now) {
+    UsmTimeEntry entry = table.get(engineID);
+    if (entry != null) {
+      if (isExpired(entry, now)) {
+        if (table.remove(engineID, entry)) {
+          expiredEntries.incrementAndGet();
+        }
+        return null;
+      }
+      entry.touch(now);
+    }
+    return entry;
+  }
+
+  private boolean isExpired(UsmTimeEntry entry, long now) {
+    long idleTimeout = idleTimeoutNanos;
+    return (idleTimeout > 0) && (now - entry.getLastAccess() > idleTimeout);
+  }
+
+  /**
+   * Removes expired entries if the idle timeout has passed since the last
+   * check and the least recently used entries if there are more than
+   * {@link #getMaxEntries()} entries. Only one thread cleans up at a time.
+   */
+  private void removeExcessEntries() {
+    int max = maxEntries;
+    long now = System.nanoTime();
+    long idleTimeout = idleTimeoutNanos;
+    boolean expire = (idleTimeout > 0) && (now - lastExpiryCheck >= idleTimeout);
+    if ((!expire) && ((max <= 0) || (table.size() <= max))) {
+      return;
+    }
+    if (!cleaningUp.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      if (expire) {
+        lastExpiryCheck = now;
+        removeExpiredEntries(now);
+      }
+      if ((max > 0) && (table.size() > max)) {
+        // evict a tenth more than necessary to amortize the sort
+        // the access times are copied before sorting, because concurrent
+        // lookups update them and the sort requires a consistent order
+        List<AccessTime> entries = new ArrayList<AccessTime>(table.size());
+        for (UsmTimeEntry entry : table.values()) {
+          entries.add(new AccessTime(entry));
+        }
+        int excess = entries.size() - (max - max / 10);
+        if (excess > 0) {
+          Collections.sort(entries, LAST_ACCESS_ORDER);
+          int evicted = 0;
+          for (int i=0; i<excess; i++) {
+            UsmTimeEntry entry = entries.get(i).entry;
+            if (table.remove(entry.getEngineID(), entry)) {
+              evicted++;
+            }
+          }
+          evictedEntries.addAndGet(evicted);
+          if (logger.isDebugEnabled()) {
+            logger.debug("Evicted " + evicted + " least recently used engine time entries");
+          }
+        }
+      }
+    }
+    finally {
+      cleaningUp.set(false);
+    }
+  }
+
+  /**
+   * Removes all entries that have not been used for longer than the idle
+   * timeout. Entries are also expired lazily when they are looked up and
+   * the table checks for expired entries when new entries are added, so
+   * calling this method is only needed to release memory earlier.
+   *
+   * @return
+   *    the number of removed entries.
+   * @since 2.6.0
+   */
+  public int removeExpiredEntries() {
+    return removeExpiredEntries(System.nanoTime());
+  }
+
+  private int removeExpiredEntries(long now) {
+    if (idleTimeoutNanos <= 0) {
+      return 0;
+    }
+    int expired = 0;
+    for (Iterator<UsmTimeEntry> it = table.values().iterator(); it.hasNext(); ) {
+      UsmTimeEntry entry = it.next();
+      if (isExpired(entry, now) && table.remove(entry.getEngineID(), entry)) {
+        expired++;
+      }
+    }
+    if (expired > 0) {
+      expiredEntries.addAndGet(expired);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Removed " + expired + " expired engine time entries");
+      }
+    }
+    return expired;
+  }
+
+  /**
+   * Sets the maximum number of remote engine time entries. If a new entry
+   * exceeds this limit, the least recently used entries are evicted until
+   * the table is 10% below the limit.
+   *
+   * @param maxEntries
+   *    the maximum number of entries or zero for no limit. The default is
+   *    {@link #DEFAULT_MAX_ENTRIES}.
+   * @since 2.6.0
+   */
+  public void setMaxEntries(int maxEntries) {
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("Maximum number of entries must be >= 0");
+    }
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Gets the maximum number of remote engine time entries.
+   * @return
+   *    the maximum number of entries or zero if the table is not bounded.
+   * @since 2.6.0
+   */
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * Sets the time after which an entry that has neither been used for an
+   * outgoing nor for an incoming message expires. The use of an entry is
+   * recorded with a precision of about one second.
+   *
+   * @param idleTimeoutMillis
+   *    the idle timeout in milliseconds or zero (the default) if entries
+   *    never expire.
+   * @since 2.6.0
+   */
+  public void setIdleTimeout(long idleTimeoutMillis) {
+    if (idleTimeoutMillis < 0) {
+      throw new IllegalArgumentException("Idle timeout must be >= 0");
+    }
+    this.idleTimeoutNanos = idleTimeoutMillis * 1000000L;
+  }
+
+  /**
+   * Gets the idle timeout of entries.
+   * @return
+   *    the idle timeout in milliseconds or zero if entries do not expire.
+   * @since 2.6.0
+   */
+  public long getIdleTimeout() {
+    return idleTimeoutNanos / 1000000L;
+  }
+
+  /**
+   * Gets the number of remote engine time entries.
+   * @return
+   *    the number of entries (including expired entries not removed yet).
+   * @since 2.6.0
+   */
+  public int size() {
+    return table.size();
+  }
+
+  /**
+   * Gets the number of entries that have been evicted because the table
+   * exceeded its maximum size.
+   * @return
+   *    the number of evicted entries.
+   * @since 2.6.0
+   */
+  public long getEvictedEntryCount() {
+    return evictedEntries.get();
+  }
+
+  /**
+   * Gets the number of entries that have been removed because they were not
+   * used within the idle timeout.
+   * @return
+   *    the number of expired entries.
+   * @since 2.6.0
+   */
+  public long getExpiredEntryCount() {
+    return expiredEntries.get();
   }
 
   /**
@@ -130,22 +427,26 @@ public class UsmTimeTable implements Serializable {
     table.remove(engineID);
   }
 
-  public synchronized int checkEngineID(OctetString engineID,
-                                        boolean discoveryAllowed,
-                                        int engineBoots,
-                                        int engineTime ) {
-    if (table.get(engineID) != null) {
+  public int checkEngineID(OctetString engineID,
+                           boolean discoveryAllowed,
+                           int engineBoots,
+                           int engineTime ) {
+    if (lookup(engineID, System.nanoTime()) != null) {
       return SnmpConstants.SNMPv3_USM_OK;
     }
     else if (discoveryAllowed) {
-      addEntry(new UsmTimeEntry(engineID, engineBoots, engineTime));
+      if (table.putIfAbsent(engineID, new UsmTimeEntry(engineID, engineBoots, engineTime)) == null) {
+        removeExcessEntries();
+      }
       return SnmpConstants.SNMPv3_USM_OK;
     }
     return SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID;
   }
 
-  public synchronized int checkTime(final UsmTimeEntry entry) {
-    int now = (int) (System.nanoTime() / TIME_PRECISION);
+  public int checkTime(final UsmTimeEntry entry) {
+    long nanos = System.nanoTime();
+    int now = (int) (nanos / TIME_PRECISION);
+    UsmTimeEntry localTime = this.localTime;
     if (localTime.getEngineID().equals(entry.getEngineID())) {
       /* Entry found, we are authoritative */
       if ((localTime.getEngineBoots() == 2147483647) ||
@@ -170,39 +471,55 @@ public class UsmTimeTable implements Serializable {
       }
     }
     else {
-      UsmTimeEntry time = table.get(entry.getEngineID());
+      UsmTimeEntry time = lookup(entry.getEngineID(), nanos);
       if (time == null) {
         return SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID;
       }
-      // RFC 3414 section 3.2.7 b) 1):
-      if ((entry.getEngineBoots() > time.getEngineBoots()) ||
-          ((entry.getEngineBoots() == time.getEngineBoots()) &&
-           (entry.getLatestReceivedTime() > time.getLatestReceivedTime()))) {
-          /* time ok, update values */
-        time.setEngineBoots(entry.getEngineBoots());
-        time.setLatestReceivedTime(entry.getLatestReceivedTime());
-        time.setTimeDiff(entry.getLatestReceivedTime() - now);
-      }
-      // RFC 3414 section 3.2.7 b) 2):
-      if ((entry.getEngineBoots() < time.getEngineBoots()) ||
-          ((entry.getEngineBoots() == time.getEngineBoots()) &&
-           (time.getLatestReceivedTime() > entry.getLatestReceivedTime() + 150)) ||
-          (time.getEngineBoots() == 2147483647)) {
-        if (logger.isDebugEnabled()) {
-          logger.debug(
-              "CheckTime: received message outside time window (non authoritative)");
+      synchronized (time) {
+        // RFC 3414 section 3.2.7 b) 1):
+        if ((entry.getEngineBoots() > time.getEngineBoots()) ||
+            ((entry.getEngineBoots() == time.getEngineBoots()) &&
+             (entry.getLatestReceivedTime() > time.getLatestReceivedTime()))) {
+            /* time ok, update values */
+          time.setEngineBoots(entry.getEngineBoots());
+          time.setLatestReceivedTime(entry.getLatestReceivedTime());
+          time.setTimeDiff(entry.getLatestReceivedTime() - now);
         }
-        return SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW;
-      }
-      else {
-        if (logger.isDebugEnabled()) {
-          logger.debug("CheckTime: time ok (non authoritative)");
+        // RFC 3414 section 3.2.7 b) 2):
+        if ((entry.getEngineBoots() < time.getEngineBoots()) ||
+            ((entry.getEngineBoots() == time.getEngineBoots()) &&
+             (time.getLatestReceivedTime() > entry.getLatestReceivedTime() + 150)) ||
+            (time.getEngineBoots() == 2147483647)) {
+          if (logger.isDebugEnabled()) {
+            logger.debug(
+                "CheckTime: received message outside time window (non authoritative)");
+          }
+          return SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW;
+        }
+        else {
+          if (logger.isDebugEnabled()) {
+            logger.debug("CheckTime: time ok (non authoritative)");
+          }
+          return SnmpConstants.SNMPv3_USM_OK;
         }
-        return SnmpConstants.SNMPv3_USM_OK;
       }
     }
   }
 
   public void reset() {
   }
+
+  /**
+   * The last access time of an entry at the time an eviction started.
+   */
+  private static final class AccessTime {
+
+    private final long lastAccess;
+    private final UsmTimeEntry entry;
+
+    AccessTime(UsmTimeEntry entry) {
+      this.entry = entry;
+      this.lastAccess = entry.getLastAccess();
+    }
+  }
 }
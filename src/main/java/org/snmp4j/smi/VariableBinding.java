@@ -204,6 +204,22 @@ public class VariableBinding
     variable.encodeBER(outputStream);
   }
 
+  /**
+   * Encodes this variable binding with the supplied reverse encoder, i.e. the
+   * encoding is prepended to the encoder's content.
+   * @param encoder
+   *    a <code>BERReverseEncoder</code>.
+   * @throws IOException
+   *    if the variable binding cannot be encoded.
+   * @since 2.6.0
+   */
+  public final void encodeBERReverse(BERReverseEncoder encoder) throws IOException {
+    int end = encoder.getLength();
+    encoder.encode(variable);
+    encoder.encode(oid);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.getLength() - end);
+  }
+
   /**
    * Gets a string representation of this variable binding using the
    * {@link VariableTextFormat} configured by {@link SNMP4JSettings}.
@@ -0,0 +1,163 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - LatencyHistogram.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>LatencyHistogram</code> records latencies in logarithmic buckets
+ * with 16 linear sub-buckets per power of two, which bounds the relative
+ * error of percentiles to about 6%. Recording is lock-free and can be done
+ * concurrently from any number of threads. Values are recorded in
+ * microseconds.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1);
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   * @param nanos
+   *    the latency in nanoseconds.
+   */
+  public void recordNanos(long nanos) {
+    record(Math.max(0, nanos / 1000));
+  }
+
+  /**
+   * Records a latency.
+   * @param micros
+   *    the latency in microseconds.
+   */
+  public void record(long micros) {
+    counts.incrementAndGet(getBucket(micros));
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+    long m;
+    while (micros > (m = max.get())) {
+      if (max.compareAndSet(m, micros)) {
+        break;
+      }
+    }
+  }
+
+  static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int)value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+  }
+
+  static long getBucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Gets the mean latency.
+   * @return
+   *    the mean latency in microseconds or zero if nothing has been recorded.
+   */
+  public double getMean() {
+    long n = count.get();
+    return (n == 0) ? 0.0d : (double)sum.get() / n;
+  }
+
+  /**
+   * Gets the maximum latency.
+   * @return
+   *    the maximum latency in microseconds.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Gets a percentile of the recorded latencies.
+   * @param percentile
+   *    a percentile between 0.0 and 100.0.
+   * @return
+   *    the upper bound of the bucket containing the percentile in
+   *    microseconds (but not greater than {@link #getMax()}), or zero if
+   *    nothing has been recorded.
+   */
+  public long getPercentile(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[BUCKETS];
+    for (int i=0; i<BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(total * Math.min(100.0d, percentile) / 100.0d));
+    long n = 0;
+    for (int i=0; i<BUCKETS; i++) {
+      n += snapshot[i];
+      if (n >= rank) {
+        return Math.min(getBucketUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Removes all recorded values.
+   */
+  public void reset() {
+    for (int i=0; i<BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("n=%d mean=%.1fus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus",
+                         getCount(), getMean(), getPercentile(50), getPercentile(90),
+                         getPercentile(99), getPercentile(99.9), getMax());
+  }
+}
@@ -0,0 +1,430 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - LoadGenerator.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.test;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * The <code>LoadGenerator</code> drives a {@link Snmp} session with
+ * asynchronous requests at a constant target rate and measures the achieved
+ * throughput, the response latency distribution, and the garbage collection
+ * activity. Requests are distributed round robin over a list of targets,
+ * typically the agents of a {@link SimulatedAgentFarm}.
+ * <p>
+ * The generator follows an open model: requests are scheduled at fixed
+ * intervals independent of the response times. If the configured maximum
+ * of outstanding requests is reached, scheduled requests are skipped and
+ * counted as throttled, so that an overloaded manager shows up in the report
+ * instead of silently lowering the rate.
+ * <p>
+ * The {@link #main(String[])} method runs a complete test against an agent
+ * farm, for example:
+ * <pre>
+ *   java -cp snmp4j.jar org.snmp4j.test.LoadGenerator -agents 10000 -rate 20000 -duration 30
+ * </pre>
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class LoadGenerator implements ResponseListener {
+
+  private static final long DRAIN_MARGIN_MILLIS = 1000;
+
+  private final Snmp snmp;
+  private final List<? extends Target> targets;
+
+  private int pduType = PDU.GET;
+  private OID[] oids = new OID[] { SyntheticMib.SYS_UP_TIME, SyntheticMib.SYS_NAME };
+  private int maxRepetitions = 10;
+  private int maxOutstanding = 10000;
+
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private final AtomicLong responses = new AtomicLong();
+  private final AtomicLong errorResponses = new AtomicLong();
+  private final AtomicLong tooBigResponses = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong sendErrors = new AtomicLong();
+  private final LatencyHistogram latencies = new LatencyHistogram();
+
+  /**
+   * Creates a load generator.
+   * @param snmp
+   *    a listening SNMP session.
+   * @param targets
+   *    the targets to send requests to (round robin).
+   */
+  public LoadGenerator(Snmp snmp, List<? extends Target> targets) {
+    if (targets.isEmpty()) {
+      throw new IllegalArgumentException("At least one target is required");
+    }
+    this.snmp = snmp;
+    this.targets = targets;
+  }
+
+  /**
+   * Sets the type of the requests.
+   * @param pduType
+   *    {@link PDU#GET} (default), {@link PDU#GETNEXT}, or {@link PDU#GETBULK}.
+   */
+  public void setPduType(int pduType) {
+    this.pduType = pduType;
+  }
+
+  public int getPduType() {
+    return pduType;
+  }
+
+  /**
+   * Sets the OIDs requested with each request.
+   * @param oids
+   *    the OIDs of the variable bindings (default is <code>sysUpTime.0</code>
+   *    and <code>sysName.0</code>).
+   */
+  public void setOids(OID[] oids) {
+    this.oids = oids;
+  }
+
+  public OID[] getOids() {
+    return oids;
+  }
+
+  public void setMaxRepetitions(int maxRepetitions) {
+    this.maxRepetitions = maxRepetitions;
+  }
+
+  public int getMaxRepetitions() {
+    return maxRepetitions;
+  }
+
+  /**
+   * Sets the maximum number of requests waiting for a response.
+   * @param maxOutstanding
+   *    the maximum of outstanding requests (default is 10000).
+   */
+  public void setMaxOutstanding(int maxOutstanding) {
+    this.maxOutstanding = maxOutstanding;
+  }
+
+  public int getMaxOutstanding() {
+    return maxOutstanding;
+  }
+
+  /**
+   * Sends requests at the supplied rate for the supplied duration and waits
+   * until all requests have been answered or timed out.
+   * @param rate
+   *    the target rate in requests per second.
+   * @param durationMillis
+   *    the time to send requests in milliseconds.
+   * @return
+   *    the report of this run.
+   * @throws InterruptedException
+   *    if the calling thread is interrupted while waiting for outstanding
+   *    responses.
+   */
+  public LoadReport run(int rate, long durationMillis) throws InterruptedException {
+    if (rate < 1) {
+      throw new IllegalArgumentException("Rate must be > 0");
+    }
+    reset();
+    long gcCountBefore = getGcCount();
+    long gcTimeBefore = getGcTime();
+    long heapUsedBefore = getHeapUsed();
+    long intervalNanos = 1000000000L / rate;
+    long start = System.nanoTime();
+    long end = start + durationMillis * 1000000L;
+    long next = start;
+    long sent = 0;
+    long throttled = 0;
+    int targetIndex = 0;
+    long maxTimeout = 0;
+    while (next < end) {
+      long delay = next - System.nanoTime();
+      if (delay > 0) {
+        LockSupport.parkNanos(delay);
+        continue;
+      }
+      next += intervalNanos;
+      if (outstanding.get() >= maxOutstanding) {
+        throttled++;
+        continue;
+      }
+      Target target = targets.get(targetIndex);
+      targetIndex = (targetIndex + 1) % targets.size();
+      maxTimeout = Math.max(maxTimeout, target.getTimeout() * (target.getRetries() + 1));
+      outstanding.incrementAndGet();
+      try {
+        snmp.send(createRequest(target), target, System.nanoTime(), this);
+        sent++;
+      }
+      catch (IOException iox) {
+        outstanding.decrementAndGet();
+        sendErrors.incrementAndGet();
+      }
+    }
+    long drainEnd = System.currentTimeMillis() + maxTimeout + DRAIN_MARGIN_MILLIS;
+    while ((outstanding.get() > 0) && (System.currentTimeMillis() < drainEnd)) {
+      Thread.sleep(10);
+    }
+    long duration = (System.nanoTime() - start) / 1000000L;
+    return new LoadReport(rate, duration, sent, throttled,
+                          responses.get(), errorResponses.get(), tooBigResponses.get(),
+                          timeouts.get(), sendErrors.get(), latencies,
+                          getGcCount() - gcCountBefore, getGcTime() - gcTimeBefore,
+                          heapUsedBefore, getHeapUsed());
+  }
+
+  private void reset() {
+    outstanding.set(0);
+    responses.set(0);
+    errorResponses.set(0);
+    tooBigResponses.set(0);
+    timeouts.set(0);
+    sendErrors.set(0);
+    latencies.reset();
+  }
+
+  protected PDU createRequest(Target target) {
+    PDU pdu;
+    if (target.getVersion() == SnmpConstants.version1) {
+      pdu = new PDUv1();
+      pdu.setType((pduType == PDU.GETBULK) ? PDU.GETNEXT : pduType);
+    }
+    else {
+      pdu = new PDU();
+      pdu.setType(pduType);
+      if (pduType == PDU.GETBULK) {
+        pdu.setMaxRepetitions(maxRepetitions);
+      }
+    }
+    for (OID oid : oids) {
+      pdu.add(new VariableBinding(oid));
+    }
+    return pdu;
+  }
+
+  public void onResponse(ResponseEvent event) {
+    // cancel the request to free its resources in the session immediately
+    ((Snmp)event.getSource()).cancel(event.getRequest(), this);
+    outstanding.decrementAndGet();
+    PDU response = event.getResponse();
+    if (response == null) {
+      if (event.getError() != null) {
+        sendErrors.incrementAndGet();
+      }
+      else {
+        timeouts.incrementAndGet();
+      }
+      return;
+    }
+    latencies.recordNanos(System.nanoTime() - (Long)event.getUserObject());
+    if (response.getErrorStatus() == PDU.tooBig) {
+      tooBigResponses.incrementAndGet();
+      errorResponses.incrementAndGet();
+    }
+    else if (response.getErrorStatus() != PDU.noError) {
+      errorResponses.incrementAndGet();
+    }
+    else {
+      responses.incrementAndGet();
+    }
+  }
+
+  private static long getGcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long getGcTime() {
+    long time = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      time += Math.max(0, gc.getCollectionTime());
+    }
+    return time;
+  }
+
+  private static long getHeapUsed() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static void printUsage() {
+    System.out.println("Usage: LoadGenerator [options]");
+    System.out.println("  -agents <n>          number of simulated agents (default 1000)");
+    System.out.println("  -rate <n>            requests per second (default 10000)");
+    System.out.println("  -duration <s>        seconds to send requests (default 10)");
+    System.out.println("  -transport <t>       memory (default) or udp");
+    System.out.println("  -port <n>            first agent port for udp (default 20000)");
+    System.out.println("  -latency <min-max>   agent response latency in ms (default 0-0)");
+    System.out.println("  -loss <r>            ratio of lost requests (default 0.0)");
+    System.out.println("  -toobig <n>          max. variable bindings per response (default 0 = no limit)");
+    System.out.println("  -pdu <t>             get (default), getnext, or getbulk");
+    System.out.println("  -version <v>         1 or 2c (default)");
+    System.out.println("  -timeout <ms>        request timeout (default 1000)");
+    System.out.println("  -retries <n>         request retries (default 0)");
+    System.out.println("  -outstanding <n>     max. outstanding requests (default 10000)");
+    System.out.println("  -threads <n>         agent farm threads (default 2)");
+    System.out.println("  -interfaces <n>      rows of the synthetic ifTable (default 10)");
+  }
+
+  public static void main(String[] args) throws Exception {
+    int agents = 1000;
+    int rate = 10000;
+    long duration = 10;
+    boolean udp = false;
+    int port = 20000;
+    long minLatency = 0;
+    long maxLatency = 0;
+    double loss = 0.0d;
+    int tooBig = 0;
+    int pduType = PDU.GET;
+    int version = SnmpConstants.version2c;
+    long timeout = 1000;
+    int retries = 0;
+    int outstanding = 10000;
+    int threads = 2;
+    int interfaces = 10;
+    try {
+      for (int i=0; i<args.length; i++) {
+        String option = args[i];
+        if ("-help".equals(option) || "-h".equals(option)) {
+          printUsage();
+          return;
+        }
+        String value = args[++i];
+        if ("-agents".equals(option)) {
+          agents = Integer.parseInt(value);
+        }
+        else if ("-rate".equals(option)) {
+          rate = Integer.parseInt(value);
+        }
+        else if ("-duration".equals(option)) {
+          duration = Long.parseLong(value);
+        }
+        else if ("-transport".equals(option)) {
+          udp = "udp".equalsIgnoreCase(value);
+        }
+        else if ("-port".equals(option)) {
+          port = Integer.parseInt(value);
+        }
+        else if ("-latency".equals(option)) {
+          int dash = value.indexOf('-');
+          minLatency = Long.parseLong((dash < 0) ? value : value.substring(0, dash));
+          maxLatency = (dash < 0) ? minLatency : Long.parseLong(value.substring(dash+1));
+        }
+        else if ("-loss".equals(option)) {
+          loss = Double.parseDouble(value);
+        }
+        else if ("-toobig".equals(option)) {
+          tooBig = Integer.parseInt(value);
+        }
+        else if ("-pdu".equals(option)) {
+          pduType = PDU.getTypeFromString(value.toUpperCase());
+        }
+        else if ("-version".equals(option)) {
+          version = "1".equals(value) ? SnmpConstants.version1 : SnmpConstants.version2c;
+        }
+        else if ("-timeout".equals(option)) {
+          timeout = Long.parseLong(value);
+        }
+        else if ("-retries".equals(option)) {
+          retries = Integer.parseInt(value);
+        }
+        else if ("-outstanding".equals(option)) {
+          outstanding = Integer.parseInt(value);
+        }
+        else if ("-threads".equals(option)) {
+          threads = Integer.parseInt(value);
+        }
+        else if ("-interfaces".equals(option)) {
+          interfaces = Integer.parseInt(value);
+        }
+        else {
+          throw new IllegalArgumentException("Unknown option "+option);
+        }
+      }
+    }
+    catch (RuntimeException rex) {
+      System.err.println("Invalid arguments: "+rex.getMessage());
+      printUsage();
+      System.exit(1);
+    }
+    SimulatedAgentFarm farm =
+        new SimulatedAgentFarm(agents, new SyntheticMib(interfaces), threads, 100000);
+    farm.setLatency(minLatency, maxLatency);
+    farm.setLossRate(loss);
+    farm.setMaxResponseVariableBindings(tooBig);
+    TransportMapping<UdpAddress> transport;
+    if (udp) {
+      InetAddress loopback = InetAddress.getByName("127.0.0.1");
+      farm.listenUdp(loopback, port);
+      transport = new DefaultUdpTransportMapping(new UdpAddress(loopback, 0));
+    }
+    else {
+      transport = farm.createLoopbackTransport(new UdpAddress("127.0.0.1/16100"));
+    }
+    Snmp snmp = new Snmp(transport);
+    snmp.listen();
+    List<CommunityTarget> targets = new ArrayList<CommunityTarget>(agents);
+    for (int i=0; i<agents; i++) {
+      CommunityTarget target = new CommunityTarget(farm.getAgentAddress(i), new OctetString("public"));
+      target.setVersion(version);
+      target.setTimeout(timeout);
+      target.setRetries(retries);
+      targets.add(target);
+    }
+    LoadGenerator generator = new LoadGenerator(snmp, targets);
+    generator.setPduType(pduType);
+    generator.setMaxOutstanding(outstanding);
+    System.out.println("Running "+duration+"s against "+agents+" agents ("+
+                       (udp ? "udp" : "memory")+")...");
+    LoadReport report = generator.run(rate, duration * 1000);
+    System.out.println(report);
+    System.out.println("agents:       "+farm);
+    snmp.close();
+    farm.close();
+  }
+}
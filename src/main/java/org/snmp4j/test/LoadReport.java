@@ -0,0 +1,184 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - LoadReport.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.test;
+
+/**
+ * The <code>LoadReport</code> summarizes a run of the {@link LoadGenerator}:
+ * the achieved throughput, the outcome of the requests, the latency
+ * distribution, and the garbage collection activity during the run.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class LoadReport {
+
+  private final int targetRate;
+  private final long durationMillis;
+  private final long sent;
+  private final long throttled;
+  private final long responses;
+  private final long errorResponses;
+  private final long tooBigResponses;
+  private final long timeouts;
+  private final long sendErrors;
+  private final LatencyHistogram latencies;
+  private final long gcCount;
+  private final long gcTimeMillis;
+  private final long heapUsedBefore;
+  private final long heapUsedAfter;
+
+  LoadReport(int targetRate, long durationMillis, long sent, long throttled,
+             long responses, long errorResponses, long tooBigResponses,
+             long timeouts, long sendErrors, LatencyHistogram latencies,
+             long gcCount, long gcTimeMillis,
+             long heapUsedBefore, long heapUsedAfter) {
+    this.targetRate = targetRate;
+    this.durationMillis = durationMillis;
+    this.sent = sent;
+    this.throttled = throttled;
+    this.responses = responses;
+    this.errorResponses = errorResponses;
+    this.tooBigResponses = tooBigResponses;
+    this.timeouts = timeouts;
+    this.sendErrors = sendErrors;
+    this.latencies = latencies;
+    this.gcCount = gcCount;
+    this.gcTimeMillis = gcTimeMillis;
+    this.heapUsedBefore = heapUsedBefore;
+    this.heapUsedAfter = heapUsedAfter;
+  }
+
+  /**
+   * Gets the requested send rate.
+   * @return
+   *    the target rate in requests per second.
+   */
+  public int getTargetRate() {
+    return targetRate;
+  }
+
+  /**
+   * Gets the time from the first request until all requests were answered
+   * or timed out.
+   * @return
+   *    the duration in milliseconds.
+   */
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public long getSent() {
+    return sent;
+  }
+
+  /**
+   * Gets the number of requests not sent because the maximum number of
+   * outstanding requests had been reached.
+   * @return
+   *    the number of skipped requests.
+   */
+  public long getThrottled() {
+    return throttled;
+  }
+
+  /**
+   * Gets the number of responses without error status.
+   * @return
+   *    the number of successful responses.
+   */
+  public long getResponses() {
+    return responses;
+  }
+
+  /**
+   * Gets the number of responses with an error status, including
+   * <code>tooBig</code>.
+   * @return
+   *    the number of error responses.
+   */
+  public long getErrorResponses() {
+    return errorResponses;
+  }
+
+  public long getTooBigResponses() {
+    return tooBigResponses;
+  }
+
+  public long getTimeouts() {
+    return timeouts;
+  }
+
+  public long getSendErrors() {
+    return sendErrors;
+  }
+
+  /**
+   * Gets the achieved throughput.
+   * @return
+   *    the number of responses (with or without error) per second.
+   */
+  public double getThroughput() {
+    return (durationMillis == 0) ? 0.0d :
+        (responses + errorResponses) * 1000.0d / durationMillis;
+  }
+
+  /**
+   * Gets the latency distribution of all responses.
+   * @return
+   *    the latency histogram.
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  public long getGcCount() {
+    return gcCount;
+  }
+
+  public long getGcTimeMillis() {
+    return gcTimeMillis;
+  }
+
+  public long getHeapUsedBefore() {
+    return heapUsedBefore;
+  }
+
+  public long getHeapUsedAfter() {
+    return heapUsedAfter;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "target rate:  %d req/s%n" +
+        "duration:     %d ms%n" +
+        "sent:         %d (throttled %d, send errors %d)%n" +
+        "responses:    %d (errors %d, tooBig %d, timeouts %d)%n" +
+        "throughput:   %.1f resp/s%n" +
+        "latency:      %s%n" +
+        "gc:           %d collections, %d ms%n" +
+        "heap used:    %d KB before, %d KB after",
+        targetRate, durationMillis, sent, throttled, sendErrors,
+        responses, errorResponses, tooBigResponses, timeouts,
+        getThroughput(), latencies, gcCount, gcTimeMillis,
+        heapUsedBefore / 1024, heapUsedAfter / 1024);
+  }
+}
@@ -0,0 +1,181 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - LoopbackTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.AbstractTransportMapping;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The <code>LoopbackTransportMapping</code> connects a manager
+ * {@link org.snmp4j.Snmp} session with the agents of a
+ * {@link SimulatedAgentFarm} in memory. Requests are handed to the farm
+ * directly, responses are queued and dispatched by a single listen thread
+ * like received UDP datagrams. No sockets are used, so the number of agents
+ * is not limited by ports or file descriptors.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class LoopbackTransportMapping extends AbstractTransportMapping<UdpAddress> {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(LoopbackTransportMapping.class);
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private final SimulatedAgentFarm farm;
+  private final UdpAddress listenAddress;
+  private final BlockingQueue<Message> incoming = new LinkedBlockingQueue<Message>();
+  private volatile boolean listening;
+  private WorkerTask listenThread;
+  private long sessionID = 0;
+
+  LoopbackTransportMapping(SimulatedAgentFarm farm, UdpAddress listenAddress) {
+    this.farm = farm;
+    this.listenAddress = listenAddress;
+  }
+
+  @Override
+  public Class<? extends Address> getSupportedAddressClass() {
+    return UdpAddress.class;
+  }
+
+  @Override
+  public UdpAddress getListenAddress() {
+    return listenAddress;
+  }
+
+  @Override
+  public void sendMessage(final UdpAddress address, byte[] message,
+                          TransportStateReference tmStateReference) throws IOException {
+    boolean delivered =
+        farm.deliver(address, message, new SimulatedAgentFarm.ResponseChannel() {
+          public void sendResponse(byte[] response) {
+            if (listening) {
+              incoming.add(new Message(address, response));
+            }
+          }
+        });
+    if (!delivered && logger.isDebugEnabled()) {
+      logger.debug("No simulated agent at "+address+", message discarded");
+    }
+  }
+
+  @Override
+  public synchronized void listen() throws IOException {
+    if (listening) {
+      throw new IOException("Transport mapping is already listening");
+    }
+    listening = true;
+    sessionID++;
+    listenThread = SNMP4JSettings.getThreadFactory().createWorkerThread(
+        "LoopbackTransportMapping_"+listenAddress, new Listener(), true);
+    listenThread.run();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    listening = false;
+    if (listenThread != null) {
+      listenThread.terminate();
+      try {
+        listenThread.join();
+      }
+      catch (InterruptedException iex) {
+        Thread.currentThread().interrupt();
+      }
+      listenThread = null;
+    }
+    incoming.clear();
+  }
+
+  @Override
+  public boolean isListening() {
+    return listening;
+  }
+
+  /**
+   * Gets the number of received responses not yet dispatched.
+   * @return
+   *    the size of the receive queue.
+   */
+  public int getReceiveQueueSize() {
+    return incoming.size();
+  }
+
+  private class Listener implements WorkerTask {
+
+    private volatile boolean stop;
+
+    public void run() {
+      while (!stop) {
+        Message message;
+        try {
+          message = incoming.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException iex) {
+          break;
+        }
+        if (message != null) {
+          TransportStateReference stateReference =
+              new TransportStateReference(LoopbackTransportMapping.this, message.source, null,
+                                          SecurityLevel.undefined, SecurityLevel.undefined,
+                                          false, sessionID);
+          fireProcessMessage(message.source, ByteBuffer.wrap(message.payload), stateReference);
+        }
+      }
+    }
+
+    public void terminate() {
+      stop = true;
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+      stop = true;
+    }
+  }
+
+  private static class Message {
+    private final UdpAddress source;
+    private final byte[] payload;
+
+    Message(UdpAddress source, byte[] payload) {
+      this.source = source;
+      this.payload = payload;
+    }
+  }
+}
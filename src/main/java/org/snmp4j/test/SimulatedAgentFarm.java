@@ -0,0 +1,763 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - SimulatedAgentFarm.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.util.BoundedWorkerPool;
+import org.snmp4j.util.CommonTimer;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The <code>SimulatedAgentFarm</code> simulates a large number of lightweight
+ * SNMPv1 and SNMPv2c agents for throughput and scalability testing of the
+ * manager side of SNMP4J. All agents share a single {@link SyntheticMib}
+ * (only <code>sysName</code> and <code>sysUpTime</code> are agent specific)
+ * and answer GET, GETNEXT, and GETBULK requests. The agents do not use the
+ * SNMP4J message dispatcher: requests are decoded and responses encoded
+ * directly, so that the farm consumes as little CPU as possible compared to
+ * the manager under test.
+ * <p>
+ * The agents can be reached in two ways:
+ * <ul>
+ * <li>In memory through a {@link LoopbackTransportMapping} created by
+ * {@link #createLoopbackTransport(UdpAddress)}. Agent <code>i</code> then has
+ * the virtual address returned by {@link #getAgentAddress(int)}. This mode
+ * scales to many thousands of agents.</li>
+ * <li>Through loopback UDP after {@link #listenUdp(InetAddress, int)}. Each
+ * agent listens on its own port, so the number of agents is limited by the
+ * available ports and file descriptors.</li>
+ * </ul>
+ * The behavior of the agents is configurable: a response latency range,
+ * a loss rate for requests that are silently dropped, and a maximum number of
+ * variable bindings per response. GET and GETNEXT requests exceeding that
+ * limit are answered with <code>tooBig</code>, GETBULK responses are
+ * truncated as a real agent would do.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class SimulatedAgentFarm {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(SimulatedAgentFarm.class);
+
+  /**
+   * The default port of the virtual in memory agent addresses.
+   */
+  public static final int VIRTUAL_AGENT_PORT = 161;
+
+  private static final long SELECT_TIMEOUT_MILLIS = 100;
+
+  private final int agentCount;
+  private final SyntheticMib mib;
+  private final BoundedWorkerPool workerPool;
+  private final CommonTimer timer;
+  private final Random random = new Random();
+  private final long startTime = System.currentTimeMillis();
+
+  private volatile OctetString community = new OctetString("public");
+  private volatile long minLatency;
+  private volatile long maxLatency;
+  private volatile double lossRate;
+  private volatile int maxResponseVariableBindings;
+
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong responseCount = new AtomicLong();
+  private final AtomicLong lostCount = new AtomicLong();
+  private final AtomicLong overflowCount = new AtomicLong();
+  private final AtomicLong tooBigCount = new AtomicLong();
+  private final AtomicLong invalidCount = new AtomicLong();
+
+  private InetAddress udpAddress;
+  private int udpBasePort;
+  private Selector selector;
+  private DatagramChannel[] channels;
+  private UdpListener udpListener;
+  private WorkerTask udpListenThread;
+
+  /**
+   * Creates an agent farm.
+   * @param agentCount
+   *    the number of simulated agents.
+   * @param mib
+   *    the MIB served by all agents.
+   * @param threads
+   *    the number of threads processing requests.
+   * @param queueCapacity
+   *    the maximum number of requests waiting for processing. Requests
+   *    exceeding this limit are dropped like on a full socket receive buffer.
+   */
+  public SimulatedAgentFarm(int agentCount, SyntheticMib mib,
+                            int threads, int queueCapacity) {
+    if ((agentCount < 1) || (agentCount > (1 << 24))) {
+      throw new IllegalArgumentException("Agent count must be between 1 and 2^24");
+    }
+    this.agentCount = agentCount;
+    this.mib = mib;
+    this.workerPool = new BoundedWorkerPool("AgentFarm", threads, queueCapacity,
+                                            BoundedWorkerPool.OverflowPolicy.dropNew);
+    this.timer = SNMP4JSettings.getTimerFactory().createTimer();
+  }
+
+  public int getAgentCount() {
+    return agentCount;
+  }
+
+  public SyntheticMib getMib() {
+    return mib;
+  }
+
+  public OctetString getCommunity() {
+    return community;
+  }
+
+  /**
+   * Sets the community accepted by all agents. Requests with another
+   * community are silently dropped.
+   * @param community
+   *    the community string (default is <code>public</code>).
+   */
+  public void setCommunity(OctetString community) {
+    this.community = community;
+  }
+
+  /**
+   * Sets the range of the response latency. For each request a latency is
+   * chosen uniformly from this range.
+   * @param minLatency
+   *    the minimum latency in milliseconds.
+   * @param maxLatency
+   *    the maximum latency in milliseconds.
+   */
+  public void setLatency(long minLatency, long maxLatency) {
+    if ((minLatency < 0) || (maxLatency < minLatency)) {
+      throw new IllegalArgumentException("Invalid latency range "+minLatency+"-"+maxLatency);
+    }
+    this.minLatency = minLatency;
+    this.maxLatency = maxLatency;
+  }
+
+  public long getMinLatency() {
+    return minLatency;
+  }
+
+  public long getMaxLatency() {
+    return maxLatency;
+  }
+
+  public double getLossRate() {
+    return lossRate;
+  }
+
+  /**
+   * Sets the ratio of requests that are silently dropped.
+   * @param lossRate
+   *    a value between 0.0 (no loss, the default) and 1.0 (all requests are
+   *    dropped).
+   */
+  public void setLossRate(double lossRate) {
+    if ((lossRate < 0.0d) || (lossRate > 1.0d)) {
+      throw new IllegalArgumentException("Loss rate must be between 0 and 1");
+    }
+    this.lossRate = lossRate;
+  }
+
+  public int getMaxResponseVariableBindings() {
+    return maxResponseVariableBindings;
+  }
+
+  /**
+   * Sets the maximum number of variable bindings in a response. GET and
+   * GETNEXT requests that would exceed this limit are answered with a
+   * <code>tooBig</code> error, GETBULK responses are truncated.
+   * @param maxResponseVariableBindings
+   *    the maximum number of variable bindings or zero (the default) for
+   *    no limit.
+   */
+  public void setMaxResponseVariableBindings(int maxResponseVariableBindings) {
+    this.maxResponseVariableBindings = maxResponseVariableBindings;
+  }
+
+  /**
+   * Gets the virtual address of an agent for the in memory transport.
+   * If the farm listens on UDP, the UDP address of the agent is returned.
+   * @param agentIndex
+   *    the zero based index of an agent.
+   * @return
+   *    the agent's address.
+   */
+  public UdpAddress getAgentAddress(int agentIndex) {
+    if ((agentIndex < 0) || (agentIndex >= agentCount)) {
+      throw new IndexOutOfBoundsException("No agent with index "+agentIndex);
+    }
+    if (udpAddress != null) {
+      return new UdpAddress(udpAddress, udpBasePort + agentIndex);
+    }
+    byte[] address = new byte[] {
+        10, (byte)(agentIndex >> 16), (byte)(agentIndex >> 8), (byte)agentIndex };
+    try {
+      return new UdpAddress(InetAddress.getByAddress(address), VIRTUAL_AGENT_PORT);
+    }
+    catch (UnknownHostException uhex) {
+      // cannot happen for a four byte address
+      throw new IllegalStateException(uhex);
+    }
+  }
+
+  /**
+   * Gets the index of the agent with the supplied virtual address.
+   * @param address
+   *    a virtual address as returned by {@link #getAgentAddress(int)}.
+   * @return
+   *    the agent index or -1 if there is no such agent.
+   */
+  public int getAgentIndex(UdpAddress address) {
+    byte[] ip = address.getInetAddress().getAddress();
+    if ((ip.length != 4) || (ip[0] != 10) || (address.getPort() != VIRTUAL_AGENT_PORT)) {
+      return -1;
+    }
+    int agentIndex = ((ip[1] & 0xFF) << 16) | ((ip[2] & 0xFF) << 8) | (ip[3] & 0xFF);
+    return (agentIndex < agentCount) ? agentIndex : -1;
+  }
+
+  /**
+   * Creates a transport mapping for a manager that exchanges messages with
+   * the agents of this farm in memory.
+   * @param localAddress
+   *    the address of the manager as seen by the agents.
+   * @return
+   *    a new transport mapping.
+   */
+  public LoopbackTransportMapping createLoopbackTransport(UdpAddress localAddress) {
+    return new LoopbackTransportMapping(this, localAddress);
+  }
+
+  /**
+   * Lets each agent listen on its own UDP port. All ports are served by a
+   * single selector thread.
+   * @param address
+   *    the local address to bind to, typically the loopback address.
+   * @param basePort
+   *    the port of the first agent, agent <code>i</code> listens on
+   *    <code>basePort+i</code>.
+   * @throws IOException
+   *    if a port cannot be bound. Already bound ports are closed then.
+   */
+  public synchronized void listenUdp(InetAddress address, int basePort) throws IOException {
+    if (selector != null) {
+      throw new IllegalStateException("Already listening on UDP");
+    }
+    if (basePort + agentCount > 65536) {
+      throw new IllegalArgumentException("Not enough ports for "+agentCount+" agents");
+    }
+    selector = Selector.open();
+    channels = new DatagramChannel[agentCount];
+    try {
+      for (int i=0; i<agentCount; i++) {
+        DatagramChannel channel = DatagramChannel.open();
+        channels[i] = channel;
+        channel.configureBlocking(false);
+        channel.socket().bind(new InetSocketAddress(address, basePort + i));
+        channel.register(selector, SelectionKey.OP_READ, i);
+      }
+    }
+    catch (IOException iox) {
+      closeUdp();
+      throw iox;
+    }
+    udpAddress = address;
+    udpBasePort = basePort;
+    udpListener = new UdpListener();
+    udpListenThread = SNMP4JSettings.getThreadFactory().
+        createWorkerThread("AgentFarm.udp", udpListener, true);
+    udpListenThread.run();
+  }
+
+  /**
+   * Stops all agents. Pending delayed responses are discarded.
+   */
+  public synchronized void close() {
+    if (udpListenThread != null) {
+      udpListenThread.terminate();
+      try {
+        udpListenThread.join();
+      }
+      catch (InterruptedException iex) {
+        Thread.currentThread().interrupt();
+      }
+      udpListenThread = null;
+    }
+    closeUdp();
+    timer.cancel();
+    workerPool.cancel();
+  }
+
+  private void closeUdp() {
+    if (channels != null) {
+      for (DatagramChannel channel : channels) {
+        if (channel != null) {
+          try {
+            channel.close();
+          }
+          catch (IOException iox) {
+            logger.warn("Failed to close agent channel: "+iox.getMessage());
+          }
+        }
+      }
+      channels = null;
+    }
+    if (selector != null) {
+      try {
+        selector.close();
+      }
+      catch (IOException iox) {
+        logger.warn("Failed to close selector: "+iox.getMessage());
+      }
+      selector = null;
+    }
+    udpAddress = null;
+  }
+
+  /**
+   * Delivers a request to the agent with the supplied virtual address.
+   * @param address
+   *    the virtual agent address.
+   * @param message
+   *    the BER encoded request message.
+   * @param responseChannel
+   *    receives the response message.
+   * @return
+   *    <code>false</code> if there is no agent with that address.
+   */
+  boolean deliver(UdpAddress address, byte[] message, ResponseChannel responseChannel) {
+    int agentIndex = getAgentIndex(address);
+    if (agentIndex < 0) {
+      return false;
+    }
+    receive(agentIndex, message, responseChannel);
+    return true;
+  }
+
+  private void receive(int agentIndex, byte[] message, ResponseChannel responseChannel) {
+    requestCount.incrementAndGet();
+    if ((lossRate > 0.0d) && (random.nextDouble() < lossRate)) {
+      lostCount.incrementAndGet();
+      return;
+    }
+    workerPool.execute(new RequestTask(agentIndex, message, responseChannel));
+  }
+
+  /**
+   * Processes a request message for an agent and returns the response
+   * message. Loss and latency are not applied.
+   * @param agentIndex
+   *    the index of the agent.
+   * @param message
+   *    a BER encoded SNMPv1 or SNMPv2c request message.
+   * @return
+   *    the BER encoded response message or <code>null</code> if the request
+   *    is dropped because it could not be decoded, has an unknown community,
+   *    or an unsupported PDU type.
+   */
+  public byte[] processRequest(int agentIndex, byte[] message) {
+    try {
+      BERInputStream is = new BERInputStream(ByteBuffer.wrap(message));
+      BER.MutableByte type = new BER.MutableByte();
+      BER.decodeHeader(is, type);
+      if (type.getValue() != BER.SEQUENCE) {
+        invalidCount.incrementAndGet();
+        return null;
+      }
+      Integer32 version = new Integer32();
+      version.decodeBER(is);
+      if ((version.getValue() != SnmpConstants.version1) &&
+          (version.getValue() != SnmpConstants.version2c)) {
+        invalidCount.incrementAndGet();
+        return null;
+      }
+      OctetString requestCommunity = new OctetString();
+      requestCommunity.decodeBER(is);
+      if (!community.equals(requestCommunity)) {
+        invalidCount.incrementAndGet();
+        return null;
+      }
+      boolean v1 = (version.getValue() == SnmpConstants.version1);
+      PDU request = v1 ? new PDUv1() : new PDU();
+      request.decodeBER(is);
+      PDU response = createResponse(agentIndex, request, v1);
+      if (response == null) {
+        invalidCount.incrementAndGet();
+        return null;
+      }
+      int length = version.getBERLength() + requestCommunity.getBERLength() +
+          response.getBERLength();
+      BEROutputStream os = new BEROutputStream(ByteBuffer.allocate(
+          length + BER.getBERLengthOfLength(length) + 1));
+      BER.encodeHeader(os, BER.SEQUENCE, length);
+      version.encodeBER(os);
+      requestCommunity.encodeBER(os);
+      response.encodeBER(os);
+      return os.getBuffer().array();
+    }
+    catch (IOException iox) {
+      invalidCount.incrementAndGet();
+      if (logger.isDebugEnabled()) {
+        logger.debug("Agent "+agentIndex+" failed to decode request: "+iox.getMessage());
+      }
+      return null;
+    }
+  }
+
+  private PDU createResponse(int agentIndex, PDU request, boolean v1) {
+    PDU response = v1 ? new PDUv1() : new PDU();
+    response.setType(PDU.RESPONSE);
+    response.setRequestID(request.getRequestID());
+    int limit = (maxResponseVariableBindings > 0) ?
+        maxResponseVariableBindings : Integer.MAX_VALUE;
+    switch (request.getType()) {
+      case PDU.GET: {
+        for (int i=0; i<request.size(); i++) {
+          OID oid = request.get(i).getOid();
+          Variable value = getValue(agentIndex, oid);
+          if ((value == null) || (v1 && (value instanceof Counter64))) {
+            if (v1) {
+              return createErrorResponse(response, request, PDU.noSuchName, i+1);
+            }
+            value = Null.noSuchObject;
+          }
+          response.add(new VariableBinding(oid, value));
+        }
+        break;
+      }
+      case PDU.GETNEXT: {
+        for (int i=0; i<request.size(); i++) {
+          VariableBinding next = getNext(agentIndex, request.get(i).getOid(), v1);
+          if (v1 && next.getVariable().isException()) {
+            return createErrorResponse(response, request, PDU.noSuchName, i+1);
+          }
+          response.add(next);
+        }
+        break;
+      }
+      case PDU.GETBULK: {
+        if (v1) {
+          return null;
+        }
+        int nonRepeaters = Math.max(0, Math.min(request.getNonRepeaters(), request.size()));
+        for (int i=0; i<nonRepeaters; i++) {
+          response.add(getNext(agentIndex, request.get(i).getOid(), false));
+        }
+        if (response.size() > limit) {
+          tooBigCount.incrementAndGet();
+          return createErrorResponse(response, request, PDU.tooBig, 0);
+        }
+        OID[] repeaters = new OID[request.size() - nonRepeaters];
+        for (int i=0; i<repeaters.length; i++) {
+          repeaters[i] = request.get(nonRepeaters + i).getOid();
+        }
+        boolean endOfMibView = (repeaters.length == 0);
+        for (int r=0; (r<request.getMaxRepetitions()) && !endOfMibView; r++) {
+          endOfMibView = true;
+          for (int i=0; i<repeaters.length; i++) {
+            if (response.size() >= limit) {
+              // truncate the response like an agent hitting its message size
+              return response;
+            }
+            VariableBinding next = getNext(agentIndex, repeaters[i], false);
+            response.add(next);
+            repeaters[i] = next.getOid();
+            endOfMibView &= next.getVariable().isException();
+          }
+        }
+        return response;
+      }
+      case PDU.SET: {
+        return createErrorResponse(response, request,
+                                   v1 ? PDU.noSuchName : PDU.notWritable, 1);
+      }
+      default: {
+        return null;
+      }
+    }
+    if (response.size() > limit) {
+      tooBigCount.incrementAndGet();
+      return createErrorResponse(response, request, PDU.tooBig, 0);
+    }
+    return response;
+  }
+
+  private static PDU createErrorResponse(PDU response, PDU request,
+                                         int errorStatus, int errorIndex) {
+    response.clear();
+    response.setRequestID(request.getRequestID());
+    response.addAll(request.toArray());
+    response.setErrorStatus(errorStatus);
+    response.setErrorIndex(errorIndex);
+    return response;
+  }
+
+  private Variable getValue(int agentIndex, OID oid) {
+    Variable value = mib.get(oid);
+    return (value == null) ? null : getAgentValue(agentIndex, oid, value);
+  }
+
+  private VariableBinding getNext(int agentIndex, OID oid, boolean v1) {
+    for (int pos = mib.nextPosition(oid); pos < mib.size(); pos++) {
+      VariableBinding vb = mib.get(pos);
+      if (!v1 || !(vb.getVariable() instanceof Counter64)) {
+        vb.setVariable(getAgentValue(agentIndex, vb.getOid(), vb.getVariable()));
+        return vb;
+      }
+    }
+    return new VariableBinding(oid, Null.endOfMibView);
+  }
+
+  private Variable getAgentValue(int agentIndex, OID oid, Variable value) {
+    if (SyntheticMib.SYS_NAME.equals(oid)) {
+      return new OctetString("agent-"+agentIndex);
+    }
+    else if (SyntheticMib.SYS_UP_TIME.equals(oid)) {
+      return new TimeTicks((System.currentTimeMillis() - startTime) / 10);
+    }
+    return value;
+  }
+
+  private void sendResponse(ResponseChannel responseChannel, byte[] response) {
+    try {
+      responseChannel.sendResponse(response);
+      responseCount.incrementAndGet();
+    }
+    catch (IOException iox) {
+      logger.warn("Failed to send response: "+iox.getMessage());
+    }
+  }
+
+  /**
+   * Gets the number of requests received by all agents.
+   * @return
+   *    the number of received requests including lost ones.
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Gets the number of responses sent by all agents.
+   * @return
+   *    the number of sent responses.
+   */
+  public long getResponseCount() {
+    return responseCount.get();
+  }
+
+  /**
+   * Gets the number of requests dropped according to the loss rate.
+   * @return
+   *    the number of lost requests.
+   */
+  public long getLostCount() {
+    return lostCount.get();
+  }
+
+  /**
+   * Gets the number of requests dropped because the processing queue was
+   * full.
+   * @return
+   *    the number of overflown requests.
+   */
+  public long getOverflowCount() {
+    return overflowCount.get();
+  }
+
+  /**
+   * Gets the number of <code>tooBig</code> responses.
+   * @return
+   *    the number of <code>tooBig</code> responses.
+   */
+  public long getTooBigCount() {
+    return tooBigCount.get();
+  }
+
+  /**
+   * Gets the number of requests dropped because they could not be decoded,
+   * had an unknown community, or an unsupported PDU type.
+   * @return
+   *    the number of invalid requests.
+   */
+  public long getInvalidCount() {
+    return invalidCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "SimulatedAgentFarm{" +
+        "agentCount=" + agentCount +
+        ", requests=" + requestCount +
+        ", responses=" + responseCount +
+        ", lost=" + lostCount +
+        ", overflow=" + overflowCount +
+        ", tooBig=" + tooBigCount +
+        ", invalid=" + invalidCount +
+        '}';
+  }
+
+  /**
+   * A <code>ResponseChannel</code> returns a response message to the manager
+   * that sent the request.
+   */
+  interface ResponseChannel {
+    void sendResponse(byte[] message) throws IOException;
+  }
+
+  private class RequestTask implements WorkerTask {
+
+    private final int agentIndex;
+    private final byte[] message;
+    private final ResponseChannel responseChannel;
+
+    RequestTask(int agentIndex, byte[] message, ResponseChannel responseChannel) {
+      this.agentIndex = agentIndex;
+      this.message = message;
+      this.responseChannel = responseChannel;
+    }
+
+    public void run() {
+      final byte[] response = processRequest(agentIndex, message);
+      if (response == null) {
+        return;
+      }
+      long latency = minLatency;
+      if (maxLatency > minLatency) {
+        latency += (long)(random.nextDouble() * (maxLatency - minLatency + 1));
+      }
+      if (latency <= 0) {
+        sendResponse(responseChannel, response);
+      }
+      else {
+        try {
+          timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+              sendResponse(responseChannel, response);
+            }
+          }, latency);
+        }
+        catch (IllegalStateException isex) {
+          // timer has been cancelled by close
+        }
+      }
+    }
+
+    public void terminate() {
+      // called by the worker pool when its queue is full
+      overflowCount.incrementAndGet();
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+
+  private class UdpListener implements WorkerTask {
+
+    private volatile boolean stop;
+
+    public void run() {
+      ByteBuffer buffer = ByteBuffer.allocate(65535);
+      Selector selector = SimulatedAgentFarm.this.selector;
+      while (!stop) {
+        try {
+          if (selector.select(SELECT_TIMEOUT_MILLIS) == 0) {
+            continue;
+          }
+          for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+            SelectionKey key = it.next();
+            it.remove();
+            final DatagramChannel channel = (DatagramChannel) key.channel();
+            int agentIndex = (Integer) key.attachment();
+            SocketAddress source;
+            while ((source = channel.receive(buffer)) != null) {
+              final SocketAddress sender = source;
+              buffer.flip();
+              byte[] message = new byte[buffer.remaining()];
+              buffer.get(message);
+              buffer.clear();
+              receive(agentIndex, message, new ResponseChannel() {
+                public void sendResponse(byte[] response) throws IOException {
+                  channel.send(ByteBuffer.wrap(response), sender);
+                }
+              });
+            }
+          }
+        }
+        catch (IOException iox) {
+          if (!stop) {
+            logger.error("Agent farm UDP listener failed: "+iox.getMessage(), iox);
+          }
+        }
+      }
+    }
+
+    public void terminate() {
+      stop = true;
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+      stop = true;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - SyntheticMib.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The <code>SyntheticMib</code> is an immutable, sorted set of MIB objects
+ * shared by all agents of a {@link SimulatedAgentFarm}. It contains the
+ * system group, <code>ifNumber</code>, and the <code>ifTable</code> and
+ * <code>ifXTable</code> with a configurable number of interfaces, so that
+ * GET, GETNEXT, and GETBULK requests as well as table walks can be served.
+ * Lookups use a binary search on a sorted array and are thread safe.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class SyntheticMib {
+
+  public static final OID SYS_DESCR = new OID("1.3.6.1.2.1.1.1.0");
+  public static final OID SYS_OBJECT_ID = new OID("1.3.6.1.2.1.1.2.0");
+  public static final OID SYS_UP_TIME = new OID("1.3.6.1.2.1.1.3.0");
+  public static final OID SYS_NAME = new OID("1.3.6.1.2.1.1.5.0");
+  public static final OID IF_NUMBER = new OID("1.3.6.1.2.1.2.1.0");
+  public static final OID IF_ENTRY = new OID("1.3.6.1.2.1.2.2.1");
+  public static final OID IF_X_ENTRY = new OID("1.3.6.1.2.1.31.1.1.1");
+
+  private final OID[] oids;
+  private final Variable[] values;
+
+  /**
+   * Creates a synthetic MIB.
+   * @param interfaces
+   *    the number of rows of the <code>ifTable</code> and
+   *    <code>ifXTable</code>.
+   */
+  public SyntheticMib(int interfaces) {
+    SortedMap<OID, Variable> mib = new TreeMap<OID, Variable>();
+    mib.put(SYS_DESCR, new OctetString("SNMP4J simulated agent"));
+    mib.put(SYS_OBJECT_ID, new OID("1.3.6.1.4.1.4976.10"));
+    mib.put(SYS_UP_TIME, new TimeTicks(0));
+    mib.put(new OID("1.3.6.1.2.1.1.4.0"), new OctetString("admin@example.com"));
+    mib.put(SYS_NAME, new OctetString("agent"));
+    mib.put(new OID("1.3.6.1.2.1.1.6.0"), new OctetString("lab"));
+    mib.put(new OID("1.3.6.1.2.1.1.7.0"), new Integer32(72));
+    mib.put(IF_NUMBER, new Integer32(interfaces));
+    int[] ifEntry = IF_ENTRY.getValue();
+    int[] ifXEntry = IF_X_ENTRY.getValue();
+    for (int i=1; i<=interfaces; i++) {
+      mib.put(new OID(ifEntry, new int[] { 1, i }), new Integer32(i));
+      mib.put(new OID(ifEntry, new int[] { 2, i }), new OctetString("GigabitEthernet0/"+i));
+      mib.put(new OID(ifEntry, new int[] { 3, i }), new Integer32(6));
+      mib.put(new OID(ifEntry, new int[] { 4, i }), new Integer32(1500));
+      mib.put(new OID(ifEntry, new int[] { 5, i }), new Gauge32(1000000000L));
+      mib.put(new OID(ifEntry, new int[] { 6, i }),
+              new OctetString(new byte[] { 0, 0x1b, 0x21, 0x3c, (byte)(i >> 8), (byte)i }));
+      mib.put(new OID(ifEntry, new int[] { 7, i }), new Integer32(1));
+      mib.put(new OID(ifEntry, new int[] { 8, i }), new Integer32(1));
+      mib.put(new OID(ifEntry, new int[] { 10, i }), new Counter32(1000L * i));
+      mib.put(new OID(ifEntry, new int[] { 16, i }), new Counter32(2000L * i));
+      mib.put(new OID(ifXEntry, new int[] { 1, i }), new OctetString("Gi0/"+i));
+      mib.put(new OID(ifXEntry, new int[] { 6, i }), new Counter64(5000000000L * i));
+      mib.put(new OID(ifXEntry, new int[] { 10, i }), new Counter64(7000000000L * i));
+    }
+    oids = new OID[mib.size()];
+    values = new Variable[mib.size()];
+    int n = 0;
+    for (Map.Entry<OID, Variable> entry : mib.entrySet()) {
+      oids[n] = entry.getKey();
+      values[n++] = entry.getValue();
+    }
+  }
+
+  /**
+   * Gets the number of MIB objects.
+   * @return
+   *    the number of object instances.
+   */
+  public int size() {
+    return oids.length;
+  }
+
+  /**
+   * Gets the value of an object instance.
+   * @param oid
+   *    the instance OID.
+   * @return
+   *    the value or <code>null</code> if the instance does not exist.
+   */
+  public Variable get(OID oid) {
+    int pos = Arrays.binarySearch(oids, oid);
+    return (pos < 0) ? null : values[pos];
+  }
+
+  /**
+   * Gets the position of the first object instance lexicographically greater
+   * than the supplied OID.
+   * @param oid
+   *    an OID.
+   * @return
+   *    the position of the successor of <code>oid</code>, which equals
+   *    {@link #size()} if there is no successor.
+   */
+  public int nextPosition(OID oid) {
+    int pos = Arrays.binarySearch(oids, oid);
+    return (pos < 0) ? -(pos + 1) : pos + 1;
+  }
+
+  /**
+   * Gets the object instance at the supplied position.
+   * @param position
+   *    a position between 0 and {@link #size()}-1.
+   * @return
+   *    a new <code>VariableBinding</code> (the value is shared).
+   */
+  public VariableBinding get(int position) {
+    return new VariableBinding(oids[position], values[position]);
+  }
+}
@@ -34,10 +34,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -54,8 +53,10 @@ public class DummyTransport<A extends IpAddress> extends AbstractTransportMappin
 
   private static final LogAdapter logger = LogFactory.getLogger(DummyTransport.class);
 
-  private final Queue<MessageContainer> requests = new ConcurrentLinkedQueue<MessageContainer>();
-  private final Queue<MessageContainer> responses = new ConcurrentLinkedQueue<MessageContainer>();
+  private static final long POLL_TIMEOUT_MILLIS = 50;
+
+  private final BlockingQueue<MessageContainer> requests = new LinkedBlockingQueue<MessageContainer>();
+  private final BlockingQueue<MessageContainer> responses = new LinkedBlockingQueue<MessageContainer>();
   private boolean listening;
   private A listenAddress;
   private A receiverAddress;
@@ -134,10 +135,10 @@ public class DummyTransport<A extends IpAddress> extends AbstractTransportMappin
   private class QueueProcessor implements WorkerTask {
 
     private volatile boolean stop;
-    private Queue<MessageContainer> queue;
+    private BlockingQueue<MessageContainer> queue;
     private AbstractTransportMapping tm;
 
-    public QueueProcessor(Queue<MessageContainer> queue, AbstractTransportMapping tm) {
+    public QueueProcessor(BlockingQueue<MessageContainer> queue, AbstractTransportMapping tm) {
       this.queue = queue;
       this.tm = tm;
     }
@@ -146,7 +147,12 @@ public class DummyTransport<A extends IpAddress> extends AbstractTransportMappin
     public void run() {
       while (!stop) {
         MessageContainer nextMessage = null;
-        nextMessage = queue.poll();
+        try {
+          // wake up on the next message instead of polling periodically
+          nextMessage = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          logger.warn("Interrupted QueueProcessor: "+e.getMessage());
+        }
         if (nextMessage != null) {
           TransportStateReference stateReference =
             new TransportStateReference(DummyTransport.this, listenAddress, null,
@@ -155,13 +161,6 @@ public class DummyTransport<A extends IpAddress> extends AbstractTransportMappin
           tm.fireProcessMessage(listenAddress,
               ByteBuffer.wrap(nextMessage.getPayload().getValue()), stateReference);
         }
-        else {
-          try {
-            Thread.sleep(50);
-          } catch (InterruptedException e) {
-            logger.warn("Interrupted QueueProcessor: "+e.getMessage());
-          }
-        }
       }
     }
 
@@ -0,0 +1,588 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - NioUdpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.util.ByteBufferPool;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The {@code NioUdpTransportMapping} implements a UDP transport mapping
+ * based on a non-blocking {@link DatagramChannel}. In contrast to the
+ * {@link DefaultUdpTransportMapping}, the listen thread drains up to
+ * {@link #getMaxBatchSize()} datagrams per wake-up into pooled (by default
+ * direct) buffers and it reuses the {@link UdpAddress} instances of
+ * recently seen peers. Thus, receiving a message does not allocate a
+ * message buffer, a datagram packet, or (for repeating peers) an address.
+ * <p>
+ * The received messages are not copied, even if asynchronous message
+ * processing is supported. Instead, the pooled buffer is available from
+ * {@link TransportStateReference#getPooledBuffer()} and has to be retained by
+ * transport listeners that process the message after they returned from
+ * {@link TransportListener#processMessage}, as done by
+ * {@link org.snmp4j.util.MultiThreadedMessageDispatcher}. The buffer is
+ * released by this transport mapping when all listeners returned.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class NioUdpTransportMapping extends UdpTransportMapping {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(NioUdpTransportMapping.class);
+
+  /**
+   * The default maximum number of datagrams received per selector wake-up.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+  /**
+   * The default maximum number of idle receive buffers kept in the pool.
+   */
+  public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+  /**
+   * The default maximum number of peer addresses cached for reuse.
+   */
+  public static final int DEFAULT_ADDRESS_CACHE_SIZE = 1024;
+  /**
+   * The default time in milliseconds a send waits for free space in the
+   * socket send buffer.
+   */
+  public static final int DEFAULT_SEND_TIMEOUT = 1000;
+
+  private static final long MIN_SEND_RETRY_DELAY_NANOS = 50000L;
+  private static final long MAX_SEND_RETRY_DELAY_NANOS = 1000000L;
+
+  protected DatagramChannel channel;
+  protected WorkerTask listener;
+  private Selector selector;
+  private ByteBufferPool bufferPool;
+
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private int maxPooledBuffers = DEFAULT_MAX_POOLED_BUFFERS;
+  private int addressCacheSize = DEFAULT_ADDRESS_CACHE_SIZE;
+  private boolean directBuffers = true;
+  private int receiveBufferSize = 0; // not set by default
+  private volatile int sendTimeout = DEFAULT_SEND_TIMEOUT;
+
+  /**
+   * Creates a UDP transport with an arbitrary local port on all local
+   * interfaces.
+   *
+   * @throws IOException
+   *    if socket binding fails.
+   */
+  public NioUdpTransportMapping() throws IOException {
+    this(new UdpAddress("0.0.0.0/0"), false);
+  }
+
+  /**
+   * Creates a UDP transport on the specified address. The address will not be
+   * reused if it is currently in timeout state (TIME_WAIT).
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages.
+   * @throws IOException
+   *    if socket binding fails.
+   */
+  public NioUdpTransportMapping(UdpAddress udpAddress) throws IOException {
+    this(udpAddress, false);
+  }
+
+  /**
+   * Creates a UDP transport with optional reusing the address if is currently
+   * in timeout state (TIME_WAIT) after the connection is closed.
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages.
+   * @param reuseAddress
+   *    if {@code true} addresses are reused which provides faster socket
+   *    binding if an application is restarted for instance.
+   * @throws IOException
+   *    if socket binding fails.
+   */
+  public NioUdpTransportMapping(UdpAddress udpAddress,
+                                boolean reuseAddress) throws IOException {
+    super(udpAddress);
+    channel = openChannel(reuseAddress);
+  }
+
+  /**
+   * Opens and binds the datagram channel of this transport mapping.
+   * @param reuseAddress
+   *    if {@code true} the address is reused.
+   * @return
+   *    the bound channel.
+   * @throws IOException
+   *    if the channel cannot be opened or bound.
+   */
+  protected DatagramChannel openChannel(boolean reuseAddress)
+      throws IOException
+  {
+    DatagramChannel c = DatagramChannel.open();
+    try {
+      c.socket().setReuseAddress(reuseAddress);
+      c.socket().bind(new InetSocketAddress(udpAddress.getInetAddress(),
+                                            udpAddress.getPort()));
+    }
+    catch (IOException iox) {
+      c.close();
+      throw iox;
+    }
+    return c;
+  }
+
+  public void sendMessage(UdpAddress targetAddress, byte[] message,
+                          TransportStateReference tmStateReference)
+      throws IOException
+  {
+    InetSocketAddress targetSocketAddress =
+        new InetSocketAddress(targetAddress.getInetAddress(),
+                              targetAddress.getPort());
+    if (logger.isDebugEnabled()) {
+      logger.debug("Sending message to "+targetAddress+" with length "+
+                   message.length+": "+
+                   new OctetString(message).toHexString());
+    }
+    DatagramChannel c = channel;
+    if (c == null) {
+      throw new SocketException("Transport mapping "+this+" is closed");
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(message);
+    if (c.send(buffer, targetSocketAddress) == 0) {
+      // the channel is non-blocking while listening, thus a full send buffer
+      // leaves the datagram unsent instead of blocking the caller
+      waitAndSend(c, buffer, targetSocketAddress, targetAddress);
+    }
+  }
+
+  private void waitAndSend(DatagramChannel c, ByteBuffer buffer,
+                           InetSocketAddress targetSocketAddress,
+                           UdpAddress targetAddress) throws IOException
+  {
+    long deadline = System.nanoTime() +
+        TimeUnit.MILLISECONDS.toNanos(sendTimeout);
+    long delay = MIN_SEND_RETRY_DELAY_NANOS;
+    while (System.nanoTime() - deadline < 0) {
+      LockSupport.parkNanos(delay);
+      if (Thread.interrupted()) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while sending to "+
+                                         targetAddress);
+      }
+      if (c.send(buffer, targetSocketAddress) > 0) {
+        return;
+      }
+      delay = Math.min(delay * 2, MAX_SEND_RETRY_DELAY_NANOS);
+    }
+    throw new IOException("Send buffer of "+this+" full, message to "+
+                          targetAddress+" not sent within "+sendTimeout+"ms");
+  }
+
+  /**
+   * Starts the listener thread that accepts incoming messages. The thread is
+   * started in daemon mode and thus it will not block application terminated.
+   * Nevertheless, the {@link #close()} method should be called to stop the
+   * listen thread gracefully and free associated resources.
+   *
+   * @throws IOException
+   *    if the listen port could not be bound to the server thread.
+   */
+  public synchronized void listen() throws IOException {
+    if (listener != null) {
+      throw new SocketException("Port already listening");
+    }
+    DatagramChannel c = channel;
+    if (c == null) {
+      c = openChannel(false);
+      channel = c;
+    }
+    if (receiveBufferSize > 0) {
+      c.socket().setReceiveBufferSize(Math.max(receiveBufferSize,
+                                               maxInboundMessageSize));
+    }
+    c.configureBlocking(false);
+    selector = Selector.open();
+    c.register(selector, SelectionKey.OP_READ);
+    bufferPool =
+        new ByteBufferPool(getMaxInboundMessageSize(), maxPooledBuffers,
+                           directBuffers);
+    ListenThread listenThread = new ListenThread(c, selector);
+    listener = SNMP4JSettings.getThreadFactory().createWorkerThread(
+        "NioUdpTransportMapping_"+getAddress(), listenThread, true);
+    listener.run();
+  }
+
+  /**
+   * Closes the channel and stops the listener thread.
+   *
+   * @throws IOException
+   *    if the channel cannot be closed.
+   */
+  public void close() throws IOException {
+    boolean interrupted = false;
+    WorkerTask l;
+    Selector s;
+    DatagramChannel c;
+    synchronized (this) {
+      l = listener;
+      listener = null;
+      s = selector;
+      selector = null;
+      c = channel;
+      channel = null;
+    }
+    if (l != null) {
+      l.terminate();
+      if (s != null) {
+        s.wakeup();
+      }
+      try {
+        l.join();
+      }
+      catch (InterruptedException ex) {
+        interrupted = true;
+        logger.warn(ex);
+      }
+    }
+    if (s != null) {
+      s.close();
+    }
+    if (c != null) {
+      c.close();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public boolean isListening() {
+    return (listener != null);
+  }
+
+  @Override
+  public UdpAddress getListenAddress() {
+    DatagramChannel c = channel;
+    if (c != null) {
+      DatagramSocket s = c.socket();
+      return new UdpAddress(s.getLocalAddress(), s.getLocalPort());
+    }
+    return null;
+  }
+
+  public void setMaxInboundMessageSize(int maxInboundMessageSize) {
+    this.maxInboundMessageSize = maxInboundMessageSize;
+  }
+
+  /**
+   * Gets the maximum number of datagrams received per selector wake-up
+   * before the selector is consulted again.
+   * @return
+   *    the maximum batch size.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of datagrams received per selector wake-up.
+   * @param maxBatchSize
+   *    a value greater than zero.
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be > 0");
+    }
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Gets the maximum number of idle receive buffers kept for reuse.
+   * @return
+   *    the maximum number of pooled buffers.
+   */
+  public int getMaxPooledBuffers() {
+    return maxPooledBuffers;
+  }
+
+  /**
+   * Sets the maximum number of idle receive buffers kept for reuse. Each
+   * buffer has a capacity of {@link #getMaxInboundMessageSize()} bytes. This
+   * method has to be called before {@link #listen()} to be effective.
+   * @param maxPooledBuffers
+   *    the maximum number of pooled buffers.
+   */
+  public void setMaxPooledBuffers(int maxPooledBuffers) {
+    this.maxPooledBuffers = maxPooledBuffers;
+  }
+
+  /**
+   * Gets the maximum number of peer addresses cached for reuse.
+   * @return
+   *    the address cache size.
+   */
+  public int getAddressCacheSize() {
+    return addressCacheSize;
+  }
+
+  /**
+   * Sets the maximum number of peer addresses cached for reuse. This method
+   * has to be called before {@link #listen()} to be effective.
+   * @param addressCacheSize
+   *    the address cache size. Zero disables address caching.
+   */
+  public void setAddressCacheSize(int addressCacheSize) {
+    this.addressCacheSize = addressCacheSize;
+  }
+
+  /**
+   * Checks whether receive buffers are allocated outside the Java heap.
+   * @return
+   *    <code>true</code> if direct buffers are used (default).
+   */
+  public boolean isDirectBuffers() {
+    return directBuffers;
+  }
+
+  /**
+   * Sets whether receive buffers are allocated outside the Java heap. This
+   * method has to be called before {@link #listen()} to be effective.
+   * @param directBuffers
+   *    <code>true</code> to use direct buffers, <code>false</code> for heap
+   *    buffers.
+   */
+  public void setDirectBuffers(boolean directBuffers) {
+    this.directBuffers = directBuffers;
+  }
+
+  /**
+   * Gets the requested receive buffer size for the underlying UDP socket.
+   * @return
+   *    &lt;=0 if the default buffer size of the OS is used, or a value &gt;0 if the
+   *    user specified a buffer size.
+   */
+  public int getReceiveBufferSize() {
+    return receiveBufferSize;
+  }
+
+  /**
+   * Sets the receive buffer size, which should be greater than the maximum
+   * inbound message size. This method has to be called before
+   * {@link #listen()} to be effective.
+   * @param receiveBufferSize
+   *    an integer value &gt;0 and &gt; {@link #getMaxInboundMessageSize()}.
+   */
+  public void setReceiveBufferSize(int receiveBufferSize) {
+    if (receiveBufferSize <= 0) {
+      throw new IllegalArgumentException("Receive buffer size must be > 0");
+    }
+    this.receiveBufferSize = receiveBufferSize;
+  }
+
+  /**
+   * Gets the time a send waits for free space in the socket send buffer
+   * while this transport mapping is listening.
+   * @return
+   *    the send timeout in milliseconds.
+   */
+  public int getSendTimeout() {
+    return sendTimeout;
+  }
+
+  /**
+   * Sets the time a send waits for free space in the socket send buffer
+   * while this transport mapping is listening. If the datagram cannot be
+   * sent within that time, {@link #sendMessage} throws an
+   * <code>IOException</code> instead of dropping the message silently.
+   * @param sendTimeout
+   *    the send timeout in milliseconds (&gt;=0). Zero fails immediately on a
+   *    full send buffer.
+   */
+  public void setSendTimeout(int sendTimeout) {
+    if (sendTimeout < 0) {
+      throw new IllegalArgumentException("Send timeout must be >= 0");
+    }
+    this.sendTimeout = sendTimeout;
+  }
+
+  /**
+   * Gets the pool of receive buffers.
+   * @return
+   *    the buffer pool or <code>null</code> if this transport mapping has not
+   *    been listening yet.
+   */
+  public ByteBufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  /**
+   * A size bounded LRU cache of peer addresses that is only accessed by the
+   * listen thread.
+   */
+  private static class AddressCache
+      extends LinkedHashMap<InetSocketAddress, UdpAddress> {
+
+    private static final long serialVersionUID = -2373734016378733526L;
+
+    private final int maxSize;
+
+    AddressCache(int maxSize) {
+      super(Math.min(maxSize, 64), 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, UdpAddress> eldest) {
+      return size() > maxSize;
+    }
+
+    UdpAddress getAddress(InetSocketAddress socketAddress) {
+      if (maxSize <= 0) {
+        return new UdpAddress(socketAddress.getAddress(), socketAddress.getPort());
+      }
+      UdpAddress address = get(socketAddress);
+      if (address == null) {
+        address = new UdpAddress(socketAddress.getAddress(), socketAddress.getPort());
+        put(socketAddress, address);
+      }
+      return address;
+    }
+  }
+
+  class ListenThread implements WorkerTask {
+
+    private final DatagramChannel listenChannel;
+    private final Selector listenSelector;
+    private final AddressCache addressCache = new AddressCache(addressCacheSize);
+    private volatile boolean stop = false;
+
+    ListenThread(DatagramChannel listenChannel, Selector listenSelector) {
+      this.listenChannel = listenChannel;
+      this.listenSelector = listenSelector;
+    }
+
+    public void run() {
+      while (!stop) {
+        try {
+          listenSelector.select();
+          if (stop) {
+            break;
+          }
+          listenSelector.selectedKeys().clear();
+          receiveBatch();
+        }
+        catch (ClosedChannelException ccex) {
+          stop = true;
+        }
+        catch (IOException iox) {
+          if (stop) {
+            break;
+          }
+          logger.warn("Receiving on transport mapping "+
+                      NioUdpTransportMapping.this+" failed: "+iox.getMessage());
+          if (SNMP4JSettings.isForwardRuntimeExceptions()) {
+            stop = true;
+            throw new RuntimeException(iox);
+          }
+        }
+        catch (RuntimeException rex) {
+          if (stop) {
+            break;
+          }
+          throw rex;
+        }
+      }
+      synchronized (NioUdpTransportMapping.this) {
+        if (listener != null) {
+          listener = null;
+        }
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Worker task stopped:" + getClass().getName());
+      }
+    }
+
+    private void receiveBatch() throws IOException {
+      ByteBufferPool pool = bufferPool;
+      for (int i=0; (i<maxBatchSize) && (!stop); i++) {
+        ByteBufferPool.PooledBuffer pooledBuffer = pool.acquire();
+        try {
+          ByteBuffer buf = pooledBuffer.getBuffer();
+          SocketAddress socketAddress = listenChannel.receive(buf);
+          if (socketAddress == null) {
+            return;
+          }
+          buf.flip();
+          UdpAddress peerAddress =
+              addressCache.getAddress((InetSocketAddress) socketAddress);
+          if (logger.isDebugEnabled()) {
+            byte[] bytes = new byte[buf.remaining()];
+            buf.duplicate().get(bytes);
+            logger.debug("Received message from "+peerAddress+
+                         " with length "+bytes.length+": "+
+                         new OctetString(bytes).toHexString());
+          }
+          TransportStateReference stateReference =
+              new TransportStateReference(NioUdpTransportMapping.this,
+                                          udpAddress, null,
+                                          SecurityLevel.undefined,
+                                          SecurityLevel.undefined,
+                                          false, listenChannel.socket());
+          stateReference.setPooledBuffer(pooledBuffer);
+          fireProcessMessage(peerAddress, buf, stateReference);
+        }
+        finally {
+          pooledBuffer.release();
+        }
+      }
+    }
+
+    public void terminate() {
+      stop = true;
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+      stop = true;
+      listenSelector.wakeup();
+    }
+  }
+}
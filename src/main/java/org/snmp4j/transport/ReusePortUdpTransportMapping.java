@@ -0,0 +1,531 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - ReusePortUdpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The {@code ReusePortUdpTransportMapping} implements a UDP transport
+ * mapping that binds several sockets to the same local address by using the
+ * {@code SO_REUSEPORT} socket option and that receives on each socket with
+ * its own listen thread. The operating system (e.g., Linux 3.9 or later)
+ * distributes inbound datagrams among the sockets by a hash of the sender
+ * address, so that datagrams of different peers are received in parallel
+ * while the datagrams of a single peer keep their order.
+ * <p>
+ * The transport mapping presents itself as a single
+ * {@code TransportMapping<UdpAddress>} to the message dispatcher. Outbound
+ * messages are sent through the socket a message has been received on, if
+ * known from the {@link TransportStateReference}, and otherwise through the
+ * sockets in a round robin fashion.
+ * <p>
+ * The {@code SO_REUSEPORT} option is available through the Java runtime
+ * since Java 9 and is accessed by reflection. If the option is not supported
+ * by the runtime or the operating system, the transport mapping falls back
+ * to a single socket.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class ReusePortUdpTransportMapping extends UdpTransportMapping {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(ReusePortUdpTransportMapping.class);
+
+  private final int requestedSocketCount;
+  private final boolean reuseAddress;
+  protected volatile DatagramSocket[] sockets;
+  protected WorkerTask[] listeners;
+  private final AtomicInteger nextSendSocket = new AtomicInteger();
+  private int socketTimeout = 0;
+  private int receiveBufferSize = 0; // not set by default
+
+  /**
+   * Creates a UDP transport with one socket per available processor bound to
+   * the specified address.
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages.
+   * @throws IOException
+   *    if socket binding fails.
+   */
+  public ReusePortUdpTransportMapping(UdpAddress udpAddress) throws IOException {
+    this(udpAddress, Runtime.getRuntime().availableProcessors(), false);
+  }
+
+  /**
+   * Creates a UDP transport with the specified number of sockets bound to
+   * the specified address.
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages. If its
+   *    port is zero, the first socket is bound to an arbitrary port and the
+   *    other sockets are bound to that port.
+   * @param socketCount
+   *    the number of sockets (and listen threads) to create.
+   * @param reuseAddress
+   *    if {@code true} addresses are reused which provides faster socket
+   *    binding if an application is restarted for instance.
+   * @throws IOException
+   *    if socket binding fails.
+   */
+  public ReusePortUdpTransportMapping(UdpAddress udpAddress, int socketCount,
+                                      boolean reuseAddress) throws IOException {
+    super(udpAddress);
+    if (socketCount <= 0) {
+      throw new IllegalArgumentException("Socket count must be > 0");
+    }
+    this.requestedSocketCount = socketCount;
+    this.reuseAddress = reuseAddress;
+    this.sockets = openSockets();
+  }
+
+  private DatagramSocket[] openSockets() throws IOException {
+    int count = requestedSocketCount;
+    DatagramSocket first = new DatagramSocket(null);
+    if ((count > 1) && (!setReusePort(first))) {
+      logger.warn("SO_REUSEPORT is not supported, "+this+
+                  " falls back to a single socket");
+      count = 1;
+    }
+    DatagramSocket[] s = new DatagramSocket[count];
+    try {
+      first.setReuseAddress(reuseAddress);
+      first.bind(new InetSocketAddress(udpAddress.getInetAddress(),
+                                       udpAddress.getPort()));
+      s[0] = first;
+      for (int i=1; i<count; i++) {
+        s[i] = openSocket(first.getLocalPort());
+      }
+    }
+    catch (IOException iox) {
+      first.close();
+      for (DatagramSocket socket : s) {
+        if (socket != null) {
+          socket.close();
+        }
+      }
+      throw iox;
+    }
+    return s;
+  }
+
+  /**
+   * Opens an additional socket with {@code SO_REUSEPORT} enabled.
+   * @param port
+   *    the local port to bind to.
+   * @return
+   *    the bound socket.
+   * @throws SocketException
+   *    if the socket cannot be created or bound.
+   */
+  protected DatagramSocket openSocket(int port) throws SocketException {
+    DatagramSocket s = new DatagramSocket(null);
+    try {
+      if (!setReusePort(s)) {
+        throw new SocketException("SO_REUSEPORT cannot be enabled");
+      }
+      s.setReuseAddress(reuseAddress);
+      s.setSoTimeout(socketTimeout);
+      s.bind(new InetSocketAddress(udpAddress.getInetAddress(), port));
+    }
+    catch (SocketException sex) {
+      s.close();
+      throw sex;
+    }
+    return s;
+  }
+
+  /**
+   * Enables the {@code SO_REUSEPORT} option on an unbound socket.
+   * @param socket
+   *    an unbound datagram socket.
+   * @return
+   *    <code>true</code> if the option has been enabled, <code>false</code>
+   *    if it is not supported by the Java runtime or the operating system.
+   */
+  protected static boolean setReusePort(DatagramSocket socket) {
+    try {
+      Class<?> socketOptionClass = Class.forName("java.net.SocketOption");
+      Field reusePort =
+          Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT");
+      Method setOption =
+          DatagramSocket.class.getMethod("setOption", socketOptionClass, Object.class);
+      setOption.invoke(socket, reusePort.get(null), Boolean.TRUE);
+      return true;
+    }
+    catch (InvocationTargetException itex) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Enabling SO_REUSEPORT failed: "+itex.getTargetException());
+      }
+    }
+    catch (Exception ex) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("SO_REUSEPORT is not available: "+ex);
+      }
+    }
+    return false;
+  }
+
+  public void sendMessage(UdpAddress targetAddress, byte[] message,
+                          TransportStateReference tmStateReference)
+      throws IOException
+  {
+    InetSocketAddress targetSocketAddress =
+        new InetSocketAddress(targetAddress.getInetAddress(),
+                              targetAddress.getPort());
+    if (logger.isDebugEnabled()) {
+      logger.debug("Sending message to "+targetAddress+" with length "+
+                   message.length+": "+
+                   new OctetString(message).toHexString());
+    }
+    DatagramSocket s = getSendSocket(tmStateReference);
+    s.send(new DatagramPacket(message, message.length, targetSocketAddress));
+  }
+
+  private DatagramSocket getSendSocket(TransportStateReference tmStateReference)
+      throws SocketException
+  {
+    DatagramSocket[] s = sockets;
+    if (s == null) {
+      s = ensureSockets();
+    }
+    if ((tmStateReference != null) &&
+        (tmStateReference.getSessionID() instanceof DatagramSocket)) {
+      Object sessionSocket = tmStateReference.getSessionID();
+      for (DatagramSocket socket : s) {
+        if ((socket == sessionSocket) && (!socket.isClosed())) {
+          return socket;
+        }
+      }
+    }
+    int index = (nextSendSocket.getAndIncrement() & Integer.MAX_VALUE) % s.length;
+    return s[index];
+  }
+
+  private synchronized DatagramSocket[] ensureSockets() throws SocketException {
+    DatagramSocket[] s = sockets;
+    if (s == null) {
+      try {
+        s = openSockets();
+      }
+      catch (IOException iox) {
+        if (iox instanceof SocketException) {
+          throw (SocketException) iox;
+        }
+        throw new SocketException(iox.getMessage());
+      }
+      sockets = s;
+    }
+    return s;
+  }
+
+  /**
+   * Starts a listener thread for each socket. The threads are started in
+   * daemon mode and thus they will not block application termination.
+   * Nevertheless, the {@link #close()} method should be called to stop the
+   * listen threads gracefully and free associated resources.
+   *
+   * @throws IOException
+   *    if the listen port could not be bound to the server thread.
+   */
+  public synchronized void listen() throws IOException {
+    if (listeners != null) {
+      throw new SocketException("Port already listening");
+    }
+    DatagramSocket[] s = ensureSockets();
+    WorkerTask[] l = new WorkerTask[s.length];
+    for (int i=0; i<s.length; i++) {
+      s[i].setSoTimeout(socketTimeout);
+      if (receiveBufferSize > 0) {
+        s[i].setReceiveBufferSize(Math.max(receiveBufferSize,
+                                           maxInboundMessageSize));
+      }
+      l[i] = SNMP4JSettings.getThreadFactory().createWorkerThread(
+          "ReusePortUdpTransportMapping_"+getAddress()+"_"+i,
+          new ListenThread(i), true);
+    }
+    listeners = l;
+    for (WorkerTask listener : l) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Closes the sockets and stops the listener threads.
+   *
+   * @throws IOException
+   *    if a socket cannot be closed.
+   */
+  public void close() throws IOException {
+    boolean interrupted = false;
+    WorkerTask[] l;
+    DatagramSocket[] s;
+    synchronized (this) {
+      l = listeners;
+      listeners = null;
+      s = sockets;
+      sockets = null;
+    }
+    if (l != null) {
+      for (WorkerTask listener : l) {
+        listener.terminate();
+      }
+    }
+    if (s != null) {
+      for (DatagramSocket socket : s) {
+        if (!socket.isClosed()) {
+          socket.close();
+        }
+      }
+    }
+    if (l != null) {
+      for (WorkerTask listener : l) {
+        try {
+          listener.join();
+        }
+        catch (InterruptedException ex) {
+          interrupted = true;
+          logger.warn(ex);
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public boolean isListening() {
+    return (listeners != null);
+  }
+
+  @Override
+  public UdpAddress getListenAddress() {
+    DatagramSocket[] s = sockets;
+    if (s != null) {
+      return new UdpAddress(s[0].getLocalAddress(), s[0].getLocalPort());
+    }
+    return null;
+  }
+
+  /**
+   * Gets the number of sockets bound by this transport mapping, which may be
+   * less than requested if {@code SO_REUSEPORT} is not supported.
+   * @return
+   *    the number of sockets or zero if the transport mapping is closed.
+   */
+  public int getSocketCount() {
+    DatagramSocket[] s = sockets;
+    return (s == null) ? 0 : s.length;
+  }
+
+  /**
+   * Gets the number of sockets requested on creation of this transport
+   * mapping.
+   * @return
+   *    the requested number of sockets.
+   */
+  public int getRequestedSocketCount() {
+    return requestedSocketCount;
+  }
+
+  public void setMaxInboundMessageSize(int maxInboundMessageSize) {
+    this.maxInboundMessageSize = maxInboundMessageSize;
+  }
+
+  /**
+   * Returns the socket timeout.
+   * 0 returns implies that the option is disabled (i.e., timeout of infinity).
+   * @return
+   *    the socket timeout setting.
+   */
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  /**
+   * Sets the socket timeout in milliseconds. This method has to be called
+   * before {@link #listen()} to be effective.
+   * @param socketTimeout
+   *    the socket timeout for incoming messages in milliseconds.
+   *    A timeout of zero is interpreted as an infinite timeout.
+   */
+  public void setSocketTimeout(int socketTimeout) {
+    this.socketTimeout = socketTimeout;
+  }
+
+  /**
+   * Gets the requested receive buffer size for each of the underlying UDP
+   * sockets.
+   * @return
+   *    &lt;=0 if the default buffer size of the OS is used, or a value &gt;0 if the
+   *    user specified a buffer size.
+   */
+  public int getReceiveBufferSize() {
+    return receiveBufferSize;
+  }
+
+  /**
+   * Sets the receive buffer size of each socket, which should be greater than
+   * the maximum inbound message size. This method has to be called before
+   * {@link #listen()} to be effective.
+   * @param receiveBufferSize
+   *    an integer value &gt;0 and &gt; {@link #getMaxInboundMessageSize()}.
+   */
+  public void setReceiveBufferSize(int receiveBufferSize) {
+    if (receiveBufferSize <= 0) {
+      throw new IllegalArgumentException("Receive buffer size must be > 0");
+    }
+    this.receiveBufferSize = receiveBufferSize;
+  }
+
+  class ListenThread implements WorkerTask {
+
+    private final int index;
+    private final byte[] buf;
+    private volatile boolean stop = false;
+
+    ListenThread(int index) {
+      this.index = index;
+      this.buf = new byte[getMaxInboundMessageSize()];
+    }
+
+    public void run() {
+      while (!stop) {
+        DatagramSocket[] s = sockets;
+        if (s == null) {
+          break;
+        }
+        DatagramSocket socket = s[index];
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        try {
+          try {
+            socket.receive(packet);
+          }
+          catch (InterruptedIOException iiox) {
+            continue;
+          }
+          if (logger.isDebugEnabled()) {
+            logger.debug("Received message from "+packet.getAddress()+"/"+
+                         packet.getPort()+" on socket "+index+
+                         " with length "+packet.getLength()+": "+
+                         new OctetString(packet.getData(), 0,
+                                         packet.getLength()).toHexString());
+          }
+          ByteBuffer bis;
+          // If messages are processed asynchronously (i.e. multi-threaded)
+          // then we have to copy the buffer's content here!
+          if (isAsyncMsgProcessingSupported()) {
+            byte[] bytes = new byte[packet.getLength()];
+            System.arraycopy(packet.getData(), 0, bytes, 0, bytes.length);
+            bis = ByteBuffer.wrap(bytes);
+          }
+          else {
+            bis = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+          }
+          TransportStateReference stateReference =
+            new TransportStateReference(ReusePortUdpTransportMapping.this,
+                                        udpAddress, null,
+                                        SecurityLevel.undefined,
+                                        SecurityLevel.undefined,
+                                        false, socket);
+          fireProcessMessage(new UdpAddress(packet.getAddress(),
+                                            packet.getPort()), bis, stateReference);
+        }
+        catch (SocketException soex) {
+          if (stop) {
+            break;
+          }
+          logger.warn("Socket "+index+" for transport mapping "+
+                      ReusePortUdpTransportMapping.this+" error: "+
+                      soex.getMessage());
+          if (SNMP4JSettings.isForwardRuntimeExceptions()) {
+            stop = true;
+            throw new RuntimeException(soex);
+          }
+          renewSocket(socket);
+        }
+        catch (IOException iox) {
+          logger.warn(iox);
+          if (SNMP4JSettings.isForwardRuntimeExceptions()) {
+            throw new RuntimeException(iox);
+          }
+        }
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Worker task stopped:" + getClass().getName()+" "+index);
+      }
+    }
+
+    private void renewSocket(DatagramSocket failedSocket) {
+      synchronized (ReusePortUdpTransportMapping.this) {
+        DatagramSocket[] s = sockets;
+        if ((s == null) || (s[index] != failedSocket)) {
+          return;
+        }
+        if (!failedSocket.isClosed()) {
+          failedSocket.close();
+        }
+        try {
+          DatagramSocket[] renewed = s.clone();
+          renewed[index] = (s.length > 1) ?
+              openSocket(s[(index + 1) % s.length].getLocalPort()) :
+              new DatagramSocket(udpAddress.getPort(), udpAddress.getInetAddress());
+          renewed[index].setSoTimeout(socketTimeout);
+          sockets = renewed;
+        }
+        catch (SocketException sex) {
+          stop = true;
+          logger.error("Socket renewal for transport mapping " +
+                       ReusePortUdpTransportMapping.this +
+                       " failed with: " + sex.getMessage(), sex);
+        }
+      }
+    }
+
+    public void terminate() {
+      stop = true;
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+      stop = true;
+    }
+  }
+}
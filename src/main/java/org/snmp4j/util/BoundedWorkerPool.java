@@ -0,0 +1,261 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BoundedWorkerPool.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.snmp4j.SNMP4JSettings;
+
+/**
+ * The <code>BoundedWorkerPool</code> is a {@link WorkerPool} whose workers
+ * take tasks from a shared, bounded queue. In contrast to {@link ThreadPool},
+ * {@link #execute(WorkerTask)} never blocks the caller: if the queue is
+ * full, the configured {@link OverflowPolicy} either drops the oldest queued
+ * task, drops the new task, or runs the new task in the calling thread.
+ * The {@link WorkerTask#terminate()} method of a dropped task is called, so
+ * that it can release its resources.
+ * Used with a {@link MultiThreadedMessageDispatcher}, a slow
+ * {@link org.snmp4j.CommandResponder} thus cannot stall the thread
+ * receiving messages from the transport mapping.
+ * <p>
+ * Idle workers take the next task from the shared queue, so the load is
+ * balanced between the workers without any task being bound to a busy
+ * worker. The worker threads are created by
+ * {@link SNMP4JSettings#getThreadFactory()}. The current queue depth and the
+ * number of dropped tasks are available for monitoring.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class BoundedWorkerPool implements WorkerPool {
+
+  /**
+   * The <code>OverflowPolicy</code> defines what happens with a task that is
+   * executed while the queue of the pool is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * The oldest queued task is removed from the queue and the new task is
+     * queued.
+     */
+    dropOldest,
+    /**
+     * The new task is not executed.
+     */
+    dropNew,
+    /**
+     * The new task is executed by the calling thread.
+     */
+    callerRuns
+  };
+
+  private final String name;
+  private final int queueCapacity;
+  private final TaskQueue queue;
+  private final List<WorkerTask> workerThreads;
+
+  /**
+   * Creates a worker pool and starts its worker threads.
+   * @param name
+   *    the name prefix of the worker threads.
+   * @param size
+   *    the number of worker threads.
+   * @param queueCapacity
+   *    the maximum number of tasks waiting for a worker.
+   * @param overflowPolicy
+   *    the handling of tasks executed while the queue is full.
+   */
+  public BoundedWorkerPool(String name, int size, int queueCapacity,
+                           OverflowPolicy overflowPolicy) {
+    if ((size < 1) || (queueCapacity < 1)) {
+      throw new IllegalArgumentException("Pool size and queue capacity must be > 0");
+    }
+    this.name = name;
+    this.queueCapacity = queueCapacity;
+    this.queue = new TaskQueue(name, queueCapacity, overflowPolicy);
+    this.workerThreads = new ArrayList<WorkerTask>(size);
+    for (int i=0; i<size; i++) {
+      WorkerTask thread = SNMP4JSettings.getThreadFactory().
+          createWorkerThread(name+"."+i, queue.createWorker(), true);
+      workerThreads.add(thread);
+      thread.run();
+    }
+  }
+
+  /**
+   * Queues a task for execution by a worker. This method does not block. If
+   * the queue is full, the task is handled according to the overflow policy.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   */
+  public void execute(WorkerTask task) {
+    queue.execute(task);
+  }
+
+  /**
+   * Queues a task for execution by a worker if the queue is not full.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   * @return
+   *    <code>true</code> if the task has been queued.
+   */
+  public boolean tryToExecute(WorkerTask task) {
+    return queue.offer(task);
+  }
+
+  /**
+   * Stops the pool gracefully. Already queued tasks are executed, then the
+   * workers terminate. This method returns when all worker threads have been
+   * joined.
+   */
+  public void stop() {
+    queue.stop();
+    for (WorkerTask thread : workerThreads) {
+      thread.terminate();
+    }
+    for (WorkerTask thread : workerThreads) {
+      try {
+        thread.join();
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+  }
+
+  /**
+   * Cancels the pool by discarding all queued tasks and interrupting the
+   * workers. This method does not block.
+   */
+  public void cancel() {
+    queue.cancel();
+    for (WorkerTask thread : workerThreads) {
+      thread.terminate();
+      thread.interrupt();
+    }
+  }
+
+  public boolean isIdle() {
+    return queue.isIdle();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getSize() {
+    return workerThreads.size();
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return queue.getOverflowPolicy();
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * Gets the number of tasks waiting for a worker.
+   * @return
+   *    the current queue depth.
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * Gets the largest queue depth observed since the pool has been created.
+   * @return
+   *    the maximum queue depth.
+   */
+  public int getMaxQueueSize() {
+    return queue.getMaxQueueSize();
+  }
+
+  /**
+   * Gets the number of tasks currently executed by the workers.
+   * @return
+   *    the number of busy workers.
+   */
+  public int getActiveCount() {
+    return queue.getActiveCount();
+  }
+
+  /**
+   * Gets the number of tasks executed by the workers.
+   * @return
+   *    the number of completed tasks.
+   */
+  public long getCompletedCount() {
+    return queue.getCompletedCount();
+  }
+
+  /**
+   * Gets the number of queued tasks dropped by the
+   * {@link OverflowPolicy#dropOldest} policy.
+   * @return
+   *    the number of dropped queued tasks.
+   */
+  public long getDroppedOldestCount() {
+    return queue.getDroppedOldestCount();
+  }
+
+  /**
+   * Gets the number of new tasks dropped by the {@link OverflowPolicy#dropNew}
+   * policy or because the pool has been stopped.
+   * @return
+   *    the number of rejected tasks.
+   */
+  public long getDroppedNewCount() {
+    return queue.getDroppedNewCount();
+  }
+
+  /**
+   * Gets the number of tasks executed by the calling thread because of the
+   * {@link OverflowPolicy#callerRuns} policy.
+   * @return
+   *    the number of tasks run by callers.
+   */
+  public long getCallerRunsCount() {
+    return queue.getCallerRunsCount();
+  }
+
+  /**
+   * Gets the total number of tasks that could not be queued, regardless of
+   * the overflow policy.
+   * @return
+   *    the sum of dropped and caller-run tasks.
+   */
+  public long getRejectedCount() {
+    return queue.getRejectedCount();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getName()+"[name="+name+",size="+workerThreads.size()+
+        ",queueSize="+queue.size()+",queueCapacity="+queueCapacity+
+        ",overflowPolicy="+queue.getOverflowPolicy()+",active="+queue.getActiveCount()+
+        ",completed="+queue.getCompletedCount()+",rejected="+queue.getRejectedCount()+"]";
+  }
+}
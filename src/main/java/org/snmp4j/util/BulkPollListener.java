@@ -0,0 +1,50 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BulkPollListener.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.EventListener;
+import java.util.List;
+
+/**
+ * The <code>BulkPollListener</code> receives the results and statistics of
+ * a {@link BulkPoller}. The poller never calls its listener concurrently.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public interface BulkPollListener extends EventListener {
+
+  /**
+   * Consumes a batch of poll results. Each target polled in a cycle is
+   * reported exactly once.
+   * @param events
+   *    a list of <code>PollEvent</code>s, one per target.
+   */
+  void resultsReceived(List<PollEvent> events);
+
+  /**
+   * Indicates that all targets of a polling cycle have been reported.
+   * @param statistics
+   *    the statistics of the finished cycle.
+   */
+  void cycleFinished(PollCycleStatistics statistics);
+
+}
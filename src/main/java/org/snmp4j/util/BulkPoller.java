@@ -0,0 +1,575 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BulkPoller.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Session;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The <code>BulkPoller</code> periodically retrieves the same set of OIDs
+ * from a (large) set of targets. In each cycle, the OIDs are split into as
+ * many requests per target as needed to fit into the target's
+ * {@link Target#getMaxSizeRequestPDU()}, and the requests are sent
+ * asynchronously through the supplied {@link Session}. To avoid bursts,
+ * the targets are spread evenly over the first part of the polling period
+ * (see {@link #setSpreadFactor(double)}), with a random jitter within each
+ * target's time slot.
+ * <p>
+ * The results are delivered in batches of {@link PollEvent}s, one per target,
+ * to a {@link BulkPollListener}. When all targets of a cycle have been
+ * reported, the listener receives the {@link PollCycleStatistics} of the
+ * cycle with throughput, timeouts, and response time percentiles.
+ * <p>
+ * The sends are scheduled by a {@link SchedulerTask} that is added to the
+ * supplied {@link TaskScheduler}, whose <code>run</code> method has to be
+ * executed by a thread of the application.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class BulkPoller {
+
+  private static final LogAdapter logger = LogFactory.getLogger(BulkPoller.class);
+
+  /**
+   * The default polling period in milliseconds.
+   */
+  public static final long DEFAULT_PERIOD = 60000;
+  /**
+   * The default fraction of the polling period over which the targets
+   * are spread.
+   */
+  public static final double DEFAULT_SPREAD_FACTOR = 0.5;
+  /**
+   * The default number of {@link PollEvent}s delivered per batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  private Session session;
+  private PDUFactory pduFactory;
+  private TaskScheduler scheduler;
+  private BulkPollListener listener;
+  private Object userObject;
+
+  private volatile List<Target> targets = Collections.emptyList();
+  private volatile OID[] oids = new OID[0];
+  private volatile long period = DEFAULT_PERIOD;
+  private volatile double spreadFactor = DEFAULT_SPREAD_FACTOR;
+  private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+  private final Random random = new Random();
+  private final Object deliveryLock = new Object();
+  private PollerTask pollerTask;
+  private long cycleCount;
+
+  /**
+   * Creates a bulk poller.
+   * @param session
+   *    the SNMP session used to send the requests.
+   * @param pduFactory
+   *    the factory creating the request PDUs (typically GET requests).
+   * @param scheduler
+   *    the scheduler that runs the poller's send task.
+   */
+  public BulkPoller(Session session, PDUFactory pduFactory,
+                    TaskScheduler scheduler) {
+    this.session = session;
+    this.pduFactory = pduFactory;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Starts polling. The first cycle starts immediately.
+   * @throws IllegalStateException
+   *    if the poller is already running.
+   */
+  public synchronized void start() {
+    if (pollerTask != null) {
+      throw new IllegalStateException("Poller already running");
+    }
+    pollerTask = new PollerTask();
+    scheduler.addTask(pollerTask);
+  }
+
+  /**
+   * Stops polling. Responses to requests already sent are still reported.
+   */
+  public synchronized void stop() {
+    if (pollerTask != null) {
+      pollerTask.terminate();
+      scheduler.removeTask(pollerTask);
+      pollerTask = null;
+    }
+  }
+
+  /**
+   * Checks whether the poller is running.
+   * @return
+   *    <code>true</code> if {@link #start()} has been called and
+   *    {@link #stop()} has not been called since.
+   */
+  public synchronized boolean isRunning() {
+    return (pollerTask != null);
+  }
+
+  /**
+   * Sets the targets to poll. Changes take effect at the start of the next
+   * cycle.
+   * @param targets
+   *    a collection of targets.
+   */
+  public void setTargets(Collection<? extends Target> targets) {
+    this.targets = Collections.unmodifiableList(new ArrayList<Target>(targets));
+  }
+
+  public List<Target> getTargets() {
+    return targets;
+  }
+
+  /**
+   * Sets the OIDs to retrieve from each target. Changes take effect at the
+   * start of the next cycle.
+   * @param oids
+   *    the instance OIDs to GET (or the OIDs to GETNEXT, depending on the
+   *    PDU type created by the <code>PDUFactory</code>).
+   */
+  public void setOIDs(OID[] oids) {
+    this.oids = oids.clone();
+  }
+
+  public OID[] getOIDs() {
+    return oids.clone();
+  }
+
+  /**
+   * Sets the polling period. Changes take effect at the start of the next
+   * cycle.
+   * @param period
+   *    the time in milliseconds between the starts of two cycles.
+   */
+  public void setPeriod(long period) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Period must be > 0");
+    }
+    this.period = period;
+  }
+
+  public long getPeriod() {
+    return period;
+  }
+
+  /**
+   * Sets the fraction of the polling period over which the targets of a
+   * cycle are spread. With a value of zero, all requests of a cycle are sent
+   * at once.
+   * @param spreadFactor
+   *    a value between 0 and 1 (default is {@link #DEFAULT_SPREAD_FACTOR}).
+   */
+  public void setSpreadFactor(double spreadFactor) {
+    if ((spreadFactor < 0.0) || (spreadFactor > 1.0)) {
+      throw new IllegalArgumentException("Spread factor must be between 0 and 1");
+    }
+    this.spreadFactor = spreadFactor;
+  }
+
+  public double getSpreadFactor() {
+    return spreadFactor;
+  }
+
+  /**
+   * Sets the number of poll results delivered to the listener per batch. The
+   * last batch of a cycle may be smaller.
+   * @param batchSize
+   *    the batch size (at least 1).
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setListener(BulkPollListener listener) {
+    this.listener = listener;
+  }
+
+  public BulkPollListener getListener() {
+    return listener;
+  }
+
+  /**
+   * Sets a user object that is transparently handed over in the poll events.
+   * @param userObject
+   *    an arbitrary object or <code>null</code>.
+   */
+  public void setUserObject(Object userObject) {
+    this.userObject = userObject;
+  }
+
+  public Object getUserObject() {
+    return userObject;
+  }
+
+  /**
+   * Creates the requests for a target. This method splits the variable
+   * bindings into as many PDUs as needed to fit the target's maximum
+   * request size.
+   * @param target
+   *    the target to poll.
+   * @param vbs
+   *    the variable bindings to poll.
+   * @return
+   *    a list of PDUs.
+   */
+  protected List<PDU> createPDUs(Target target, List<VariableBinding> vbs) {
+    return PDUBuilder.createPDUs(pduFactory, target, vbs);
+  }
+
+  private void deliver(List<PollEvent> events, PollCycleStatistics statistics) {
+    BulkPollListener l = listener;
+    if (l == null) {
+      return;
+    }
+    synchronized (deliveryLock) {
+      if ((events != null) && !events.isEmpty()) {
+        l.resultsReceived(events);
+      }
+      if (statistics != null) {
+        l.cycleFinished(statistics);
+      }
+    }
+  }
+
+  /**
+   * The <code>PollerTask</code> starts the cycles and sends the requests
+   * whose time slot has been reached.
+   */
+  class PollerTask implements SchedulerTask {
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean done;
+    private volatile long nextCycleTime = System.nanoTime();
+    private volatile PollCycle cycle;
+
+    public boolean isReadyToRun() {
+      if (done || running.get()) {
+        return false;
+      }
+      long now = System.nanoTime();
+      PollCycle c = cycle;
+      return (now - nextCycleTime >= 0) || ((c != null) && c.isSendDue(now));
+    }
+
+    public boolean isDone() {
+      return done;
+    }
+
+    public void run() {
+      if (!running.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        long now = System.nanoTime();
+        if ((now - nextCycleTime >= 0) && !done) {
+          if (cycle != null) {
+            // send what is left of the previous cycle before starting the next
+            cycle.sendDue(Long.MAX_VALUE);
+          }
+          long periodNanos = period * SnmpConstants.MILLISECOND_TO_NANOSECOND;
+          cycle = new PollCycle(now, periodNanos);
+          nextCycleTime += periodNanos;
+          if (now - nextCycleTime >= 0) {
+            logger.warn("Bulk poller is late by "+
+                        ((now - nextCycleTime) / SnmpConstants.MILLISECOND_TO_NANOSECOND)+
+                        " ms, skipping missed cycles");
+            nextCycleTime = now + periodNanos;
+          }
+          cycle.start();
+        }
+        if (cycle != null) {
+          cycle.sendDue(now);
+        }
+      }
+      finally {
+        running.set(false);
+      }
+    }
+
+    public void terminate() {
+      done = true;
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+
+  /**
+   * A <code>PollCycle</code> polls all targets once and collects the results
+   * and statistics of the cycle.
+   */
+  class PollCycle {
+
+    private final long number;
+    private final long startNanos;
+    private final long startTime;
+    private final List<Target> cycleTargets;
+    private final List<VariableBinding> vbs;
+    private final long[] sendOffsets;
+    private int nextTarget;
+
+    private final AtomicInteger pendingTargets;
+    private int requestCount;
+    private int responseCount;
+    private int timeoutCount;
+    private int errorCount;
+    private long[] responseTimes = new long[16];
+    private List<PollEvent> batch;
+
+    PollCycle(long startNanos, long periodNanos) {
+      synchronized (BulkPoller.this) {
+        this.number = ++cycleCount;
+      }
+      this.startNanos = startNanos;
+      this.startTime = System.currentTimeMillis();
+      this.cycleTargets = targets;
+      OID[] cycleOIDs = oids;
+      this.vbs = new ArrayList<VariableBinding>(cycleOIDs.length);
+      for (OID oid : cycleOIDs) {
+        vbs.add(new VariableBinding(oid));
+      }
+      int n = cycleTargets.size();
+      this.sendOffsets = new long[n];
+      double slot = (n == 0) ? 0 : (periodNanos * spreadFactor) / n;
+      for (int i=0; i<n; i++) {
+        sendOffsets[i] = (long)(i * slot + random.nextDouble() * slot);
+      }
+      this.pendingTargets = new AtomicInteger(n);
+      this.batch = new ArrayList<PollEvent>(Math.min(n, batchSize));
+    }
+
+    void start() {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Starting poll cycle "+number+" with "+cycleTargets.size()+
+                     " targets and "+vbs.size()+" OIDs");
+      }
+      if (cycleTargets.isEmpty()) {
+        finish();
+      }
+    }
+
+    synchronized boolean isSendDue(long now) {
+      return (nextTarget < sendOffsets.length) &&
+          (now - (startNanos + sendOffsets[nextTarget]) >= 0);
+    }
+
+    void sendDue(long now) {
+      while (true) {
+        Target target;
+        synchronized (this) {
+          if ((nextTarget >= sendOffsets.length) ||
+              ((now != Long.MAX_VALUE) &&
+               (now - (startNanos + sendOffsets[nextTarget]) < 0))) {
+            return;
+          }
+          target = cycleTargets.get(nextTarget++);
+        }
+        new TargetPoll(this, target).send();
+      }
+    }
+
+    synchronized void requestsSent(int count) {
+      requestCount += count;
+    }
+
+    synchronized void responseReceived(long responseTime, boolean error) {
+      if (responseCount == responseTimes.length) {
+        responseTimes = Arrays.copyOf(responseTimes, responseTimes.length * 2);
+      }
+      responseTimes[responseCount++] = responseTime;
+      if (error) {
+        errorCount++;
+      }
+    }
+
+    synchronized void requestFailed(boolean timeout) {
+      if (timeout) {
+        timeoutCount++;
+      }
+      else {
+        errorCount++;
+      }
+    }
+
+    void targetCompleted(PollEvent event) {
+      List<PollEvent> fullBatch = null;
+      synchronized (this) {
+        batch.add(event);
+        if (batch.size() >= batchSize) {
+          fullBatch = batch;
+          batch = new ArrayList<PollEvent>(batchSize);
+        }
+      }
+      if (fullBatch != null) {
+        deliver(fullBatch, null);
+      }
+      if (pendingTargets.decrementAndGet() == 0) {
+        finish();
+      }
+    }
+
+    private void finish() {
+      List<PollEvent> lastBatch;
+      PollCycleStatistics statistics;
+      synchronized (this) {
+        lastBatch = batch;
+        batch = new ArrayList<PollEvent>(0);
+        statistics = new PollCycleStatistics(number, startTime,
+            (System.nanoTime() - startNanos) / SnmpConstants.MILLISECOND_TO_NANOSECOND,
+            cycleTargets.size(), requestCount, responseCount, timeoutCount,
+            errorCount, Arrays.copyOf(responseTimes, responseCount));
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Finished poll cycle: "+statistics);
+      }
+      deliver(lastBatch, statistics);
+    }
+  }
+
+  /**
+   * A <code>TargetPoll</code> sends the requests of a target in a cycle and
+   * combines their responses into a {@link PollEvent}.
+   */
+  class TargetPoll implements ResponseListener {
+
+    private final PollCycle cycle;
+    private final Target target;
+    private final PollEvent event;
+    private final VariableBinding[] results;
+    private int pendingRequests;
+    private long sendTime;
+
+    TargetPoll(PollCycle cycle, Target target) {
+      this.cycle = cycle;
+      this.target = target;
+      this.results = new VariableBinding[cycle.vbs.size()];
+      this.event = new PollEvent(this, userObject, target, cycle.number, results);
+    }
+
+    void send() {
+      List<PDU> pdus = createPDUs(target, cycle.vbs);
+      synchronized (this) {
+        pendingRequests = pdus.size();
+        sendTime = System.nanoTime();
+      }
+      if (pdus.isEmpty()) {
+        cycle.targetCompleted(event);
+        return;
+      }
+      cycle.requestsSent(pdus.size());
+      int offset = 0;
+      for (PDU pdu : pdus) {
+        try {
+          session.send(pdu, target, offset, this);
+        }
+        catch (IOException iox) {
+          logger.warn("Failed to poll "+target.getAddress()+": "+iox.getMessage());
+          cycle.requestFailed(false);
+          synchronized (this) {
+            if (!event.isError()) {
+              event.setException(iox);
+            }
+          }
+          requestCompleted();
+        }
+        offset += pdu.size();
+      }
+    }
+
+    public void onResponse(ResponseEvent responseEvent) {
+      session.cancel(responseEvent.getRequest(), this);
+      long responseTime =
+          (System.nanoTime() - sendTime) / SnmpConstants.MILLISECOND_TO_NANOSECOND;
+      PDU response = responseEvent.getResponse();
+      synchronized (this) {
+        if (responseEvent.getError() != null) {
+          cycle.requestFailed(false);
+          if (!event.isError()) {
+            event.setException(responseEvent.getError());
+          }
+        }
+        else if (response == null) {
+          cycle.requestFailed(true);
+          if (!event.isError()) {
+            event.setStatus(RetrievalEvent.STATUS_TIMEOUT);
+          }
+        }
+        else if (response.getType() == PDU.REPORT) {
+          cycle.responseReceived(responseTime, true);
+          if (!event.isError()) {
+            event.setReportPDU(response);
+          }
+        }
+        else if (response.getErrorStatus() != PDU.noError) {
+          cycle.responseReceived(responseTime, true);
+          if (!event.isError()) {
+            event.setStatus(response.getErrorStatus());
+          }
+        }
+        else {
+          cycle.responseReceived(responseTime, false);
+          int offset = (Integer) responseEvent.getUserObject();
+          for (int i=0; (i < response.size()) && (offset + i < results.length); i++) {
+            results[offset + i] = response.get(i);
+          }
+        }
+        event.setResponseTime(Math.max(event.getResponseTime(), responseTime));
+      }
+      requestCompleted();
+    }
+
+    private void requestCompleted() {
+      boolean completed;
+      synchronized (this) {
+        completed = (--pendingRequests == 0);
+      }
+      if (completed) {
+        cycle.targetCompleted(event);
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - ByteBufferPool.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>ByteBufferPool</code> is a lock-free pool of equally sized
+ * {@link ByteBuffer}s. Buffers are handed out as reference counted
+ * {@link PooledBuffer}s. A pooled buffer returns to the pool when its
+ * reference count drops to zero. If the pool is empty, a new buffer is
+ * allocated. If the pool is full when a buffer is released, the buffer is
+ * left to the garbage collector.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class ByteBufferPool {
+
+  private final int bufferSize;
+  private final int maxPoolSize;
+  private final boolean direct;
+
+  private final Queue<PooledBuffer> pool = new ConcurrentLinkedQueue<PooledBuffer>();
+  private final AtomicInteger poolSize = new AtomicInteger();
+  private final AtomicLong allocatedBuffers = new AtomicLong();
+
+  /**
+   * Creates a buffer pool.
+   * @param bufferSize
+   *    the capacity of each buffer in bytes.
+   * @param maxPoolSize
+   *    the maximum number of idle buffers kept in the pool.
+   * @param direct
+   *    if <code>true</code> direct buffers are allocated, otherwise heap
+   *    buffers.
+   */
+  public ByteBufferPool(int bufferSize, int maxPoolSize, boolean direct) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be > 0");
+    }
+    this.bufferSize = bufferSize;
+    this.maxPoolSize = maxPoolSize;
+    this.direct = direct;
+  }
+
+  /**
+   * Gets a buffer from the pool or allocates a new one if the pool is empty.
+   * The returned buffer is cleared and has a reference count of one.
+   * @return
+   *    a pooled buffer that has to be released by {@link PooledBuffer#release()}.
+   */
+  public PooledBuffer acquire() {
+    PooledBuffer pooledBuffer = pool.poll();
+    if (pooledBuffer == null) {
+      allocatedBuffers.incrementAndGet();
+      pooledBuffer = new PooledBuffer(direct ?
+          ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize));
+    }
+    else {
+      poolSize.decrementAndGet();
+    }
+    pooledBuffer.buffer.clear();
+    pooledBuffer.refCount.set(1);
+    return pooledBuffer;
+  }
+
+  private void recycle(PooledBuffer pooledBuffer) {
+    if (poolSize.incrementAndGet() <= maxPoolSize) {
+      pool.offer(pooledBuffer);
+    }
+    else {
+      poolSize.decrementAndGet();
+    }
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public int getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * Gets the number of idle buffers in the pool.
+   * @return
+   *    the number of buffers available without allocation.
+   */
+  public int getPoolSize() {
+    return poolSize.get();
+  }
+
+  /**
+   * Gets the total number of buffers allocated by this pool.
+   * @return
+   *    the number of allocations since creation of the pool.
+   */
+  public long getAllocatedBuffers() {
+    return allocatedBuffers.get();
+  }
+
+  /**
+   * A <code>PooledBuffer</code> is a reference counted buffer of a
+   * {@link ByteBufferPool}. Any party that needs the buffer content beyond
+   * the scope it has received the buffer in, has to {@link #retain()} the
+   * buffer and {@link #release()} it when done.
+   */
+  public final class PooledBuffer {
+
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    private PooledBuffer(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Gets the pooled byte buffer.
+     * @return
+     *    the byte buffer which must not be accessed after the last release.
+     */
+    public ByteBuffer getBuffer() {
+      return buffer;
+    }
+
+    /**
+     * Increments the reference count of this buffer.
+     */
+    public void retain() {
+      refCount.incrementAndGet();
+    }
+
+    /**
+     * Decrements the reference count of this buffer and returns it to the
+     * pool if the count drops to zero.
+     */
+    public void release() {
+      int count = refCount.decrementAndGet();
+      if (count == 0) {
+        recycle(this);
+      }
+      else if (count < 0) {
+        refCount.set(0);
+        throw new IllegalStateException("Pooled buffer released too often");
+      }
+    }
+  }
+}
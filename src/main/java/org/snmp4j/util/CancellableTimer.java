@@ -0,0 +1,52 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - CancellableTimer.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.TimerTask;
+
+/**
+ * A <code>CancellableTimer</code> is a {@link CommonTimer} that does not
+ * rely on the internal state of {@link TimerTask} to track scheduled tasks.
+ * Tasks scheduled on such a timer have to be cancelled through
+ * {@link #cancel(TimerTask)} (in addition to {@link TimerTask#cancel()}),
+ * otherwise the timer will still run them when they are due.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public interface CancellableTimer extends CommonTimer {
+
+  /**
+   * Cancels the specified task on this timer. If the task is scheduled for
+   * a one-time execution and has not yet run, it will never run. If the
+   * task is scheduled for repeated execution, it will never run again.
+   *
+   * @param task
+   *    a task previously scheduled on this timer.
+   * @return
+   *    <code>true</code> if this call prevented one or more scheduled
+   *    executions of the task, <code>false</code> if the task is unknown to
+   *    this timer, has already run (one-time execution), or has already been
+   *    cancelled.
+   */
+  boolean cancel(TimerTask task);
+
+}
@@ -24,6 +24,9 @@ import org.snmp4j.*;
 import org.snmp4j.mp.MessageProcessingModel;
 import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+
+import java.util.List;
 
 /**
  * The <code>DefaultPDUFactory</code> is a default implementation of the
@@ -33,7 +36,7 @@ import org.snmp4j.smi.OctetString;
  * for a SNMPv3 target. In all other cases a {@link PDU} instance is created.
  *
  * @author Frank Fock
- * @version 2.5.1
+ * @version 2.6.0
  * @since 1.0.4
  */
 public class DefaultPDUFactory implements PDUFactory {
@@ -104,6 +107,26 @@ public class DefaultPDUFactory implements PDUFactory {
     return pdu;
   }
 
+  /**
+   * Creates as many PDUs for the supplied target as are needed to carry the
+   * supplied variable bindings without exceeding the target's maximum request
+   * PDU size ({@link Target#getMaxSizeRequestPDU()}). The variable bindings
+   * are distributed in their order. A variable binding that exceeds the size
+   * limit on its own is put in a PDU of its own.
+   *
+   * @param target
+   *    the <code>Target</code> where the PDUs will be sent.
+   * @param variableBindings
+   *    the variable bindings to distribute.
+   * @return
+   *    a list of PDUs created by {@link #createPDU(Target)}.
+   * @see PDUBuilder#createPDUs(PDUFactory, Target, List)
+   * @since 2.6.0
+   */
+  public List<PDU> createPDUs(Target target, List<? extends VariableBinding> variableBindings) {
+    return PDUBuilder.createPDUs(this, target, variableBindings);
+  }
+
   /**
    * Sets context engine ID and context name members on the given PDU if that PDU
    * is a {@link ScopedPDU}.
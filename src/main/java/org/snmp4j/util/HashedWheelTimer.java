@@ -0,0 +1,441 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - HashedWheelTimer.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The <code>HashedWheelTimer</code> is a {@link CommonTimer} based on a
+ * hashed timing wheel. Scheduling and cancelling a task are O(1) operations
+ * that do not contend on a single lock, which makes this timer suitable for
+ * sessions with a large number of outstanding requests (each confirmed
+ * request in {@link org.snmp4j.Snmp} schedules its own timeout task).
+ * <p>
+ * The timer does not fire tasks at their exact due time. Instead, a single
+ * worker thread advances the wheel every tick and runs all tasks that expired
+ * within that tick. Thus, the precision of this timer is bounded by the tick
+ * duration. The number of buckets of the wheel (wheel size) should be chosen
+ * so that <code>tickDuration * wheelSize</code> covers the typical delay
+ * (e.g. the request timeout) to avoid multiple rounds per task.
+ * <p>
+ * Unlike {@link java.util.Timer}, this timer cannot detect tasks that have
+ * been cancelled by {@link TimerTask#cancel()} only. Such tasks have to be
+ * cancelled by {@link #cancel(TimerTask)} too, which is done by
+ * {@link org.snmp4j.Snmp} for its pending requests automatically.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class HashedWheelTimer implements CancellableTimer {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(HashedWheelTimer.class);
+
+  /**
+   * The default tick duration in milliseconds.
+   */
+  public static final long DEFAULT_TICK_DURATION = 10;
+  /**
+   * The default number of buckets of the wheel.
+   */
+  public static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private static final int ST_INIT = 0;
+  private static final int ST_CANCELLED = 1;
+  private static final int ST_EXPIRED = 2;
+
+  private final long tickDuration;
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final long startTime;
+
+  private final Queue<Timeout> pendingTimeouts =
+      new ConcurrentLinkedQueue<Timeout>();
+  private final Queue<Timeout> cancelledTimeouts =
+      new ConcurrentLinkedQueue<Timeout>();
+  private final ConcurrentMap<TimerTask, Timeout> scheduledTasks =
+      new ConcurrentHashMap<TimerTask, Timeout>();
+
+  private final Object tickLock = new Object();
+  private volatile boolean cancelled = false;
+  private WorkerTask workerThread;
+
+  /**
+   * Creates a hashed wheel timer with a tick duration of
+   * {@link #DEFAULT_TICK_DURATION} milliseconds and
+   * {@link #DEFAULT_WHEEL_SIZE} buckets. The worker thread of the timer is
+   * started immediately as daemon thread.
+   */
+  public HashedWheelTimer() {
+    this("SNMP4J.HashedWheelTimer", DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * Creates a hashed wheel timer and starts its worker thread as daemon
+   * thread using the {@link SNMP4JSettings#getThreadFactory()}.
+   *
+   * @param name
+   *    the name of the worker thread.
+   * @param tickDuration
+   *    the duration of one tick in milliseconds (the timer precision).
+   * @param wheelSize
+   *    the number of buckets of the wheel. The value is rounded up to the
+   *    next power of two.
+   */
+  public HashedWheelTimer(String name, long tickDuration, int wheelSize) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("Tick duration must be positive: "+
+                                         tickDuration);
+    }
+    if ((wheelSize <= 0) || (wheelSize > (1 << 30))) {
+      throw new IllegalArgumentException("Wheel size out of range: "+
+                                         wheelSize);
+    }
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    this.tickDuration = tickDuration;
+    this.tickNanos = tickDuration * 1000000L;
+    this.wheel = new Bucket[size];
+    for (int i=0; i<size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.startTime = System.nanoTime();
+    workerThread = SNMP4JSettings.getThreadFactory().
+        createWorkerThread(name, new Worker(), true);
+    workerThread.run();
+  }
+
+  /**
+   * Gets the tick duration of this timer.
+   * @return
+   *    the tick duration in milliseconds.
+   */
+  public long getTickDuration() {
+    return tickDuration;
+  }
+
+  /**
+   * Gets the number of buckets of the wheel.
+   * @return
+   *    the wheel size which is always a power of two.
+   */
+  public int getWheelSize() {
+    return wheel.length;
+  }
+
+  /**
+   * Gets the number of tasks currently scheduled on this timer.
+   * @return
+   *    the number of scheduled (and not yet expired or cancelled) tasks.
+   */
+  public int getScheduledTaskCount() {
+    return scheduledTasks.size();
+  }
+
+  public void schedule(TimerTask task, long delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Negative delay.");
+    }
+    addTimeout(task, delay, 0);
+  }
+
+  public void schedule(TimerTask task, Date firstTime, long period) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Non-positive period.");
+    }
+    long delay = Math.max(0, firstTime.getTime() - System.currentTimeMillis());
+    addTimeout(task, delay, period);
+  }
+
+  public void schedule(TimerTask task, long delay, long period) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Negative delay.");
+    }
+    if (period <= 0) {
+      throw new IllegalArgumentException("Non-positive period.");
+    }
+    addTimeout(task, delay, period);
+  }
+
+  public boolean cancel(TimerTask task) {
+    Timeout timeout = scheduledTasks.remove(task);
+    if (timeout == null) {
+      return false;
+    }
+    // a periodic task that is currently running will not be rescheduled
+    return timeout.cancel() || (timeout.period > 0);
+  }
+
+  public void cancel() {
+    cancelled = true;
+    synchronized (tickLock) {
+      tickLock.notify();
+    }
+  }
+
+  private void addTimeout(TimerTask task, long delay, long period) {
+    if (cancelled) {
+      throw new IllegalStateException("Timer already cancelled.");
+    }
+    long deadline = relativeNanoTime() + delay * 1000000L;
+    Timeout timeout = new Timeout(task, deadline, period);
+    if (scheduledTasks.putIfAbsent(task, timeout) != null) {
+      throw new IllegalStateException("Task already scheduled or cancelled");
+    }
+    pendingTimeouts.add(timeout);
+  }
+
+  private long relativeNanoTime() {
+    return System.nanoTime() - startTime;
+  }
+
+  /**
+   * A <code>Timeout</code> represents a scheduled execution of a task and
+   * is linked into exactly one bucket of the wheel, once it has been
+   * transferred there by the worker thread.
+   */
+  private final class Timeout {
+
+    private final TimerTask task;
+    private final long deadline;
+    private final long period;
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+    private long remainingRounds;
+
+    private Timeout next;
+    private Timeout prev;
+    private Bucket bucket;
+
+    Timeout(TimerTask task, long deadline, long period) {
+      this.task = task;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    boolean cancel() {
+      if (state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+        cancelledTimeouts.add(this);
+        return true;
+      }
+      return false;
+    }
+
+    boolean isCancelled() {
+      return state.get() == ST_CANCELLED;
+    }
+
+    void expire() {
+      if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+        return;
+      }
+      if (period <= 0) {
+        scheduledTasks.remove(task, this);
+      }
+      try {
+        task.run();
+      }
+      catch (Throwable t) {
+        logger.error("Timer task "+task+" failed: "+t.getMessage(), t);
+      }
+      if ((period > 0) && (!cancelled)) {
+        // fixed-delay execution
+        Timeout nextTimeout =
+            new Timeout(task, relativeNanoTime() + period * 1000000L, period);
+        if (scheduledTasks.replace(task, this, nextTimeout)) {
+          pendingTimeouts.add(nextTimeout);
+        }
+      }
+    }
+  }
+
+  /**
+   * A <code>Bucket</code> is a doubly linked list of timeouts that is only
+   * accessed by the worker thread.
+   */
+  private static final class Bucket {
+
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      }
+      else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    Timeout remove(Timeout timeout) {
+      Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        if (timeout == tail) {
+          tail = null;
+          head = null;
+        }
+        else {
+          head = next;
+        }
+      }
+      else if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+      return next;
+    }
+
+    void expireTimeouts() {
+      Timeout timeout = head;
+      while (timeout != null) {
+        if (timeout.remainingRounds <= 0) {
+          Timeout next = remove(timeout);
+          timeout.expire();
+          timeout = next;
+        }
+        else if (timeout.isCancelled()) {
+          timeout = remove(timeout);
+        }
+        else {
+          timeout.remainingRounds--;
+          timeout = timeout.next;
+        }
+      }
+    }
+
+    void clear() {
+      Timeout timeout = head;
+      while (timeout != null) {
+        timeout = remove(timeout);
+      }
+    }
+  }
+
+  private class Worker implements WorkerTask {
+
+    private long tick;
+
+    public void run() {
+      while (!cancelled) {
+        if (!waitForNextTick()) {
+          break;
+        }
+        processCancelledTimeouts();
+        transferTimeoutsToBuckets();
+        wheel[(int) (tick & mask)].expireTimeouts();
+        tick++;
+      }
+      for (Bucket bucket : wheel) {
+        bucket.clear();
+      }
+      pendingTimeouts.clear();
+      cancelledTimeouts.clear();
+      scheduledTasks.clear();
+    }
+
+    private boolean waitForNextTick() {
+      long deadline = tickNanos * (tick + 1);
+      while (!cancelled) {
+        long currentTime = relativeNanoTime();
+        long sleepTimeMillis = (deadline - currentTime + 999999) / 1000000;
+        if (sleepTimeMillis <= 0) {
+          return true;
+        }
+        synchronized (tickLock) {
+          try {
+            if (!cancelled) {
+              tickLock.wait(sleepTimeMillis);
+            }
+          }
+          catch (InterruptedException iex) {
+            if (cancelled) {
+              return false;
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+    private void transferTimeoutsToBuckets() {
+      for (int i=0; i<MAX_TRANSFERS_PER_TICK; i++) {
+        Timeout timeout = pendingTimeouts.poll();
+        if (timeout == null) {
+          break;
+        }
+        if (timeout.isCancelled()) {
+          continue;
+        }
+        long calculated = timeout.deadline / tickNanos;
+        timeout.remainingRounds = (calculated - tick) / wheel.length;
+        long ticks = Math.max(calculated, tick);
+        wheel[(int) (ticks & mask)].add(timeout);
+      }
+    }
+
+    private void processCancelledTimeouts() {
+      Timeout timeout;
+      while ((timeout = cancelledTimeouts.poll()) != null) {
+        Bucket bucket = timeout.bucket;
+        if (bucket != null) {
+          bucket.remove(timeout);
+        }
+      }
+    }
+
+    public void terminate() {
+      HashedWheelTimer.this.cancel();
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+      HashedWheelTimer.this.cancel();
+    }
+  }
+}
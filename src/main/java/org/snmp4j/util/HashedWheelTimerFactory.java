@@ -0,0 +1,81 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - HashedWheelTimerFactory.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+/**
+ * The <code>HashedWheelTimerFactory</code> creates {@link HashedWheelTimer}
+ * instances. To use hashed wheel timers for the request timeouts of
+ * {@link org.snmp4j.Snmp} sessions, set this factory as timer factory
+ * before the first request is sent:
+ * <pre>
+ *   SNMP4JSettings.setTimerFactory(new HashedWheelTimerFactory(10, 1024));
+ * </pre>
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class HashedWheelTimerFactory implements TimerFactory {
+
+  private long tickDuration;
+  private int wheelSize;
+
+  /**
+   * Creates a timer factory for hashed wheel timers with the default tick
+   * duration and wheel size.
+   */
+  public HashedWheelTimerFactory() {
+    this(HashedWheelTimer.DEFAULT_TICK_DURATION,
+         HashedWheelTimer.DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * Creates a timer factory for hashed wheel timers.
+   * @param tickDuration
+   *    the duration of one tick in milliseconds.
+   * @param wheelSize
+   *    the number of buckets of the wheel.
+   */
+  public HashedWheelTimerFactory(long tickDuration, int wheelSize) {
+    this.tickDuration = tickDuration;
+    this.wheelSize = wheelSize;
+  }
+
+  public CommonTimer createTimer() {
+    return new HashedWheelTimer("SNMP4J.HashedWheelTimer", tickDuration,
+                                wheelSize);
+  }
+
+  public long getTickDuration() {
+    return tickDuration;
+  }
+
+  public void setTickDuration(long tickDuration) {
+    this.tickDuration = tickDuration;
+  }
+
+  public int getWheelSize() {
+    return wheelSize;
+  }
+
+  public void setWheelSize(int wheelSize) {
+    this.wheelSize = wheelSize;
+  }
+}
@@ -0,0 +1,351 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - LaneWorkerPool.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.snmp4j.SNMP4JSettings;
+
+/**
+ * The <code>LaneWorkerPool</code> is a {@link WorkerPool} with a fixed
+ * number of lanes. Each lane has its own queue and a single worker thread
+ * that executes the queued tasks in the order they have been queued. Tasks
+ * executed with {@link #execute(Object, WorkerTask)} are assigned to a lane
+ * by the hash code of their key, thus all tasks with the same key are
+ * executed sequentially and in order, while tasks with different keys are
+ * executed concurrently on up to {@link #getLaneCount()} threads.
+ * <p>
+ * A {@link MultiThreadedMessageDispatcher} using a
+ * <code>LaneWorkerPool</code> uses the source address of an incoming
+ * message as key. Messages from the same peer, for example a sequence of
+ * notifications, are therefore processed in the order they have been
+ * received, without requiring any locking by the application.
+ * <p>
+ * The queue depth of each lane is available for monitoring. A lane with a
+ * constantly high queue depth indicates a peer sending more messages than a
+ * single thread can process or a slow handler for the messages of that peer.
+ * Use {@link #getLane(Object)} to determine the lane of a peer.
+ * <p>
+ * Queuing a task never blocks, so that a busy lane cannot stall the thread
+ * receiving messages from a transport mapping. If a lane is full, the
+ * {@link BoundedWorkerPool.OverflowPolicy} of the pool is applied to that
+ * lane. Note that {@link BoundedWorkerPool.OverflowPolicy#callerRuns} runs
+ * the task before the tasks already queued for its key.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class LaneWorkerPool implements WorkerPool {
+
+  private final String name;
+  private final TaskQueue[] lanes;
+  private final WorkerTask[] workerThreads;
+  private final AtomicInteger nextLane = new AtomicInteger();
+
+  /**
+   * Creates a worker pool with lanes of unbounded capacity and starts its
+   * worker threads.
+   * @param name
+   *    the name prefix of the worker threads.
+   * @param laneCount
+   *    the number of lanes and worker threads.
+   */
+  public LaneWorkerPool(String name, int laneCount) {
+    this(name, laneCount, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a worker pool and starts its worker threads.
+   * @param name
+   *    the name prefix of the worker threads.
+   * @param laneCount
+   *    the number of lanes and worker threads.
+   * @param laneCapacity
+   *    the maximum number of tasks queued per lane. If a lane is full, new
+   *    tasks for that lane are dropped
+   *    ({@link BoundedWorkerPool.OverflowPolicy#dropNew}).
+   */
+  public LaneWorkerPool(String name, int laneCount, int laneCapacity) {
+    this(name, laneCount, laneCapacity, BoundedWorkerPool.OverflowPolicy.dropNew);
+  }
+
+  /**
+   * Creates a worker pool and starts its worker threads.
+   * @param name
+   *    the name prefix of the worker threads.
+   * @param laneCount
+   *    the number of lanes and worker threads.
+   * @param laneCapacity
+   *    the maximum number of tasks queued per lane.
+   * @param overflowPolicy
+   *    the handling of tasks executed while their lane is full.
+   */
+  public LaneWorkerPool(String name, int laneCount, int laneCapacity,
+                        BoundedWorkerPool.OverflowPolicy overflowPolicy) {
+    if ((laneCount < 1) || (laneCapacity < 1)) {
+      throw new IllegalArgumentException("Lane count and capacity must be > 0");
+    }
+    this.name = name;
+    this.lanes = new TaskQueue[laneCount];
+    this.workerThreads = new WorkerTask[laneCount];
+    for (int i=0; i<laneCount; i++) {
+      lanes[i] = new TaskQueue(name+"."+i, laneCapacity, overflowPolicy);
+    }
+    for (int i=0; i<laneCount; i++) {
+      workerThreads[i] = SNMP4JSettings.getThreadFactory().
+          createWorkerThread(name+"."+i, lanes[i].createWorker(), true);
+      workerThreads[i].run();
+    }
+  }
+
+  /**
+   * Executes a task in the lane of the supplied key. Tasks with equal keys
+   * are executed in the order of the calls of this method. This method does
+   * not block. If the lane is full, the task is handled according to the
+   * overflow policy.
+   * @param key
+   *    the key determining the lane, for example the source address of a
+   *    message.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   */
+  public void execute(Object key, WorkerTask task) {
+    lanes[getLane(key)].execute(task);
+  }
+
+  /**
+   * Executes a task in the next lane, using the lanes in a round robin
+   * manner. Use {@link #execute(Object, WorkerTask)} to preserve the order
+   * of related tasks.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   */
+  public void execute(WorkerTask task) {
+    lanes[nextLane()].execute(task);
+  }
+
+  /**
+   * Queues a task in the lane of the supplied key if that lane is not full.
+   * @param key
+   *    the key determining the lane.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   * @return
+   *    <code>true</code> if the task has been queued.
+   */
+  public boolean tryToExecute(Object key, WorkerTask task) {
+    return lanes[getLane(key)].offer(task);
+  }
+
+  /**
+   * Queues a task in the next lane if that lane is not full.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   * @return
+   *    <code>true</code> if the task has been queued.
+   */
+  public boolean tryToExecute(WorkerTask task) {
+    return lanes[nextLane()].offer(task);
+  }
+
+  private int nextLane() {
+    return (nextLane.getAndIncrement() & Integer.MAX_VALUE) % lanes.length;
+  }
+
+  /**
+   * Gets the lane used for tasks with the supplied key.
+   * @param key
+   *    a key, for example a peer address.
+   * @return
+   *    the lane index between 0 and {@link #getLaneCount()}-1.
+   */
+  public int getLane(Object key) {
+    if (key == null) {
+      return 0;
+    }
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return (h & Integer.MAX_VALUE) % lanes.length;
+  }
+
+  /**
+   * Stops the pool gracefully. Already queued tasks are executed, then the
+   * workers terminate. This method returns when all worker threads have been
+   * joined.
+   */
+  public void stop() {
+    for (TaskQueue lane : lanes) {
+      lane.stop();
+    }
+    for (WorkerTask thread : workerThreads) {
+      thread.terminate();
+    }
+    for (WorkerTask thread : workerThreads) {
+      try {
+        thread.join();
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+  }
+
+  /**
+   * Cancels the pool by discarding all queued tasks and interrupting the
+   * workers. This method does not block.
+   */
+  public void cancel() {
+    for (TaskQueue lane : lanes) {
+      lane.cancel();
+    }
+    for (WorkerTask thread : workerThreads) {
+      thread.terminate();
+      thread.interrupt();
+    }
+  }
+
+  public boolean isIdle() {
+    for (TaskQueue lane : lanes) {
+      if (!lane.isIdle()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getLaneCount() {
+    return lanes.length;
+  }
+
+  /**
+   * Gets the number of tasks waiting in a lane.
+   * @param lane
+   *    the lane index.
+   * @return
+   *    the current queue depth of the lane.
+   */
+  public int getLaneQueueSize(int lane) {
+    return lanes[lane].size();
+  }
+
+  /**
+   * Gets the number of tasks waiting in each lane.
+   * @return
+   *    the current queue depths indexed by lane.
+   */
+  public int[] getLaneQueueSizes() {
+    int[] sizes = new int[lanes.length];
+    for (int i=0; i<lanes.length; i++) {
+      sizes[i] = lanes[i].size();
+    }
+    return sizes;
+  }
+
+  /**
+   * Gets the largest queue depth of a lane observed since the pool has been
+   * created.
+   * @param lane
+   *    the lane index.
+   * @return
+   *    the maximum queue depth of the lane.
+   */
+  public int getMaxLaneQueueSize(int lane) {
+    return lanes[lane].getMaxQueueSize();
+  }
+
+  /**
+   * Gets the number of tasks executed by the worker of a lane.
+   * @param lane
+   *    the lane index.
+   * @return
+   *    the number of completed tasks of the lane.
+   */
+  public long getLaneCompletedCount(int lane) {
+    return lanes[lane].getCompletedCount();
+  }
+
+  /**
+   * Gets the total number of tasks waiting in all lanes.
+   * @return
+   *    the sum of the queue depths of all lanes.
+   */
+  public int getQueueSize() {
+    int size = 0;
+    for (TaskQueue lane : lanes) {
+      size += lane.size();
+    }
+    return size;
+  }
+
+  /**
+   * Gets the policy applied to tasks executed while their lane is full.
+   * @return
+   *    the overflow policy of the lanes.
+   */
+  public BoundedWorkerPool.OverflowPolicy getOverflowPolicy() {
+    return lanes[0].getOverflowPolicy();
+  }
+
+  /**
+   * Gets the number of tasks of a lane that could not be queued because the
+   * lane was full or the pool has been stopped, regardless of the overflow
+   * policy.
+   * @param lane
+   *    the lane index.
+   * @return
+   *    the sum of dropped and caller-run tasks of the lane.
+   */
+  public long getLaneRejectedCount(int lane) {
+    return lanes[lane].getRejectedCount();
+  }
+
+  /**
+   * Gets the total number of tasks that could not be queued in their lane,
+   * regardless of the overflow policy.
+   * @return
+   *    the sum of dropped and caller-run tasks of all lanes.
+   */
+  public long getRejectedCount() {
+    long rejected = 0;
+    for (TaskQueue lane : lanes) {
+      rejected += lane.getRejectedCount();
+    }
+    return rejected;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf = new StringBuilder();
+    for (int i=0; i<lanes.length; i++) {
+      if (i > 0) {
+        buf.append(',');
+      }
+      buf.append(lanes[i].size());
+    }
+    return getClass().getName()+"[name="+name+",lanes="+lanes.length+
+        ",laneQueueSizes={"+buf+"}]";
+  }
+}
@@ -0,0 +1,284 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - MaxRepetitionsController.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.smi.Address;
+
+/**
+ * The <code>MaxRepetitionsController</code> adapts the max-repetitions value
+ * of GETBULK requests to the capabilities of each target agent. The value
+ * grows while complete responses are received faster than
+ * {@link #getFastResponseTime()}. It is halved when the agent returns a
+ * <code>tooBig</code> error or when the request times out. If an agent
+ * returns fewer repetitions than requested without having reached the end of
+ * the retrieved data (a truncated response), the number of repetitions
+ * actually returned becomes the limit for that agent.
+ * <p>
+ * The learned values are remembered per target address, so that later
+ * requests to the same agent start with the learned size. A controller can
+ * be shared by several {@link TreeUtils} and {@link TableUtils} instances and
+ * is thread safe.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class MaxRepetitionsController {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(MaxRepetitionsController.class);
+
+  /**
+   * The default max-repetitions value used for targets without learned value.
+   */
+  public static final int DEFAULT_INITIAL_MAX_REPETITIONS = 10;
+  /**
+   * The default upper bound of the max-repetitions value.
+   */
+  public static final int DEFAULT_MAX_MAX_REPETITIONS = 200;
+  /**
+   * The default response time in milliseconds below which the
+   * max-repetitions value is increased.
+   */
+  public static final long DEFAULT_FAST_RESPONSE_TIME = 500;
+
+  private final int initialMaxRepetitions;
+  private final int minMaxRepetitions;
+  private final int maxMaxRepetitions;
+  private volatile long fastResponseTime = DEFAULT_FAST_RESPONSE_TIME;
+  private final ConcurrentMap<Address, State> states =
+      new ConcurrentHashMap<Address, State>();
+
+  /**
+   * Creates a controller that starts with
+   * {@link #DEFAULT_INITIAL_MAX_REPETITIONS} and adapts the max-repetitions
+   * value between 1 and {@link #DEFAULT_MAX_MAX_REPETITIONS}.
+   */
+  public MaxRepetitionsController() {
+    this(DEFAULT_INITIAL_MAX_REPETITIONS, 1, DEFAULT_MAX_MAX_REPETITIONS);
+  }
+
+  /**
+   * Creates a controller.
+   * @param initialMaxRepetitions
+   *    the max-repetitions value for targets without learned value.
+   * @param minMaxRepetitions
+   *    the lower bound of the max-repetitions value (at least 1).
+   * @param maxMaxRepetitions
+   *    the upper bound of the max-repetitions value.
+   */
+  public MaxRepetitionsController(int initialMaxRepetitions,
+                                  int minMaxRepetitions,
+                                  int maxMaxRepetitions) {
+    if ((minMaxRepetitions < 1) || (maxMaxRepetitions < minMaxRepetitions)) {
+      throw new IllegalArgumentException("Invalid max-repetitions range: "+
+                                         minMaxRepetitions+".."+maxMaxRepetitions);
+    }
+    this.minMaxRepetitions = minMaxRepetitions;
+    this.maxMaxRepetitions = maxMaxRepetitions;
+    this.initialMaxRepetitions =
+        Math.max(minMaxRepetitions, Math.min(maxMaxRepetitions, initialMaxRepetitions));
+  }
+
+  /**
+   * Gets the max-repetitions value to use for the next GETBULK request to the
+   * supplied target address.
+   * @param address
+   *    the address of the target agent.
+   * @return
+   *    the learned max-repetitions value or the initial value if nothing has
+   *    been learned about <code>address</code> yet.
+   */
+  public int getMaxRepetitions(Address address) {
+    State state = states.get(address);
+    if (state == null) {
+      return initialMaxRepetitions;
+    }
+    synchronized (state) {
+      return state.maxRepetitions;
+    }
+  }
+
+  /**
+   * Informs the controller about a response to a GETBULK request.
+   * @param address
+   *    the address of the target agent.
+   * @param maxRepetitions
+   *    the max-repetitions value of the request.
+   * @param repetitions
+   *    the number of repetitions contained in the response, which is the
+   *    number of repeating variable bindings divided by the number of
+   *    repeaters in the request.
+   * @param endOfData
+   *    <code>true</code> if the response reached the end of the retrieved data
+   *    (end of the MIB view, subtree, or table), so fewer repetitions than
+   *    requested do not indicate a truncated response.
+   * @param responseTime
+   *    the time in milliseconds between sending the request and receiving the
+   *    response.
+   */
+  public void responseReceived(Address address, int maxRepetitions,
+                               int repetitions, boolean endOfData,
+                               long responseTime) {
+    State state = getState(address);
+    synchronized (state) {
+      if ((repetitions < maxRepetitions) && !endOfData) {
+        // truncated by the agent
+        int limit = Math.max(minMaxRepetitions, repetitions);
+        if (limit < state.limit) {
+          state.limit = limit;
+          if (logger.isDebugEnabled()) {
+            logger.debug("Truncated GETBULK response from "+address+
+                         " limits max-repetitions to "+limit);
+          }
+        }
+        state.maxRepetitions = Math.min(state.maxRepetitions, state.limit);
+      }
+      else if ((repetitions >= maxRepetitions) &&
+               (maxRepetitions >= state.maxRepetitions) &&
+               (responseTime <= fastResponseTime)) {
+        int increment = Math.max(1, state.maxRepetitions / 2);
+        state.maxRepetitions =
+            Math.min(Math.min(maxMaxRepetitions, state.limit),
+                     state.maxRepetitions + increment);
+      }
+    }
+  }
+
+  /**
+   * Informs the controller about a <code>tooBig</code> error returned for a
+   * GETBULK request.
+   * @param address
+   *    the address of the target agent.
+   * @param maxRepetitions
+   *    the max-repetitions value of the request.
+   * @return
+   *    <code>true</code> if the max-repetitions value for <code>address</code>
+   *    is now lower than <code>maxRepetitions</code> and the request should be
+   *    retried, <code>false</code> if the lower bound has been reached.
+   */
+  public boolean tooBig(Address address, int maxRepetitions) {
+    State state = getState(address);
+    synchronized (state) {
+      state.limit = Math.min(state.limit,
+                             Math.max(minMaxRepetitions, maxRepetitions - 1));
+      backOff(state, maxRepetitions);
+      if (logger.isDebugEnabled()) {
+        logger.debug("GETBULK with max-repetitions "+maxRepetitions+
+                     " too big for "+address+", reduced to "+state.maxRepetitions);
+      }
+      return state.maxRepetitions < maxRepetitions;
+    }
+  }
+
+  /**
+   * Informs the controller about a GETBULK request that timed out.
+   * @param address
+   *    the address of the target agent.
+   * @param maxRepetitions
+   *    the max-repetitions value of the request.
+   */
+  public void timeout(Address address, int maxRepetitions) {
+    State state = getState(address);
+    synchronized (state) {
+      backOff(state, maxRepetitions);
+    }
+  }
+
+  /**
+   * Forgets the learned max-repetitions value and limit of a target.
+   * @param address
+   *    the address of the target agent.
+   */
+  public void reset(Address address) {
+    states.remove(address);
+  }
+
+  /**
+   * Forgets all learned max-repetitions values.
+   */
+  public void clear() {
+    states.clear();
+  }
+
+  /**
+   * Gets the response time below which the max-repetitions value is increased
+   * after a complete response.
+   * @return
+   *    the response time in milliseconds.
+   */
+  public long getFastResponseTime() {
+    return fastResponseTime;
+  }
+
+  /**
+   * Sets the response time below which the max-repetitions value is increased
+   * after a complete response. Slower responses keep the value unchanged.
+   * @param fastResponseTime
+   *    the response time in milliseconds.
+   */
+  public void setFastResponseTime(long fastResponseTime) {
+    this.fastResponseTime = fastResponseTime;
+  }
+
+  public int getInitialMaxRepetitions() {
+    return initialMaxRepetitions;
+  }
+
+  public int getMinMaxRepetitions() {
+    return minMaxRepetitions;
+  }
+
+  public int getMaxMaxRepetitions() {
+    return maxMaxRepetitions;
+  }
+
+  private void backOff(State state, int maxRepetitions) {
+    state.maxRepetitions =
+        Math.max(minMaxRepetitions,
+                 Math.min(state.maxRepetitions, maxRepetitions / 2));
+  }
+
+  private State getState(Address address) {
+    State state = states.get(address);
+    if (state == null) {
+      state = new State(initialMaxRepetitions);
+      State existing = states.putIfAbsent(address, state);
+      if (existing != null) {
+        state = existing;
+      }
+    }
+    return state;
+  }
+
+  private static class State {
+    private int maxRepetitions;
+    private int limit = Integer.MAX_VALUE;
+
+    State(int maxRepetitions) {
+      this.maxRepetitions = maxRepetitions;
+    }
+  }
+}
@@ -29,6 +29,7 @@ import org.snmp4j.mp.StateReference;
 import org.snmp4j.mp.StatusInformation;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.snmp4j.mp.PduHandleCallback;
 
 /**
@@ -42,10 +43,20 @@ import org.snmp4j.mp.PduHandleCallback;
  * <code>ByteBuffer</code> for {@link #processMessage(TransportMapping
  * sourceTransport, Address incomingAddress, ByteBuffer wholeMessage,
  * TransportStateReference tmStateReference)} to allow
- * concurrent processing of the buffer.
+ * concurrent processing of the buffer. Incoming messages in pooled buffers
+ * (see {@link TransportStateReference#getPooledBuffer()}) are not copied.
+ * Instead, the pooled buffer is retained until the message has been
+ * processed.
+ * <p>
+ * Messages processed by an arbitrary worker pool may be processed out of
+ * order, even if they have been received from the same peer. With a
+ * {@link LaneWorkerPool}, the incoming messages are assigned to the lanes of
+ * the pool by their source address instead. Thus, the messages of each peer
+ * are processed sequentially in the order they have been received, while
+ * messages of different peers are processed concurrently.
  *
  * @author Frank Fock
- * @version 2.0
+ * @version 2.6.0
  * @since 1.0.2
  */
 public class MultiThreadedMessageDispatcher implements MessageDispatcher {
@@ -159,7 +170,27 @@ public class MultiThreadedMessageDispatcher implements MessageDispatcher {
                              TransportStateReference tmStateReference) {
     MessageTask task =
         new MessageTask(sourceTransport, incomingAddress, wholeMessage, tmStateReference);
-    threadPool.execute(task);
+    ByteBufferPool.PooledBuffer pooledBuffer = task.pooledBuffer;
+    if (pooledBuffer != null) {
+      // keep the message buffer until the task has been processed
+      pooledBuffer.retain();
+    }
+    boolean executed = false;
+    try {
+      if (threadPool instanceof LaneWorkerPool) {
+        // preserve the order of the messages of each peer
+        ((LaneWorkerPool) threadPool).execute(incomingAddress, task);
+      }
+      else {
+        threadPool.execute(task);
+      }
+      executed = true;
+    }
+    finally {
+      if ((!executed) && (pooledBuffer != null)) {
+        pooledBuffer.release();
+      }
+    }
   }
 
   class MessageTask implements WorkerTask {
@@ -167,6 +198,8 @@ public class MultiThreadedMessageDispatcher implements MessageDispatcher {
     private Address incomingAddress;
     private ByteBuffer wholeMessage;
     private TransportStateReference tmStateReference;
+    private ByteBufferPool.PooledBuffer pooledBuffer;
+    private final AtomicBoolean started = new AtomicBoolean();
 
     public MessageTask(TransportMapping sourceTransport,
                        Address incomingAddress,
@@ -176,14 +209,35 @@ public class MultiThreadedMessageDispatcher implements MessageDispatcher {
       this.incomingAddress = incomingAddress;
       this.wholeMessage = wholeMessage;
       this.tmStateReference = tmStateReference;
+      if (tmStateReference != null) {
+        this.pooledBuffer = tmStateReference.getPooledBuffer();
+      }
     }
 
     public void run() {
-      dispatcher.processMessage(sourceTransport, incomingAddress, wholeMessage,
-                                tmStateReference);
+      if (!started.compareAndSet(false, true)) {
+        // dropped by the worker pool
+        return;
+      }
+      try {
+        dispatcher.processMessage(sourceTransport, incomingAddress, wholeMessage,
+                                  tmStateReference);
+      }
+      finally {
+        if (pooledBuffer != null) {
+          pooledBuffer.release();
+        }
+      }
     }
 
+    /**
+     * Releases the message buffer if this task has not been run yet, which
+     * is the case when it has been dropped by a bounded worker pool.
+     */
     public void terminate() {
+      if (started.compareAndSet(false, true) && (pooledBuffer != null)) {
+        pooledBuffer.release();
+      }
     }
 
     public void join() throws InterruptedException {
@@ -0,0 +1,250 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PDUBuilder.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The <code>PDUBuilder</code> fills a {@link PDU} with variable bindings up
+ * to a maximum BER encoded size. The builder tracks the total length of the
+ * variable bindings incrementally, so that adding a variable binding only
+ * measures that variable binding instead of the whole PDU. Building a PDU
+ * from <em>n</em> variable bindings thus takes linear instead of quadratic
+ * time.
+ * <p>
+ * Variable bindings must not be modified while they are part of the PDU,
+ * and the PDU's variable bindings should only be changed through the
+ * builder. Otherwise {@link #recalculate()} has to be called before the
+ * builder is used again.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class PDUBuilder {
+
+  private final PDU pdu;
+  private final int maxSize;
+  private int variableBindingsLength;
+
+  /**
+   * Creates a builder for the supplied PDU.
+   * @param pdu
+   *    the PDU to add variable bindings to. The PDU may already contain
+   *    variable bindings.
+   * @param maxSize
+   *    the maximum BER length of the PDU, for example
+   *    {@link org.snmp4j.Target#getMaxSizeRequestPDU()}.
+   */
+  public PDUBuilder(PDU pdu, int maxSize) {
+    this.pdu = pdu;
+    this.maxSize = maxSize;
+    recalculate();
+  }
+
+  /**
+   * Gets the PDU built by this builder.
+   * @return
+   *    the PDU.
+   */
+  public PDU getPDU() {
+    return pdu;
+  }
+
+  /**
+   * Gets the maximum BER length of the PDU.
+   * @return
+   *    the size limit in bytes.
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Gets the current BER length of the PDU.
+   * @return
+   *    the length in bytes as returned by {@link PDU#getBERLength()}.
+   */
+  public int getBERLength() {
+    return pdu.getBERLength(variableBindingsLength);
+  }
+
+  /**
+   * Checks whether the PDU exceeds its maximum size, which can be the case
+   * if the PDU has been created with too many variable bindings or by
+   * {@link #add(VariableBinding, boolean)} with <code>force</code> set.
+   * @return
+   *    <code>true</code> if the PDU is larger than {@link #getMaxSize()}.
+   */
+  public boolean isOversized() {
+    return getBERLength() > maxSize;
+  }
+
+  /**
+   * Gets the number of variable bindings in the PDU.
+   * @return
+   *    the PDU size.
+   */
+  public int size() {
+    return pdu.size();
+  }
+
+  /**
+   * Checks whether a variable binding can be added without exceeding the
+   * maximum size of the PDU.
+   * @param vb
+   *    a variable binding.
+   * @return
+   *    <code>true</code> if <code>vb</code> fits into the PDU.
+   */
+  public boolean fits(VariableBinding vb) {
+    return pdu.getBERLength(variableBindingsLength + vb.getBERLength()) <= maxSize;
+  }
+
+  /**
+   * Adds a variable binding if it fits into the PDU.
+   * @param vb
+   *    a variable binding.
+   * @return
+   *    <code>true</code> if the variable binding has been added and
+   *    <code>false</code> if the PDU would exceed its maximum size.
+   */
+  public boolean add(VariableBinding vb) {
+    return add(vb, false);
+  }
+
+  /**
+   * Adds a variable binding.
+   * @param vb
+   *    a variable binding.
+   * @param force
+   *    if <code>true</code>, the variable binding is added even if the PDU
+   *    then exceeds its maximum size.
+   * @return
+   *    <code>true</code> if the variable binding has been added.
+   */
+  public boolean add(VariableBinding vb, boolean force) {
+    int vbLength = vb.getBERLength();
+    if (!force &&
+        (pdu.getBERLength(variableBindingsLength + vbLength) > maxSize)) {
+      return false;
+    }
+    pdu.add(vb);
+    variableBindingsLength += vbLength;
+    return true;
+  }
+
+  /**
+   * Adds variable bindings in the order of the supplied list until the next
+   * variable binding does not fit into the PDU.
+   * @param vbs
+   *    a list of variable bindings.
+   * @return
+   *    the number of variable bindings added.
+   */
+  public int addAll(List<? extends VariableBinding> vbs) {
+    int count = 0;
+    for (VariableBinding vb : vbs) {
+      if (!add(vb)) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Removes the variable binding at the supplied position.
+   * @param index
+   *    a position &gt;= 0 and &lt; {@link #size()}.
+   * @return
+   *    the removed variable binding.
+   */
+  public VariableBinding remove(int index) {
+    VariableBinding vb = pdu.get(index);
+    pdu.remove(index);
+    variableBindingsLength -= vb.getBERLength();
+    return vb;
+  }
+
+  /**
+   * Removes the last variable binding, if the PDU is not empty.
+   * @return
+   *    the removed variable binding or <code>null</code> if the PDU is empty.
+   */
+  public VariableBinding removeLast() {
+    if (pdu.size() == 0) {
+      return null;
+    }
+    return remove(pdu.size() - 1);
+  }
+
+  /**
+   * Removes all variable bindings from the PDU and resets its request ID
+   * (see {@link PDU#clear()}).
+   */
+  public void clear() {
+    pdu.clear();
+    variableBindingsLength = 0;
+  }
+
+  /**
+   * Re-measures the variable bindings of the PDU. This is only needed when
+   * the PDU's variable bindings have been changed without using this builder.
+   */
+  public void recalculate() {
+    variableBindingsLength = PDU.getBERLength(pdu.getVariableBindings());
+  }
+
+  /**
+   * Creates as many PDUs for the supplied target as are needed to carry the
+   * supplied variable bindings without exceeding the target's maximum request
+   * PDU size ({@link Target#getMaxSizeRequestPDU()}). The variable bindings
+   * are distributed in their order. A variable binding that exceeds the size
+   * limit on its own is put in a PDU of its own.
+   *
+   * @param pduFactory
+   *    the factory creating the PDUs.
+   * @param target
+   *    the <code>Target</code> where the PDUs will be sent.
+   * @param variableBindings
+   *    the variable bindings to distribute.
+   * @return
+   *    a list of PDUs created by {@link PDUFactory#createPDU(Target)}.
+   */
+  public static List<PDU> createPDUs(PDUFactory pduFactory, Target target,
+                                     List<? extends VariableBinding> variableBindings) {
+    List<PDU> pdus = new ArrayList<PDU>();
+    PDUBuilder builder = null;
+    for (VariableBinding vb : variableBindings) {
+      if ((builder == null) || (!builder.add(vb))) {
+        builder = new PDUBuilder(pduFactory.createPDU(target), target.getMaxSizeRequestPDU());
+        builder.add(vb, true);
+        pdus.add(builder.getPDU());
+      }
+    }
+    return pdus;
+  }
+}
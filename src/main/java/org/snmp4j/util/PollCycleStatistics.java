@@ -0,0 +1,168 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PollCycleStatistics.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The <code>PollCycleStatistics</code> summarizes a finished polling cycle
+ * of a {@link BulkPoller}: the number of requests, responses, timeouts, and
+ * errors, the throughput, and the distribution of the response times of
+ * the requests.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class PollCycleStatistics implements Serializable {
+
+  private static final long serialVersionUID = 2208430215396413853L;
+
+  private long cycle;
+  private long startTime;
+  private long duration;
+  private int targetCount;
+  private int requestCount;
+  private int responseCount;
+  private int timeoutCount;
+  private int errorCount;
+  private long[] responseTimes;
+
+  /**
+   * Creates the statistics of a polling cycle.
+   * @param cycle
+   *    the cycle number.
+   * @param startTime
+   *    the start of the cycle as returned by
+   *    {@link System#currentTimeMillis()}.
+   * @param duration
+   *    the time in milliseconds from the start of the cycle until the last
+   *    target has been reported.
+   * @param targetCount
+   *    the number of polled targets.
+   * @param requestCount
+   *    the number of requests sent.
+   * @param responseCount
+   *    the number of responses received (including error responses).
+   * @param timeoutCount
+   *    the number of requests that timed out.
+   * @param errorCount
+   *    the number of requests that failed with an SNMP error, a report, or
+   *    an exception.
+   * @param responseTimes
+   *    the response times in milliseconds of the received responses. The
+   *    array is sorted by this constructor.
+   */
+  public PollCycleStatistics(long cycle, long startTime, long duration,
+                             int targetCount, int requestCount,
+                             int responseCount, int timeoutCount,
+                             int errorCount, long[] responseTimes) {
+    this.cycle = cycle;
+    this.startTime = startTime;
+    this.duration = duration;
+    this.targetCount = targetCount;
+    this.requestCount = requestCount;
+    this.responseCount = responseCount;
+    this.timeoutCount = timeoutCount;
+    this.errorCount = errorCount;
+    this.responseTimes = responseTimes;
+    Arrays.sort(this.responseTimes);
+  }
+
+  public long getCycle() {
+    return cycle;
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public long getDuration() {
+    return duration;
+  }
+
+  public int getTargetCount() {
+    return targetCount;
+  }
+
+  public int getRequestCount() {
+    return requestCount;
+  }
+
+  public int getResponseCount() {
+    return responseCount;
+  }
+
+  public int getTimeoutCount() {
+    return timeoutCount;
+  }
+
+  public int getErrorCount() {
+    return errorCount;
+  }
+
+  /**
+   * Gets the number of responses received per second during the cycle.
+   * @return
+   *    the throughput in responses per second.
+   */
+  public double getThroughput() {
+    return (duration <= 0) ? responseCount : (responseCount * 1000.0) / duration;
+  }
+
+  /**
+   * Gets a percentile of the response times (nearest rank method).
+   * @param percentile
+   *    a percentile between 0 and 100, for example 50 for the median or 99.
+   * @return
+   *    the response time in milliseconds at the given percentile or -1 if no
+   *    response has been received.
+   */
+  public long getResponseTimePercentile(double percentile) {
+    if (responseTimes.length == 0) {
+      return -1;
+    }
+    int rank = (int) Math.ceil(percentile / 100.0 * responseTimes.length);
+    return responseTimes[Math.max(0, Math.min(responseTimes.length, rank) - 1)];
+  }
+
+  /**
+   * Gets the largest response time.
+   * @return
+   *    the maximum response time in milliseconds or -1 if no response has
+   *    been received.
+   */
+  public long getMaxResponseTime() {
+    return getResponseTimePercentile(100);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getName()+"[cycle="+cycle+",startTime="+startTime+
+        ",duration="+duration+",targets="+targetCount+",requests="+requestCount+
+        ",responses="+responseCount+",timeouts="+timeoutCount+
+        ",errors="+errorCount+",throughput="+getThroughput()+
+        ",p50="+getResponseTimePercentile(50)+
+        ",p90="+getResponseTimePercentile(90)+
+        ",p99="+getResponseTimePercentile(99)+
+        ",max="+getMaxResponseTime()+"]";
+  }
+}
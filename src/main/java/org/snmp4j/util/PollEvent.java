@@ -0,0 +1,123 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PollEvent.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.EventListener;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The <code>PollEvent</code> reports the result of polling one target in a
+ * cycle of a {@link BulkPoller}. The variable bindings of all requests sent
+ * to the target in the cycle are combined in the order of the polled OIDs.
+ * If a request failed, the event's status reports the (first) failure and the
+ * variable bindings of that request are <code>null</code>.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class PollEvent extends RetrievalEvent {
+
+  private static final long serialVersionUID = -2875381046452098811L;
+
+  private Target target;
+  private long cycle;
+  private long responseTime;
+
+  /**
+   * Creates a poll event.
+   * @param source
+   *    the request that polled the target.
+   * @param userObject
+   *    the user object of the poller or <code>null</code>.
+   * @param target
+   *    the polled target.
+   * @param cycle
+   *    the number of the polling cycle.
+   * @param variableBindings
+   *    the retrieved variable bindings in the order of the polled OIDs.
+   */
+  public PollEvent(EventListener source, Object userObject, Target target,
+                   long cycle, VariableBinding[] variableBindings) {
+    super(source, userObject);
+    this.target = target;
+    this.cycle = cycle;
+    this.vbs = variableBindings;
+  }
+
+  void setStatus(int status) {
+    this.status = status;
+  }
+
+  void setException(Exception exception) {
+    this.exception = exception;
+    this.status = STATUS_EXCEPTION;
+  }
+
+  void setReportPDU(PDU reportPDU) {
+    this.reportPDU = reportPDU;
+    this.status = STATUS_REPORT;
+  }
+
+  void setResponseTime(long responseTime) {
+    this.responseTime = responseTime;
+  }
+
+  /**
+   * Gets the polled target.
+   * @return
+   *    a <code>Target</code> instance.
+   */
+  public Target getTarget() {
+    return target;
+  }
+
+  /**
+   * Gets the number of the polling cycle this event belongs to.
+   * @return
+   *    the cycle number starting with one.
+   */
+  public long getCycle() {
+    return cycle;
+  }
+
+  /**
+   * Gets the time between sending the first request to the target and
+   * receiving the last response (or timeout).
+   * @return
+   *    the response time in milliseconds.
+   */
+  public long getResponseTime() {
+    return responseTime;
+  }
+
+  /**
+   * Gets the retrieved variable bindings.
+   * @return
+   *    an array with one element per polled OID. An element is
+   *    <code>null</code> if the request containing it failed.
+   */
+  public VariableBinding[] getVariableBindings() {
+    return vbs;
+  }
+}
@@ -0,0 +1,176 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TableEventIterator.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * The <code>TableEventIterator</code> returns the rows of a table retrieval
+ * as they arrive. It buffers a bounded number of rows: when the buffer is
+ * full, the underlying {@link TableUtils.TableRequest} is suspended and it
+ * is resumed when the consumer has taken half of the buffered rows. Thus,
+ * tables of any size can be processed in constant memory, with the retrieval
+ * running at the speed of the consumer.
+ * <p>
+ * Like the list returned by
+ * {@link TableUtils#getTable(org.snmp4j.Target, org.snmp4j.smi.OID[], org.snmp4j.smi.OID, org.snmp4j.smi.OID)},
+ * an error condition may only be returned by the last event. Instances are
+ * created by
+ * {@link TableUtils#getTableIterator(org.snmp4j.Target, org.snmp4j.smi.OID[], org.snmp4j.smi.OID, org.snmp4j.smi.OID, int)}.
+ * The iterator must be consumed by a single thread. If not all rows are
+ * needed, {@link #close()} stops the retrieval.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class TableEventIterator implements Iterator<TableEvent> {
+
+  private final int maxBufferedRows;
+  private final LinkedList<TableEvent> events = new LinkedList<TableEvent>();
+  private final IteratorTableListener listener = new IteratorTableListener();
+  private TableUtils.TableRequest request;
+  private boolean finished;
+  private boolean closed;
+
+  TableEventIterator(int maxBufferedRows) {
+    this.maxBufferedRows = Math.max(1, maxBufferedRows);
+  }
+
+  TableListener getTableListener() {
+    return listener;
+  }
+
+  void setRequest(TableUtils.TableRequest request) {
+    this.request = request;
+  }
+
+  /**
+   * Checks whether another table event is available. This method blocks
+   * until the next row has been retrieved or the retrieval has finished.
+   * If the calling thread is interrupted while waiting, the retrieval is
+   * closed and the interrupt status of the thread is set.
+   * @return
+   *    <code>true</code> if {@link #next()} returns another event.
+   */
+  public synchronized boolean hasNext() {
+    try {
+      while (events.isEmpty() && !finished) {
+        wait();
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      close();
+    }
+    return !events.isEmpty();
+  }
+
+  /**
+   * Returns the next table event, blocking until it is available.
+   * @return
+   *    a row or an error condition.
+   * @throws NoSuchElementException
+   *    if the retrieval has finished and all events have been returned.
+   */
+  public TableEvent next() {
+    TableEvent event;
+    boolean resume;
+    synchronized (this) {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      event = events.removeFirst();
+      resume = !finished && (events.size() <= maxBufferedRows / 2);
+    }
+    // resume outside this lock, because the request calls the listener
+    // while holding its own lock
+    if (resume && (request != null) && request.isSuspended()) {
+      request.resume();
+    }
+    return event;
+  }
+
+  /**
+   * Not supported.
+   * @throws UnsupportedOperationException
+   *    always.
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops the table retrieval and discards the buffered rows. A response
+   * already on its way is ignored.
+   */
+  public synchronized void close() {
+    closed = true;
+    finished = true;
+    events.clear();
+    notifyAll();
+  }
+
+  /**
+   * Gets the maximum number of rows buffered before the retrieval is
+   * suspended.
+   * @return
+   *    the buffer size in rows.
+   */
+  public int getMaxBufferedRows() {
+    return maxBufferedRows;
+  }
+
+  private class IteratorTableListener implements TableListener {
+
+    public boolean next(TableEvent event) {
+      synchronized (TableEventIterator.this) {
+        if (closed) {
+          return false;
+        }
+        events.add(event);
+        if ((events.size() >= maxBufferedRows) && (request != null)) {
+          request.suspend();
+        }
+        TableEventIterator.this.notifyAll();
+        return true;
+      }
+    }
+
+    public void finished(TableEvent event) {
+      synchronized (TableEventIterator.this) {
+        if (!closed && ((event.getStatus() != TableEvent.STATUS_OK) ||
+                        (event.getIndex() != null))) {
+          events.add(event);
+        }
+        finished = true;
+        TableEventIterator.this.notifyAll();
+      }
+    }
+
+    public boolean isFinished() {
+      synchronized (TableEventIterator.this) {
+        return finished;
+      }
+    }
+  }
+}
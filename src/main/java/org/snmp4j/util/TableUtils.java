@@ -51,6 +51,7 @@ public class TableUtils extends AbstractSnmpUtility {
 
   private int maxNumOfRowsPerPDU = 10;
   private int maxNumColumnsPerPDU = 10;
+  private MaxRepetitionsController maxRepetitionsController;
 
   /**
    * Creates a <code>TableUtils</code> instance. The created instance is thread
@@ -127,6 +128,57 @@ public class TableUtils extends AbstractSnmpUtility {
     return listener.getRows();
   }
 
+  /**
+   * Gets SNMP tabular data from one or more tables as a stream of rows.
+   * In contrast to {@link #getTable(Target, OID[], OID, OID)}, this method
+   * returns immediately and the rows are retrieved while they are consumed
+   * from the returned iterator. At most <code>maxBufferedRows</code>
+   * retrieved rows (plus the rows of one response) are buffered. If the
+   * consumer is slower than the agent, the retrieval is suspended until the
+   * consumer has processed half of the buffered rows. Thus, the memory used
+   * does not depend on the size of the table.
+   *
+   * @param target
+   *    a <code>Target</code> instance.
+   * @param columnOIDs
+   *    an array of OIDs of the columnar objects whose instances should be
+   *    retrieved (see {@link #getTable(Target, OID[], OID, OID)}).
+   * @param lowerBoundIndex
+   *    an optional parameter that specifies the lower bound index.
+   *    If not <code>null</code>, all returned rows have an index greater than
+   *    <code>lowerBoundIndex</code>.
+   * @param upperBoundIndex
+   *    an optional parameter that specifies the upper bound index.
+   *    If not <code>null</code>, all returned rows have an index less or equal
+   *    than <code>upperBoundIndex</code>.
+   * @param maxBufferedRows
+   *    the number of buffered rows that suspends the retrieval.
+   * @return
+   *    a {@link TableEventIterator} returning a {@link TableEvent} for each
+   *    row. An error condition may only be returned by the last event.
+   * @since 2.6.0
+   */
+  public TableEventIterator getTableIterator(Target target,
+                                             OID[] columnOIDs,
+                                             OID lowerBoundIndex,
+                                             OID upperBoundIndex,
+                                             int maxBufferedRows) {
+    if ((columnOIDs == null) || (columnOIDs.length == 0)) {
+      throw new IllegalArgumentException("No column OIDs specified");
+    }
+    TableEventIterator iterator = new TableEventIterator(maxBufferedRows);
+    TableRequest req = createTableRequest(target, columnOIDs,
+                                          iterator.getTableListener(),
+                                          null,
+                                          lowerBoundIndex,
+                                          upperBoundIndex);
+    iterator.setRequest(req);
+    if (!req.sendNextChunk()) {
+      iterator.getTableListener().finished(new TableEvent(req, null));
+    }
+    return iterator;
+  }
+
   protected TableRequest createTableRequest(Target target, OID[] columnOIDs,
                                             TableListener listener,
                                             Object userObject,
@@ -319,6 +371,34 @@ public class TableUtils extends AbstractSnmpUtility {
     this.maxNumColumnsPerPDU = numberOfColumnsPerChunk;
   }
 
+  /**
+   * Gets the controller that adapts the number of rows retrieved per GETBULK
+   * request.
+   * @return
+   *    a <code>MaxRepetitionsController</code> or <code>null</code> if the
+   *    fixed {@link #getMaxNumRowsPerPDU()} value is used (default).
+   * @since 2.6.0
+   */
+  public MaxRepetitionsController getMaxRepetitionsController() {
+    return maxRepetitionsController;
+  }
+
+  /**
+   * Sets a controller that adapts the number of rows retrieved per GETBULK
+   * request to the target agent. If set, each GETBULK request uses the
+   * max-repetitions value learned for the target's address instead of
+   * {@link #getMaxNumRowsPerPDU()}, and a request answered with a
+   * <code>tooBig</code> error is resent with a reduced max-repetitions value.
+   * @param maxRepetitionsController
+   *    a <code>MaxRepetitionsController</code>, which may be shared with other
+   *    <code>TableUtils</code> and {@link TreeUtils} instances, or
+   *    <code>null</code> to use the fixed number of rows per PDU.
+   * @since 2.6.0
+   */
+  public void setMaxRepetitionsController(MaxRepetitionsController maxRepetitionsController) {
+    this.maxRepetitionsController = maxRepetitionsController;
+  }
+
   public class TableRequest implements ResponseListener {
 
     Target target;
@@ -331,8 +411,12 @@ public class TableUtils extends AbstractSnmpUtility {
     private int sent = 0;
     private boolean anyMatch = false;
     private Vector<OID> lastSent = null;
-    private LinkedList<Row> rowCache = new LinkedList<Row>();
+    private TreeMap<OID, Row> rowCache = new TreeMap<OID, Row>();
+    private OID lastEmittedIndex;
     protected Vector<OID> lastReceived;
+    private long sendTime;
+    private boolean suspended;
+    private boolean continuePending;
 
     volatile boolean finished = false;
 
@@ -371,7 +455,11 @@ public class TableUtils extends AbstractSnmpUtility {
       }
       int sz = Math.min(lastReceived.size() - sent, maxNumColumnsPerPDU);
       if (pdu.getType() == PDU.GETBULK) {
-        if (maxNumOfRowsPerPDU > 0) {
+        if (maxRepetitionsController != null) {
+          pdu.setMaxRepetitions(maxRepetitionsController.getMaxRepetitions(target.getAddress()));
+          pdu.setNonRepeaters(0);
+        }
+        else if (maxNumOfRowsPerPDU > 0) {
           pdu.setMaxRepetitions(maxNumOfRowsPerPDU);
           pdu.setNonRepeaters(0);
         }
@@ -382,15 +470,14 @@ public class TableUtils extends AbstractSnmpUtility {
       }
       lastSent = new Vector<OID>(sz + 1);
       List<Integer> sentColumns = new ArrayList<Integer>(sz);
+      PDUBuilder pduBuilder = new PDUBuilder(pdu, target.getMaxSizeRequestPDU());
       int chunkSize = 0;
       for (int i = sent; i < sent + sz; i++) {
         OID col = lastReceived.get(i);
         // only sent columns that are not complete yet
         if (col.startsWith(columnOIDs[i])) {
           VariableBinding vb = new VariableBinding(col);
-          pdu.add(vb);
-          if (pdu.getBERLength() > target.getMaxSizeRequestPDU()) {
-            pdu.trim();
+          if (!pduBuilder.add(vb)) {
             break;
           }
           else {
@@ -408,6 +495,7 @@ public class TableUtils extends AbstractSnmpUtility {
         if (pdu.size() == 0) {
           return false;
         }
+        sendTime = System.nanoTime();
         sendRequest(pdu, target, sentColumns);
       }
       catch (Exception ex) {
@@ -442,7 +530,6 @@ public class TableUtils extends AbstractSnmpUtility {
           PDU response = event.getResponse();
           int cols = request.size();
           int rows = response.size() / cols;
-          OID lastMinIndex = null;
           for (int r = 0; r < rows; r++) {
             Row row = null;
             anyMatchInChunk = false;
@@ -461,46 +548,21 @@ public class TableUtils extends AbstractSnmpUtility {
                     (index.compareTo(upperBoundIndex) > 0)) {
                   continue;
                 }
-                if ((lastMinIndex == null) ||
-                    (index.compareTo(lastMinIndex) < 0)) {
-                  lastMinIndex = index;
-                }
                 anyMatchInChunk = true;
+                if ((lastEmittedIndex != null) &&
+                    (index.compareTo(lastEmittedIndex) <= 0)) {
+                  // row has already been returned
+                  finished = true;
+                  listener.finished(new TableEvent(this, userObject,
+                      TableEvent.STATUS_WRONG_ORDER));
+                  return;
+                }
                 if ((row == null) || (!row.getRowIndex().equals(index))) {
-                  row = null;
-                  for (ListIterator<Row> it = rowCache.listIterator(rowCache.size());
-                       it.hasPrevious(); ) {
-                    Row lastRow = it.previous();
-                    int compareResult = index.compareTo(lastRow.getRowIndex());
-                    if (compareResult == 0) {
-                      row = lastRow;
-                      break;
-                    }
-                    else if (compareResult > 0) {
-                      break;
-                    }
-                  }
+                  row = rowCache.get(index);
                 }
                 if (row == null) {
                   row = new Row(index);
-                  if (rowCache.size() == 0) {
-                    rowCache.add(row);
-                  }
-                  else if ((rowCache.getFirst()).getRowIndex().compareTo(
-                      index) >= 0) {
-                    rowCache.addFirst(row);
-                  }
-                  else {
-                    for (ListIterator<Row> it = rowCache.listIterator(rowCache.size());
-                         it.hasPrevious(); ) {
-                      Row lastRow = it.previous();
-                      if (index.compareTo(lastRow.index) >= 0) {
-                        it.set(row);
-                        it.add(lastRow);
-                        break;
-                      }
-                    }
-                  }
+                  rowCache.put(index, row);
                 }
                 if (((!row.setNumComplete(pos)) ||
                      (row.size() > pos)) && (row.get(pos) != null)) {
@@ -524,42 +586,116 @@ public class TableUtils extends AbstractSnmpUtility {
             }
           }
           anyMatch |= anyMatchInChunk;
+          OID minPendingIndex = getMinPendingIndex();
           while ((rowCache.size() > 0) &&
-                 ((rowCache.getFirst()).getNumComplete() ==
-                  columnOIDs.length) &&
-                 ((lastMinIndex == null) ||
-                  ((rowCache.getFirst()).getRowIndex().compareTo(
-                      lastMinIndex) < 0))) {
+                 ((minPendingIndex == null) ||
+                  (rowCache.firstKey().compareTo(minPendingIndex) <= 0))) {
             if (!listener.next(getTableEvent())) {
               finished = true;
               listener.finished(new TableEvent(this, userObject));
               return;
             }
           }
-          boolean sentChunk;
-          if (!(sentChunk = sendNextChunk())) {
-            if (anyMatch) {
-              sent = 0;
-              anyMatch = false;
-              sentChunk = sendNextChunk();
-            }
-            if (!sentChunk) {
-              emptyCache();
-              finished = true;
-              listener.finished(new TableEvent(this, userObject));
-            }
+          continueRequest();
+        }
+      }
+    }
+
+    /**
+     * Sends the next request of the table retrieval or finishes it, unless
+     * the request is suspended.
+     */
+    private synchronized void continueRequest() {
+      if (suspended) {
+        continuePending = true;
+        return;
+      }
+      boolean sentChunk;
+      if (!(sentChunk = sendNextChunk())) {
+        if (anyMatch) {
+          sent = 0;
+          anyMatch = false;
+          sentChunk = sendNextChunk();
+        }
+        if (!sentChunk) {
+          emptyCache();
+          finished = true;
+          listener.finished(new TableEvent(this, userObject));
+        }
+      }
+    }
+
+    /**
+     * Suspends the table retrieval. The response to an already sent request
+     * is still processed, but no further request is sent until
+     * {@link #resume()} is called. A suspended request thus stops filling its
+     * listener, which allows a slow consumer to throttle the retrieval.
+     * @since 2.6.0
+     */
+    public synchronized void suspend() {
+      suspended = true;
+    }
+
+    /**
+     * Resumes a suspended table retrieval. If a request has been held back
+     * while suspended, it is sent by the calling thread.
+     * @since 2.6.0
+     */
+    public synchronized void resume() {
+      suspended = false;
+      if (continuePending && !finished) {
+        continuePending = false;
+        continueRequest();
+      }
+    }
+
+    /**
+     * Checks whether this table retrieval is suspended.
+     * @return
+     *    <code>true</code> if {@link #suspend()} has been called and
+     *    {@link #resume()} has not been called since.
+     * @since 2.6.0
+     */
+    public synchronized boolean isSuspended() {
+      return suspended;
+    }
+
+    /**
+     * Gets the smallest row index that may still be returned for any of the
+     * columns. Rows with an index less or equal to this index are complete,
+     * because each column returns its instances in lexicographic order.
+     * @return
+     *    the smallest index of the last received instances of the columns
+     *    that are not finished yet, or <code>null</code> if all columns are
+     *    finished.
+     */
+    private OID getMinPendingIndex() {
+      OID minIndex = null;
+      for (int i = 0; i < columnOIDs.length; i++) {
+        OID last = lastReceived.get(i);
+        OID col = columnOIDs[i];
+        if (last.startsWith(col)) {
+          OID index = new OID(last.getValue(), col.size(), last.size() - col.size());
+          if ((minIndex == null) || (index.compareTo(minIndex) < 0)) {
+            minIndex = index;
           }
         }
       }
+      return minIndex;
     }
 
     protected boolean checkResponse(ResponseEvent event) {
+      MaxRepetitionsController controller =
+          (event.getRequest().getType() == PDU.GETBULK) ? maxRepetitionsController : null;
       if (event.getError() != null) {
         finished = true;
         emptyCache();
         listener.finished(new TableEvent(this, userObject, event.getError()));
       }
       else if (event.getResponse() == null) {
+        if (controller != null) {
+          controller.timeout(target.getAddress(), event.getRequest().getMaxRepetitions());
+        }
         finished = true;
         // timeout
         emptyCache();
@@ -572,6 +708,12 @@ public class TableUtils extends AbstractSnmpUtility {
         listener.finished(new TableEvent(this, userObject,
                                          event.getResponse()));
       }
+      else if ((controller != null) &&
+               (event.getResponse().getErrorStatus() == PDU.tooBig) &&
+               controller.tooBig(target.getAddress(), event.getRequest().getMaxRepetitions()) &&
+               resendRequest(event)) {
+        return false;
+      }
       else if (event.getResponse().getErrorStatus() != PDU.noError) {
         finished = true;
         emptyCache();
@@ -579,11 +721,72 @@ public class TableUtils extends AbstractSnmpUtility {
                                          event.getResponse().getErrorStatus()));
       }
       else {
+        if (controller != null) {
+          updateMaxRepetitions(controller, event);
+        }
         return true;
       }
       return false;
     }
 
+    /**
+     * Resends the request of the supplied event with the max-repetitions
+     * value currently learned for the target.
+     * @param event
+     *    the response event of the request to resend.
+     * @return
+     *    <code>true</code> if the request has been sent again.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean resendRequest(ResponseEvent event) {
+      if (!(event.getUserObject() instanceof List)) {
+        return false;
+      }
+      PDU pdu = (PDU) event.getRequest().clone();
+      pdu.setRequestID(new Integer32(0));
+      pdu.setMaxRepetitions(maxRepetitionsController.getMaxRepetitions(target.getAddress()));
+      try {
+        sendTime = System.nanoTime();
+        sendRequest(pdu, target, (List<Integer>) event.getUserObject());
+        return true;
+      }
+      catch (IOException ex) {
+        logger.error(ex);
+        return false;
+      }
+    }
+
+    /**
+     * Informs the max-repetitions controller about a successful GETBULK
+     * response. A response with fewer rows than requested is truncated, if
+     * the variable bindings of its last row are still within their columns.
+     * @param controller
+     *    the max-repetitions controller.
+     * @param event
+     *    a response event with a response PDU without error.
+     */
+    private void updateMaxRepetitions(MaxRepetitionsController controller,
+                                      ResponseEvent event) {
+      PDU request = event.getRequest();
+      PDU response = event.getResponse();
+      int cols = request.size();
+      int rows = (cols == 0) ? 0 : response.size() / cols;
+      boolean endOfData = (rows == 0) || !(event.getUserObject() instanceof List);
+      for (int c = 0; (c < cols) && !endOfData; c++) {
+        VariableBinding vb = response.get((rows - 1) * cols + c);
+        OID column = columnOIDs[(Integer)((List<?>) event.getUserObject()).get(c)];
+        if (vb.isException() || !vb.getOid().startsWith(column) ||
+            ((upperBoundIndex != null) &&
+             (new OID(vb.getOid().getValue(), column.size(),
+                      vb.getOid().size() - column.size()).compareTo(upperBoundIndex) > 0))) {
+          endOfData = true;
+        }
+      }
+      controller.responseReceived(target.getAddress(), request.getMaxRepetitions(),
+                                  rows, endOfData,
+                                  (System.nanoTime() - sendTime) / SnmpConstants.MILLISECOND_TO_NANOSECOND);
+    }
+
     private void emptyCache() {
       while (rowCache.size() > 0) {
         if (!listener.next(getTableEvent())) {
@@ -593,7 +796,8 @@ public class TableUtils extends AbstractSnmpUtility {
     }
 
     private TableEvent getTableEvent() {
-      Row r = rowCache.removeFirst();
+      Row r = rowCache.pollFirstEntry().getValue();
+      lastEmittedIndex = r.getRowIndex();
       r.setNumComplete(columnOIDs.length);
       VariableBinding[] vbs = new VariableBinding[r.size()];
       r.copyInto(vbs);
@@ -601,14 +805,7 @@ public class TableUtils extends AbstractSnmpUtility {
     }
 
     public Row getRow(OID index) {
-      for (ListIterator<Row> it = rowCache.listIterator(rowCache.size() + 1);
-           it.hasPrevious(); ) {
-        Row r = it.previous();
-        if (index.equals(r.getRowIndex())) {
-          return r;
-        }
-      }
-      return null;
+      return rowCache.get(index);
     }
   }
 
@@ -0,0 +1,275 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TaskQueue.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+
+/**
+ * The <code>TaskQueue</code> is a bounded queue of tasks together with the
+ * workers executing them, as used by the {@link BoundedWorkerPool} (one
+ * queue shared by all workers) and the {@link LaneWorkerPool} (one queue
+ * with a single worker per lane). Queuing a task never blocks. If the queue
+ * is full, the task is handled according to the
+ * {@link BoundedWorkerPool.OverflowPolicy} of the queue and the
+ * {@link WorkerTask#terminate()} method of a dropped task is called.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+final class TaskQueue {
+
+  private static final LogAdapter logger = LogFactory.getLogger(TaskQueue.class);
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private final String name;
+  private final BlockingQueue<WorkerTask> queue;
+  private final BoundedWorkerPool.OverflowPolicy overflowPolicy;
+  private volatile boolean stop;
+
+  private final AtomicInteger activeCount = new AtomicInteger();
+  private final AtomicInteger maxQueueSize = new AtomicInteger();
+  private final AtomicLong completedCount = new AtomicLong();
+  private final AtomicLong droppedOldestCount = new AtomicLong();
+  private final AtomicLong droppedNewCount = new AtomicLong();
+  private final AtomicLong callerRunsCount = new AtomicLong();
+
+  /**
+   * Creates a task queue.
+   * @param name
+   *    the name of the owning pool used for logging.
+   * @param capacity
+   *    the maximum number of queued tasks.
+   * @param overflowPolicy
+   *    the handling of tasks executed while the queue is full.
+   */
+  TaskQueue(String name, int capacity, BoundedWorkerPool.OverflowPolicy overflowPolicy) {
+    this.name = name;
+    this.queue = new LinkedBlockingQueue<WorkerTask>(capacity);
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * Queues a task for execution by a worker without blocking. If the queue
+   * is full, the task is handled according to the overflow policy.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   */
+  void execute(WorkerTask task) {
+    if (stop) {
+      droppedNewCount.incrementAndGet();
+      logger.warn("Worker pool "+name+" is stopped, task "+task+" dropped");
+      task.terminate();
+      return;
+    }
+    while (!enqueue(task)) {
+      switch (overflowPolicy) {
+        case dropOldest: {
+          WorkerTask oldest = queue.poll();
+          if (oldest != null) {
+            droppedOldestCount.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+              logger.debug("Worker pool "+name+" queue full, dropped oldest task "+oldest);
+            }
+            oldest.terminate();
+          }
+          break;
+        }
+        case callerRuns: {
+          callerRunsCount.incrementAndGet();
+          task.run();
+          return;
+        }
+        default: {
+          droppedNewCount.incrementAndGet();
+          if (logger.isDebugEnabled()) {
+            logger.debug("Worker pool "+name+" queue full, dropped task "+task);
+          }
+          task.terminate();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Queues a task if the queue is not full and has not been stopped.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   * @return
+   *    <code>true</code> if the task has been queued.
+   */
+  boolean offer(WorkerTask task) {
+    return !stop && enqueue(task);
+  }
+
+  private boolean enqueue(WorkerTask task) {
+    if (queue.offer(task)) {
+      int size = queue.size();
+      int max;
+      while (size > (max = maxQueueSize.get())) {
+        if (maxQueueSize.compareAndSet(max, size)) {
+          break;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Stops accepting tasks. The workers terminate when the queue is empty.
+   */
+  void stop() {
+    stop = true;
+  }
+
+  /**
+   * Stops accepting tasks and terminates all queued tasks.
+   */
+  void cancel() {
+    stop = true;
+    WorkerTask task;
+    while ((task = queue.poll()) != null) {
+      task.terminate();
+    }
+  }
+
+  /**
+   * Creates a worker that executes the tasks of this queue until the queue
+   * has been stopped and is empty or the worker has been terminated and the
+   * queue is empty.
+   * @return
+   *    a new worker to be run by a worker thread.
+   */
+  WorkerTask createWorker() {
+    return new Worker();
+  }
+
+  boolean isIdle() {
+    return queue.isEmpty() && (activeCount.get() == 0);
+  }
+
+  BoundedWorkerPool.OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  int size() {
+    return queue.size();
+  }
+
+  int getMaxQueueSize() {
+    return maxQueueSize.get();
+  }
+
+  int getActiveCount() {
+    return activeCount.get();
+  }
+
+  long getCompletedCount() {
+    return completedCount.get();
+  }
+
+  long getDroppedOldestCount() {
+    return droppedOldestCount.get();
+  }
+
+  long getDroppedNewCount() {
+    return droppedNewCount.get();
+  }
+
+  long getCallerRunsCount() {
+    return callerRunsCount.get();
+  }
+
+  long getRejectedCount() {
+    return droppedOldestCount.get() + droppedNewCount.get() + callerRunsCount.get();
+  }
+
+  /**
+   * A <code>Worker</code> executes queued tasks until the queue is stopped
+   * and empty.
+   */
+  private final class Worker implements WorkerTask {
+
+    private volatile boolean terminated;
+    private volatile WorkerTask current;
+
+    public void run() {
+      while (!((terminated || stop) && queue.isEmpty())) {
+        WorkerTask task;
+        try {
+          task = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+          if (stop) {
+            break;
+          }
+          continue;
+        }
+        if (task != null) {
+          current = task;
+          activeCount.incrementAndGet();
+          try {
+            task.run();
+          }
+          catch (RuntimeException rex) {
+            logger.error("Task "+task+" of worker pool "+name+" failed: "+rex.getMessage(), rex);
+            if (SNMP4JSettings.isForwardRuntimeExceptions()) {
+              throw rex;
+            }
+          }
+          finally {
+            current = null;
+            activeCount.decrementAndGet();
+            completedCount.incrementAndGet();
+          }
+        }
+      }
+    }
+
+    public void terminate() {
+      terminated = true;
+      WorkerTask t = current;
+      if (t != null) {
+        t.terminate();
+      }
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+      WorkerTask t = current;
+      if (t != null) {
+        t.interrupt();
+      }
+    }
+  }
+}
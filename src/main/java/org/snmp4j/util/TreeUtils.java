@@ -35,6 +35,21 @@ public class TreeUtils extends AbstractSnmpUtility {
 
   private int maxRepetitions = 10;
   private boolean ignoreLexicographicOrder;
+  private int maxPartitions = 1;
+  private MaxRepetitionsController maxRepetitionsController;
+
+  /**
+   * The maximum number of times a partitioned walk descends into a subtree
+   * with a single child before it partitions the children of that level.
+   */
+  private static final int MAX_PARTITION_PROBE_DEPTH = 4;
+
+  /**
+   * The maximum number of events a partition of a partitioned walk buffers
+   * while it waits for the preceding partitions. The partition sends its next
+   * request only when it becomes the partition being delivered.
+   */
+  private static final int MAX_PENDING_EVENTS_PER_PARTITION = 16;
 
   /**
    * Creates a <code>TreeUtils</code> instance. The created instance is thread
@@ -169,9 +184,11 @@ public class TreeUtils extends AbstractSnmpUtility {
   public void walk(Target target, OID[] rootOIDs,
                    Object userObject, TreeListener listener) {
     PDU request = pduFactory.createPDU(target);
+    PDUBuilder requestBuilder = new PDUBuilder(request, target.getMaxSizeRequestPDU());
     for (OID oid : rootOIDs) {
-      request.add(new VariableBinding(oid));
+      requestBuilder.add(new VariableBinding(oid), true);
     }
+    checkRequestSize(requestBuilder);
     if (target.getVersion() == SnmpConstants.version1) {
       request.setType(PDU.GETNEXT);
     }
@@ -179,11 +196,45 @@ public class TreeUtils extends AbstractSnmpUtility {
       request.setType(PDU.GETBULK);
       request.setMaxRepetitions(maxRepetitions);
     }
+    if ((maxPartitions > 1) && (rootOIDs.length == 1)) {
+      new PartitionedTreeRequest(listener, rootOIDs, target, userObject, request).probe();
+      return;
+    }
     TreeRequest treeRequest =
         new TreeRequest(listener, rootOIDs, target, userObject, request);
     treeRequest.send();
   }
 
+  /**
+   * Gets the maximum number of partitions a single subtree walk is split
+   * into.
+   * @return
+   *    the maximum number of concurrent sub-walks per walk (1 by default).
+   * @since 2.6.0
+   */
+  public int getMaxPartitions() {
+    return maxPartitions;
+  }
+
+  /**
+   * Sets the maximum number of partitions a walk of a single subtree is split
+   * into. If greater than one, the walk first probes the subtree with a
+   * single GETNEXT request carrying guessed index boundaries. The existing
+   * OIDs returned for these guesses are used as split points and the
+   * partitions between them are walked concurrently. The variable bindings
+   * of the partitions are delivered to the <code>TreeListener</code> in
+   * lexicographic order, as if the subtree had been walked sequentially.
+   * If the probe fails, the subtree is walked sequentially.
+   * <p>
+   * Walks of more than one root OID are always sequential.
+   * @param maxPartitions
+   *    the maximum number of concurrent sub-walks per walk.
+   * @since 2.6.0
+   */
+  public void setMaxPartitions(int maxPartitions) {
+    this.maxPartitions = Math.max(1, maxPartitions);
+  }
+
   /**
    * Sets the maximum number of the variable bindings per <code>TreeEvent</code>
    * returned by this instance.
@@ -195,6 +246,34 @@ public class TreeUtils extends AbstractSnmpUtility {
     this.maxRepetitions = maxRepetitions;
   }
 
+  /**
+   * Gets the controller that adapts the max-repetitions value of GETBULK
+   * requests.
+   * @return
+   *    a <code>MaxRepetitionsController</code> or <code>null</code> if the
+   *    fixed {@link #getMaxRepetitions()} value is used (default).
+   * @since 2.6.0
+   */
+  public MaxRepetitionsController getMaxRepetitionsController() {
+    return maxRepetitionsController;
+  }
+
+  /**
+   * Sets a controller that adapts the max-repetitions value of GETBULK
+   * requests to the target agent. If set, each GETBULK request uses the
+   * value learned for the target's address instead of
+   * {@link #getMaxRepetitions()}, and a request answered with a
+   * <code>tooBig</code> error is resent with a reduced max-repetitions value.
+   * @param maxRepetitionsController
+   *    a <code>MaxRepetitionsController</code>, which may be shared with other
+   *    <code>TreeUtils</code> and {@link TableUtils} instances, or
+   *    <code>null</code> to use the fixed max-repetitions value.
+   * @since 2.6.0
+   */
+  public void setMaxRepetitionsController(MaxRepetitionsController maxRepetitionsController) {
+    this.maxRepetitionsController = maxRepetitionsController;
+  }
+
   /**
    * Set the ignore lexicographic order errors flage value.
    * @param ignoreLexicographicOrder
@@ -228,24 +307,50 @@ public class TreeUtils extends AbstractSnmpUtility {
     return ignoreLexicographicOrder;
   }
 
+  private static void checkRequestSize(PDUBuilder requestBuilder) {
+    if (requestBuilder.isOversized()) {
+      logger.warn("Tree request with "+requestBuilder.size()+" OIDs has BER length "+
+                  requestBuilder.getBERLength()+" which exceeds the target's maximum request size "+
+                  requestBuilder.getMaxSize());
+    }
+  }
+
   class TreeRequest implements ResponseListener {
 
     private TreeListener listener;
     private Object userObject;
     private PDU request;
+    private PDUBuilder requestBuilder;
     private OID[] rootOIDs;
     private Target target;
+    private OID upperBound;
+    private long sendTime;
 
     public TreeRequest(TreeListener listener, OID[] rootOIDs, Target target,
                        Object userObject, PDU request) {
       this.listener = listener;
       this.userObject = userObject;
       this.request = request;
+      this.requestBuilder = new PDUBuilder(request, target.getMaxSizeRequestPDU());
       this.rootOIDs = rootOIDs;
       this.target = target;
     }
 
+    /**
+     * Sets the last OID (inclusive) to be returned by this request.
+     * @param upperBound
+     *    an OID or <code>null</code> to walk until the end of the subtree.
+     */
+    void setUpperBound(OID upperBound) {
+      this.upperBound = upperBound;
+    }
+
     public void send() {
+      MaxRepetitionsController controller = maxRepetitionsController;
+      if ((controller != null) && (request.getType() == PDU.GETBULK)) {
+        request.setMaxRepetitions(controller.getMaxRepetitions(target.getAddress()));
+      }
+      sendTime = System.nanoTime();
       try {
         session.send(request, target, null, this);
       }
@@ -254,13 +359,32 @@ public class TreeUtils extends AbstractSnmpUtility {
       }
     }
 
+    /**
+     * Sends the request for the next part of the subtree after a response
+     * has been processed.
+     */
+    void sendNext() {
+      send();
+    }
+
     public void onResponse(ResponseEvent event) {
       session.cancel(event.getRequest(), this);
       PDU respPDU = event.getResponse();
+      MaxRepetitionsController controller =
+          (request.getType() == PDU.GETBULK) ? maxRepetitionsController : null;
       if (respPDU == null) {
+        if (controller != null) {
+          controller.timeout(target.getAddress(), request.getMaxRepetitions());
+        }
         listener.finished(new TreeEvent(this, userObject,
                                         RetrievalEvent.STATUS_TIMEOUT));
       }
+      else if ((controller != null) && (respPDU.getErrorStatus() == PDU.tooBig) &&
+               controller.tooBig(target.getAddress(), request.getMaxRepetitions())) {
+        // resend with reduced max-repetitions and a new request ID
+        request.setRequestID(new Integer32(0));
+        send();
+      }
       else if (respPDU.getErrorStatus() != 0) {
         if (target.getVersion() == SnmpConstants.version1 && respPDU.getErrorStatus() == PDU.noSuchName) {
           listener.finished(new TreeEvent(this, userObject, new VariableBinding[0]));
@@ -286,7 +410,8 @@ public class TreeUtils extends AbstractSnmpUtility {
           VariableBinding vb = respPDU.get(i);
           if ((vb.getOid() == null) ||
               (vb.getOid().size() < rootOIDs[r].size()) ||
-              (rootOIDs[r].leftMostCompare(rootOIDs[r].size(), vb.getOid()) != 0)) {
+              (rootOIDs[r].leftMostCompare(rootOIDs[r].size(), vb.getOid()) != 0) ||
+              ((upperBound != null) && (vb.getOid().compareTo(upperBound) > 0))) {
             finished = true;
           }
           else if (Null.isExceptionSyntax(vb.getVariable().getSyntax())) {
@@ -316,6 +441,11 @@ public class TreeUtils extends AbstractSnmpUtility {
         if (respPDU.size() == 0) {
           finished = true;
         }
+        if (controller != null) {
+          controller.responseReceived(target.getAddress(), request.getMaxRepetitions(),
+                                      respPDU.size() / rootOIDs.length, finished,
+                                      (System.nanoTime() - sendTime) / SnmpConstants.MILLISECOND_TO_NANOSECOND);
+        }
         VariableBinding[] vbs = l.toArray(new VariableBinding[l.size()]);
         if (finished) {
           listener.finished(new TreeEvent(this, userObject, vbs));
@@ -323,14 +453,15 @@ public class TreeUtils extends AbstractSnmpUtility {
         else {
           if (listener.next(new TreeEvent(this, userObject, vbs))) {
             int lastRowIndex = ((respPDU.size()/rootOIDs.length)-1) * rootOIDs.length;
-            request.clear();
+            requestBuilder.clear();
             for (int i=Math.max(0,lastRowIndex); i<lastRowIndex + rootOIDs.length; i++) {
               VariableBinding next = (VariableBinding) respPDU.get(i).clone();
               next.setVariable(new Null());
-              request.add(next);
+              requestBuilder.add(next, true);
             }
+            checkRequestSize(requestBuilder);
             if (request.size() > 0) {
-              send();
+              sendNext();
             }
             else {
               listener.finished(new TreeEvent(this, userObject, new VariableBinding[0]));
@@ -344,6 +475,355 @@ public class TreeUtils extends AbstractSnmpUtility {
     }
   }
 
+  /**
+   * A <code>PartitionedTreeRequest</code> probes split points of a subtree,
+   * walks the partitions between them concurrently, and merges their events
+   * in lexicographic order into the listener of the walk. A partition that
+   * is not delivered yet buffers at most
+   * {@link #MAX_PENDING_EVENTS_PER_PARTITION} events and then pauses its walk.
+   * The listener of the walk is called by one thread at a time, but never
+   * while holding the lock of the merge.
+   */
+  class PartitionedTreeRequest extends TreeRequest {
+
+    private final TreeListener listener;
+    private final Object userObject;
+    private final PDU sequentialRequest;
+    private final OID rootOID;
+    private final Target target;
+    private OID prefix;
+    private int depth;
+
+    private List<TreeRequest> partitions;
+    private List<LinkedList<TreeEvent>> pendingEvents;
+    private TreeEvent[] finishedEvents;
+    private TreeRequest[] pausedRequests;
+    private int currentPartition;
+    private OID lastDelivered;
+    private boolean finished;
+
+    private final LinkedList<TreeEvent> deliveries = new LinkedList<TreeEvent>();
+    private TreeEvent finalEvent;
+    private boolean delivering;
+
+    PartitionedTreeRequest(TreeListener listener, OID[] rootOIDs, Target target,
+                           Object userObject, PDU request) {
+      super(listener, rootOIDs, target, userObject, request);
+      this.listener = listener;
+      this.userObject = userObject;
+      this.sequentialRequest = request;
+      this.rootOID = rootOIDs[0];
+      this.target = target;
+      this.prefix = rootOID;
+    }
+
+    /**
+     * Sends a GETNEXT request with guessed child boundaries below the
+     * current prefix.
+     */
+    void probe() {
+      PDU probe = pduFactory.createPDU(target);
+      probe.setType(PDU.GETNEXT);
+      PDUBuilder probeBuilder = new PDUBuilder(probe, target.getMaxSizeRequestPDU());
+      // guess 0, 1, 2, 3, 4, 6, 8, 12, 16, 24, ... as child sub-identifiers
+      long guess = 0;
+      while ((guess <= 0xFFFFFFFFL) &&
+             probeBuilder.add(new VariableBinding(new OID(prefix.getValue(), (int)guess)))) {
+        if (guess < 4) {
+          guess++;
+        }
+        else {
+          long octave = Long.highestOneBit(guess);
+          guess = (guess == octave) ? octave + (octave >> 1) : octave << 1;
+        }
+      }
+      try {
+        session.send(probe, target, null, this);
+      }
+      catch (IOException iox) {
+        logger.warn("Partition probe for "+rootOID+" failed, walking sequentially: "+iox.getMessage());
+        walkSequentially();
+      }
+    }
+
+    private void walkSequentially() {
+      new TreeRequest(listener, new OID[] { rootOID }, target, userObject, sequentialRequest).send();
+    }
+
+    @Override
+    public void onResponse(ResponseEvent event) {
+      session.cancel(event.getRequest(), this);
+      PDU response = event.getResponse();
+      if ((response == null) || (response.getErrorStatus() != 0) ||
+          (response.getType() == PDU.REPORT)) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Partition probe for "+rootOID+" failed, walking sequentially: "+response);
+        }
+        walkSequentially();
+        return;
+      }
+      SortedSet<OID> found = new TreeSet<OID>();
+      Set<Integer> children = new HashSet<Integer>();
+      for (VariableBinding vb : response.getVariableBindings()) {
+        OID oid = vb.getOid();
+        if ((oid != null) && (oid.size() > prefix.size()) && oid.startsWith(prefix) &&
+            !Null.isExceptionSyntax(vb.getVariable().getSyntax())) {
+          found.add(oid);
+          children.add(oid.get(prefix.size()));
+        }
+      }
+      if (found.isEmpty()) {
+        walkSequentially();
+      }
+      else if ((children.size() == 1) && (depth < MAX_PARTITION_PROBE_DEPTH) &&
+               (found.first().size() > prefix.size() + 1)) {
+        // single child: partition the next level
+        prefix = new OID(found.first().getValue(), 0, prefix.size() + 1);
+        depth++;
+        probe();
+      }
+      else {
+        startPartitions(new ArrayList<OID>(found));
+      }
+    }
+
+    private void startPartitions(List<OID> candidates) {
+      // the first candidate is typically the first object of the subtree
+      int m = candidates.size() - 1;
+      int n = Math.min(maxPartitions - 1, m);
+      List<OID> splitPoints = new ArrayList<OID>(n);
+      for (int i=1; i<=n; i++) {
+        splitPoints.add(candidates.get(1 + ((i - 1) * m) / n));
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Walking "+rootOID+" in "+(n+1)+" partitions split at "+splitPoints);
+      }
+      List<TreeRequest> requests = new ArrayList<TreeRequest>(n + 1);
+      synchronized (this) {
+        partitions = requests;
+        pendingEvents = new ArrayList<LinkedList<TreeEvent>>(n + 1);
+        finishedEvents = new TreeEvent[n + 1];
+        pausedRequests = new TreeRequest[n + 1];
+        for (int i=0; i<=n; i++) {
+          PDU request = (PDU) sequentialRequest.clone();
+          request.clear();
+          request.add(new VariableBinding((i == 0) ? rootOID : splitPoints.get(i - 1)));
+          TreeRequest partition = new PartitionRequest(i, request);
+          if (i < n) {
+            partition.setUpperBound(splitPoints.get(i));
+          }
+          requests.add(partition);
+          pendingEvents.add(new LinkedList<TreeEvent>());
+        }
+      }
+      for (TreeRequest partition : requests) {
+        partition.send();
+      }
+    }
+
+    boolean next(int partition, TreeEvent event) {
+      synchronized (this) {
+        if (finished) {
+          return false;
+        }
+        if (partition == currentPartition) {
+          enqueue(event);
+        }
+        else {
+          pendingEvents.get(partition).add(event);
+        }
+      }
+      deliverEvents();
+      synchronized (this) {
+        return !finished;
+      }
+    }
+
+    /**
+     * Sends the next request of a partition, unless the partition is not
+     * delivered yet and has buffered the maximum number of events. Then the
+     * request is sent when the partition becomes the delivered partition.
+     */
+    void sendNext(int partition, TreeRequest request) {
+      synchronized (this) {
+        if (finished) {
+          return;
+        }
+        if ((partition != currentPartition) &&
+            (pendingEvents.get(partition).size() >= MAX_PENDING_EVENTS_PER_PARTITION)) {
+          pausedRequests[partition] = request;
+          return;
+        }
+      }
+      request.send();
+    }
+
+    void finished(int partition, TreeEvent event) {
+      TreeRequest resumed = null;
+      synchronized (this) {
+        if (finished || (finishedEvents[partition] != null)) {
+          return;
+        }
+        finishedEvents[partition] = event;
+        while (!finished && (finishedEvents[currentPartition] != null)) {
+          TreeEvent last = finishedEvents[currentPartition];
+          if (last.isError()) {
+            finish(last);
+          }
+          else if (currentPartition == partitions.size() - 1) {
+            finish(new TreeEvent(this, userObject, filter(last.getVariableBindings())));
+          }
+          else {
+            enqueue(last);
+            currentPartition++;
+            for (TreeEvent pending : pendingEvents.get(currentPartition)) {
+              enqueue(pending);
+            }
+            pendingEvents.get(currentPartition).clear();
+            resumed = pausedRequests[currentPartition];
+            pausedRequests[currentPartition] = null;
+          }
+        }
+      }
+      deliverEvents();
+      if (resumed != null) {
+        resumed.send();
+      }
+    }
+
+    /**
+     * Queues the variable bindings of a partition's event that follow the
+     * last delivered OID for delivery, which removes duplicates at partition
+     * edges. Must be called while holding the lock of the merge.
+     */
+    private void enqueue(TreeEvent event) {
+      VariableBinding[] vbs = filter(event.getVariableBindings());
+      if (vbs.length > 0) {
+        deliveries.add(new TreeEvent(this, userObject, vbs));
+      }
+    }
+
+    /**
+     * Ends the merge with the supplied final event. Must be called while
+     * holding the lock of the merge.
+     */
+    private void finish(TreeEvent last) {
+      finished = true;
+      finalEvent = last;
+      Arrays.fill(pausedRequests, null);
+    }
+
+    /**
+     * Delivers the queued events and then the final event to the listener
+     * outside the lock of the merge. Only one thread delivers at a time, a
+     * thread finding another one delivering leaves its events to that thread.
+     */
+    private void deliverEvents() {
+      while (true) {
+        TreeEvent next;
+        TreeEvent last = null;
+        synchronized (this) {
+          if (delivering) {
+            return;
+          }
+          next = deliveries.poll();
+          if (next == null) {
+            last = finalEvent;
+            finalEvent = null;
+            if (last == null) {
+              return;
+            }
+          }
+          delivering = true;
+        }
+        if (next == null) {
+          try {
+            listener.finished(last);
+          }
+          finally {
+            synchronized (this) {
+              delivering = false;
+            }
+          }
+          return;
+        }
+        boolean proceed = false;
+        try {
+          proceed = listener.next(next);
+        }
+        finally {
+          synchronized (this) {
+            delivering = false;
+            if (!proceed) {
+              // the listener stopped the walk
+              deliveries.clear();
+              finish(new TreeEvent(this, userObject, new VariableBinding[0]));
+            }
+          }
+        }
+      }
+    }
+
+    private VariableBinding[] filter(VariableBinding[] vbs) {
+      if (vbs == null) {
+        return new VariableBinding[0];
+      }
+      List<VariableBinding> l = new ArrayList<VariableBinding>(vbs.length);
+      for (VariableBinding vb : vbs) {
+        if ((lastDelivered == null) || (vb.getOid().compareTo(lastDelivered) > 0)) {
+          l.add(vb);
+          lastDelivered = vb.getOid();
+        }
+      }
+      return l.toArray(new VariableBinding[l.size()]);
+    }
+
+    /**
+     * Walks a partition and lets the merge decide when its next request is
+     * sent.
+     */
+    class PartitionRequest extends TreeRequest {
+
+      private final int partition;
+
+      PartitionRequest(int partition, PDU request) {
+        super(new PartitionListener(partition), new OID[] { rootOID }, target, userObject, request);
+        this.partition = partition;
+      }
+
+      @Override
+      void sendNext() {
+        PartitionedTreeRequest.this.sendNext(partition, this);
+      }
+    }
+
+    /**
+     * Forwards the events of a partition's walk to the merge.
+     */
+    class PartitionListener implements TreeListener {
+
+      private final int partition;
+
+      PartitionListener(int partition) {
+        this.partition = partition;
+      }
+
+      public boolean next(TreeEvent event) {
+        return PartitionedTreeRequest.this.next(partition, event);
+      }
+
+      public void finished(TreeEvent event) {
+        PartitionedTreeRequest.this.finished(partition, event);
+      }
+
+      public boolean isFinished() {
+        synchronized (PartitionedTreeRequest.this) {
+          return finished || (finishedEvents[partition] != null);
+        }
+      }
+    }
+  }
+
   class InternalTreeListener implements TreeListener {
 
     private List<TreeEvent> collectedEvents;
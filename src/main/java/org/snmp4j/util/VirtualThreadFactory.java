@@ -0,0 +1,186 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - VirtualThreadFactory.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.lang.reflect.Method;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+
+/**
+ * The <code>VirtualThreadFactory</code> creates {@link WorkerTask} instances
+ * that run in virtual threads if the Java runtime provides them (Java 21 and
+ * later). On older runtimes, platform threads are created like by the
+ * {@link DefaultThreadFactory}. Because SNMP4J is compiled for older Java
+ * versions, the virtual thread API is accessed by reflection.
+ * <p>
+ * Virtual threads are always daemon threads, thus the <code>daemon</code>
+ * flag of {@link #createWorkerThread(String, WorkerTask, boolean)} is only
+ * honored for platform threads. To run all SNMP4J internal threads as
+ * virtual threads, use
+ * <pre>
+ *   SNMP4JSettings.setThreadFactory(new VirtualThreadFactory());
+ * </pre>
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(VirtualThreadFactory.class);
+
+  private static final Method OF_VIRTUAL;
+  private static final Method BUILDER_NAME;
+  private static final Method BUILDER_UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method unstarted = null;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      name = builderClass.getMethod("name", String.class);
+      unstarted = builderClass.getMethod("unstarted", Runnable.class);
+      // a preview API (Java 19 and 20) fails on first use
+      unstarted.invoke(ofVirtual.invoke(null), new Runnable() {
+        public void run() {
+        }
+      });
+    }
+    catch (Exception ex) {
+      // virtual threads are not available
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = name;
+    BUILDER_UNSTARTED = unstarted;
+  }
+
+  private long joinTimeout;
+
+  public VirtualThreadFactory() {
+    joinTimeout = SNMP4JSettings.getThreadJoinTimeout();
+  }
+
+  /**
+   * Checks whether the Java runtime supports virtual threads.
+   * @return
+   *    <code>true</code> if this factory creates virtual threads.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Creates an unstarted thread for the supplied task. The thread is a
+   * virtual thread if supported by the runtime and a daemon platform thread
+   * otherwise.
+   * @param name
+   *    the name of the thread.
+   * @param task
+   *    the task to be executed by the thread.
+   * @return
+   *    an unstarted <code>Thread</code>.
+   */
+  public Thread newThread(String name, Runnable task) {
+    return newThread(name, task, true);
+  }
+
+  protected Thread newThread(String name, Runnable task, boolean daemon) {
+    if (OF_VIRTUAL != null) {
+      try {
+        Object builder = OF_VIRTUAL.invoke(null);
+        builder = BUILDER_NAME.invoke(builder, name);
+        return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+      }
+      catch (Exception ex) {
+        logger.warn("Failed to create virtual thread '"+name+
+                    "', using platform thread: "+ex.getMessage());
+      }
+    }
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(daemon);
+    return thread;
+  }
+
+  /**
+   * Creates a new thread of execution for the supplied task.
+   *
+   * @param name the name of the execution thread.
+   * @param task the task to be executed in the new thread.
+   * @param daemon indicates whether a platform thread is created as daemon
+   *   thread. Virtual threads are always daemon threads.
+   * @return the <code>WorkerTask</code> wrapper to control start and
+   *   termination of the thread.
+   */
+  public WorkerTask createWorkerThread(String name, WorkerTask task,
+                                       boolean daemon) {
+    return new WorkerThread(newThread(name, task, daemon), task);
+  }
+
+  /**
+   * Sets the maximum time to wait when joining a worker task thread.
+   * @param millis
+   *    the time to wait. 0 waits forever.
+   */
+  public void setThreadJoinTimeout(long millis) {
+    this.joinTimeout = millis;
+  }
+
+  public class WorkerThread implements WorkerTask {
+
+    private Thread thread;
+    private WorkerTask task;
+    private boolean started = false;
+
+    WorkerThread(Thread thread, WorkerTask task) {
+      this.thread = thread;
+      this.task = task;
+    }
+
+    public void terminate() {
+      task.terminate();
+    }
+
+    public void join() throws InterruptedException {
+      task.join();
+      thread.join(joinTimeout);
+    }
+
+    public void run() {
+      if (!started) {
+        started = true;
+        thread.start();
+      }
+      else {
+        thread.run();
+      }
+    }
+
+    public void interrupt() {
+      task.interrupt();
+      thread.interrupt();
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - VirtualThreadWorkerPool.java  
+  _## 
+  _##  Copyright (C) 2003-2016  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+
+/**
+ * The <code>VirtualThreadWorkerPool</code> is a {@link WorkerPool} that
+ * executes each task in its own thread created by a
+ * {@link VirtualThreadFactory}. On runtimes supporting virtual threads, the
+ * pool is thus not limited by a number of worker threads and a task blocking
+ * in a synchronous request, for example
+ * {@link org.snmp4j.Snmp#send(org.snmp4j.PDU, org.snmp4j.Target)}, does not
+ * block a platform thread. On older runtimes, a daemon platform thread is
+ * created per task, so this pool should then only be used for a moderate
+ * number of concurrent tasks.
+ * <p>
+ * Neither {@link #execute(WorkerTask)} nor {@link #tryToExecute(WorkerTask)}
+ * block.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ * @since 2.6.0
+ */
+public class VirtualThreadWorkerPool implements WorkerPool {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(VirtualThreadWorkerPool.class);
+
+  private final String name;
+  private final VirtualThreadFactory threadFactory;
+  private final Map<WorkerTask, Thread> running =
+      new ConcurrentHashMap<WorkerTask, Thread>();
+  private final AtomicLong taskCount = new AtomicLong();
+  private final AtomicLong completedCount = new AtomicLong();
+  private final AtomicInteger maxActiveCount = new AtomicInteger();
+  private volatile boolean stop;
+
+  /**
+   * Creates a worker pool with a new {@link VirtualThreadFactory}.
+   * @param name
+   *    the name prefix of the threads executing the tasks.
+   */
+  public VirtualThreadWorkerPool(String name) {
+    this(name, new VirtualThreadFactory());
+  }
+
+  /**
+   * Creates a worker pool.
+   * @param name
+   *    the name prefix of the threads executing the tasks.
+   * @param threadFactory
+   *    the factory creating a thread for each task.
+   */
+  public VirtualThreadWorkerPool(String name,
+                                 VirtualThreadFactory threadFactory) {
+    this.name = name;
+    this.threadFactory = threadFactory;
+  }
+
+  /**
+   * Executes a task in a new thread. If the pool has been stopped, the task
+   * is terminated instead.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   */
+  public void execute(WorkerTask task) {
+    if (!tryToExecute(task)) {
+      logger.warn("Worker pool "+name+" is stopped, task "+task+" dropped");
+      task.terminate();
+    }
+  }
+
+  /**
+   * Executes a task in a new thread unless the pool has been stopped.
+   * @param task
+   *    a <code>WorkerTask</code> to execute.
+   * @return
+   *    <code>true</code> if the task is executing.
+   */
+  public boolean tryToExecute(final WorkerTask task) {
+    if (stop) {
+      return false;
+    }
+    Thread thread =
+        threadFactory.newThread(name+"."+taskCount.incrementAndGet(),
+                                new Runnable() {
+      public void run() {
+        try {
+          task.run();
+        }
+        catch (RuntimeException rex) {
+          logger.error("Task "+task+" of worker pool "+name+" failed: "+
+                       rex.getMessage(), rex);
+          if (SNMP4JSettings.isForwardRuntimeExceptions()) {
+            throw rex;
+          }
+        }
+        finally {
+          running.remove(task);
+          completedCount.incrementAndGet();
+        }
+      }
+    });
+    running.put(task, thread);
+    int active = running.size();
+    int max;
+    while (active > (max = maxActiveCount.get())) {
+      if (maxActiveCount.compareAndSet(max, active)) {
+        break;
+      }
+    }
+    thread.start();
+    return true;
+  }
+
+  /**
+   * Stops the pool gracefully. New tasks are rejected and this method returns
+   * when all running tasks have been terminated and joined.
+   */
+  public void stop() {
+    stop = true;
+    for (Map.Entry<WorkerTask, Thread> entry : running.entrySet()) {
+      entry.getKey().terminate();
+    }
+    for (Map.Entry<WorkerTask, Thread> entry : running.entrySet()) {
+      try {
+        entry.getKey().join();
+        entry.getValue().join();
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+  }
+
+  /**
+   * Cancels the pool by terminating and interrupting all running tasks. This
+   * method does not block.
+   */
+  public void cancel() {
+    stop = true;
+    for (Map.Entry<WorkerTask, Thread> entry : running.entrySet()) {
+      entry.getKey().terminate();
+      entry.getKey().interrupt();
+      entry.getValue().interrupt();
+    }
+  }
+
+  public boolean isIdle() {
+    return running.isEmpty();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the number of tasks currently executing.
+   * @return
+   *    the number of running tasks.
+   */
+  public int getActiveCount() {
+    return running.size();
+  }
+
+  /**
+   * Gets the largest number of concurrently running tasks observed since the
+   * pool has been created.
+   * @return
+   *    the maximum number of running tasks.
+   */
+  public int getMaxActiveCount() {
+    return maxActiveCount.get();
+  }
+
+  /**
+   * Gets the number of tasks executed by this pool.
+   * @return
+   *    the number of completed tasks.
+   */
+  public long getCompletedCount() {
+    return completedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getName()+"[name="+name+
+        ",virtualThreads="+VirtualThreadFactory.isVirtualThreadSupported()+
+        ",active="+running.size()+",completed="+completedCount.get()+"]";
+  }
+}
@@ -0,0 +1,183 @@
+package org.snmp4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.util.BoundedWorkerPool;
+import org.snmp4j.util.WorkerTask;
+
+import static org.junit.Assert.*;
+
+public class RequestWindowTest {
+
+  private static final Address A = new UdpAddress("127.0.0.1/161");
+  private static final Address B = new UdpAddress("127.0.0.2/161");
+
+  private static class TestRequest implements RequestWindow.QueuedRequest {
+
+    private final Address address;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicReference<Thread> runBy = new AtomicReference<Thread>();
+    private volatile Exception aborted;
+
+    TestRequest(Address address) {
+      this.address = address;
+    }
+
+    public Address getAddress() {
+      return address;
+    }
+
+    public void run() {
+      runBy.set(Thread.currentThread());
+      done.countDown();
+    }
+
+    public void abort(Exception reason) {
+      aborted = reason;
+      done.countDown();
+    }
+  }
+
+  @Test
+  public void testLimits() {
+    RequestWindow window = new RequestWindow(3, 2);
+    assertTrue(window.tryAcquire(A));
+    assertTrue(window.tryAcquire(A));
+    assertFalse(window.tryAcquire(A));
+    assertTrue(window.tryAcquire(B));
+    assertFalse(window.tryAcquire(B));
+    assertEquals(3, window.getOutstandingCount());
+    assertEquals(2, window.getOutstandingCount(A));
+    window.release(A);
+    window.release(A);
+    assertEquals(0, window.getOutstandingCount(A));
+    assertTrue(window.tryAcquire(A));
+    window.forceAcquire(A);
+    window.forceAcquire(A);
+    assertEquals(3, window.getOutstandingCount(A));
+    assertEquals(4, window.getOutstandingCount());
+  }
+
+  @Test
+  public void testQueuedRequestIsNotRunByReleasingThread() throws Exception {
+    RequestWindow window = new RequestWindow(1, 0);
+    assertTrue(window.acquireOrEnqueue(new TestRequest(A)));
+    TestRequest queued = new TestRequest(B);
+    assertFalse(window.acquireOrEnqueue(queued));
+    assertEquals(1, window.getQueueSize());
+    window.release(A);
+    assertTrue(queued.done.await(5, TimeUnit.SECONDS));
+    assertNotNull(queued.runBy.get());
+    assertNotSame(Thread.currentThread(), queued.runBy.get());
+    assertEquals(0, window.getQueueSize());
+    assertEquals(1, window.getOutstandingCount(B));
+  }
+
+  @Test
+  public void testWorkerPoolAbortsDroppedRequests() throws Exception {
+    RequestWindow window = new RequestWindow(1, 0);
+    BoundedWorkerPool pool = new BoundedWorkerPool("RequestWindowTest", 1, 1,
+        BoundedWorkerPool.OverflowPolicy.dropNew);
+    pool.stop();
+    window.setWorkerPool(pool);
+    assertTrue(window.tryAcquire(A));
+    TestRequest queued = new TestRequest(A);
+    assertFalse(window.acquireOrEnqueue(queued));
+    window.release(A);
+    assertTrue(queued.done.await(5, TimeUnit.SECONDS));
+    assertNotNull(queued.aborted);
+  }
+
+  @Test
+  public void testDroppedRequestsReleaseSlots() throws Exception {
+    RequestWindow window = new RequestWindow(1, 0);
+    BoundedWorkerPool pool = new BoundedWorkerPool("RequestWindowTest", 1, 1,
+        BoundedWorkerPool.OverflowPolicy.dropNew);
+    final CountDownLatch release = new CountDownLatch(1);
+    WorkerTask blocking = new WorkerTask() {
+      public void run() {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      public void terminate() {
+      }
+
+      public void join() throws InterruptedException {
+      }
+
+      public void interrupt() {
+      }
+    };
+    try {
+      pool.execute(blocking);
+      long deadline = System.currentTimeMillis() + 5000;
+      while ((pool.getActiveCount() == 0) && (System.currentTimeMillis() < deadline)) {
+        Thread.sleep(5);
+      }
+      // fill the queue of the pool, admitted requests are dropped then
+      pool.execute(blocking);
+      window.setWorkerPool(pool);
+      for (int i=0; i<3; i++) {
+        assertTrue(window.tryAcquire(A));
+        TestRequest queued = new TestRequest(A);
+        assertFalse(window.acquireOrEnqueue(queued));
+        window.release(A);
+        assertTrue(queued.done.await(5, TimeUnit.SECONDS));
+        assertNotNull(queued.aborted);
+        assertEquals(0, window.getOutstandingCount());
+        assertEquals(0, window.getOutstandingCount(A));
+      }
+    }
+    finally {
+      release.countDown();
+      pool.stop();
+    }
+  }
+
+  @Test
+  public void testAcquireWaitsForRelease() throws Exception {
+    final RequestWindow window = new RequestWindow(1, 0);
+    assertTrue(window.tryAcquire(A));
+    assertFalse(window.acquire(B, 10));
+    assertEquals(1, window.getRejectedRequests());
+    Thread releaser = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+        }
+        catch (InterruptedException e) {
+          // ignore
+        }
+        window.release(A);
+      }
+    };
+    releaser.start();
+    assertTrue(window.acquire(B, 5000));
+    releaser.join();
+    assertEquals(1, window.getOutstandingCount());
+  }
+
+  @Test
+  public void testAbortQueuedRequests() throws Exception {
+    RequestWindow window = new RequestWindow(1, 0);
+    assertTrue(window.tryAcquire(A));
+    TestRequest queued = new TestRequest(A);
+    assertFalse(window.acquireOrEnqueue(queued));
+    window.abortQueuedRequests(new InterruptedException());
+    assertNotNull(queued.aborted);
+    assertEquals(0, window.getQueueSize());
+    window.release(A);
+    assertEquals(0, window.getOutstandingCount());
+  }
+}
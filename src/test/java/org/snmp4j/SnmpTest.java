@@ -212,17 +212,20 @@ public class SnmpTest extends TestCase {
     public void testGetV1() throws Exception {
         CommunityTarget target = (CommunityTarget) communityTarget.clone();
         target.setVersion(SnmpConstants.version1);
-        CounterListener counterListener = createSimpleWaitCounterListenerExtended(target);
+        WaitTimeCounterListener counterListener = createSimpleWaitCounterListenerExtended(target);
         snmpCommandGenerator.getCounterSupport().addCounterListener(counterListener);
         PDU pdu = new PDU();
         pdu.setType(PDU.GET);
         addTestVariableBindings(pdu, false, false, target.getVersion());
+        long startNanos = System.nanoTime();
         syncRequestTest(target, pdu);
+        long elapsedNanos = System.nanoTime() - startNanos;
         snmpCommandGenerator.getCounterSupport().removeCounterListener(counterListener);
+        counterListener.assertWaitTimes(2, elapsedNanos);
     }
 
-    private CounterListener createSimpleWaitCounterListenerExtended(final Target target) {
-        return new CounterListener() {
+    private WaitTimeCounterListener createSimpleWaitCounterListenerExtended(final Target target) {
+        return new WaitTimeCounterListener() {
             private int status;
 
             @Override
@@ -231,38 +234,66 @@ public class SnmpTest extends TestCase {
                     case 0:
                         assertEquals(SnmpConstants.snmp4jStatsRequestWaitTime, event.getOid());
                         assertNull(event.getIndex());
-                        assertTrue(event.getCurrentValue().toLong() > 0);
+                        record(event);
                         break;
                     case 1:
                         assertEquals(SnmpConstants.snmp4jStatsReqTableWaitTime, event.getOid());
                         assertEquals(target.getAddress(), event.getIndex());
-                        assertTrue(event.getCurrentValue().toLong() > 0);
+                        record(event);
                         break;
                 }
             }
         };
     }
 
+    /**
+     * Records the wait time counter events on the dispatcher thread, so that the test thread can check them
+     * against the elapsed time it measured itself in nanoseconds.
+     */
+    private static abstract class WaitTimeCounterListener implements CounterListener {
+        private final List<long[]> waitTimes = Collections.synchronizedList(new ArrayList<long[]>());
+
+        protected void record(CounterEvent event) {
+            waitTimes.add(new long[] { event.getIncrement(), event.getCurrentValue().toLong() });
+        }
+
+        void assertWaitTimes(int expectedEvents, long elapsedNanos) {
+            assertEquals(expectedEvents, waitTimes.size());
+            for (long[] waitTime : waitTimes) {
+                long incrementMillis = waitTime[0];
+                assertTrue("Negative wait time " + incrementMillis, incrementMillis >= 0);
+                // the wait time is truncated to milliseconds and cannot exceed the measured round trip
+                assertTrue(incrementMillis + "ms > " + elapsedNanos + "ns",
+                        incrementMillis * SnmpConstants.MILLISECOND_TO_NANOSECOND <= elapsedNanos);
+                // the counter value includes the increment
+                assertTrue(waitTime[1] >= incrementMillis);
+            }
+        }
+    }
+
     @Test
     public void testGetV2c() throws Exception {
         final CommunityTarget target = (CommunityTarget) communityTarget.clone();
         target.setVersion(SnmpConstants.version2c);
-        CounterListener counterListener = createSimpleWaitCounterListenerExtended(target);
+        WaitTimeCounterListener counterListener = createSimpleWaitCounterListenerExtended(target);
         snmpCommandGenerator.getCounterSupport().addCounterListener(counterListener);
         PDU pdu = new PDU();
         pdu.setType(PDU.GET);
         addTestVariableBindings(pdu, false, false, target.getVersion());
+        long startNanos = System.nanoTime();
         syncRequestTest(target, pdu);
+        long elapsedNanos = System.nanoTime() - startNanos;
         snmpCommandGenerator.getCounterSupport().removeCounterListener(counterListener);
+        counterListener.assertWaitTimes(2, elapsedNanos);
     }
 
     public void testDiscoverV3Anomaly65KUserName() throws Exception {
-        CounterListener counterListener = new CounterListener() {
+        WaitTimeCounterListener counterListener = new WaitTimeCounterListener() {
             @Override
             public void incrementCounter(CounterEvent event) {
                 assertEquals(SnmpConstants.snmp4jStatsRequestWaitTime, event.getOid());
                 assertEquals(communityTarget, event.getIndex());
-                assertTrue(event.getCurrentValue().toLong() > 0);
+                record(event);
             }
         };
         snmpCommandGenerator.getCounterSupport().addCounterListener(counterListener);
@@ -284,6 +315,8 @@ public class SnmpTest extends TestCase {
             assertEquals(SnmpConstants.SNMPv3_USM_UNKNOWN_SECURITY_NAME, mex.getSnmp4jErrorStatus());
         }
         snmpCommandGenerator.getCounterSupport().removeCounterListener(counterListener);
+        // the request has been rejected before it was sent, thus no wait time has been counted
+        counterListener.assertWaitTimes(0, 0);
     }
 
 
@@ -705,6 +738,46 @@ public class SnmpTest extends TestCase {
             }
             asyncResponseListener.wait(20000);
         }
+        assertEquals(0, snmpCommandGenerator.getInFlightRequestCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testGetNextV3AsyncWithRequestWindow() throws Exception {
+        Target target = userTarget;
+        target.setTimeout(50000L);
+        target.setRetries(0);
+        RequestWindow requestWindow = new RequestWindow(5, 3);
+        snmpCommandGenerator.setRequestWindow(requestWindow);
+        Map<Integer, RequestResponse> queue = new HashMap<Integer, RequestResponse>(100);
+        for (int i = 0; i < 50; i++) {
+            ScopedPDU pdu = new ScopedPDU();
+            pdu.add(new VariableBinding(new OID("1.3.6.1.4976.1." + i), new Integer32(i)));
+            pdu.setRequestID(new Integer32(snmpCommandGenerator.getNextRequestID()));
+            RequestResponse rr = new RequestResponse(pdu, (PDU) pdu.clone());
+            rr.response.setType(PDU.RESPONSE);
+            queue.put(pdu.getRequestID().getValue(), rr);
+            pdu.get(0).setVariable(Null.instance);
+        }
+        TestCommandResponder responder = new TestCommandResponder(queue);
+        snmpCommandResponder.addCommandResponder(responder);
+        snmpCommandGenerator.listen();
+        snmpCommandResponder.listen();
+        int n = 0;
+        final AsyncResponseListener asyncResponseListener = new AsyncResponseListener(queue.size());
+        List<RequestResponse> requests = new ArrayList<RequestResponse>(queue.values());
+        synchronized (asyncResponseListener) {
+            for (RequestResponse rr : requests) {
+                snmpCommandGenerator.send(rr.request, target, transportMappingCG, n, asyncResponseListener);
+                n++;
+                assertTrue(requestWindow.getOutstandingCount() <= 5);
+            }
+            while (asyncResponseListener.received < queue.size()) {
+                asyncResponseListener.wait(20000);
+            }
+        }
+        assertEquals(0, requestWindow.getOutstandingCount());
+        assertEquals(0, requestWindow.getQueueSize());
+        assertEquals(0, snmpCommandGenerator.getInFlightRequestCount());
     }
 
     @Test(timeout = 30000)
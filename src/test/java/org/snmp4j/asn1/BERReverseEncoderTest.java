@@ -0,0 +1,138 @@
+package org.snmp4j.asn1;
+
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.smi.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BERReverseEncoderTest {
+
+  private static byte[] encodeForward(BERSerializable serializable) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    serializable.encodeBER(os);
+    return os.toByteArray();
+  }
+
+  private static byte[] encodeReverse(PDU pdu, int initialCapacity) throws IOException {
+    BERReverseEncoder encoder = new BERReverseEncoder(new byte[initialCapacity]);
+    pdu.encodeBERReverse(encoder);
+    return encoder.toByteArray();
+  }
+
+  private static void addVariableBindings(PDU pdu, Random random, int count) {
+    for (int i=0; i<count; i++) {
+      OID oid = new OID(new int[] { 1, 3, 6, 1, 4, 1, random.nextInt(), i, random.nextInt(200) });
+      Variable variable;
+      switch (i % 10) {
+        case 0:
+          variable = new Integer32(random.nextInt());
+          break;
+        case 1:
+          variable = new Integer32(random.nextInt(256) - 128);
+          break;
+        case 2:
+          byte[] value = new byte[random.nextInt(300)];
+          random.nextBytes(value);
+          variable = new OctetString(value);
+          break;
+        case 3:
+          variable = new Counter64(random.nextLong());
+          break;
+        case 4:
+          variable = new IpAddress(new byte[] { 10, 1, (byte)i, (byte)random.nextInt() });
+          break;
+        case 5:
+          variable = new TimeTicks(random.nextInt() & 0xFFFFFFFFL);
+          break;
+        case 6:
+          variable = new Gauge32(random.nextInt() & 0xFFFFFFFFL);
+          break;
+        case 7:
+          variable = new Null(SMIConstants.EXCEPTION_NO_SUCH_INSTANCE);
+          break;
+        case 8:
+          variable = new OID(new int[] { 2, 999, random.nextInt() });
+          break;
+        default:
+          variable = new Opaque(new byte[] { 1, 2, 3 });
+      }
+      pdu.add(new VariableBinding(oid, variable));
+    }
+  }
+
+  @Test
+  public void testPDU() throws IOException {
+    Random random = new Random(4711);
+    for (int n : new int[] { 0, 1, 10, 100 }) {
+      PDU pdu = new PDU();
+      pdu.setType(PDU.GETNEXT);
+      pdu.setRequestID(new Integer32(random.nextInt()));
+      addVariableBindings(pdu, random, n);
+      assertArrayEquals(encodeForward(pdu), encodeReverse(pdu, 512));
+      // forces growing the buffer
+      assertArrayEquals(encodeForward(pdu), encodeReverse(pdu, 1));
+    }
+  }
+
+  @Test
+  public void testScopedPDU() throws IOException {
+    ScopedPDU pdu = new ScopedPDU();
+    pdu.setType(PDU.GETBULK);
+    pdu.setMaxRepetitions(25);
+    pdu.setNonRepeaters(1);
+    pdu.setRequestID(new Integer32(-1));
+    pdu.setContextEngineID(OctetString.fromHexString("80:00:13:70:01:02:03:04"));
+    pdu.setContextName(new OctetString("context"));
+    addVariableBindings(pdu, new Random(42), 50);
+    assertArrayEquals(encodeForward(pdu), encodeReverse(pdu, 64));
+  }
+
+  @Test
+  public void testTrapV1() throws IOException {
+    PDUv1 pdu = new PDUv1();
+    pdu.setType(PDU.V1TRAP);
+    pdu.setEnterprise(new OID("1.3.6.1.4.1.4976"));
+    pdu.setAgentAddress(new IpAddress("127.0.0.1"));
+    pdu.setGenericTrap(PDUv1.ENTERPRISE_SPECIFIC);
+    pdu.setSpecificTrap(7);
+    pdu.setTimestamp(123456789L);
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.1.5.0"), new OctetString("host")));
+    assertArrayEquals(encodeForward(pdu), encodeReverse(pdu, 16));
+  }
+
+  @Test
+  public void testPrimitives() throws IOException {
+    int[] values = { 0, 1, -1, 127, 128, -128, -129, 255, 256, 32767, 32768,
+        -32769, 8388607, 8388608, Integer.MAX_VALUE, Integer.MIN_VALUE };
+    for (int value : values) {
+      BERReverseEncoder encoder = new BERReverseEncoder();
+      encoder.encodeInteger(BER.INTEGER, value);
+      assertArrayEquals(encodeForward(new Integer32(value)), encoder.toByteArray());
+    }
+    int[][] oids = { {}, { 1 }, { 1, 3 }, { 0, 0, 127, 128, 16383, 16384 },
+        { 2, 100, -1, 0x0FFFFFFF, 0x10000000 } };
+    for (int[] oid : oids) {
+      BERReverseEncoder encoder = new BERReverseEncoder(new byte[2]);
+      encoder.encodeOID(BER.OID, oid);
+      assertArrayEquals(encodeForward(new OID(oid)), encoder.toByteArray());
+    }
+    for (int length : new int[] { 0, 127, 128, 255, 256, 65535, 65536 }) {
+      OctetString s = new OctetString(new byte[length]);
+      BERReverseEncoder encoder = new BERReverseEncoder();
+      encoder.encode(s);
+      assertArrayEquals(encodeForward(s), encoder.toByteArray());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidOID() throws IOException {
+    new BERReverseEncoder().encodeOID(BER.OID, new int[] { 3, 1 });
+  }
+}
@@ -0,0 +1,107 @@
+package org.snmp4j.mp;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+
+import static org.junit.Assert.*;
+
+public class MPv3CacheTest {
+
+  private MPv3.Cache cache;
+  private USM usm;
+
+  @Before
+  public void setUp() {
+    cache = new MPv3.Cache();
+    usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+  }
+
+  private StateReference createEntry(int msgID, PduHandle handle) {
+    return new StateReference(msgID, 0, 65535, handle, new UdpAddress("127.0.0.1/161"), null,
+                              new byte[0], usm, "user".getBytes(), 1,
+                              new byte[0], new byte[0], null, 0);
+  }
+
+  @Test
+  public void testPopByRetryMessageID() {
+    PduHandle handle = new PduHandle(4711);
+    assertEquals(SnmpConstants.SNMP_MP_OK, cache.addEntry(createEntry(1, handle)));
+    assertEquals(SnmpConstants.SNMP_MP_OK, cache.addEntry(createEntry(2, handle)));
+    assertEquals(1, cache.size());
+    StateReference entry = cache.popEntry(1);
+    assertNotNull(entry);
+    assertSame(handle, entry.getPduHandle());
+    assertNull(cache.popEntry(2));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testDeleteEntry() {
+    PduHandle handle = new PduHandle(2);
+    cache.addEntry(createEntry(20, handle));
+    assertTrue(cache.deleteEntry(new PduHandle(2)));
+    assertFalse(cache.deleteEntry(handle));
+    assertNull(cache.popEntry(20));
+  }
+
+  @Test
+  public void testExpiry() throws InterruptedException {
+    PduHandle expiring = new PduHandle(3);
+    PduHandle extended = new PduHandle(4);
+    cache.addEntry(createEntry(30, expiring), 10);
+    cache.addEntry(createEntry(40, extended), 10);
+    assertTrue(cache.setEntryLifetime(extended, 60000));
+    // lifetimes are checked with a resolution of 100 milliseconds
+    Thread.sleep(250);
+    assertEquals(1, cache.removeExpiredEntries());
+    assertNull(cache.popEntry(30));
+    assertNotNull(cache.popEntry(40));
+  }
+
+  @Test
+  public void testStaleExpiriesAreDropped() throws InterruptedException {
+    PduHandle deleted = new PduHandle(5);
+    PduHandle retried = new PduHandle(6);
+    cache.addEntry(createEntry(50, deleted), 10);
+    cache.addEntry(createEntry(60, retried), 10);
+    assertTrue(cache.deleteEntry(deleted));
+    // the retry replaces the entry and keeps the first message ID
+    assertEquals(SnmpConstants.SNMP_MP_OK, cache.addEntry(createEntry(61, retried), 10));
+    assertTrue(cache.setEntryLifetime(retried, 500));
+    Thread.sleep(250);
+    assertEquals(0, cache.removeExpiredEntries());
+    assertEquals(1, cache.size());
+    Thread.sleep(500);
+    assertEquals(1, cache.removeExpiredEntries());
+    assertNull(cache.popEntry(60));
+    assertNull(cache.popEntry(61));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testDoubledMessage() {
+    PduHandle handle = new PduHandle(7);
+    StateReference entry = createEntry(70, handle);
+    assertEquals(SnmpConstants.SNMP_MP_OK, cache.addEntry(entry));
+    assertEquals(SnmpConstants.SNMP_MP_DOUBLED_MESSAGE, cache.addEntry(entry));
+    assertNotNull(cache.popEntry(70));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLifetimeBeyondWheelRound() throws InterruptedException {
+    PduHandle handle = new PduHandle(8);
+    cache.addEntry(createEntry(80, handle), 200);
+    // a node of a later wheel round in the same time slot stays in the cache
+    cache.addEntry(createEntry(81, new PduHandle(9)), 102400 + 200);
+    Thread.sleep(450);
+    assertEquals(1, cache.removeExpiredEntries());
+    assertNull(cache.popEntry(80));
+    assertEquals(1, cache.size());
+    assertNotNull(cache.popEntry(81));
+  }
+}
@@ -0,0 +1,159 @@
+package org.snmp4j.security;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AuthGenericTest {
+
+  private static final AuthGeneric[] PROTOCOLS = new AuthGeneric[] {
+      new AuthMD5(), new AuthSHA(), new AuthHMAC128SHA224(), new AuthHMAC192SHA256(),
+      new AuthHMAC256SHA384(), new AuthHMAC384SHA512()
+  };
+  private static final String[] MAC_ALGORITHMS = new String[] {
+      "HmacMD5", "HmacSHA1", "HmacSHA224", "HmacSHA256", "HmacSHA384", "HmacSHA512"
+  };
+
+  @Test
+  public void testAuthenticateMatchesHmac() throws Exception {
+    authenticateAndVerify(false);
+  }
+
+  @Test
+  public void testAuthenticateMatchesHmacWithClonedDigests() throws Exception {
+    authenticateAndVerify(true);
+  }
+
+  private void authenticateAndVerify(boolean cloneHmacDigests) throws Exception {
+    Random random = new Random(4711);
+    for (int p=0; p<PROTOCOLS.length; p++) {
+      AuthGeneric auth = PROTOCOLS[p];
+      auth.clearHmacStates();
+      auth.setCloneHmacDigests(cloneHmacDigests);
+      Mac mac = Mac.getInstance(MAC_ALGORITHMS[p]);
+      for (int k=0; k<3; k++) {
+        byte[] key = new byte[auth.getDigestLength()];
+        random.nextBytes(key);
+        mac.init(new SecretKeySpec(key, MAC_ALGORITHMS[p]));
+        for (int m=0; m<3; m++) {
+          byte[] message = new byte[100 + random.nextInt(400)];
+          random.nextBytes(message);
+          int digestOffset = 20;
+          int codeLength = auth.getAuthenticationCodeLength();
+          Arrays.fill(message, digestOffset, digestOffset + codeLength, (byte)0);
+          byte[] expected = Arrays.copyOf(mac.doFinal(message), codeLength);
+          ByteArrayWindow digest = new ByteArrayWindow(message, digestOffset, codeLength);
+          assertTrue(auth.authenticate(key, message, 0, message.length, digest));
+          assertArrayEquals(MAC_ALGORITHMS[p], expected,
+                            Arrays.copyOfRange(message, digestOffset, digestOffset + codeLength));
+          assertTrue(auth.isAuthentic(key, message, 0, message.length, digest));
+          message[message.length - 1]++;
+          assertFalse(auth.isAuthentic(key, message, 0, message.length, digest));
+          message[message.length - 1]--;
+          message[digestOffset + codeLength - 1]++;
+          assertFalse(auth.isAuthentic(key, message, 0, message.length, digest));
+          // the recomputed code is left in the message
+          assertTrue(auth.isAuthentic(key, message, 0, message.length, digest));
+        }
+      }
+      assertEquals(3, auth.getHmacStateCount());
+      auth.setCloneHmacDigests(false);
+    }
+  }
+
+  @Test
+  public void testEqualsConstantTime() {
+    byte[] bytes = new byte[] { 0, 1, 2, 3, 4, 5 };
+    ByteArrayWindow window = new ByteArrayWindow(bytes, 2, 3);
+    assertTrue(window.equalsConstantTime(new byte[] { 9, 2, 3, 4 }, 1, 3));
+    assertTrue(window.equalsConstantTime(new byte[] { 2, 3 }, 0, 2));
+    assertFalse(window.equalsConstantTime(new byte[] { 2, 3, 5 }, 0, 3));
+    assertFalse(window.equalsConstantTime(new byte[] { 2, 3, 4 }, 1, 3));
+    assertFalse(window.equalsConstantTime(new byte[] { 2, 3, 4, 5 }, 0, 4));
+  }
+
+  @Test
+  public void testVerificationDoesNotAllocate() {
+    Object threadMXBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadMXBean instanceof ThreadMXBean);
+    ThreadMXBean allocations = (ThreadMXBean) threadMXBean;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() &&
+                      allocations.isThreadAllocatedMemoryEnabled());
+    AuthHMAC192SHA256 auth = new AuthHMAC192SHA256();
+    byte[] key = new byte[auth.getDigestLength()];
+    byte[] message = new byte[400];
+    ByteArrayWindow digest = new ByteArrayWindow(message, 40, auth.getAuthenticationCodeLength());
+    // warm up (thread context, key state, and JIT)
+    for (int i=0; i<20000; i++) {
+      auth.authenticate(key, message, 0, message.length, digest);
+      assertTrue(auth.isAuthentic(key, message, 0, message.length, digest));
+    }
+    long threadId = Thread.currentThread().getId();
+    long before = allocations.getThreadAllocatedBytes(threadId);
+    for (int i=0; i<1000; i++) {
+      auth.authenticate(key, message, 0, message.length, digest);
+      auth.isAuthentic(key, message, 0, message.length, digest);
+    }
+    long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+    // allow for a few bytes of measurement overhead, but not per message allocations
+    assertTrue("Allocated "+allocated+" bytes", allocated < 1000);
+  }
+
+  @Test
+  public void testHmacStateCacheBound() {
+    AuthSHA auth = new AuthSHA();
+    auth.setMaxHmacStates(2);
+    byte[] message = new byte[64];
+    byte[] first = null;
+    for (int i=0; i<5; i++) {
+      byte[] key = new byte[20];
+      key[0] = (byte)i;
+      ByteArrayWindow digest = new ByteArrayWindow(message, 0, 12);
+      auth.authenticate(key, message, 0, message.length, digest);
+      if (i == 0) {
+        first = Arrays.copyOf(message, 12);
+      }
+      assertTrue(auth.getHmacStateCount() <= 2);
+    }
+    // the key array may be modified by the caller after authentication
+    byte[] key = new byte[20];
+    ByteArrayWindow digest = new ByteArrayWindow(message, 0, 12);
+    auth.authenticate(key, message, 0, message.length, digest);
+    key[0] = 1;
+    auth.authenticate(new byte[20], message, 0, message.length, digest);
+    assertArrayEquals(first, Arrays.copyOf(message, 12));
+
+    auth.setMaxHmacStates(0);
+    auth.authenticate(key, message, 0, message.length, digest);
+    assertEquals(0, auth.getHmacStateCount());
+  }
+
+  @Test
+  public void testHmacStateCacheEvictsLeastRecentlyUsed() throws Exception {
+    AuthSHA auth = new AuthSHA();
+    auth.setMaxHmacStates(3);
+    byte[][] keys = new byte[4][20];
+    for (int i=0; i<keys.length; i++) {
+      keys[i][0] = (byte)i;
+    }
+    AuthGeneric.HmacState first = auth.getHmacState(keys[0]);
+    AuthGeneric.HmacState second = auth.getHmacState(keys[1]);
+    AuthGeneric.HmacState third = auth.getHmacState(keys[2]);
+    Thread.sleep(1);
+    assertSame(first, auth.getHmacState(keys[0]));
+    auth.getHmacState(keys[3]);
+    assertEquals(3, auth.getHmacStateCount());
+    assertSame(first, auth.getHmacState(keys[0]));
+    assertSame(third, auth.getHmacState(keys[2]));
+    assertNotSame(second, auth.getHmacState(keys[1]));
+  }
+}
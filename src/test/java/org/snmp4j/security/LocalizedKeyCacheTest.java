@@ -0,0 +1,147 @@
+package org.snmp4j.security;
+
+import org.junit.Test;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.util.BoundedWorkerPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+public class LocalizedKeyCacheTest {
+
+  private static final OctetString AUTH_PASSWORD = new OctetString("maplesyrup");
+  private static final OctetString PRIV_PASSWORD = new OctetString("privacyPassword");
+
+  @Test
+  public void testCachedKeysMatchComputedKeys() {
+    SecurityProtocols protocols = SecurityProtocols.getInstance().addDefaultProtocols();
+    LocalizedKeyCache previous = protocols.getLocalizedKeyCache();
+    LocalizedKeyCache cache = new LocalizedKeyCache(100, 10);
+    protocols.setLocalizedKeyCache(cache);
+    try {
+      AuthSHA authSHA = new AuthSHA();
+      for (int i=0; i<5; i++) {
+        byte[] engineID = MPv3.createLocalEngineID(new OctetString("engine"+i));
+        byte[] expected = authSHA.passwordToKey(AUTH_PASSWORD, engineID);
+        assertArrayEquals(expected, protocols.passwordToKey(AuthSHA.ID, AUTH_PASSWORD, engineID));
+        // from cache
+        assertArrayEquals(expected, protocols.passwordToKey(AuthSHA.ID, AUTH_PASSWORD, engineID));
+
+        protocols.setLocalizedKeyCache(null);
+        byte[] privKey = protocols.passwordToKey(PrivAES128.ID, AuthSHA.ID, PRIV_PASSWORD, engineID);
+        protocols.setLocalizedKeyCache(cache);
+        assertArrayEquals(privKey, protocols.passwordToKey(PrivAES128.ID, AuthSHA.ID, PRIV_PASSWORD, engineID));
+        assertArrayEquals(privKey, protocols.passwordToKey(PrivAES128.ID, AuthSHA.ID, PRIV_PASSWORD, engineID));
+      }
+      assertEquals(10, cache.getLocalizedKeyCount());
+      assertEquals(2, cache.getMasterKeyCount());
+      cache.clear();
+      assertEquals(0, cache.getLocalizedKeyCount());
+    }
+    finally {
+      protocols.setLocalizedKeyCache(previous);
+    }
+  }
+
+  @Test
+  public void testEviction() {
+    LocalizedKeyCache cache = new LocalizedKeyCache(2, 1);
+    for (int i=0; i<3; i++) {
+      cache.putLocalizedKey(AuthSHA.ID, AuthSHA.ID, AUTH_PASSWORD, new byte[] { (byte)i }, new byte[] { (byte)i });
+    }
+    assertEquals(2, cache.getLocalizedKeyCount());
+    assertNull(cache.getLocalizedKey(AuthSHA.ID, AuthSHA.ID, AUTH_PASSWORD, new byte[] { 0 }));
+    assertArrayEquals(new byte[] { 2 },
+                      cache.getLocalizedKey(AuthSHA.ID, AuthSHA.ID, AUTH_PASSWORD, new byte[] { 2 }));
+    assertNull(cache.getLocalizedKey(AuthSHA.ID, AuthSHA.ID, PRIV_PASSWORD, new byte[] { 2 }));
+  }
+
+  @Test
+  public void testAddUserForEngineIDs() {
+    USM usm = new USM(SecurityProtocols.getInstance().addDefaultProtocols(),
+                      new OctetString(MPv3.createLocalEngineID()), 0);
+    List<OctetString> engineIDs = new ArrayList<OctetString>();
+    for (int i=0; i<3; i++) {
+      engineIDs.add(new OctetString(MPv3.createLocalEngineID(new OctetString("agent"+i))));
+    }
+    OctetString userName = new OctetString("user");
+    usm.addUser(userName, engineIDs, new UsmUser(userName, AuthSHA.ID, AUTH_PASSWORD,
+                                                 PrivAES128.ID, PRIV_PASSWORD));
+    for (OctetString engineID : engineIDs) {
+      UsmUserEntry entry = usm.getUserTable().getUser(engineID, userName);
+      assertNotNull(entry);
+      assertArrayEquals(new AuthSHA().passwordToKey(AUTH_PASSWORD, engineID.getValue()),
+                        entry.getAuthenticationKey());
+    }
+  }
+
+  @Test
+  public void testLocalizeKeysInParallel() throws InterruptedException {
+    SecurityProtocols protocols = SecurityProtocols.getInstance().addDefaultProtocols();
+    UsmUser[] users = new UsmUser[] {
+        new UsmUser(new OctetString("sha"), AuthSHA.ID, AUTH_PASSWORD, PrivAES128.ID, PRIV_PASSWORD),
+        new UsmUser(new OctetString("md5"), AuthMD5.ID, AUTH_PASSWORD, PrivDES.ID, PRIV_PASSWORD),
+        new UsmUser(new OctetString("sha3des"), AuthSHA.ID, AUTH_PASSWORD, Priv3DES.ID, PRIV_PASSWORD),
+        new UsmUser(new OctetString("noAuth"), null, null, null, null)
+    };
+    List<UsmUserEntry> entries = new ArrayList<UsmUserEntry>();
+    for (int i=0; i<40; i++) {
+      UsmUser user = users[i % users.length];
+      OctetString engineID = new OctetString(MPv3.createLocalEngineID(new OctetString("agent"+i)));
+      entries.add(new UsmUserEntry(user.getSecurityName(), engineID, user));
+    }
+    List<UsmUserEntry> result = protocols.localizeKeys(entries, 4);
+    assertEquals(entries, result);
+    for (UsmUserEntry entry : result) {
+      UsmUser user = entry.getUsmUser();
+      byte[] engineID = entry.getEngineID().getValue();
+      if (user.getAuthenticationProtocol() == null) {
+        assertNull(entry.getAuthenticationKey());
+        continue;
+      }
+      assertArrayEquals(protocols.passwordToKey(user.getAuthenticationProtocol(),
+                                                user.getAuthenticationPassphrase(), engineID),
+                        entry.getAuthenticationKey());
+      assertArrayEquals(protocols.passwordToKey(user.getPrivacyProtocol(), user.getAuthenticationProtocol(),
+                                                user.getPrivacyPassphrase(), engineID),
+                        entry.getPrivacyKey());
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testLocalizeKeysOnDroppingPool() throws InterruptedException {
+    SecurityProtocols protocols = SecurityProtocols.getInstance().addDefaultProtocols();
+    List<UsmUserEntry> entries = new ArrayList<UsmUserEntry>();
+    UsmUser user = new UsmUser(new OctetString("sha"), AuthSHA.ID, AUTH_PASSWORD,
+                               PrivAES128.ID, PRIV_PASSWORD);
+    for (int i=0; i<20; i++) {
+      OctetString engineID = new OctetString(MPv3.createLocalEngineID(new OctetString("agent"+i)));
+      entries.add(new UsmUserEntry(user.getSecurityName(), engineID, user));
+    }
+    // tasks dropped by a full queue leave their entries to the running tasks
+    BoundedWorkerPool pool =
+        new BoundedWorkerPool("dropNew", 1, 1, BoundedWorkerPool.OverflowPolicy.dropNew);
+    try {
+      for (UsmUserEntry entry : protocols.localizeKeys(entries, pool, 8)) {
+        assertArrayEquals(protocols.passwordToKey(AuthSHA.ID, AUTH_PASSWORD,
+                                                  entry.getEngineID().getValue()),
+                          entry.getAuthenticationKey());
+      }
+    }
+    finally {
+      pool.stop();
+    }
+    // a stopped pool drops all tasks
+    try {
+      protocols.localizeKeys(entries, pool, 4);
+      fail("CancellationException expected");
+    }
+    catch (CancellationException cex) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.snmp4j.security;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrivacyGenericTest {
+
+  private static final int ENGINE_BOOTS = 17;
+  private static final int ENGINE_TIME = 4711;
+
+  @Test
+  public void testAESWithCachedCiphers() throws Exception {
+    Random random = new Random(42);
+    PrivAES128 aes = new PrivAES128();
+    aes.setMaxCachedKeysPerThread(2);
+    byte[][] keys = new byte[5][16];
+    for (byte[] key : keys) {
+      random.nextBytes(key);
+    }
+    // more keys than cached per thread, each key used repeatedly
+    for (int round=0; round<3; round++) {
+      for (byte[] key : keys) {
+        byte[] plaintext = new byte[50 + random.nextInt(200)];
+        random.nextBytes(plaintext);
+        DecryptParams decryptParams = new DecryptParams();
+        byte[] encrypted = aes.encrypt(plaintext, 0, plaintext.length, key,
+                                       ENGINE_BOOTS, ENGINE_TIME, decryptParams);
+        byte[] iv = new byte[16];
+        iv[3] = ENGINE_BOOTS;
+        iv[6] = (byte)(ENGINE_TIME >> 8);
+        iv[7] = (byte)ENGINE_TIME;
+        System.arraycopy(decryptParams.array, 0, iv, 8, 8);
+        Cipher cipher = Cipher.getInstance("AES/CFB/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        assertArrayEquals(cipher.doFinal(plaintext), encrypted);
+        assertArrayEquals(plaintext, aes.decrypt(encrypted, 0, encrypted.length, key,
+                                                 ENGINE_BOOTS, ENGINE_TIME, decryptParams));
+      }
+    }
+  }
+
+  @Test
+  public void testCacheDisabled() throws Exception {
+    roundTrip(new PrivDES(), 16, 0);
+    roundTrip(new Priv3DES(), 32, 0);
+    roundTrip(new PrivAES256(), 32, 0);
+  }
+
+  @Test
+  public void testCacheEnabled() throws Exception {
+    roundTrip(new PrivDES(), 16, PrivacyGeneric.DEFAULT_MAX_CACHED_KEYS_PER_THREAD);
+    roundTrip(new Priv3DES(), 32, 1);
+    roundTrip(new PrivAES192(), 24, 3);
+  }
+
+  private void roundTrip(PrivacyGeneric priv, int keyLength, int maxCachedKeys) {
+    Random random = new Random(keyLength);
+    priv.setMaxCachedKeysPerThread(maxCachedKeys);
+    for (int i=0; i<20; i++) {
+      byte[] key = new byte[keyLength];
+      random.nextBytes(key);
+      byte[] plaintext = new byte[64 + 8 * random.nextInt(8)];
+      random.nextBytes(plaintext);
+      DecryptParams decryptParams = new DecryptParams();
+      byte[] encrypted = priv.encrypt(plaintext, 0, plaintext.length, key,
+                                      ENGINE_BOOTS, ENGINE_TIME, decryptParams);
+      assertNotNull(encrypted);
+      assertFalse(Arrays.equals(plaintext, encrypted));
+      assertArrayEquals(plaintext, priv.decrypt(encrypted, 0, encrypted.length, key,
+                                                ENGINE_BOOTS, ENGINE_TIME, decryptParams));
+      // the key array may be modified by the caller after use
+      byte[] keyCopy = key.clone();
+      key[0]++;
+      assertArrayEquals(plaintext, priv.decrypt(encrypted, 0, encrypted.length, keyCopy,
+                                                ENGINE_BOOTS, ENGINE_TIME, decryptParams));
+    }
+    if (maxCachedKeys == 0) {
+      assertTrue(priv.cipherPool.getCurrentPoolSize() > 0);
+    }
+    else {
+      assertEquals(0, priv.cipherPool.getCurrentPoolSize());
+    }
+    // the ciphers of the discarded cache are pooled for reuse
+    priv.clearCipherCache();
+    assertTrue(priv.cipherPool.getCurrentPoolSize() > 0);
+  }
+
+  @Test
+  public void testCipherPoolBound() throws Exception {
+    CipherPool pool = new CipherPool(2);
+    assertNull(pool.reuseCipher());
+    Cipher first = Cipher.getInstance("AES/CFB/NoPadding");
+    pool.offerCipher(first);
+    pool.offerCipher(Cipher.getInstance("AES/CFB/NoPadding"));
+    pool.offerCipher(Cipher.getInstance("AES/CFB/NoPadding"));
+    assertEquals(2, pool.getCurrentPoolSize());
+    assertSame(first, pool.reuseCipher());
+    assertNotNull(pool.reuseCipher());
+    assertNull(pool.reuseCipher());
+    assertEquals(0, pool.getCurrentPoolSize());
+  }
+}
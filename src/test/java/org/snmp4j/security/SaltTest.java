@@ -0,0 +1,64 @@
+package org.snmp4j.security;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SaltTest {
+
+  @Test
+  public void testConsecutive() {
+    Salt salt = new Salt(Long.MAX_VALUE - 5);
+    for (long i = 0; i < 10; i++) {
+      assertEquals(Long.MAX_VALUE - 5 + i, salt.getNext());
+    }
+    assertSame(Salt.getInstance(), Salt.getInstance());
+  }
+
+  @Test
+  public void testUniqueAcrossThreads() throws Exception {
+    final int threads = 8;
+    final int saltsPerThread = 10000;
+    final Salt salt = new Salt(-20000L);
+    final long[][] values = new long[threads][saltsPerThread];
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final long[] threadValues = values[t];
+      workers[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < saltsPerThread; i++) {
+            threadValues[i] = salt.getNext();
+          }
+        }
+      };
+      workers[t].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    Set<Integer> lowerBits = new HashSet<Integer>();
+    for (long[] threadValues : values) {
+      for (long value : threadValues) {
+        // DES and 3DES only use the lower 32 bits
+        assertTrue("Duplicate salt " + value, lowerBits.add((int) value));
+        assertTrue(value >= -20000L && value < -20000L + threads * saltsPerThread);
+      }
+    }
+    // no values are skipped
+    assertEquals(threads * saltsPerThread, lowerBits.size());
+    assertEquals(-20000L + threads * saltsPerThread, salt.getNext());
+  }
+}
@@ -0,0 +1,127 @@
+package org.snmp4j.security;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OctetString;
+
+import static org.junit.Assert.*;
+
+public class UsmTimeTableTest {
+
+  private static final OctetString LOCAL_ENGINE_ID = new OctetString("local");
+
+  private UsmTimeTable timeTable;
+
+  @Before
+  public void setUp() {
+    timeTable = new UsmTimeTable(LOCAL_ENGINE_ID, 3);
+  }
+
+  private static OctetString engineID(int i) {
+    return new OctetString("engine-" + i);
+  }
+
+  @Test
+  public void testGetEngineBootsAndTime() {
+    UsmSecurityParameters params = new UsmSecurityParameters();
+    assertFalse(timeTable.getEngineBootsAndTime(engineID(1).getValue(), params));
+    assertEquals(0, params.getAuthoritativeEngineBoots());
+
+    timeTable.addEntry(new UsmTimeEntry(engineID(1), 7, 1000));
+    assertTrue(timeTable.getEngineBootsAndTime(engineID(1).getValue(), params));
+    assertEquals(7, params.getAuthoritativeEngineBoots());
+    assertTrue(params.getAuthoritativeEngineTime() >= 1000 &&
+               params.getAuthoritativeEngineTime() <= 1001);
+    UsmTimeEntry entry = timeTable.getTime(engineID(1));
+    assertEquals(7, entry.getEngineBoots());
+    assertEquals(params.getAuthoritativeEngineTime(), entry.getLatestReceivedTime(), 1);
+
+    assertTrue(timeTable.getEngineBootsAndTime(LOCAL_ENGINE_ID.getValue(), params));
+    assertEquals(3, params.getAuthoritativeEngineBoots());
+    assertEquals(timeTable.getEngineTime(), params.getAuthoritativeEngineTime(), 1);
+  }
+
+  @Test
+  public void testCheckTimeUpdatesEntry() {
+    assertEquals(SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID,
+                 timeTable.checkEngineID(engineID(2), false, 1, 10));
+    assertEquals(SnmpConstants.SNMPv3_USM_OK, timeTable.checkEngineID(engineID(2), true, 1, 10));
+    assertEquals(SnmpConstants.SNMPv3_USM_OK, timeTable.checkTime(new UsmTimeEntry(engineID(2), 2, 5)));
+    assertEquals(2, timeTable.getTime(engineID(2)).getEngineBoots());
+    assertEquals(SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW,
+                 timeTable.checkTime(new UsmTimeEntry(engineID(2), 1, 5)));
+  }
+
+  @Test
+  public void testMaxEntries() {
+    timeTable.setMaxEntries(100);
+    for (int i=0; i<250; i++) {
+      timeTable.addEntry(new UsmTimeEntry(engineID(i), 1, i));
+      assertTrue(timeTable.size() <= 100);
+    }
+    // the most recently added entries are kept
+    assertNotNull(timeTable.getEntry(engineID(249)));
+    assertNull(timeTable.getEntry(engineID(0)));
+    assertEquals(250, timeTable.size() + timeTable.getEvictedEntryCount());
+    assertEquals(0, timeTable.getExpiredEntryCount());
+
+    timeTable.setMaxEntries(0);
+    for (int i=0; i<250; i++) {
+      timeTable.addEntry(new UsmTimeEntry(engineID(i), 1, i));
+    }
+    assertEquals(250, timeTable.size());
+  }
+
+  @Test
+  public void testIdleTimeout() throws Exception {
+    timeTable.setIdleTimeout(100);
+    timeTable.addEntry(new UsmTimeEntry(engineID(1), 1, 1));
+    timeTable.addEntry(new UsmTimeEntry(engineID(2), 1, 1));
+    timeTable.addEntry(new UsmTimeEntry(engineID(3), 1, 1));
+    assertEquals(0, timeTable.removeExpiredEntries());
+    Thread.sleep(200);
+    assertNull(timeTable.getTime(engineID(1)));
+    assertEquals(1, timeTable.getExpiredEntryCount());
+    assertEquals(SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID,
+                 timeTable.checkTime(new UsmTimeEntry(engineID(2), 1, 1)));
+    assertEquals(2, timeTable.getExpiredEntryCount());
+    // adding an entry after the idle timeout removes the remaining expired ones
+    timeTable.addEntry(new UsmTimeEntry(engineID(4), 1, 1));
+    assertEquals(1, timeTable.size());
+    assertEquals(3, timeTable.getExpiredEntryCount());
+
+    timeTable.setIdleTimeout(0);
+    Thread.sleep(200);
+    assertNotNull(timeTable.getEntry(engineID(4)));
+    assertEquals(0, timeTable.removeExpiredEntries());
+  }
+
+  @Test
+  public void testGetEngineBootsAndTimeDoesNotAllocate() {
+    Object threadMXBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadMXBean instanceof ThreadMXBean);
+    ThreadMXBean allocations = (ThreadMXBean) threadMXBean;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() &&
+                      allocations.isThreadAllocatedMemoryEnabled());
+    for (int i=0; i<100; i++) {
+      timeTable.addEntry(new UsmTimeEntry(engineID(i), 1, i));
+    }
+    byte[] engineID = engineID(42).getValue();
+    UsmSecurityParameters params = new UsmSecurityParameters();
+    for (int i=0; i<20000; i++) {
+      assertTrue(timeTable.getEngineBootsAndTime(engineID, params));
+    }
+    long threadId = Thread.currentThread().getId();
+    long before = allocations.getThreadAllocatedBytes(threadId);
+    for (int i=0; i<1000; i++) {
+      timeTable.getEngineBootsAndTime(engineID, params);
+    }
+    long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+    assertTrue("Allocated "+allocated+" bytes", allocated < 1000);
+  }
+}
@@ -0,0 +1,165 @@
+package org.snmp4j.test;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SimulatedAgentFarm} and the {@link LoadGenerator} over the
+ * in memory {@link LoopbackTransportMapping}.
+ *
+ * @author Frank Fock
+ * @version 2.6.0
+ */
+public class SimulatedAgentFarmTest {
+
+  private SimulatedAgentFarm farm;
+  private Snmp snmp;
+
+  @Before
+  public void setUp() throws Exception {
+    farm = new SimulatedAgentFarm(1000, new SyntheticMib(4), 2, 1000);
+    snmp = new Snmp(farm.createLoopbackTransport(new UdpAddress("127.0.0.1/16100")));
+    snmp.listen();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    snmp.close();
+    farm.close();
+  }
+
+  private CommunityTarget createTarget(int agentIndex, int version) {
+    CommunityTarget target =
+        new CommunityTarget(farm.getAgentAddress(agentIndex), new OctetString("public"));
+    target.setVersion(version);
+    target.setTimeout(1000);
+    target.setRetries(0);
+    return target;
+  }
+
+  @Test
+  public void testAgentAddress() {
+    assertEquals(0, farm.getAgentIndex(farm.getAgentAddress(0)));
+    assertEquals(999, farm.getAgentIndex(farm.getAgentAddress(999)));
+    assertEquals(-1, farm.getAgentIndex(new UdpAddress("10.0.3.232/161")));
+    assertEquals(-1, farm.getAgentIndex(new UdpAddress("127.0.0.1/161")));
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    PDU pdu = new PDU();
+    pdu.add(new VariableBinding(SyntheticMib.SYS_NAME));
+    pdu.add(new VariableBinding(SyntheticMib.IF_NUMBER));
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.1.99.0")));
+    PDU response = snmp.get(pdu, createTarget(42, SnmpConstants.version2c)).getResponse();
+    assertNotNull(response);
+    assertEquals(PDU.noError, response.getErrorStatus());
+    assertEquals(new OctetString("agent-42"), response.get(0).getVariable());
+    assertEquals(4, response.get(1).getVariable().toInt());
+    assertEquals(Null.noSuchObject, response.get(2).getVariable());
+
+    response = snmp.get(pdu, createTarget(7, SnmpConstants.version1)).getResponse();
+    assertNotNull(response);
+    assertEquals(PDU.noSuchName, response.getErrorStatus());
+    assertEquals(3, response.getErrorIndex());
+  }
+
+  @Test
+  public void testGetNextAndBulk() throws Exception {
+    PDU pdu = new PDU();
+    pdu.add(new VariableBinding(SyntheticMib.IF_ENTRY));
+    PDU response = snmp.getNext(pdu, createTarget(1, SnmpConstants.version2c)).getResponse();
+    assertNotNull(response);
+    assertEquals(new OID("1.3.6.1.2.1.2.2.1.1.1"), response.get(0).getOid());
+
+    pdu.setType(PDU.GETBULK);
+    pdu.setMaxRepetitions(20);
+    response = snmp.send(pdu, createTarget(1, SnmpConstants.version2c)).getResponse();
+    assertNotNull(response);
+    assertEquals(20, response.size());
+    assertEquals(new OID("1.3.6.1.2.1.2.2.1.5.4"), response.get(19).getOid());
+
+    pdu.setMaxRepetitions(1000);
+    response = snmp.send(pdu, createTarget(1, SnmpConstants.version2c)).getResponse();
+    assertNotNull(response);
+    assertEquals(farm.getMib().nextPosition(SyntheticMib.IF_ENTRY) + response.size(),
+                 farm.getMib().size() + 1);
+    assertEquals(Null.endOfMibView, response.get(response.size()-1).getVariable());
+  }
+
+  @Test
+  public void testTooBig() throws Exception {
+    farm.setMaxResponseVariableBindings(2);
+    PDU pdu = new PDU();
+    pdu.add(new VariableBinding(SyntheticMib.SYS_DESCR));
+    pdu.add(new VariableBinding(SyntheticMib.SYS_NAME));
+    pdu.add(new VariableBinding(SyntheticMib.IF_NUMBER));
+    PDU response = snmp.get(pdu, createTarget(3, SnmpConstants.version2c)).getResponse();
+    assertNotNull(response);
+    assertEquals(PDU.tooBig, response.getErrorStatus());
+    assertEquals(1, farm.getTooBigCount());
+
+    pdu.setType(PDU.GETBULK);
+    pdu.setMaxRepetitions(10);
+    response = snmp.send(pdu, createTarget(3, SnmpConstants.version2c)).getResponse();
+    assertNotNull(response);
+    assertEquals(PDU.noError, response.getErrorStatus());
+    assertEquals(2, response.size());
+  }
+
+  @Test
+  public void testLoss() throws Exception {
+    farm.setLossRate(1.0d);
+    PDU pdu = new PDU();
+    pdu.add(new VariableBinding(SyntheticMib.SYS_NAME));
+    CommunityTarget target = createTarget(5, SnmpConstants.version2c);
+    target.setTimeout(200);
+    ResponseEvent event = snmp.get(pdu, target);
+    assertNull(event.getResponse());
+    assertEquals(1, farm.getLostCount());
+  }
+
+  @Test
+  public void testLoadGenerator() throws Exception {
+    farm.setLatency(1, 5);
+    LoadGenerator generator = new LoadGenerator(snmp,
+        Collections.nCopies(1, createTarget(0, SnmpConstants.version2c)));
+    LoadReport report = generator.run(1000, 500);
+    assertTrue(report.getSent() > 0);
+    assertEquals(report.getSent(), report.getResponses() + report.getTimeouts());
+    assertTrue(report.getResponses() > 0);
+    assertEquals(report.getResponses(), report.getLatencies().getCount());
+    assertTrue(report.getLatencies().getPercentile(50) >= 1000);
+  }
+
+  @Test
+  public void testLatencyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i=1; i<=1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.getMax());
+    assertEquals(500.5d, histogram.getMean(), 0.001d);
+    long p50 = histogram.getPercentile(50);
+    assertTrue(p50 >= 500 && p50 <= 500 * 1.07);
+    assertEquals(1000, histogram.getPercentile(100));
+    for (long v = 1; v > 0; v <<= 1) {
+      assertTrue(LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucket(v)) >= v);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.snmp4j.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NioUdpTransportMappingTest {
+
+  private NioUdpTransportMapping receiver;
+  private NioUdpTransportMapping sender;
+
+  @Before
+  public void setUp() throws Exception {
+    receiver = new NioUdpTransportMapping(new UdpAddress("127.0.0.1/0"));
+    sender = new NioUdpTransportMapping(new UdpAddress("127.0.0.1/0"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    receiver.close();
+    sender.close();
+  }
+
+  @Test
+  public void testBatchReceive() throws Exception {
+    final int count = 200;
+    final CountDownLatch latch = new CountDownLatch(count);
+    final Address[] lastSender = new Address[1];
+    receiver.setMaxBatchSize(8);
+    receiver.setMaxPooledBuffers(4);
+    receiver.addTransportListener(new TransportListener() {
+      public void processMessage(TransportMapping sourceTransport, Address incomingAddress,
+                                 ByteBuffer wholeMessage, TransportStateReference tmStateReference) {
+        assertNotNull(tmStateReference.getPooledBuffer());
+        assertEquals(4, wholeMessage.remaining());
+        if (lastSender[0] != null) {
+          // peer address instances are reused
+          assertSame(lastSender[0], incomingAddress);
+        }
+        lastSender[0] = incomingAddress;
+        latch.countDown();
+      }
+    });
+    receiver.listen();
+    UdpAddress target = receiver.getListenAddress();
+    for (int i=0; i<count; i++) {
+      sender.sendMessage(target, new byte[] { 1, 2, 3, (byte)i }, null);
+      if (i % 50 == 49) {
+        Thread.sleep(10);
+      }
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(receiver.getBufferPool().getAllocatedBuffers() <= 4);
+    assertEquals(sender.getListenAddress().getPort(),
+        ((UdpAddress)lastSender[0]).getPort());
+  }
+
+}
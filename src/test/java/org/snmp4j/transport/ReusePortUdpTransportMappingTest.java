@@ -0,0 +1,73 @@
+package org.snmp4j.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReusePortUdpTransportMappingTest {
+
+  private static final int SENDERS = 8;
+  private static final int MESSAGES_PER_SENDER = 10;
+
+  private ReusePortUdpTransportMapping receiver;
+  private DefaultUdpTransportMapping[] senders = new DefaultUdpTransportMapping[SENDERS];
+
+  @Before
+  public void setUp() throws Exception {
+    receiver = new ReusePortUdpTransportMapping(new UdpAddress("127.0.0.1/0"), 4, false);
+    for (int i=0; i<SENDERS; i++) {
+      senders[i] = new DefaultUdpTransportMapping(new UdpAddress("127.0.0.1/0"));
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    receiver.close();
+    for (DefaultUdpTransportMapping sender : senders) {
+      sender.close();
+    }
+  }
+
+  @Test
+  public void testReceiveOnAllSockets() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(SENDERS * MESSAGES_PER_SENDER);
+    final Set<Object> receivingSockets = Collections.synchronizedSet(new HashSet<Object>());
+    receiver.addTransportListener(new TransportListener() {
+      public void processMessage(TransportMapping sourceTransport, Address incomingAddress,
+                                 ByteBuffer wholeMessage, TransportStateReference tmStateReference) {
+        assertSame(receiver, sourceTransport);
+        assertTrue(tmStateReference.getSessionID() instanceof DatagramSocket);
+        receivingSockets.add(tmStateReference.getSessionID());
+        latch.countDown();
+      }
+    });
+    receiver.listen();
+    assertTrue(receiver.isListening());
+    UdpAddress target = receiver.getListenAddress();
+    for (int m=0; m<MESSAGES_PER_SENDER; m++) {
+      for (DefaultUdpTransportMapping sender : senders) {
+        sender.sendMessage(target, new byte[] { 1, 2, 3, (byte)m }, null);
+      }
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(receivingSockets.size() <= receiver.getSocketCount());
+    receiver.close();
+    assertFalse(receiver.isListening());
+    assertEquals(0, receiver.getSocketCount());
+  }
+
+}
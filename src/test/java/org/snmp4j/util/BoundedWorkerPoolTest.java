@@ -0,0 +1,124 @@
+package org.snmp4j.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BoundedWorkerPoolTest {
+
+  private static class Task implements WorkerTask {
+
+    private final int id;
+    private final CountDownLatch release;
+    private final List<Integer> executed;
+    private volatile boolean terminated;
+    private volatile Thread thread;
+
+    Task(int id, CountDownLatch release, List<Integer> executed) {
+      this.id = id;
+      this.release = release;
+      this.executed = executed;
+    }
+
+    public void run() {
+      thread = Thread.currentThread();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      executed.add(id);
+    }
+
+    public void terminate() {
+      terminated = true;
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+
+  private static List<Task> fill(BoundedWorkerPool pool, CountDownLatch release,
+                                 List<Integer> executed, int count) throws InterruptedException {
+    List<Task> tasks = new ArrayList<Task>();
+    for (int i=0; i<count; i++) {
+      Task task = new Task(i, release, executed);
+      tasks.add(task);
+      pool.execute(task);
+      if (i == 0) {
+        // let the single worker take the first task
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((pool.getActiveCount() == 0) && (System.currentTimeMillis() < deadline)) {
+          Thread.sleep(5);
+        }
+      }
+    }
+    return tasks;
+  }
+
+  @Test
+  public void testDropNew() throws Exception {
+    BoundedWorkerPool pool =
+        new BoundedWorkerPool("dropNew", 1, 2, BoundedWorkerPool.OverflowPolicy.dropNew);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+    List<Task> tasks = fill(pool, release, executed, 5);
+    assertEquals(2, pool.getQueueSize());
+    assertEquals(2, pool.getDroppedNewCount());
+    assertEquals(2, pool.getRejectedCount());
+    assertFalse(pool.tryToExecute(new Task(5, release, executed)));
+    assertTrue(tasks.get(3).terminated);
+    assertTrue(tasks.get(4).terminated);
+    assertFalse(pool.isIdle());
+    release.countDown();
+    pool.stop();
+    assertEquals(3, pool.getCompletedCount());
+    assertEquals(3, executed.size());
+    assertTrue(pool.isIdle());
+  }
+
+  @Test
+  public void testDropOldest() throws Exception {
+    BoundedWorkerPool pool =
+        new BoundedWorkerPool("dropOldest", 1, 2, BoundedWorkerPool.OverflowPolicy.dropOldest);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+    List<Task> tasks = fill(pool, release, executed, 5);
+    assertEquals(2, pool.getDroppedOldestCount());
+    assertEquals(2, pool.getMaxQueueSize());
+    assertTrue(tasks.get(1).terminated);
+    assertTrue(tasks.get(2).terminated);
+    release.countDown();
+    pool.stop();
+    assertEquals(3, executed.size());
+    assertTrue(executed.containsAll(Arrays.asList(0, 3, 4)));
+  }
+
+  @Test
+  public void testCallerRuns() throws Exception {
+    BoundedWorkerPool pool =
+        new BoundedWorkerPool("callerRuns", 1, 1, BoundedWorkerPool.OverflowPolicy.callerRuns);
+    CountDownLatch blocker = new CountDownLatch(1);
+    List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+    fill(pool, blocker, executed, 2);
+    CountDownLatch released = new CountDownLatch(0);
+    Task overflow = new Task(2, released, executed);
+    pool.execute(overflow);
+    assertSame(Thread.currentThread(), overflow.thread);
+    assertEquals(1, pool.getCallerRunsCount());
+    blocker.countDown();
+    pool.stop();
+    assertEquals(3, executed.size());
+  }
+}
@@ -0,0 +1,113 @@
+package org.snmp4j.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.Target;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkPollerTest {
+
+  private static final int TARGETS = 20;
+  private static final int OIDS = 40;
+
+  private TestMibAgent agent;
+  private TaskScheduler scheduler;
+  private OID[] oids;
+
+  @Before
+  public void setUp() throws Exception {
+    agent = new TestMibAgent();
+    oids = new OID[OIDS];
+    for (int i=0; i<OIDS; i++) {
+      oids[i] = new OID(new int[] { 1, 3, 6, 1, 4, 1, 4976, 99, 2, i + 1, 0 });
+      agent.getMib().put(oids[i], new OctetString("value "+i));
+    }
+    agent.setSilentCommunity(new OctetString("silent"));
+    agent.start();
+    scheduler = new TaskScheduler(ThreadPool.create("BulkPollerTest", 2));
+    new Thread(scheduler).start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    scheduler.setStop(true);
+    agent.stop();
+  }
+
+  @Test
+  public void testPollCycle() throws Exception {
+    List<Target> targets = new ArrayList<Target>();
+    for (int i=0; i<TARGETS; i++) {
+      CommunityTarget target = new CommunityTarget(new UdpAddress("127.0.0.1/161"),
+          new OctetString((i == 7) ? "silent" : "public"));
+      target.setVersion(SnmpConstants.version2c);
+      target.setTimeout(300);
+      target.setRetries(0);
+      // forces two requests per target
+      target.setMaxSizeRequestPDU(484);
+      targets.add(target);
+    }
+    final List<PollEvent> events = new ArrayList<PollEvent>();
+    final List<PollCycleStatistics> cycles = new ArrayList<PollCycleStatistics>();
+    BulkPoller poller = new BulkPoller(agent.getManager(), new DefaultPDUFactory(), scheduler);
+    poller.setTargets(targets);
+    poller.setOIDs(oids);
+    poller.setPeriod(60000);
+    poller.setSpreadFactor(0.01);
+    poller.setBatchSize(8);
+    poller.setListener(new BulkPollListener() {
+      public void resultsReceived(List<PollEvent> batch) {
+        assertTrue(batch.size() <= 8);
+        events.addAll(batch);
+      }
+
+      public synchronized void cycleFinished(PollCycleStatistics statistics) {
+        cycles.add(statistics);
+        notifyAll();
+      }
+    });
+    synchronized (poller.getListener()) {
+      poller.start();
+      long deadline = System.currentTimeMillis() + 20000;
+      while (cycles.isEmpty() && System.currentTimeMillis() < deadline) {
+        poller.getListener().wait(100);
+      }
+    }
+    poller.stop();
+    assertFalse(poller.isRunning());
+    assertEquals(1, cycles.size());
+    PollCycleStatistics statistics = cycles.get(0);
+    assertEquals(1, statistics.getCycle());
+    assertEquals(TARGETS, statistics.getTargetCount());
+    assertEquals(TARGETS * 2, statistics.getRequestCount());
+    assertEquals((TARGETS - 1) * 2, statistics.getResponseCount());
+    assertEquals(2, statistics.getTimeoutCount());
+    assertEquals(0, statistics.getErrorCount());
+    assertTrue(statistics.getResponseTimePercentile(50) >= 0);
+    assertTrue(statistics.getResponseTimePercentile(50) <= statistics.getMaxResponseTime());
+    assertEquals(TARGETS, events.size());
+    for (PollEvent event : events) {
+      assertEquals(1, event.getCycle());
+      if (((CommunityTarget) event.getTarget()).getCommunity().toString().equals("silent")) {
+        assertEquals(RetrievalEvent.STATUS_TIMEOUT, event.getStatus());
+      }
+      else {
+        assertFalse(event.isError());
+        VariableBinding[] vbs = event.getVariableBindings();
+        assertEquals(OIDS, vbs.length);
+        for (int i=0; i<OIDS; i++) {
+          assertEquals(oids[i], vbs[i].getOid());
+          assertEquals(new OctetString("value "+i), vbs[i].getVariable());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package org.snmp4j.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HashedWheelTimerTest {
+
+  private HashedWheelTimer timer;
+
+  @Before
+  public void setUp() {
+    timer = new HashedWheelTimer("HashedWheelTimerTest", 5, 8);
+  }
+
+  @After
+  public void tearDown() {
+    timer.cancel();
+  }
+
+  @Test
+  public void testSchedule() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    }, 100);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(0, timer.getScheduledTaskCount());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    TimerTask task = new TimerTask() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    };
+    timer.schedule(task, 50);
+    assertTrue(timer.cancel(task));
+    assertFalse(timer.cancel(task));
+    Thread.sleep(150);
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  public void testCancelAfterRun() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    TimerTask task = new TimerTask() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    };
+    timer.schedule(task, 0);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertFalse(timer.cancel(task));
+  }
+
+  @Test
+  public void testMultipleRounds() throws Exception {
+    // 8 buckets with 5ms ticks cover only 40ms per round
+    final CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    }, 130);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(130));
+  }
+
+  @Test
+  public void testPeriodic() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(3);
+    TimerTask task = new TimerTask() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    };
+    timer.schedule(task, 0, 10);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(timer.cancel(task));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testScheduleTwice() {
+    TimerTask task = new TimerTask() {
+      @Override
+      public void run() {
+      }
+    };
+    timer.schedule(task, 1000);
+    timer.schedule(task, 1000);
+  }
+
+}
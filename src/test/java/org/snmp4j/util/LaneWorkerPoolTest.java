@@ -0,0 +1,142 @@
+package org.snmp4j.util;
+
+import org.junit.Test;
+import org.snmp4j.smi.UdpAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LaneWorkerPoolTest {
+
+  @Test
+  public void testOrderPerKey() throws Exception {
+    final int peers = 16;
+    final int messages = 200;
+    LaneWorkerPool pool = new LaneWorkerPool("test", 4);
+    final List<List<Integer>> received = new ArrayList<List<Integer>>();
+    for (int p=0; p<peers; p++) {
+      received.add(Collections.synchronizedList(new ArrayList<Integer>()));
+    }
+    final CountDownLatch finished = new CountDownLatch(peers * messages);
+    for (int i=0; i<messages; i++) {
+      for (int p=0; p<peers; p++) {
+        final int peer = p;
+        final int seq = i;
+        pool.execute(new UdpAddress("10.0.0."+p+"/162"), new SimpleTask() {
+          public void run() {
+            received.get(peer).add(seq);
+            finished.countDown();
+          }
+        });
+      }
+    }
+    assertTrue(finished.await(10, TimeUnit.SECONDS));
+    for (int p=0; p<peers; p++) {
+      List<Integer> seqs = received.get(p);
+      assertEquals(messages, seqs.size());
+      for (int i=0; i<messages; i++) {
+        assertEquals(i, seqs.get(i).intValue());
+      }
+    }
+    pool.stop();
+    assertTrue(pool.isIdle());
+    long completed = 0;
+    for (int l=0; l<pool.getLaneCount(); l++) {
+      completed += pool.getLaneCompletedCount(l);
+    }
+    assertEquals(peers * messages, completed);
+  }
+
+  @Test
+  public void testLaneQueueSize() throws Exception {
+    LaneWorkerPool pool = new LaneWorkerPool("test", 2, 10);
+    UdpAddress hot = new UdpAddress("10.0.0.1/162");
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch block = new CountDownLatch(1);
+    pool.execute(hot, new SimpleTask() {
+      public void run() {
+        started.countDown();
+        try {
+          block.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    int lane = pool.getLane(hot);
+    for (int i=0; i<10; i++) {
+      assertTrue(pool.tryToExecute(hot, new SimpleTask()));
+    }
+    assertFalse(pool.tryToExecute(hot, new SimpleTask()));
+    assertEquals(10, pool.getLaneQueueSize(lane));
+    assertEquals(10, pool.getLaneQueueSizes()[lane]);
+    assertEquals(0, pool.getLaneQueueSizes()[1 - lane]);
+    assertEquals(10, pool.getMaxLaneQueueSize(lane));
+    block.countDown();
+    pool.stop();
+    assertEquals(0, pool.getQueueSize());
+    assertEquals(11, pool.getLaneCompletedCount(lane));
+  }
+
+  @Test
+  public void testFullLaneDoesNotBlock() throws Exception {
+    LaneWorkerPool pool = new LaneWorkerPool("test", 1, 2, BoundedWorkerPool.OverflowPolicy.dropOldest);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch block = new CountDownLatch(1);
+    pool.execute("peer", new SimpleTask() {
+      public void run() {
+        started.countDown();
+        try {
+          block.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+    for (int i=0; i<5; i++) {
+      final int seq = i;
+      pool.execute("peer", new SimpleTask() {
+        public void run() {
+          executed.add(seq);
+        }
+
+        public void terminate() {
+          dropped.add(seq);
+        }
+      });
+    }
+    assertEquals(3, pool.getLaneRejectedCount(0));
+    assertEquals(Arrays.asList(0, 1, 2), dropped);
+    block.countDown();
+    pool.stop();
+    assertEquals(Arrays.asList(3, 4), executed);
+    assertEquals(3, pool.getRejectedCount());
+  }
+
+  private static class SimpleTask implements WorkerTask {
+
+    public void run() {
+    }
+
+    public void terminate() {
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package org.snmp4j.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.smi.*;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MaxRepetitionsControllerTest {
+
+  private static final OID IF_TABLE_ENTRY = new OID("1.3.6.1.2.1.2.2.1");
+
+  private TestMibAgent agent;
+
+  @Before
+  public void setUp() throws Exception {
+    agent = new TestMibAgent();
+    for (int column=1; column<=3; column++) {
+      for (int row=1; row<=200; row++) {
+        agent.getMib().put(new OID(IF_TABLE_ENTRY.getValue(), new int[] { column, row }),
+                           new Integer32(row));
+      }
+    }
+    agent.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    agent.stop();
+  }
+
+  @Test
+  public void testAdaptation() {
+    Address address = new UdpAddress("127.0.0.1/161");
+    MaxRepetitionsController controller = new MaxRepetitionsController(10, 2, 40);
+    controller.responseReceived(address, 10, 10, false, 10);
+    assertEquals(15, controller.getMaxRepetitions(address));
+    // slow responses and responses at the end of data keep the value
+    controller.responseReceived(address, 15, 15, false, 10000);
+    controller.responseReceived(address, 15, 3, true, 10);
+    assertEquals(15, controller.getMaxRepetitions(address));
+    for (int i=0; i<10; i++) {
+      controller.responseReceived(address, controller.getMaxRepetitions(address), 40, false, 10);
+    }
+    assertEquals(40, controller.getMaxRepetitions(address));
+    assertTrue(controller.tooBig(address, 40));
+    assertEquals(20, controller.getMaxRepetitions(address));
+    // never grows beyond the tooBig limit again
+    for (int i=0; i<10; i++) {
+      controller.responseReceived(address, controller.getMaxRepetitions(address), 40, false, 10);
+    }
+    assertEquals(39, controller.getMaxRepetitions(address));
+    controller.responseReceived(address, 39, 25, false, 10);
+    assertEquals(25, controller.getMaxRepetitions(address));
+    controller.timeout(address, 25);
+    assertEquals(12, controller.getMaxRepetitions(address));
+    controller.timeout(address, 12);
+    controller.timeout(address, 6);
+    controller.timeout(address, 3);
+    assertEquals(2, controller.getMaxRepetitions(address));
+    assertFalse(controller.tooBig(address, 2));
+    controller.reset(address);
+    assertEquals(10, controller.getMaxRepetitions(address));
+  }
+
+  @Test
+  public void testTreeWalkWithTruncatingAgent() {
+    MaxRepetitionsController controller = new MaxRepetitionsController();
+    agent.setMaxResponseVariableBindings(25);
+    TreeUtils treeUtils = new TreeUtils(agent.getManager(), new DefaultPDUFactory());
+    treeUtils.setMaxRepetitionsController(controller);
+    List<TreeEvent> events = treeUtils.getSubtree(agent.getTarget(), IF_TABLE_ENTRY);
+    int count = 0;
+    for (TreeEvent event : events) {
+      assertFalse(event.isError());
+      count += event.getVariableBindings().length;
+    }
+    assertEquals(600, count);
+    assertEquals(25, controller.getMaxRepetitions(agent.getTarget().getAddress()));
+  }
+
+  @Test
+  public void testTableWithTooBigAgent() {
+    MaxRepetitionsController controller = new MaxRepetitionsController(100, 1, 200);
+    agent.setTooBigVariableBindings(60);
+    TableUtils tableUtils = new TableUtils(agent.getManager(), new DefaultPDUFactory());
+    tableUtils.setMaxRepetitionsController(controller);
+    OID[] columns = new OID[] {
+        new OID(IF_TABLE_ENTRY.getValue(), new int[] { 1 }),
+        new OID(IF_TABLE_ENTRY.getValue(), new int[] { 2 }),
+        new OID(IF_TABLE_ENTRY.getValue(), new int[] { 3 })
+    };
+    List<TableEvent> rows = tableUtils.getTable(agent.getTarget(), columns, null, null);
+    assertEquals(200, rows.size());
+    for (TableEvent row : rows) {
+      assertFalse(row.isError());
+      assertEquals(3, row.getColumns().length);
+    }
+    assertTrue(controller.getMaxRepetitions(agent.getTarget().getAddress()) <= 20);
+  }
+}
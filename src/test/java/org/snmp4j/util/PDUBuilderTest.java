@@ -0,0 +1,86 @@
+package org.snmp4j.util;
+
+import org.junit.Test;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PDUBuilderTest {
+
+  private static VariableBinding createVariableBinding(int i) {
+    return new VariableBinding(new OID(new int[] { 1, 3, 6, 1, 2, 1, 31, 1, 1, 1, i % 20 + 1, i }),
+                               new OctetString(new byte[i % 300]));
+  }
+
+  private static void assertTracksLength(PDU pdu) {
+    PDUBuilder builder = new PDUBuilder(pdu, 2000);
+    int added = 0;
+    for (int i=0; i<100; i++) {
+      if (builder.add(createVariableBinding(i))) {
+        added++;
+      }
+      assertEquals(pdu.getBERLength(), builder.getBERLength());
+      assertTrue(builder.getBERLength() <= 2000);
+    }
+    assertEquals(added, pdu.size());
+    assertFalse(builder.fits(createVariableBinding(299)));
+    builder.remove(0);
+    assertEquals(pdu.getBERLength(), builder.getBERLength());
+    builder.removeLast();
+    assertEquals(pdu.getBERLength(), builder.getBERLength());
+    builder.add(createVariableBinding(299), true);
+    assertTrue(builder.isOversized());
+    assertEquals(pdu.getBERLength(), builder.getBERLength());
+    builder.clear();
+    assertEquals(0, pdu.size());
+    assertEquals(pdu.getBERLength(), builder.getBERLength());
+  }
+
+  @Test
+  public void testPDU() {
+    assertTracksLength(new PDU());
+  }
+
+  @Test
+  public void testScopedPDU() {
+    ScopedPDU pdu = new ScopedPDU();
+    pdu.setContextEngineID(new OctetString("engine"));
+    pdu.setContextName(new OctetString("context"));
+    assertTracksLength(pdu);
+  }
+
+  @Test
+  public void testTrapV1() {
+    PDUv1 pdu = new PDUv1();
+    pdu.setType(PDU.V1TRAP);
+    assertTracksLength(pdu);
+  }
+
+  @Test
+  public void testCreatePDUs() {
+    CommunityTarget target = new CommunityTarget(new UdpAddress("127.0.0.1/161"), new OctetString("public"));
+    target.setVersion(SnmpConstants.version2c);
+    target.setMaxSizeRequestPDU(1000);
+    List<VariableBinding> vbs = new ArrayList<VariableBinding>();
+    for (int i=0; i<500; i++) {
+      vbs.add(createVariableBinding(i));
+    }
+    List<PDU> pdus = new DefaultPDUFactory(PDU.SET).createPDUs(target, vbs);
+    int count = 0;
+    for (PDU pdu : pdus) {
+      assertTrue(pdu.getBERLength() <= 1000);
+      for (VariableBinding vb : pdu.getVariableBindings()) {
+        assertSame(vbs.get(count++), vb);
+      }
+    }
+    assertEquals(vbs.size(), count);
+  }
+}
@@ -0,0 +1,141 @@
+package org.snmp4j.util;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares concurrent synchronous GET requests executed by a
+ * {@link VirtualThreadWorkerPool} and by a {@link ThreadPool} with the
+ * asynchronous API. The requests are sent through a {@link TestMibAgent}.
+ * This is not a unit test, run it with
+ * <pre>
+ *   java org.snmp4j.util.SyncVsAsyncBenchmark [requests] [platformThreads]
+ * </pre>
+ * The defaults are 10000 requests and 200 platform threads.
+ */
+public class SyncVsAsyncBenchmark {
+
+  private static final OID SYS_DESCR = new OID("1.3.6.1.2.1.1.1.0");
+
+  private final TestMibAgent agent = new TestMibAgent();
+  private final int requests;
+  private final int platformThreads;
+
+  public SyncVsAsyncBenchmark(int requests, int platformThreads) {
+    this.requests = requests;
+    this.platformThreads = platformThreads;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int requests = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+    int platformThreads = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+    new SyncVsAsyncBenchmark(requests, platformThreads).run();
+  }
+
+  public void run() throws Exception {
+    agent.getMib().put(SYS_DESCR, new OctetString("SNMP4J benchmark agent"));
+    agent.start();
+    agent.getTarget().setTimeout(30000);
+    agent.getTarget().setRetries(0);
+    try {
+      // warm up
+      runAsync(Math.min(requests, 1000));
+      report("async", requests, runAsync(requests));
+      System.out.println("virtual threads supported: "+
+                         VirtualThreadFactory.isVirtualThreadSupported());
+      VirtualThreadWorkerPool virtualPool = new VirtualThreadWorkerPool("bench.virtual");
+      report("sync (virtual thread pool)", requests, runSync(virtualPool));
+      System.out.println("  max concurrent requests: "+virtualPool.getMaxActiveCount());
+      virtualPool.stop();
+      ThreadPool platformPool = ThreadPool.create("bench.platform", platformThreads);
+      report("sync ("+platformThreads+" platform threads)", requests, runSync(platformPool));
+      platformPool.stop();
+    }
+    finally {
+      agent.stop();
+    }
+  }
+
+  private long[] runAsync(int count) throws IOException, InterruptedException {
+    final Snmp snmp = agent.getManager();
+    final Target target = agent.getTarget();
+    final CountDownLatch finished = new CountDownLatch(count);
+    final AtomicInteger failed = new AtomicInteger();
+    ResponseListener listener = new ResponseListener() {
+      public void onResponse(ResponseEvent event) {
+        ((Snmp)event.getSource()).cancel(event.getRequest(), this);
+        if (event.getResponse() == null) {
+          failed.incrementAndGet();
+        }
+        finished.countDown();
+      }
+    };
+    long start = System.nanoTime();
+    for (int i=0; i<count; i++) {
+      snmp.send(createPDU(), target, null, listener);
+    }
+    finished.await(5, TimeUnit.MINUTES);
+    return new long[] { System.nanoTime() - start, failed.get() };
+  }
+
+  private long[] runSync(WorkerPool pool) throws InterruptedException {
+    final Snmp snmp = agent.getManager();
+    final Target target = agent.getTarget();
+    final CountDownLatch finished = new CountDownLatch(requests);
+    final AtomicInteger failed = new AtomicInteger();
+    long start = System.nanoTime();
+    for (int i=0; i<requests; i++) {
+      pool.execute(new WorkerTask() {
+        public void run() {
+          try {
+            ResponseEvent event = snmp.send(createPDU(), target);
+            if (event.getResponse() == null) {
+              failed.incrementAndGet();
+            }
+          }
+          catch (IOException iox) {
+            failed.incrementAndGet();
+          }
+          finally {
+            finished.countDown();
+          }
+        }
+
+        public void terminate() {
+        }
+
+        public void join() throws InterruptedException {
+        }
+
+        public void interrupt() {
+        }
+      });
+    }
+    finished.await(5, TimeUnit.MINUTES);
+    return new long[] { System.nanoTime() - start, failed.get() };
+  }
+
+  private static PDU createPDU() {
+    PDU pdu = new PDU();
+    pdu.setType(PDU.GET);
+    pdu.add(new VariableBinding(SYS_DESCR));
+    return pdu;
+  }
+
+  private static void report(String name, int count, long[] result) {
+    double millis = result[0] / 1000000.0;
+    System.out.printf("%-35s %8d requests %10.1f ms %10.0f req/s %6d failed%n",
+                      name, count, millis, count * 1000.0 / millis, result[1]);
+  }
+}
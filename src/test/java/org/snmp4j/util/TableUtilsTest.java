@@ -0,0 +1,92 @@
+package org.snmp4j.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.smi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TableUtilsTest {
+
+  private static final OID TABLE_ENTRY = new OID("1.3.6.1.4.1.4976.99.1.1");
+  private static final int ROWS = 300;
+
+  private TestMibAgent agent;
+  private OID[] columns;
+
+  @Before
+  public void setUp() throws Exception {
+    agent = new TestMibAgent();
+    columns = new OID[4];
+    for (int c=0; c<columns.length; c++) {
+      columns[c] = new OID(TABLE_ENTRY.getValue(), new int[] { c + 1 });
+      for (int row=1; row<=ROWS; row++) {
+        // sparse: column n only has every n-th row
+        if (row % (c + 1) == 0) {
+          agent.getMib().put(new OID(columns[c].getValue(), new int[] { row, 7 }),
+                             new Integer32(row));
+        }
+      }
+    }
+    agent.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    agent.stop();
+  }
+
+  private void assertRows(List<TableEvent> rows) {
+    assertEquals(ROWS, rows.size());
+    for (int i=0; i<rows.size(); i++) {
+      TableEvent event = rows.get(i);
+      assertFalse(event.isError());
+      assertEquals(new OID(new int[] { i + 1, 7 }), event.getIndex());
+      VariableBinding[] vbs = event.getColumns();
+      for (int c=0; c<columns.length; c++) {
+        boolean present = ((i + 1) % (c + 1) == 0);
+        assertEquals(present, (c < vbs.length) && (vbs[c] != null));
+      }
+    }
+  }
+
+  @Test
+  public void testSparseTable() {
+    TableUtils tableUtils = new TableUtils(agent.getManager(), new DefaultPDUFactory());
+    tableUtils.setMaxNumColumnsPerPDU(3);
+    assertRows(tableUtils.getTable(agent.getTarget(), columns, null, null));
+  }
+
+  @Test
+  public void testTableIterator() throws Exception {
+    TableUtils tableUtils = new TableUtils(agent.getManager(), new DefaultPDUFactory());
+    tableUtils.setMaxNumRowsPerPDU(5);
+    TableEventIterator it = tableUtils.getTableIterator(agent.getTarget(), columns, null, null, 20);
+    Thread.sleep(300);
+    // the retrieval is suspended until rows are consumed
+    int requestsBeforeConsuming = agent.getRequestCount();
+    assertTrue(requestsBeforeConsuming < 10);
+    Thread.sleep(100);
+    assertEquals(requestsBeforeConsuming, agent.getRequestCount());
+    List<TableEvent> rows = new ArrayList<TableEvent>();
+    while (it.hasNext()) {
+      rows.add(it.next());
+    }
+    assertRows(rows);
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void testTableIteratorClose() throws Exception {
+    TableUtils tableUtils = new TableUtils(agent.getManager(), new DefaultPDUFactory());
+    TableEventIterator it = tableUtils.getTableIterator(agent.getTarget(), columns, null, null, 10);
+    assertTrue(it.hasNext());
+    assertEquals(new OID(new int[] { 1, 7 }), it.next().getIndex());
+    it.close();
+    assertFalse(it.hasNext());
+  }
+}
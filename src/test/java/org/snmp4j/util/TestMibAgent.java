@@ -0,0 +1,144 @@
+package org.snmp4j.util;
+
+import org.snmp4j.*;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.*;
+import org.snmp4j.transport.AbstractTransportMapping;
+import org.snmp4j.transport.DummyTransport;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal command responder serving GET, GETNEXT, and GETBULK requests
+ * from a sorted map over a {@link DummyTransport}.
+ */
+class TestMibAgent implements CommandResponder {
+
+  private final SortedMap<OID, Variable> mib = new TreeMap<OID, Variable>();
+  private final AtomicInteger requests = new AtomicInteger();
+  private Snmp manager;
+  private Snmp agent;
+  private CommunityTarget target;
+  private volatile int maxResponseVariableBindings = Integer.MAX_VALUE;
+  private volatile int tooBigVariableBindings = Integer.MAX_VALUE;
+  private volatile OctetString silentCommunity;
+
+  void start() throws IOException {
+    DummyTransport<UdpAddress> managerTransport = new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/4967"));
+    AbstractTransportMapping<UdpAddress> agentTransport = managerTransport.getResponder(new UdpAddress("127.0.0.1/161"));
+    manager = new Snmp(managerTransport);
+    agent = new Snmp(agentTransport);
+    agent.addCommandResponder(this);
+    manager.listen();
+    agent.listen();
+    target = new CommunityTarget(new UdpAddress("127.0.0.1/161"), new OctetString("public"));
+    target.setVersion(SnmpConstants.version2c);
+    target.setTimeout(2000);
+  }
+
+  void stop() throws IOException {
+    manager.close();
+    agent.close();
+  }
+
+  SortedMap<OID, Variable> getMib() {
+    return mib;
+  }
+
+  Snmp getManager() {
+    return manager;
+  }
+
+  CommunityTarget getTarget() {
+    return target;
+  }
+
+  int getRequestCount() {
+    return requests.get();
+  }
+
+  void setMaxResponseVariableBindings(int maxResponseVariableBindings) {
+    this.maxResponseVariableBindings = maxResponseVariableBindings;
+  }
+
+  void setTooBigVariableBindings(int tooBigVariableBindings) {
+    this.tooBigVariableBindings = tooBigVariableBindings;
+  }
+
+  void setSilentCommunity(OctetString silentCommunity) {
+    this.silentCommunity = silentCommunity;
+  }
+
+  public void processPdu(CommandResponderEvent event) {
+    PDU request = event.getPDU();
+    if ((silentCommunity != null) &&
+        silentCommunity.equals(new OctetString(event.getSecurityName()))) {
+      return;
+    }
+    requests.incrementAndGet();
+    PDU response = (PDU) request.clone();
+    response.setType(PDU.RESPONSE);
+    response.clear();
+    response.setRequestID(request.getRequestID());
+    int n = request.size();
+    if (request.getType() == PDU.GETBULK) {
+      int nonRepeaters = Math.max(0, Math.min(request.getNonRepeaters(), n));
+      for (int i=0; i<nonRepeaters; i++) {
+        response.add(next(request.get(i).getOid()));
+      }
+      OID[] last = new OID[n - nonRepeaters];
+      for (int i=nonRepeaters; i<n; i++) {
+        last[i - nonRepeaters] = request.get(i).getOid();
+      }
+      for (int r=0; (r<request.getMaxRepetitions()) && (last.length > 0); r++) {
+        for (int i=0; i<last.length; i++) {
+          VariableBinding vb = next(last[i]);
+          response.add(vb);
+          last[i] = vb.getOid();
+        }
+      }
+    }
+    else {
+      for (VariableBinding vb : request.getVariableBindings()) {
+        if (request.getType() == PDU.GETNEXT) {
+          response.add(next(vb.getOid()));
+        }
+        else {
+          Variable v = mib.get(vb.getOid());
+          response.add(new VariableBinding(vb.getOid(), (v == null) ? Null.noSuchObject : v));
+        }
+      }
+    }
+    if (response.size() > Math.max(n, tooBigVariableBindings)) {
+      response.clear();
+      response.setRequestID(request.getRequestID());
+      response.addAll(request.toArray());
+      response.setErrorStatus(PDU.tooBig);
+    }
+    while (response.size() > Math.max(n, maxResponseVariableBindings)) {
+      response.trim();
+    }
+    try {
+      event.getMessageDispatcher().returnResponsePdu(event.getMessageProcessingModel(),
+          event.getSecurityModel(), event.getSecurityName(), event.getSecurityLevel(),
+          response, event.getMaxSizeResponsePDU(), event.getStateReference(), new StatusInformation());
+    }
+    catch (MessageException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private VariableBinding next(OID oid) {
+    SortedMap<OID, Variable> tail = mib.tailMap(oid.successor());
+    if (tail.isEmpty()) {
+      return new VariableBinding(oid, Null.endOfMibView);
+    }
+    Map.Entry<OID, Variable> e = tail.entrySet().iterator().next();
+    return new VariableBinding(e.getKey(), e.getValue());
+  }
+}
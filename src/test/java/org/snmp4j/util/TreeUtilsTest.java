@@ -0,0 +1,121 @@
+package org.snmp4j.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.smi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TreeUtilsTest {
+
+  private static final OID IP_ROUTE_TABLE = new OID("1.3.6.1.2.1.4.21");
+
+  private TestMibAgent agent;
+
+  @Before
+  public void setUp() throws Exception {
+    agent = new TestMibAgent();
+    for (int column=1; column<=5; column++) {
+      for (int a=1; a<250; a+=3) {
+        for (int b=0; b<4; b++) {
+          OID index = new OID(new int[] { 10, a, b, 0 });
+          OID oid = new OID(IP_ROUTE_TABLE.getValue(), new int[] { 1, column });
+          oid.append(index);
+          agent.getMib().put(oid, new Integer32(a * b));
+        }
+      }
+    }
+    agent.getMib().put(new OID("1.3.6.1.2.1.4.22.1.1.1"), new Integer32(1));
+    agent.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    agent.stop();
+  }
+
+  private List<VariableBinding> getSubtree(TreeUtils treeUtils, OID root) {
+    List<TreeEvent> events = treeUtils.getSubtree(agent.getTarget(), root);
+    List<VariableBinding> vbs = new ArrayList<VariableBinding>();
+    for (TreeEvent event : events) {
+      assertFalse(event.getErrorMessage(), event.isError());
+      for (VariableBinding vb : event.getVariableBindings()) {
+        vbs.add(vb);
+      }
+    }
+    return vbs;
+  }
+
+  @Test
+  public void testPartitionedWalk() {
+    TreeUtils treeUtils = new TreeUtils(agent.getManager(), new DefaultPDUFactory());
+    treeUtils.setMaxRepetitions(20);
+    List<VariableBinding> sequential = getSubtree(treeUtils, IP_ROUTE_TABLE);
+    assertEquals(agent.getMib().size() - 1, sequential.size());
+    for (int partitions : new int[] { 2, 4, 16 }) {
+      treeUtils.setMaxPartitions(partitions);
+      List<VariableBinding> partitioned = getSubtree(treeUtils, IP_ROUTE_TABLE);
+      assertEquals(sequential, partitioned);
+    }
+    // partitions of a single column
+    List<VariableBinding> column = getSubtree(treeUtils, new OID(IP_ROUTE_TABLE.getValue(), new int[] { 1, 3 }));
+    treeUtils.setMaxPartitions(1);
+    assertEquals(getSubtree(treeUtils, new OID(IP_ROUTE_TABLE.getValue(), new int[] { 1, 3 })), column);
+  }
+
+  @Test
+  public void testPartitionedWalkNotifiesOutsideLock() throws Exception {
+    TreeUtils treeUtils = new TreeUtils(agent.getManager(), new DefaultPDUFactory());
+    treeUtils.setMaxRepetitions(1);
+    List<VariableBinding> sequential = getSubtree(treeUtils, IP_ROUTE_TABLE);
+    treeUtils.setMaxPartitions(8);
+    final List<VariableBinding> partitioned = new ArrayList<VariableBinding>();
+    final List<String> errors = new ArrayList<String>();
+    final CountDownLatch finished = new CountDownLatch(1);
+    treeUtils.getSubtree(agent.getTarget(), IP_ROUTE_TABLE, null, new TreeListener() {
+      public boolean next(TreeEvent event) {
+        // later partitions pause their walk instead of buffering all events
+        if (Thread.holdsLock(event.getSource())) {
+          errors.add("next called while holding the merge lock");
+        }
+        for (VariableBinding vb : event.getVariableBindings()) {
+          partitioned.add(vb);
+        }
+        return true;
+      }
+
+      public void finished(TreeEvent event) {
+        if (Thread.holdsLock(event.getSource())) {
+          errors.add("finished called while holding the merge lock");
+        }
+        if (event.isError()) {
+          errors.add(event.getErrorMessage());
+        }
+        for (VariableBinding vb : event.getVariableBindings()) {
+          partitioned.add(vb);
+        }
+        finished.countDown();
+      }
+
+      public boolean isFinished() {
+        return finished.getCount() == 0;
+      }
+    });
+    assertTrue(finished.await(30, TimeUnit.SECONDS));
+    assertTrue(errors.toString(), errors.isEmpty());
+    assertEquals(sequential, partitioned);
+  }
+
+  @Test
+  public void testPartitionedWalkOfEmptySubtree() {
+    TreeUtils treeUtils = new TreeUtils(agent.getManager(), new DefaultPDUFactory());
+    treeUtils.setMaxPartitions(4);
+    assertTrue(getSubtree(treeUtils, new OID("1.3.6.1.2.1.4.20")).isEmpty());
+  }
+}
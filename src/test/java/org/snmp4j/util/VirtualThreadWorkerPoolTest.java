@@ -0,0 +1,128 @@
+package org.snmp4j.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VirtualThreadWorkerPoolTest {
+
+  private static final OID SYS_DESCR = new OID("1.3.6.1.2.1.1.1.0");
+
+  private TestMibAgent agent;
+
+  @Before
+  public void setUp() throws Exception {
+    agent = new TestMibAgent();
+    agent.getMib().put(SYS_DESCR, new OctetString("test"));
+    agent.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    agent.stop();
+  }
+
+  @Test
+  public void testConcurrentSyncRequests() throws Exception {
+    final int count = 50;
+    final CountDownLatch finished = new CountDownLatch(count);
+    final AtomicInteger responses = new AtomicInteger();
+    VirtualThreadWorkerPool pool = new VirtualThreadWorkerPool("test");
+    for (int i=0; i<count; i++) {
+      pool.execute(new SimpleTask() {
+        public void run() {
+          try {
+            PDU pdu = new PDU();
+            pdu.add(new VariableBinding(SYS_DESCR));
+            ResponseEvent event = agent.getManager().send(pdu, agent.getTarget());
+            if ((event.getResponse() != null) &&
+                new OctetString("test").equals(event.getResponse().get(0).getVariable())) {
+              responses.incrementAndGet();
+            }
+          }
+          catch (IOException iox) {
+            // counted as missing response
+          }
+          finally {
+            finished.countDown();
+          }
+        }
+      });
+    }
+    assertTrue(finished.await(30, TimeUnit.SECONDS));
+    assertEquals(count, responses.get());
+    pool.stop();
+    assertTrue(pool.isIdle());
+    assertEquals(count, pool.getCompletedCount());
+    assertTrue(pool.getMaxActiveCount() > 1);
+  }
+
+  @Test
+  public void testSyncRequestTimeout() throws Exception {
+    agent.setSilentCommunity(new OctetString("public"));
+    agent.getTarget().setTimeout(200);
+    agent.getTarget().setRetries(0);
+    PDU pdu = new PDU();
+    pdu.add(new VariableBinding(SYS_DESCR));
+    long start = System.nanoTime();
+    ResponseEvent event = agent.getManager().send(pdu, agent.getTarget());
+    assertNull(event.getResponse());
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+  }
+
+  @Test
+  public void testStoppedPoolRejectsTasks() throws Exception {
+    VirtualThreadWorkerPool pool = new VirtualThreadWorkerPool("test");
+    pool.stop();
+    final AtomicInteger terminated = new AtomicInteger();
+    SimpleTask task = new SimpleTask() {
+      public void run() {
+        fail("task of stopped pool executed");
+      }
+
+      public void terminate() {
+        terminated.incrementAndGet();
+      }
+    };
+    assertFalse(pool.tryToExecute(task));
+    pool.execute(task);
+    assertEquals(1, terminated.get());
+  }
+
+  @Test
+  public void testThreadFactory() throws Exception {
+    final CountDownLatch executed = new CountDownLatch(1);
+    WorkerTask thread = new VirtualThreadFactory().createWorkerThread("test", new SimpleTask() {
+      public void run() {
+        executed.countDown();
+      }
+    }, true);
+    thread.run();
+    assertTrue(executed.await(5, TimeUnit.SECONDS));
+    thread.join();
+  }
+
+  private abstract static class SimpleTask implements WorkerTask {
+
+    public void terminate() {
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+}